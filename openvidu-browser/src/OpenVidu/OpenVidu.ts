@@ -821,7 +821,9 @@ export class OpenVidu {
         streamPropertyChanged: this.session.onStreamPropertyChanged.bind(this.session),
         filterEventDispatched: this.session.onFilterEventDispatched.bind(this.session),
         iceCandidate: this.session.recvIceCandidate.bind(this.session),
-        mediaError: this.session.onMediaError.bind(this.session)
+        mediaError: this.session.onMediaError.bind(this.session),
+        iceRestart: this.session.onIceRestart.bind(this.session),
+        speakerChanged: this.session.onSpeakerChanged.bind(this.session)
       }
     };
     this.jsonRpcClient = new RpcBuilder.clients.JsonRpcClient(config);
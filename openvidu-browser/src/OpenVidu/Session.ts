@@ -1001,6 +1001,41 @@ export class Session implements EventDispatcher {
         }
     }
 
+    /**
+     * @hidden
+     */
+    onIceRestart(msg): void {
+        this.getConnection(msg.connectionId, 'Connection ' + msg.connectionId + ' owning stream ' + msg.streamId + ' not found. ICE restart ignored')
+            .then(connection => {
+                const stream = connection.stream;
+                if (!stream || stream.streamId !== msg.streamId) {
+                    console.warn('Stream ' + msg.streamId + ' not found. ICE restart ignored');
+                    return;
+                }
+                console.warn('Media server of session ' + this.sessionId + ' changed (' + msg.reason + '). Restarting ICE of stream ' + msg.streamId);
+                stream.restartIce()
+                    .catch(error => {
+                        console.error('Error restarting ICE of stream ' + msg.streamId + ' after media server change', error);
+                    });
+            })
+            .catch(openViduError => {
+                console.error(openViduError);
+            });
+    }
+
+    /**
+     * @hidden
+     */
+    onSpeakerChanged(msg): void {
+        this.getConnection(msg.connectionId, 'Connection ' + msg.connectionId + ' not found. Speaker change ignored')
+            .then(connection => {
+                this.ee.emitEvent('speakerChanged', [new PublisherSpeakingEvent(this, 'speakerChanged', connection, msg.streamId)]);
+            })
+            .catch(openViduError => {
+                console.error(openViduError);
+            });
+    }
+
     /**
      * @hidden
      */
@@ -1086,7 +1121,8 @@ export class Session implements EventDispatcher {
                         platform: !!platform.description ? platform.description : 'unknown',
                         metadata: !!this.options.metadata ? this.options.metadata : '',
                         secret: this.openvidu.getSecret(),
-                        recorder: this.openvidu.getRecorder()
+                        recorder: this.openvidu.getRecorder(),
+                        speakerChanged: true
                     };
 
                     this.openvidu.sendRequest('joinRoom', joinParams, (error, response) => {
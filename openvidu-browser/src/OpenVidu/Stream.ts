@@ -468,6 +468,39 @@ export class Stream implements EventDispatcher {
         });
     }
 
+    /**
+     * @hidden
+     */
+    restartIce(): Promise<any> {
+        // The RTCPeerConnection and the streamId are kept, so the local tracks, hark events and Publisher/Subscriber
+        // of the stream are not affected. Used when OpenVidu Server moves the session to another media server
+        return new Promise((resolve, reject) => {
+            if (!this.webRtcPeer) {
+                reject(new Error('Stream ' + this.streamId + ' has no RTCPeerConnection to restart'));
+                return;
+            }
+            this.webRtcPeer.generateIceRestartOffer()
+                .then(sdpOffer => {
+                    console.debug('Sending SDP offer to restart ICE of ' + this.streamId, sdpOffer);
+                    this.session.openvidu.sendRequest('reconnectStream', {
+                        stream: this.streamId,
+                        sdpOffer
+                    }, (error, response) => {
+                        if (error) {
+                            reject(new Error('Error on reconnectStream: ' + JSON.stringify(error)));
+                        } else {
+                            this.webRtcPeer.processAnswer(response.sdpAnswer, false)
+                                .then(() => resolve())
+                                .catch(error => reject(error));
+                        }
+                    });
+                })
+                .catch(error => {
+                    reject(new Error('(restart ICE) SDP offer error: ' + JSON.stringify(error)));
+                });
+        });
+    }
+
     /**
      * @hidden
      */
@@ -24,6 +24,7 @@ import { Session } from '../..';
  * Defines the following events:
  * - `publisherStartSpeaking`: dispatched by [[Session]]
  * - `publisherStopSpeaking`: dispatched by [[Session]]
+ * - `speakerChanged`: dispatched by [[Session]] when OpenVidu Server detects a new dominant speaker in the session
  *
  * More information:
  * - This events will only be triggered for **remote streams that have audio tracks** ([[Stream.hasAudio]] must be true)
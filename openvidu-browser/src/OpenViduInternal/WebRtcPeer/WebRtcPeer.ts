@@ -204,6 +204,33 @@ export class WebRtcPeer {
         });
     }
 
+    /**
+     * Function that creates an offer restarting ICE on the existing RTCPeerConnection, sets it as local description
+     * and returns the offer param to send to OpenVidu Server. Tracks and transceivers of the connection are kept
+     */
+    generateIceRestartOffer(): Promise<string> {
+        return new Promise((resolve, reject) => {
+            if (this.pc.signalingState === 'closed') {
+                reject('RTCPeerConnection is closed');
+                return;
+            }
+            this.pc.createOffer({ iceRestart: true }).then(offer => {
+                console.debug('Created SDP offer restarting ICE');
+                return this.pc.setLocalDescription(offer);
+            })
+                .then(() => {
+                    const localDescription = this.pc.localDescription;
+                    if (!!localDescription) {
+                        console.debug('Local description set', localDescription.sdp);
+                        resolve(localDescription.sdp);
+                    } else {
+                        reject('Local description is not defined');
+                    }
+                })
+                .catch(error => reject(error));
+        });
+    }
+
     /**
      * Function invoked when a SDP answer is received. Final step in SDP negotiation, the peer
      * just needs to set the answer as its remote description
@@ -65,6 +65,12 @@ public class ServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
       case ProtocolElements.ICECANDIDATE_METHOD:
         notif = iceCandidate(transaction, request);
         break;
+      case ProtocolElements.ICECANDIDATES_METHOD:
+        // Each candidate of the batch is enqueued as a separate notification
+        for (Notification candidateNotif : iceCandidates(transaction, request)) {
+          enqueue(candidateNotif);
+        }
+        break;
       case ProtocolElements.MEDIAERROR_METHOD:
         notif = mediaError(transaction, request);
         break;
@@ -98,12 +104,16 @@ public class ServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
       return;
     }
     if (notif != null) {
-      try {
-        notifications.put(notif);
-        log.debug("Enqueued notification {}", notif);
-      } catch (InterruptedException e) {
-        log.warn("Interrupted when enqueuing notification {}", notif, e);
-      }
+      enqueue(notif);
+    }
+  }
+
+  private void enqueue(Notification notif) {
+    try {
+      notifications.put(notif);
+      log.debug("Enqueued notification {}", notif);
+    } catch (InterruptedException e) {
+      log.warn("Interrupted when enqueuing notification {}", notif, e);
     }
   }
 
@@ -203,6 +213,28 @@ public class ServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
     return eventInfo;
   }
 
+  private List<Notification> iceCandidates(Transaction transaction, Request<JsonObject> request) {
+
+    String endpoint = JsonRoomUtils.getRequestParam(request,
+        ProtocolElements.ICECANDIDATES_EPNAME_PARAM, String.class);
+    JsonArray candidates = JsonRoomUtils.getRequestParam(request,
+        ProtocolElements.ICECANDIDATES_CANDIDATES_PARAM, JsonArray.class);
+
+    List<Notification> eventInfos = new ArrayList<Notification>();
+    Iterator<JsonElement> it = candidates.iterator();
+    while (it.hasNext()) {
+      JsonObject candidate = it.next().getAsJsonObject();
+      IceCandidate iceCandidate = new IceCandidate(
+          candidate.get(ProtocolElements.ICECANDIDATE_CANDIDATE_PARAM).getAsString(),
+          candidate.get(ProtocolElements.ICECANDIDATE_SDPMID_PARAM).getAsString(),
+          candidate.get(ProtocolElements.ICECANDIDATE_SDPMLINEINDEX_PARAM).getAsInt());
+      eventInfos.add(new IceCandidateInfo(iceCandidate, endpoint));
+    }
+    log.debug("Recvd {} ICE candidates of endpoint {}", eventInfos.size(), endpoint);
+
+    return eventInfos;
+  }
+
   /**
    * Blocks until an element is available and then returns it by removing it from the queue.
    *
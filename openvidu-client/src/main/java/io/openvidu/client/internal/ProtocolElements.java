@@ -39,6 +39,8 @@ public class ProtocolElements {
 	public static final String JOINROOM_SECRET_PARAM = "secret";
 	public static final String JOINROOM_PLATFORM_PARAM = "platform";
 	public static final String JOINROOM_RECORDER_PARAM = "recorder";
+	public static final String JOINROOM_BATCHEDICECANDIDATES_PARAM = "batchedIceCandidates";
+	public static final String JOINROOM_SPEAKERCHANGED_PARAM = "speakerChanged";
 
 	public static final String JOINROOM_PEERID_PARAM = "id";
 	public static final String JOINROOM_PEERCREATEDAT_PARAM = "createdAt";
@@ -74,6 +76,16 @@ public class ProtocolElements {
 	public static final String RECEIVEVIDEO_SDPOFFER_PARAM = "sdpOffer";
 	public static final String RECEIVEVIDEO_SENDER_PARAM = "sender";
 	public static final String RECEIVEVIDEO_SDPANSWER_PARAM = "sdpAnswer";
+	public static final String RECEIVEVIDEO_AUDIOONLY_PARAM = "audioOnly";
+
+	public static final String UPDATESUBSCRIPTION_METHOD = "updateSubscription";
+	public static final String UPDATESUBSCRIPTION_SENDER_PARAM = "sender";
+	public static final String UPDATESUBSCRIPTION_AUDIOONLY_PARAM = "audioOnly";
+
+	public static final String RECONNECTSTREAM_METHOD = "reconnectStream";
+	public static final String RECONNECTSTREAM_STREAM_PARAM = "stream";
+	public static final String RECONNECTSTREAM_SDPOFFER_PARAM = "sdpOffer";
+	public static final String RECONNECTSTREAM_SDPANSWER_PARAM = "sdpAnswer";
 
 	public static final String UNSUBSCRIBEFROMVIDEO_METHOD = "unsubscribeFromVideo";
 	public static final String UNSUBSCRIBEFROMVIDEO_SENDER_PARAM = "sender";
@@ -84,6 +96,10 @@ public class ProtocolElements {
 	public static final String ONICECANDIDATE_SDPMIDPARAM = "sdpMid";
 	public static final String ONICECANDIDATE_SDPMLINEINDEX_PARAM = "sdpMLineIndex";
 
+	public static final String ONICECANDIDATES_METHOD = "onIceCandidates";
+	public static final String ONICECANDIDATES_EPNAME_PARAM = "endpointName";
+	public static final String ONICECANDIDATES_CANDIDATES_PARAM = "candidates";
+
 	public static final String CUSTOMREQUEST_METHOD = "customRequest";
 
 	public static final String STREAMPROPERTYCHANGED_METHOD = "streamPropertyChanged";
@@ -162,6 +178,11 @@ public class ProtocolElements {
 	public static final String MEDIAERROR_METHOD = "mediaError";
 	public static final String MEDIAERROR_ERROR_PARAM = "error";
 
+	public static final String ICERESTART_METHOD = "iceRestart";
+	public static final String ICERESTART_CONNECTIONID_PARAM = "connectionId";
+	public static final String ICERESTART_STREAMID_PARAM = "streamId";
+	public static final String ICERESTART_REASON_PARAM = "reason";
+
 	public static final String ICECANDIDATE_METHOD = "iceCandidate";
 	public static final String ICECANDIDATE_SENDERCONNECTIONID_PARAM = "senderConnectionId";
 	public static final String ICECANDIDATE_EPNAME_PARAM = "endpointName";
@@ -169,6 +190,15 @@ public class ProtocolElements {
 	public static final String ICECANDIDATE_SDPMID_PARAM = "sdpMid";
 	public static final String ICECANDIDATE_SDPMLINEINDEX_PARAM = "sdpMLineIndex";
 
+	public static final String ICECANDIDATES_METHOD = "iceCandidates";
+	public static final String ICECANDIDATES_SENDERCONNECTIONID_PARAM = "senderConnectionId";
+	public static final String ICECANDIDATES_EPNAME_PARAM = "endpointName";
+	public static final String ICECANDIDATES_CANDIDATES_PARAM = "candidates";
+
+	public static final String SPEAKERCHANGED_METHOD = "speakerChanged";
+	public static final String SPEAKERCHANGED_CONNECTIONID_PARAM = "connectionId";
+	public static final String SPEAKERCHANGED_STREAMID_PARAM = "streamId";
+
 	public static final String RECORDINGSTARTED_METHOD = "recordingStarted";
 	public static final String RECORDINGSTARTED_ID_PARAM = "id";
 	public static final String RECORDINGSTARTED_NAME_PARAM = "name";
@@ -208,6 +208,9 @@ public class OpenVidu {
 				json.put("customLayout", (properties.customLayout() != null) ? properties.customLayout() : "");
 			}
 		}
+		if (Recording.OutputMode.INDIVIDUAL.equals(properties.outputMode())) {
+			json.put("passthrough", properties.passthrough());
+		}
 
 		StringEntity params = null;
 		try {
@@ -108,6 +108,8 @@ public class Recording {
 			if (customLayout != null) {
 				builder.customLayout(customLayout);
 			}
+		} else if (json.containsKey("passthrough")) {
+			builder.passthrough((boolean) json.get("passthrough"));
 		}
 		this.recordingProperties = builder.build();
 	}
@@ -32,6 +32,7 @@ public class RecordingProperties {
 	private String resolution;
 	private boolean hasAudio;
 	private boolean hasVideo;
+	private boolean passthrough;
 
 	/**
 	 * Builder for {@link io.openvidu.java.client.RecordingProperties}
@@ -45,6 +46,7 @@ public class RecordingProperties {
 		private String resolution;
 		private boolean hasAudio = true;
 		private boolean hasVideo = true;
+		private boolean passthrough = false;
 
 		/**
 		 * Builder for {@link io.openvidu.java.client.RecordingProperties}
@@ -58,7 +60,7 @@ public class RecordingProperties {
 				}
 			}
 			return new RecordingProperties(this.name, this.outputMode, this.recordingLayout, this.customLayout,
-					this.resolution, this.hasAudio, this.hasVideo);
+					this.resolution, this.hasAudio, this.hasVideo, this.passthrough);
 		}
 
 		/**
@@ -146,10 +148,24 @@ public class RecordingProperties {
 			return this;
 		}
 
+		/**
+		 * Call this method to store each stream in the container format of the codecs
+		 * negotiated by its publisher, so media is not transcoded: WEBM for VP8 and
+		 * Opus, MKV for H264 and Opus and MP4 for H264 video-only streams.<br>
+		 * Will only have effect if
+		 * {@link io.openvidu.java.client.RecordingProperties.Builder#outputMode(Recording.OutputMode)}
+		 * has been called with value
+		 * {@link io.openvidu.java.client.Recording.OutputMode#INDIVIDUAL}
+		 */
+		public RecordingProperties.Builder passthrough(boolean passthrough) {
+			this.passthrough = passthrough;
+			return this;
+		}
+
 	}
 
 	protected RecordingProperties(String name, Recording.OutputMode outputMode, RecordingLayout layout,
-			String customLayout, String resolution, boolean hasAudio, boolean hasVideo) {
+			String customLayout, String resolution, boolean hasAudio, boolean hasVideo, boolean passthrough) {
 		this.name = name;
 		this.outputMode = outputMode;
 		this.recordingLayout = layout;
@@ -157,6 +173,7 @@ public class RecordingProperties {
 		this.resolution = resolution;
 		this.hasAudio = hasAudio;
 		this.hasVideo = hasVideo;
+		this.passthrough = passthrough;
 	}
 
 	/**
@@ -244,4 +261,20 @@ public class RecordingProperties {
 		return this.hasVideo;
 	}
 
+	/**
+	 * Defines whether each stream is stored in the container format of the codecs
+	 * negotiated by its publisher, avoiding transcoding (WEBM for VP8 and Opus, MKV
+	 * for H264 and Opus, MP4 for H264 video-only streams) or always in WEBM.<br>
+	 * Will only have effect if
+	 * {@link io.openvidu.java.client.RecordingProperties.Builder#outputMode(Recording.OutputMode)}
+	 * has been called with value
+	 * {@link io.openvidu.java.client.Recording.OutputMode#INDIVIDUAL}.<br>
+	 * <br>
+	 * 
+	 * Default to false
+	 */
+	public boolean passthrough() {
+		return this.passthrough;
+	}
+
 }
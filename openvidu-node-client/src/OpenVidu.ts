@@ -153,6 +153,8 @@ export class OpenVidu {
             if (data.recordingLayout.toString() === RecordingLayout[RecordingLayout.CUSTOM]) {
               data.customLayout = !!properties.customLayout ? properties.customLayout : '';
             }
+          } else if (data.outputMode.toString() === Recording.OutputMode[Recording.OutputMode.INDIVIDUAL]) {
+            data.passthrough = !!(properties.passthrough);
           }
           data = JSON.stringify(data);
         } else {
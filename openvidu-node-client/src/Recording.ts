@@ -88,6 +88,8 @@ export class Recording {
             if (this.properties.recordingLayout.toString() === RecordingLayout[RecordingLayout.CUSTOM]) {
                 this.properties.customLayout = json['customLayout'];
             }
+        } else {
+            this.properties.passthrough = !!(json['passthrough']);
         }
     }
     /* tslint:enable:no-string-literal */
@@ -66,4 +66,11 @@ export interface RecordingProperties {
      * Whether or not to record video. Cannot be set to false at the same time as [[RecordingProperties.hasAudio]]
      */
     hasVideo?: boolean;
+
+    /**
+     * Whether or not to store each stream in the container format of the codecs negotiated by its publisher, avoiding
+     * transcoding: WEBM for VP8 and Opus, MKV for H264 and Opus and MP4 for H264 video-only streams. Only applies if
+     * [[RecordingProperties.outputMode]] is set to [[Recording.OutputMode.INDIVIDUAL]]
+     */
+    passthrough?: boolean;
 }
\ No newline at end of file
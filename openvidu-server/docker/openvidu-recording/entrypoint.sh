@@ -9,17 +9,59 @@ else
 
 ### Use container as OpenVidu recording module ###
 
+### Get a free display identificator ###
+
+DISPLAY_NUM=99
+DONE="no"
+
+while [ "$DONE" == "no" ]
+do
+  out=$(xdpyinfo -display :$DISPLAY_NUM 2>&1)
+  if [[ "$out" == name* ]] || [[ "$out" == Invalid* ]]
+  then
+     # Command succeeded; or failed with access error;  display exists
+     (( DISPLAY_NUM+=1 ))
+  else
+     # Display doesn't exist
+     DONE="yes"
+  fi
+done
+
+export DISPLAY_NUM
+
+echo "First available display -> :$DISPLAY_NUM"
+echo "----------------------------------------"
+
+pulseaudio -D
+
+RESOLUTION=${RESOLUTION:-1920x1080}
+WIDTH="$(cut -d'x' -f1 <<< $RESOLUTION)"
+HEIGHT="$(cut -d'x' -f2 <<< $RESOLUTION)"
+CHROME_ARGS="--start-maximized --no-sandbox --test-type --disable-infobars --window-size=$WIDTH,$HEIGHT --window-position=0,0 --no-first-run --ignore-certificate-errors --autoplay-policy=no-user-gesture-required --user-data-dir=/tmp/chrome --kiosk"
+
+touch xvfb.log
+chmod 777 xvfb.log
+
+### Warm container: launch Chrome in advance and wait for a recording ###
+
+if [ "$WARM" == true ]; then
+    # Containers run with host network: the DevTools port must be unique per display
+    DEBUG_PORT=$((9222 + DISPLAY_NUM))
+    xvfb-run --server-num=${DISPLAY_NUM} --server-args="-ac -screen 0 ${RESOLUTION}x24 -noreset" google-chrome $CHROME_ARGS --remote-debugging-address=127.0.0.1 --remote-debugging-port=$DEBUG_PORT about:blank &> xvfb.log &
+    echo "Warm recording container waiting for a recording"
+    while [ ! -f /tmp/assignment.env ]; do sleep 0.05; done
+    source /tmp/assignment.env
+fi
+
 ### Variables ###
 
 URL=${URL:-https://www.youtube.com/watch?v=JMuzlEQz3uo}
 ONLY_VIDEO=${ONLY_VIDEO:-false}
-RESOLUTION=${RESOLUTION:-1920x1080}
 FRAMERATE=${FRAMERATE:-25}
-WIDTH="$(cut -d'x' -f1 <<< $RESOLUTION)"
-HEIGHT="$(cut -d'x' -f2 <<< $RESOLUTION)"
 VIDEO_ID=${VIDEO_ID:-video}
 VIDEO_NAME=${VIDEO_NAME:-video}
 VIDEO_FORMAT=${VIDEO_FORMAT:-mp4}
+SEGMENT_DURATION=${SEGMENT_DURATION:-0}
 RECORDING_JSON="${RECORDING_JSON}"
 
 export URL
@@ -31,6 +73,7 @@ export HEIGHT
 export VIDEO_ID
 export VIDEO_NAME
 export VIDEO_FORMAT
+export SEGMENT_DURATION
 export RECORDING_JSON
 
 ### Store Recording json data ###
@@ -39,49 +82,47 @@ mkdir /recordings/$VIDEO_ID
 chmod 777 /recordings/$VIDEO_ID
 echo $RECORDING_JSON > /recordings/$VIDEO_ID/.recording.$VIDEO_ID
 
-### Get a free display identificator ###
-
-DISPLAY_NUM=99
-DONE="no"
-
-while [ "$DONE" == "no" ]
-do
-  out=$(xdpyinfo -display :$DISPLAY_NUM 2>&1)
-  if [[ "$out" == name* ]] || [[ "$out" == Invalid* ]]
-  then
-     # Command succeeded; or failed with access error;  display exists
-     (( DISPLAY_NUM+=1 ))
-  else
-     # Display doesn't exist
-     DONE="yes"
-  fi
-done
-
-export DISPLAY_NUM
-
-echo "First available display -> :$DISPLAY_NUM"
-echo "----------------------------------------"
+### Start Chrome in headless mode with xvfb, using the display num previously obtained ###
 
-pulseaudio -D
+if [ "$WARM" == true ]; then
+    # Open the layout in a new tab of the running Chrome instance through its
+    # DevTools HTTP endpoint and close the about:blank tab, so the kiosk window
+    # shows only the layout. Launching google-chrome again would open a second
+    # window on top of the blank one
+    until BLANK_TABS=$(wget -qO- http://127.0.0.1:$DEBUG_PORT/json/list); do sleep 0.05; done
+    wget -qO- --method=PUT "http://127.0.0.1:$DEBUG_PORT/json/new?$URL" &>> xvfb.log
+    for TAB_ID in $(echo "$BLANK_TABS" | jq -r '.[] | select(.type == "page" and .url == "about:blank") | .id'); do
+        wget -qO- http://127.0.0.1:$DEBUG_PORT/json/close/$TAB_ID &>> xvfb.log
+    done
+    touch stop
+    chmod 777 /recordings
+    sleep 0.5
+else
+    xvfb-run --server-num=${DISPLAY_NUM} --server-args="-ac -screen 0 ${RESOLUTION}x24 -noreset" google-chrome $CHROME_ARGS $URL &> xvfb.log &
+    touch stop
+    chmod 777 /recordings
+    sleep 2
+fi
 
-### Start Chrome in headless mode with xvfb, using the display num previously obtained ###
+### Output files: the final file and, if SEGMENT_DURATION is set, fMP4 segments and an HLS playlist ###
 
-touch xvfb.log
-chmod 777 xvfb.log
-xvfb-run --server-num=${DISPLAY_NUM} --server-args="-ac -screen 0 ${RESOLUTION}x24 -noreset" google-chrome --start-maximized --no-sandbox --test-type --disable-infobars --window-size=$WIDTH,$HEIGHT --window-position=0,0 --no-first-run --ignore-certificate-errors --autoplay-policy=no-user-gesture-required --kiosk $URL &> xvfb.log &
-touch stop
-chmod 777 /recordings
-sleep 2
+OUTPUT=("/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT")
+if [[ "$SEGMENT_DURATION" -gt 0 ]]; then
+    # The playlist is updated with every segment. On stop, ffmpeg closes it with #EXT-X-ENDLIST
+    if [[ "$ONLY_VIDEO" == true ]]; then MAP=(-map 0:v); else MAP=(-map 0:a -map 1:v); fi
+    HLS="hls_time=$SEGMENT_DURATION:hls_playlist_type=event:hls_segment_type=fmp4:hls_fmp4_init_filename=$VIDEO_NAME-init.mp4:hls_segment_filename=/recordings/$VIDEO_ID/$VIDEO_NAME-%05d.m4s"
+    OUTPUT=("${MAP[@]}" -force_key_frames "expr:gte(t,n_forced*$SEGMENT_DURATION)" -flags +global_header -f tee "[f=mp4]/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT|[f=hls:$HLS]/recordings/$VIDEO_ID/$VIDEO_NAME.m3u8")
+fi
 
 ### Start recording with ffmpeg ###
 
 if [[ "$ONLY_VIDEO" == true ]]
   then
      # Do not record audio
-     <./stop ffmpeg -y -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT"
+     <./stop ffmpeg -y -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "${OUTPUT[@]}"
   else
      # Record audio  ("-f alsa -i pulse [...] -c:a aac")
-     <./stop ffmpeg -y -f alsa -i pulse -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:a aac -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT"
+     <./stop ffmpeg -y -f alsa -i pulse -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:a aac -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "${OUTPUT[@]}"
 fi
 
 ### Generate video report file ###
@@ -1,35 +1,5 @@
 #!/bin/bash
 
-### Variables ###
-
-URL=${URL:-https://www.youtube.com/watch?v=JMuzlEQz3uo}
-ONLY_VIDEO=${ONLY_VIDEO:-false}
-RESOLUTION=${RESOLUTION:-1920x1080}
-FRAMERATE=${FRAMERATE:-25}
-WIDTH="$(cut -d'x' -f1 <<< $RESOLUTION)"
-HEIGHT="$(cut -d'x' -f2 <<< $RESOLUTION)"
-VIDEO_ID=${VIDEO_ID:-video}
-VIDEO_NAME=${VIDEO_NAME:-video}
-VIDEO_FORMAT=${VIDEO_FORMAT:-mp4}
-RECORDING_JSON="${RECORDING_JSON}"
-
-export URL
-export ONLY_VIDEO
-export RESOLUTION
-export FRAMERATE
-export WIDTH
-export HEIGHT
-export VIDEO_ID
-export VIDEO_NAME
-export VIDEO_FORMAT
-export RECORDING_JSON
-
-### Store Recording json data ###
-
-mkdir /recordings/$VIDEO_ID
-chmod 777 /recordings/$VIDEO_ID
-echo $RECORDING_JSON > /recordings/$VIDEO_ID/.recording.$VIDEO_ID
-
 ### Get a free display identificator ###
 
 DISPLAY_NUM=99
@@ -55,24 +25,83 @@ echo "----------------------------------------"
 
 pulseaudio -D
 
-### Start Chrome in headless mode with xvfb, using the display num previously obtained ###
+RESOLUTION=${RESOLUTION:-1920x1080}
+WIDTH="$(cut -d'x' -f1 <<< $RESOLUTION)"
+HEIGHT="$(cut -d'x' -f2 <<< $RESOLUTION)"
 
 touch xvfb.log
 chmod 777 xvfb.log
-xvfb-run --server-num=${DISPLAY_NUM} --server-args="-ac -screen 0 ${RESOLUTION}x24 -noreset" firefox --width $WIDTH --height $HEIGHT $URL &> xvfb.log &
+
+### Warm container: start the display in advance and wait for a recording ###
+
+if [ "$WARM" == true ]; then
+    # Firefox cannot replace its only window through the command line, so it is
+    # launched once the recording is assigned on the already running display
+    Xvfb :${DISPLAY_NUM} -ac -screen 0 ${RESOLUTION}x24 -noreset &> xvfb.log &
+    echo "Warm recording container waiting for a recording"
+    while [ ! -f /tmp/assignment.env ]; do sleep 0.05; done
+    source /tmp/assignment.env
+fi
+
+### Variables ###
+
+URL=${URL:-https://www.youtube.com/watch?v=JMuzlEQz3uo}
+ONLY_VIDEO=${ONLY_VIDEO:-false}
+FRAMERATE=${FRAMERATE:-25}
+VIDEO_ID=${VIDEO_ID:-video}
+VIDEO_NAME=${VIDEO_NAME:-video}
+VIDEO_FORMAT=${VIDEO_FORMAT:-mp4}
+SEGMENT_DURATION=${SEGMENT_DURATION:-0}
+RECORDING_JSON="${RECORDING_JSON}"
+
+export URL
+export ONLY_VIDEO
+export RESOLUTION
+export FRAMERATE
+export WIDTH
+export HEIGHT
+export VIDEO_ID
+export VIDEO_NAME
+export VIDEO_FORMAT
+export SEGMENT_DURATION
+export RECORDING_JSON
+
+### Store Recording json data ###
+
+mkdir /recordings/$VIDEO_ID
+chmod 777 /recordings/$VIDEO_ID
+echo $RECORDING_JSON > /recordings/$VIDEO_ID/.recording.$VIDEO_ID
+
+### Start Firefox with xvfb, using the display num previously obtained ###
+
+if [ "$WARM" == true ]; then
+    DISPLAY=:$DISPLAY_NUM firefox --width $WIDTH --height $HEIGHT $URL &>> xvfb.log &
+else
+    xvfb-run --server-num=${DISPLAY_NUM} --server-args="-ac -screen 0 ${RESOLUTION}x24 -noreset" firefox --width $WIDTH --height $HEIGHT $URL &> xvfb.log &
+fi
 touch stop
 chmod 777 /recordings
 sleep 5
 
+### Output files: the final file and, if SEGMENT_DURATION is set, fMP4 segments and an HLS playlist ###
+
+OUTPUT=("/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT")
+if [[ "$SEGMENT_DURATION" -gt 0 ]]; then
+    # The playlist is updated with every segment. On stop, ffmpeg closes it with #EXT-X-ENDLIST
+    if [[ "$ONLY_VIDEO" == true ]]; then MAP=(-map 0:v); else MAP=(-map 0:a -map 1:v); fi
+    HLS="hls_time=$SEGMENT_DURATION:hls_playlist_type=event:hls_segment_type=fmp4:hls_fmp4_init_filename=$VIDEO_NAME-init.mp4:hls_segment_filename=/recordings/$VIDEO_ID/$VIDEO_NAME-%05d.m4s"
+    OUTPUT=("${MAP[@]}" -force_key_frames "expr:gte(t,n_forced*$SEGMENT_DURATION)" -flags +global_header -f tee "[f=mp4]/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT|[f=hls:$HLS]/recordings/$VIDEO_ID/$VIDEO_NAME.m3u8")
+fi
+
 ### Start recording with ffmpeg ###
 
 if [[ "$ONLY_VIDEO" == true ]]
   then
      # Do not record audio
-     <./stop ffmpeg -y -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT"
+     <./stop ffmpeg -y -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "${OUTPUT[@]}"
   else
      # Record audio  ("-f alsa -i pulse [...] -c:a aac")
-     <./stop ffmpeg -y -f alsa -i pulse -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:a aac -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "/recordings/$VIDEO_ID/$VIDEO_NAME.$VIDEO_FORMAT"
+     <./stop ffmpeg -y -f alsa -i pulse -f x11grab -draw_mouse 0 -framerate $FRAMERATE -video_size $RESOLUTION -i :$DISPLAY_NUM -c:a aac -c:v libx264 -preset ultrafast -crf 28 -refs 4 -qmin 4 -pix_fmt yuv420p -filter:v fps=$FRAMERATE "${OUTPUT[@]}"
 fi
 
 ### Generate video report file ###
@@ -29,12 +29,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.event.EventListener;
 
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import io.openvidu.server.cdr.CDRLogger;
 import io.openvidu.server.cdr.CDRLoggerFile;
 import io.openvidu.server.cdr.CallDetailRecord;
@@ -46,18 +51,34 @@ import io.openvidu.server.core.TokenGenerator;
 import io.openvidu.server.core.TokenGeneratorDefault;
 import io.openvidu.server.coturn.CoturnCredentialsService;
 import io.openvidu.server.coturn.CoturnCredentialsServiceFactory;
+import io.openvidu.server.kurento.core.ActiveSpeakerDetector;
+import io.openvidu.server.kurento.core.IceCandidateBatcher;
 import io.openvidu.server.kurento.core.KurentoParticipantEndpointConfig;
 import io.openvidu.server.kurento.core.KurentoSessionEventsHandler;
 import io.openvidu.server.kurento.core.KurentoSessionManager;
+import io.openvidu.server.kurento.core.PipelineLingerPool;
+import io.openvidu.server.kurento.core.SubscriberEndpointReclaimer;
+import io.openvidu.server.kurento.endpoint.QualityTierSelector;
+import io.openvidu.server.kurento.endpoint.WebrtcStatsSampler;
 import io.openvidu.server.kurento.kms.DummyLoadManager;
 import io.openvidu.server.kurento.kms.FixedOneKmsManager;
 import io.openvidu.server.kurento.kms.KmsManager;
+import io.openvidu.server.kurento.kms.KmsRebalancer;
 import io.openvidu.server.kurento.kms.LoadManager;
+import io.openvidu.server.kurento.kms.MultipleKmsManager;
+import io.openvidu.server.kurento.kms.ParticipantsLoadManager;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.recording.DummyRecordingDownloader;
+import io.openvidu.server.recording.MediaProfileSelector;
 import io.openvidu.server.recording.RecordingDownloader;
+import io.openvidu.server.recording.RecordingJournal;
+import io.openvidu.server.recording.S3RecordingUploader;
 import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.recording.service.RecordingMixer;
+import io.openvidu.server.recording.service.RecordingRetentionSweeper;
 import io.openvidu.server.rpc.RpcHandler;
 import io.openvidu.server.rpc.RpcNotificationService;
+import io.openvidu.server.utils.BlockingTaskExecutor;
 import io.openvidu.server.utils.CommandExecutor;
 import io.openvidu.server.utils.GeoLocationByIp;
 import io.openvidu.server.utils.GeoLocationByIpDummy;
@@ -90,6 +111,11 @@ public class OpenViduServer implements JsonRpcConfigurer {
 		if (openviduConfig.getKmsUris().isEmpty()) {
 			throw new IllegalArgumentException("'kms.uris' should contain at least one KMS url");
 		}
+		if (openviduConfig.getKmsUris().size() > 1) {
+			log.info("OpenVidu Server using {} KMS: {}", openviduConfig.getKmsUris().size(),
+					openviduConfig.getKmsUris());
+			return new MultipleKmsManager();
+		}
 		String firstKmsWsUri = openviduConfig.getKmsUris().get(0);
 		log.info("OpenVidu Server using one KMS: {}", firstKmsWsUri);
 		return new FixedOneKmsManager();
@@ -98,7 +124,7 @@ public class OpenViduServer implements JsonRpcConfigurer {
 	@Bean
 	@ConditionalOnMissingBean
 	@DependsOn("openviduConfig")
-	public CallDetailRecord cdr(OpenviduConfig openviduConfig) {
+	public CallDetailRecord cdr(OpenviduConfig openviduConfig, MetricsManager metricsManager) {
 		List<CDRLogger> loggers = new ArrayList<>();
 		if (openviduConfig.isCdrEnabled()) {
 			log.info("OpenVidu CDR service is enabled");
@@ -108,7 +134,7 @@ public class OpenViduServer implements JsonRpcConfigurer {
 		}
 		if (openviduConfig.isWebhookEnabled()) {
 			log.info("OpenVidu Webhook service is enabled");
-			loggers.add(new CDRLoggerWebhook(openviduConfig));
+			loggers.add(new CDRLoggerWebhook(openviduConfig, metricsManager));
 		} else {
 			log.info("OpenVidu Webhook service is disabled");
 		}
@@ -159,7 +185,11 @@ public class OpenViduServer implements JsonRpcConfigurer {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public LoadManager loadManager() {
+	@DependsOn("openviduConfig")
+	public LoadManager loadManager(OpenviduConfig openviduConfig) {
+		if (openviduConfig.getKmsUris().size() > 1) {
+			return new ParticipantsLoadManager();
+		}
 		return new DummyLoadManager();
 	}
 
@@ -177,7 +207,125 @@ public class OpenViduServer implements JsonRpcConfigurer {
 
 	@Bean
 	@ConditionalOnMissingBean
-	public RecordingDownloader recordingDownload() {
+	public PrometheusMeterRegistry prometheusMeterRegistry() {
+		return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public MetricsManager metricsManager() {
+		return new MetricsManager();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public IceCandidateBatcher iceCandidateBatcher() {
+		return new IceCandidateBatcher();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public WebrtcStatsSampler webrtcStatsSampler() {
+		return new WebrtcStatsSampler();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public QualityTierSelector qualityTierSelector() {
+		return new QualityTierSelector();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public KmsRebalancer kmsRebalancer() {
+		return new KmsRebalancer();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public SubscriberEndpointReclaimer subscriberEndpointReclaimer() {
+		return new SubscriberEndpointReclaimer();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public PipelineLingerPool pipelineLingerPool() {
+		return new PipelineLingerPool();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public ActiveSpeakerDetector activeSpeakerDetector() {
+		return new ActiveSpeakerDetector();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public BlockingTaskExecutor blockingTaskExecutor(OpenviduConfig openviduConfig) {
+		return new BlockingTaskExecutor(openviduConfig.isOpenviduVirtualThreads());
+	}
+
+	/**
+	 * HTTP and WebSocket requests are served by the threads of
+	 * {@link BlockingTaskExecutor} instead of by Tomcat's own pool, so they run in
+	 * virtual threads if enabled. No more than "server.tomcat.max-threads"
+	 * requests are processed at the same time, as with Tomcat's pool
+	 */
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> tomcatExecutorCustomizer(
+			BlockingTaskExecutor blockingTaskExecutor, ServerProperties serverProperties) {
+		return factory -> {
+			if (blockingTaskExecutor.isVirtualThreads()) {
+				int maxThreads = serverProperties.getTomcat().getMaxThreads();
+				factory.addConnectorCustomizers(connector -> connector.getProtocolHandler()
+						.setExecutor(blockingTaskExecutor.newBoundedExecutor(maxThreads)));
+			}
+		};
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public RecordingJournal recordingJournal() {
+		return new RecordingJournal();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public RecordingMixer recordingMixer() {
+		return new RecordingMixer();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public MediaProfileSelector mediaProfileSelector() {
+		return new MediaProfileSelector();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public RecordingRetentionSweeper recordingRetentionSweeper() {
+		return new RecordingRetentionSweeper();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@DependsOn("openviduConfig")
+	public RecordingDownloader recordingDownload(OpenviduConfig openviduConfig) {
+		if (openviduConfig.isRecordingModuleEnabled() && openviduConfig.isRecordingS3Enabled()) {
+			return new S3RecordingUploader();
+		}
 		return new DummyRecordingDownloader();
 	}
 
@@ -206,6 +354,8 @@ public class OpenViduServer implements JsonRpcConfigurer {
 	}
 
 	public static String getContainerIp() throws IOException, InterruptedException {
+		// Only run once on startup. InetAddress.getLocalHost() does not return the
+		// same address: it may be a loopback one and lists IPv4 addresses first
 		return CommandExecutor.execCommand("/bin/sh", "-c", "hostname -i | awk '{print $1}'");
 	}
 
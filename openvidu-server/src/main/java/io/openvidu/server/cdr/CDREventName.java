@@ -21,6 +21,6 @@ public enum CDREventName {
 
 	sessionCreated, sessionDestroyed, participantJoined, participantLeft, webrtcConnectionCreated,
 	webrtcConnectionDestroyed, recordingStarted, recordingStopped, recordingStatusChanged, filterEventDispatched,
-	mediaNodeStatusChanged
+	mediaNodeStatusChanged, webrtcStatsAlert, recordingMixingStatusChanged
 
 }
@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.cdr;
+
+import com.google.gson.JsonObject;
+
+import io.openvidu.server.recording.MixingJob;
+
+public class CDREventRecordingMixing extends CDREvent {
+
+	private MixingJob job;
+
+	public CDREventRecordingMixing(MixingJob job, Long timestamp) {
+		super(CDREventName.recordingMixingStatusChanged, job.getSessionId(), timestamp);
+		this.job = job;
+	}
+
+	@Override
+	public JsonObject toJson() {
+		JsonObject json = super.toJson();
+		json.addProperty("id", this.job.getRecordingId());
+		json.addProperty("priority", this.job.getPriority());
+		json.addProperty("status", this.job.getStatus().name());
+		if (this.job.getStatus().equals(MixingJob.Status.ready)) {
+			json.addProperty("url", this.job.getUrl());
+			json.addProperty("duration", this.job.getDuration());
+		} else if (this.job.getStatus().equals(MixingJob.Status.failed) && this.job.getReason() != null) {
+			json.addProperty("reason", this.job.getReason());
+		}
+		return json;
+	}
+
+}
@@ -26,11 +26,19 @@ import io.openvidu.server.recording.Recording;
 
 public class CDREventRecordingStatus extends CDREventEnd {
 
+	// Not a status of the recordings of the REST API: only reported by this event
+	public static final String DELETED_STATUS = "deleted";
+
 	private Recording recording;
-	private Status status;
+	private String status;
 
 	public CDREventRecordingStatus(Recording recording, Long startTime, EndReason reason, Long timestamp,
 			Status status) {
+		this(recording, startTime, reason, timestamp, status.name());
+	}
+
+	public CDREventRecordingStatus(Recording recording, Long startTime, EndReason reason, Long timestamp,
+			String status) {
 		super(CDREventName.recordingStatusChanged, recording.getSessionId(), startTime, reason, timestamp);
 		this.recording = recording;
 		this.status = status;
@@ -55,7 +63,7 @@ public class CDREventRecordingStatus extends CDREventEnd {
 		json.addProperty("hasVideo", this.recording.hasVideo());
 		json.addProperty("size", this.recording.getSize());
 		json.addProperty("duration", this.recording.getDuration());
-		json.addProperty("status", this.status.name());
+		json.addProperty("status", this.status);
 		return json;
 	}
 
@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.cdr;
+
+import com.google.gson.JsonObject;
+
+public class CDREventWebrtcStatsAlert extends CDREvent {
+
+	private String participantId;
+	private String streamId;
+	private String receivingFrom;
+	private String metric;
+	private double value;
+	private int threshold;
+
+	public CDREventWebrtcStatsAlert(String sessionId, String participantId, String streamId, String receivingFrom,
+			String metric, double value, int threshold, Long timestamp) {
+		super(CDREventName.webrtcStatsAlert, sessionId, timestamp);
+		this.participantId = participantId;
+		this.streamId = streamId;
+		this.receivingFrom = receivingFrom;
+		this.metric = metric;
+		this.value = value;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public JsonObject toJson() {
+		JsonObject json = super.toJson();
+		json.addProperty("participantId", this.participantId);
+		json.addProperty("streamId", this.streamId);
+		if (this.receivingFrom != null) {
+			json.addProperty("connection", "INBOUND");
+			json.addProperty("receivingFrom", this.receivingFrom);
+		} else {
+			json.addProperty("connection", "OUTBOUND");
+		}
+		json.addProperty("metric", this.metric);
+		json.addProperty("value", this.value);
+		json.addProperty("threshold", this.threshold);
+		return json;
+	}
+
+}
@@ -34,6 +34,7 @@ import io.openvidu.server.core.Participant;
 import io.openvidu.server.core.Session;
 import io.openvidu.server.core.SessionManager;
 import io.openvidu.server.kurento.endpoint.KmsEvent;
+import io.openvidu.server.recording.MixingJob;
 import io.openvidu.server.recording.Recording;
 import io.openvidu.server.recording.service.RecordingManager;
 import io.openvidu.server.summary.SessionSummary;
@@ -53,6 +54,8 @@ import io.openvidu.server.webhook.CDRLoggerWebhook;
  * - 'recordingStopped'				{sessionId, timestamp, id, name, hasAudio, hasVideo, resolution, recordingLayout, size}
  * - 'recordingStatusChanged'		{sessionId, timestamp, id, name, hasAudio, hasVideo, resolution, recordingLayout, size, status}
  * - 'filterEventDispatched'		{sessionId, timestamp, participantId, streamId, filterType, eventType, data}
+ * - 'webrtcStatsAlert'				{sessionId, timestamp, participantId, streamId, connection, [receivingFrom], metric, value, threshold}
+ * - 'recordingMixingStatusChanged'	{sessionId, timestamp, id, priority, status, [url], [duration]}
  * 
  * PROPERTIES VALUES:
  * 
@@ -76,16 +79,24 @@ import io.openvidu.server.webhook.CDRLoggerWebhook;
  * - recordingLayout:	string
  * - size: 				number
  * - status:            string
+ * - metric:			"packetLoss", "jitter", "rtt"
+ * - value:				number
+ * - threshold:			number
+ * - priority:			number
+ * - url:				string
  * - webrtcConnectionDestroyed.reason: 	"unsubscribe", "unpublish", "disconnect", "networkDisconnect", "mediaServerDisconnect", "openviduServerStopped"
  * - participantLeft.reason: 			"unsubscribe", "unpublish", "disconnect", "networkDisconnect", "mediaServerDisconnect", "openviduServerStopped"
  * - sessionDestroyed.reason: 			"lastParticipantLeft", "mediaServerDisconnect", "openviduServerStopped"
  * - recordingStopped.reason:			"recordingStoppedByServer", "lastParticipantLeft", "sessionClosedByServer", "automaticStop", "mediaServerDisconnect", "openviduServerStopped"
+ * - recordingStatusChanged.reason:	same as recordingStopped.reason, or "recordingExpired" when removed by a retention policy
+ * - recordingStatusChanged.status:	"started", "stopped", "ready", "failed", or "deleted" when removed by a retention policy
  * 
  * [OPTIONAL_PROPERTIES]:
  * - receivingFrom:		only if connection = "INBOUND"
  * - videoSource:		only if videoEnabled = true
  * - videoFramerate: 	only if videoEnabled = true
  * - videoDimensions: 	only if videoEnabled = true
+ * - url, duration:		only if recordingMixingStatusChanged.status = "ready"
  * 
  * @author Pablo Fuente (pablofuenteperez@gmail.com)
  */
@@ -217,11 +228,30 @@ public class CallDetailRecord {
 		this.log(new CDREventRecordingStatus(recording, recording.getCreatedAt(), finalReason, timestamp, status));
 	}
 
+	/**
+	 * The recording is no longer available in this host: it has been deleted or
+	 * moved out of it by a retention policy
+	 */
+	public void recordRecordingDeleted(Recording recording, EndReason reason, long timestamp) {
+		this.log(new CDREventRecordingStatus(recording, recording.getCreatedAt(), reason, timestamp,
+				CDREventRecordingStatus.DELETED_STATUS));
+	}
+
+	public void recordRecordingMixingStatusChanged(MixingJob job) {
+		this.log(new CDREventRecordingMixing(job, System.currentTimeMillis()));
+	}
+
 	public void recordFilterEventDispatched(String sessionId, String participantId, String streamId, String filterType,
 			GenericMediaEvent event) {
 		this.log(new CDREventFilterEvent(sessionId, participantId, streamId, filterType, event));
 	}
 
+	public void recordWebrtcStatsAlert(String sessionId, String participantId, String streamId, String receivingFrom,
+			String metric, double value, int threshold) {
+		this.log(new CDREventWebrtcStatsAlert(sessionId, participantId, streamId, receivingFrom, metric, value,
+				threshold, System.currentTimeMillis()));
+	}
+
 	protected void log(CDREvent event) {
 		this.loggers.forEach(logger -> {
 
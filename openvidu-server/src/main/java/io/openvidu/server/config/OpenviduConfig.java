@@ -66,28 +66,52 @@ import com.google.gson.JsonParser;
 import io.openvidu.java.client.OpenViduRole;
 import io.openvidu.server.OpenViduServer;
 import io.openvidu.server.cdr.CDREventName;
+import io.openvidu.server.kurento.core.SubscriptionPolicy;
+import io.openvidu.server.kurento.endpoint.QualityTier;
 import io.openvidu.server.recording.RecordingNotification;
+import io.openvidu.server.recording.RecordingRetentionPolicy;
 
 @Component
 public class OpenviduConfig {
 
 	private static final Logger log = LoggerFactory.getLogger(OpenviduConfig.class);
 
-	public static final Set<String> OPENVIDU_STRING_PROPERTIES = new HashSet<>(Arrays.asList("openvidu.secret",
-			"openvidu.publicurl", "openvidu.recording.path", "openvidu.recording.notification",
-			"openvidu.recording.custom-layout", "openvidu.recording.composed-url", "openvidu.recording.version",
-			"openvidu.webhook.endpoint", "openvidu.cdr.path", "coturn.ip", "coturn.redis.ip"));
+	public static final Set<String> OPENVIDU_STRING_PROPERTIES = new HashSet<>(
+			Arrays.asList("openvidu.secret", "openvidu.publicurl", "openvidu.recording.path",
+					"openvidu.recording.notification", "openvidu.recording.custom-layout",
+					"openvidu.recording.composed-url", "openvidu.recording.version", "openvidu.webhook.endpoint",
+					"openvidu.cdr.path", "coturn.ip", "coturn.redis.ip", "openvidu.recording.composed-pool-resolution",
+					"openvidu.streams.subscription-policy", "openvidu.recording.s3.endpoint",
+					"openvidu.recording.s3.region", "openvidu.recording.s3.bucket", "openvidu.recording.s3.access-key",
+					"openvidu.recording.s3.secret-key", "openvidu.recording.retention.cold-path"));
 
 	public static final Set<String> OPENVIDU_INTEGER_PROPERTIES = new HashSet<>(
 			Arrays.asList("openvidu.recording.autostop-timeout", "openvidu.streams.video.max-recv-bandwidth",
 					"openvidu.streams.video.min-recv-bandwidth", "openvidu.streams.video.max-send-bandwidth",
-					"openvidu.streams.video.min-send-bandwidth"));
-
-	public static final Set<String> OPENVIDU_BOOLEAN_PROPERTIES = new HashSet<>(Arrays.asList("openvidu.cdr",
-			"openvidu.recording", "openvidu.recording.public-access", "openvidu.webhook"));
+					"openvidu.streams.video.min-send-bandwidth", "openvidu.streams.stats.interval",
+					"openvidu.streams.stats.samples", "openvidu.streams.stats.alert.packet-loss",
+					"openvidu.streams.stats.alert.jitter", "openvidu.streams.stats.alert.rtt", "kms.connection.timeout",
+					"kms.connection.retry.max-interval", "kms.rebalance.interval", "kms.rebalance.threshold",
+					"openvidu.signal.rate.connection", "openvidu.signal.rate.session",
+					"openvidu.recording.composed-pool-size", "openvidu.recording.composed-max-containers",
+					"openvidu.log.rpc-sample-rate", "openvidu.streams.subscription-cap",
+					"openvidu.streams.subscription-idle-timeout", "openvidu.streams.active-speaker.interval",
+					"openvidu.streams.last-n", "openvidu.sessions.pipeline-linger",
+					"openvidu.recording.download-max-concurrent", "openvidu.recording.download-max-bandwidth",
+					"openvidu.recording.s3.part-size", "openvidu.recording.s3.concurrency",
+					"openvidu.recording.segment-duration", "openvidu.recording.mixing.max-concurrent",
+					"openvidu.recording.mixing.max-queued", "openvidu.recording.retention.max-age",
+					"openvidu.recording.retention.max-size", "openvidu.recording.retention.keep-last",
+					"openvidu.recording.retention.sweep-interval", "openvidu.recording.recorder-max-in-flight",
+					"openvidu.streams.ice-candidates-batch-window"));
+
+	public static final Set<String> OPENVIDU_BOOLEAN_PROPERTIES = new HashSet<>(
+			Arrays.asList("openvidu.cdr", "openvidu.recording", "openvidu.recording.public-access", "openvidu.webhook",
+					"openvidu.log.structured", "openvidu.virtual-threads", "openvidu.recording.s3.delete-local"));
 
 	public static final Set<String> OPENVIDU_ARRAY_PROPERTIES = new HashSet<>(
-			Arrays.asList("kms.uris", "openvidu.webhook.headers", "openvidu.webhook.events"));
+			Arrays.asList("kms.uris", "openvidu.webhook.headers", "openvidu.webhook.events",
+					"openvidu.streams.quality-tiers", "openvidu.recording.retention.sessions"));
 
 	public static final Set<String> OPENVIDU_PROPERTIES = Stream.of(OPENVIDU_STRING_PROPERTIES,
 			OPENVIDU_INTEGER_PROPERTIES, OPENVIDU_BOOLEAN_PROPERTIES, OPENVIDU_ARRAY_PROPERTIES)
@@ -168,6 +192,141 @@ public class OpenviduConfig {
 	@Value("${openvidu.streams.video.min-send-bandwidth}")
 	protected int openviduStreamsVideoMinSendBandwidth;
 
+	@Value("${openvidu.streams.stats.interval}")
+	protected int openviduStreamsStatsInterval;
+
+	@Value("${openvidu.streams.stats.samples}")
+	protected int openviduStreamsStatsSamples;
+
+	@Value("${openvidu.streams.stats.alert.packet-loss}")
+	protected int openviduStreamsStatsAlertPacketLoss;
+
+	@Value("${openvidu.streams.stats.alert.jitter}")
+	protected int openviduStreamsStatsAlertJitter;
+
+	@Value("${openvidu.streams.stats.alert.rtt}")
+	protected int openviduStreamsStatsAlertRtt;
+
+	@Value("${kms.connection.timeout}")
+	protected int kmsConnectionTimeout;
+
+	@Value("${kms.connection.retry.max-interval}")
+	protected int kmsConnectionRetryMaxInterval;
+
+	@Value("${kms.rebalance.interval}")
+	protected int kmsRebalanceInterval;
+
+	@Value("${kms.rebalance.threshold}")
+	protected int kmsRebalanceThreshold;
+
+	@Value("${openvidu.signal.rate.connection}")
+	protected int openviduSignalRateConnection;
+
+	@Value("${openvidu.signal.rate.session}")
+	protected int openviduSignalRateSession;
+
+	@Value("${openvidu.recording.composed-pool-size}")
+	protected int openviduRecordingComposedPoolSize;
+
+	@Value("${openvidu.recording.composed-pool-resolution}")
+	protected String openviduRecordingComposedPoolResolution;
+
+	@Value("${openvidu.recording.composed-max-containers}")
+	protected int openviduRecordingComposedMaxContainers;
+
+	@Value("${openvidu.log.structured}")
+	protected boolean openviduLogStructured;
+
+	@Value("${openvidu.log.rpc-sample-rate}")
+	protected int openviduLogRpcSampleRate;
+
+	@Value("${openvidu.virtual-threads}")
+	protected boolean openviduVirtualThreads;
+
+	@Value("${openvidu.streams.quality-tiers}")
+	protected String openviduStreamsQualityTiers;
+
+	@Value("${openvidu.streams.subscription-policy}")
+	protected SubscriptionPolicy openviduStreamsSubscriptionPolicy;
+
+	@Value("${openvidu.streams.subscription-cap}")
+	protected int openviduStreamsSubscriptionCap;
+
+	@Value("${openvidu.streams.subscription-idle-timeout}")
+	protected int openviduStreamsSubscriptionIdleTimeout;
+
+	@Value("${openvidu.streams.active-speaker.interval}")
+	protected int openviduStreamsActiveSpeakerInterval;
+
+	@Value("${openvidu.streams.last-n}")
+	protected int openviduStreamsLastN;
+
+	@Value("${openvidu.sessions.pipeline-linger}")
+	protected int openviduSessionsPipelineLinger;
+
+	@Value("${openvidu.recording.download-max-concurrent}")
+	protected int openviduRecordingDownloadMaxConcurrent;
+
+	@Value("${openvidu.recording.download-max-bandwidth}")
+	protected int openviduRecordingDownloadMaxBandwidth;
+
+	@Value("${openvidu.recording.s3.endpoint}")
+	protected String openviduRecordingS3Endpoint;
+
+	@Value("${openvidu.recording.s3.region}")
+	protected String openviduRecordingS3Region;
+
+	@Value("${openvidu.recording.s3.bucket}")
+	protected String openviduRecordingS3Bucket;
+
+	@Value("${openvidu.recording.s3.access-key}")
+	protected String openviduRecordingS3AccessKey;
+
+	@Value("${openvidu.recording.s3.secret-key}")
+	protected String openviduRecordingS3SecretKey;
+
+	@Value("${openvidu.recording.s3.part-size}")
+	protected int openviduRecordingS3PartSize;
+
+	@Value("${openvidu.recording.s3.concurrency}")
+	protected int openviduRecordingS3Concurrency;
+
+	@Value("${openvidu.recording.s3.delete-local}")
+	protected boolean openviduRecordingS3DeleteLocal;
+
+	@Value("${openvidu.recording.segment-duration}")
+	protected int openviduRecordingSegmentDuration;
+
+	@Value("${openvidu.recording.mixing.max-concurrent}")
+	protected int openviduRecordingMixingMaxConcurrent;
+
+	@Value("${openvidu.recording.mixing.max-queued}")
+	protected int openviduRecordingMixingMaxQueued;
+
+	@Value("${openvidu.recording.retention.max-age}")
+	protected int openviduRecordingRetentionMaxAge;
+
+	@Value("${openvidu.recording.retention.max-size}")
+	protected int openviduRecordingRetentionMaxSize;
+
+	@Value("${openvidu.recording.retention.keep-last}")
+	protected int openviduRecordingRetentionKeepLast;
+
+	@Value("${openvidu.recording.retention.sessions}")
+	protected String openviduRecordingRetentionSessions;
+
+	@Value("${openvidu.recording.retention.cold-path}")
+	protected String openviduRecordingRetentionColdPath;
+
+	@Value("${openvidu.recording.retention.sweep-interval}")
+	protected int openviduRecordingRetentionSweepInterval;
+
+	@Value("${openvidu.recording.recorder-max-in-flight}")
+	protected int openviduRecordingRecorderMaxInFlight;
+
+	@Value("${openvidu.streams.ice-candidates-batch-window}")
+	protected int openviduStreamsIceCandidatesBatchWindow;
+
 	@Value("${coturn.redis.ip}")
 	protected String coturnRedisIp;
 
@@ -188,6 +347,8 @@ public class OpenviduConfig {
 
 	public static String finalUrl;
 	public static List<String> kmsUrisList = new ArrayList<>();
+	public static List<QualityTier> qualityTiersList = new ArrayList<>();
+	public static List<RecordingRetentionPolicy> retentionPoliciesList = new ArrayList<>();
 	public static List<Header> webhookHeadersList = new ArrayList<>();
 	public static List<CDREventName> webhookEventsList = new ArrayList<>();
 	public static Properties externalizedProperties;
@@ -287,6 +448,190 @@ public class OpenviduConfig {
 		return this.openviduStreamsVideoMinSendBandwidth;
 	}
 
+	public int getStreamsStatsInterval() {
+		return this.openviduStreamsStatsInterval;
+	}
+
+	public int getStreamsStatsSamples() {
+		return this.openviduStreamsStatsSamples;
+	}
+
+	public int getStreamsStatsAlertPacketLoss() {
+		return this.openviduStreamsStatsAlertPacketLoss;
+	}
+
+	public int getStreamsStatsAlertJitter() {
+		return this.openviduStreamsStatsAlertJitter;
+	}
+
+	public int getStreamsStatsAlertRtt() {
+		return this.openviduStreamsStatsAlertRtt;
+	}
+
+	public int getKmsConnectionTimeout() {
+		return this.kmsConnectionTimeout;
+	}
+
+	public int getKmsConnectionRetryMaxInterval() {
+		return this.kmsConnectionRetryMaxInterval;
+	}
+
+	public int getKmsRebalanceInterval() {
+		return this.kmsRebalanceInterval;
+	}
+
+	public int getKmsRebalanceThreshold() {
+		return this.kmsRebalanceThreshold;
+	}
+
+	public int getOpenviduSignalRateConnection() {
+		return this.openviduSignalRateConnection;
+	}
+
+	public int getOpenviduSignalRateSession() {
+		return this.openviduSignalRateSession;
+	}
+
+	public int getOpenviduRecordingComposedPoolSize() {
+		return this.openviduRecordingComposedPoolSize;
+	}
+
+	public String getOpenviduRecordingComposedPoolResolution() {
+		return this.openviduRecordingComposedPoolResolution;
+	}
+
+	public int getOpenviduRecordingComposedMaxContainers() {
+		return this.openviduRecordingComposedMaxContainers;
+	}
+
+	public boolean isOpenviduLogStructured() {
+		return this.openviduLogStructured;
+	}
+
+	public int getOpenviduLogRpcSampleRate() {
+		return this.openviduLogRpcSampleRate;
+	}
+
+	public boolean isOpenviduVirtualThreads() {
+		return this.openviduVirtualThreads;
+	}
+
+	public List<QualityTier> getStreamsQualityTiers() {
+		return qualityTiersList;
+	}
+
+	public SubscriptionPolicy getStreamsSubscriptionPolicy() {
+		return this.openviduStreamsSubscriptionPolicy;
+	}
+
+	public int getStreamsSubscriptionCap() {
+		return this.openviduStreamsSubscriptionCap;
+	}
+
+	public int getStreamsSubscriptionIdleTimeout() {
+		return this.openviduStreamsSubscriptionIdleTimeout;
+	}
+
+	public int getStreamsActiveSpeakerInterval() {
+		return this.openviduStreamsActiveSpeakerInterval;
+	}
+
+	public int getStreamsLastN() {
+		return this.openviduStreamsLastN;
+	}
+
+	public int getSessionsPipelineLinger() {
+		return this.openviduSessionsPipelineLinger;
+	}
+
+	public int getOpenviduRecordingDownloadMaxConcurrent() {
+		return this.openviduRecordingDownloadMaxConcurrent;
+	}
+
+	public int getOpenviduRecordingDownloadMaxBandwidth() {
+		return this.openviduRecordingDownloadMaxBandwidth;
+	}
+
+	public String getOpenviduRecordingS3Endpoint() {
+		return this.openviduRecordingS3Endpoint;
+	}
+
+	public String getOpenviduRecordingS3Region() {
+		return this.openviduRecordingS3Region;
+	}
+
+	public String getOpenviduRecordingS3Bucket() {
+		return this.openviduRecordingS3Bucket;
+	}
+
+	public String getOpenviduRecordingS3AccessKey() {
+		return this.openviduRecordingS3AccessKey;
+	}
+
+	public String getOpenviduRecordingS3SecretKey() {
+		return this.openviduRecordingS3SecretKey;
+	}
+
+	public int getOpenviduRecordingS3PartSize() {
+		return this.openviduRecordingS3PartSize;
+	}
+
+	public int getOpenviduRecordingS3Concurrency() {
+		return this.openviduRecordingS3Concurrency;
+	}
+
+	public boolean isOpenviduRecordingS3DeleteLocal() {
+		return this.openviduRecordingS3DeleteLocal;
+	}
+
+	public boolean isRecordingS3Enabled() {
+		return this.openviduRecordingS3Endpoint != null && !this.openviduRecordingS3Endpoint.isEmpty();
+	}
+
+	public int getOpenviduRecordingSegmentDuration() {
+		return this.openviduRecordingSegmentDuration;
+	}
+
+	public int getOpenviduRecordingMixingMaxConcurrent() {
+		return this.openviduRecordingMixingMaxConcurrent;
+	}
+
+	public int getOpenviduRecordingMixingMaxQueued() {
+		return this.openviduRecordingMixingMaxQueued;
+	}
+
+	public int getOpenviduRecordingRetentionMaxAge() {
+		return this.openviduRecordingRetentionMaxAge;
+	}
+
+	public int getOpenviduRecordingRetentionMaxSize() {
+		return this.openviduRecordingRetentionMaxSize;
+	}
+
+	public int getOpenviduRecordingRetentionKeepLast() {
+		return this.openviduRecordingRetentionKeepLast;
+	}
+
+	public List<RecordingRetentionPolicy> getOpenviduRecordingRetentionSessions() {
+		return retentionPoliciesList;
+	}
+
+	public String getOpenviduRecordingRetentionColdPath() {
+		return this.openviduRecordingRetentionColdPath;
+	}
+
+	public int getOpenviduRecordingRetentionSweepInterval() {
+		return this.openviduRecordingRetentionSweepInterval;
+	}
+
+	public int getOpenviduRecordingRecorderMaxInFlight() {
+		return this.openviduRecordingRecorderMaxInFlight;
+	}
+
+	public int getStreamsIceCandidatesBatchWindow() {
+		return this.openviduStreamsIceCandidatesBatchWindow;
+	}
+
 	public String getCoturnIp() {
 		return this.coturnIp;
 	}
@@ -486,6 +831,197 @@ public class OpenviduConfig {
 			case "openvidu.streams.video.min-send-bandwidth":
 				checkIntegerNonNegative(parameters, parameter, admitStringified);
 				break;
+			case "openvidu.streams.stats.interval":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.stats.samples":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.stats.alert.packet-loss":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.stats.alert.jitter":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.stats.alert.rtt":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "kms.connection.timeout":
+				Integer kmsConnectionTimeout = checkIntegerNonNegative(parameters, parameter, admitStringified);
+				if (kmsConnectionTimeout < 1) {
+					throw new Exception("Property 'kms.connection.timeout' cannot be less than 1 (seconds)");
+				}
+				break;
+			case "kms.connection.retry.max-interval":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "kms.rebalance.interval":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "kms.rebalance.threshold":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.signal.rate.connection":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.signal.rate.session":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.composed-pool-size":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.composed-pool-resolution":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.composed-max-containers":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.log.structured":
+				checkBoolean(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.log.rpc-sample-rate":
+				Integer rpcSampleRate = checkIntegerNonNegative(parameters, parameter, admitStringified);
+				if (rpcSampleRate < 1) {
+					throw new Exception("Property 'openvidu.log.rpc-sample-rate' cannot be less than 1");
+				}
+				break;
+			case "openvidu.virtual-threads":
+				checkBoolean(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.quality-tiers":
+				String qualityTiers;
+				try {
+					// First check if castable to a List
+					List<String> list = checkStringArray(parameters, parameter, admitStringified);
+					qualityTiers = listToQuotedStringifiedArray(list);
+				} catch (Exception e) {
+					// If it is not a list, try casting to String
+					qualityTiers = checkString(parameters, parameter);
+				}
+				try {
+					qualityTiersStringToList(qualityTiers);
+				} catch (Exception e) {
+					throw new Exception(
+							"Property 'openvidu.streams.quality-tiers' contains a value not valid: " + e.getMessage());
+				}
+				stringifiedProperties.setProperty(parameter, qualityTiers);
+				break;
+			case "openvidu.streams.subscription-policy":
+				String subscriptionPolicy = checkString(parameters, parameter);
+				try {
+					SubscriptionPolicy.valueOf(subscriptionPolicy);
+				} catch (IllegalArgumentException e) {
+					throw new Exception("Property 'openvidu.streams.subscription-policy' has not a valid value ('"
+							+ subscriptionPolicy + "'). Must be one of " + Arrays.asList(SubscriptionPolicy.values()));
+				}
+				break;
+			case "openvidu.streams.subscription-cap":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.subscription-idle-timeout":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.active-speaker.interval":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.last-n":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.sessions.pipeline-linger":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.download-max-concurrent":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.download-max-bandwidth":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.s3.endpoint":
+				String s3Endpoint = checkString(parameters, parameter);
+				try {
+					if (!s3Endpoint.isEmpty()) {
+						checkUrl(s3Endpoint);
+					}
+				} catch (Exception e) {
+					throw new Exception("Property 'openvidu.recording.s3.endpoint' not valid. " + e.getMessage());
+				}
+				break;
+			case "openvidu.recording.s3.region":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.s3.bucket":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.s3.access-key":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.s3.secret-key":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.s3.part-size":
+				Integer partSize = checkIntegerNonNegative(parameters, parameter, admitStringified);
+				if (partSize < 5) {
+					throw new Exception("Property 'openvidu.recording.s3.part-size' cannot be less than 5 (MB), "
+							+ "the minimum size of a part in S3 multipart uploads");
+				}
+				break;
+			case "openvidu.recording.s3.concurrency":
+				Integer concurrency = checkIntegerNonNegative(parameters, parameter, admitStringified);
+				if (concurrency < 1) {
+					throw new Exception("Property 'openvidu.recording.s3.concurrency' cannot be less than 1");
+				}
+				break;
+			case "openvidu.recording.s3.delete-local":
+				checkBoolean(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.segment-duration":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.mixing.max-concurrent":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.mixing.max-queued":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.retention.max-age":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.retention.max-size":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.retention.keep-last":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.retention.sessions":
+				String retentionPolicies;
+				try {
+					// First check if castable to a List
+					List<String> list = checkStringArray(parameters, parameter, admitStringified);
+					retentionPolicies = listToQuotedStringifiedArray(list);
+				} catch (Exception e) {
+					// If it is not a list, try casting to String
+					retentionPolicies = checkString(parameters, parameter);
+				}
+				try {
+					retentionPoliciesStringToList(retentionPolicies);
+				} catch (Exception e) {
+					throw new Exception("Property 'openvidu.recording.retention.sessions' contains a value not valid: "
+							+ e.getMessage());
+				}
+				stringifiedProperties.setProperty(parameter, retentionPolicies);
+				break;
+			case "openvidu.recording.retention.cold-path":
+				checkString(parameters, parameter);
+				break;
+			case "openvidu.recording.retention.sweep-interval":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.recording.recorder-max-in-flight":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
+			case "openvidu.streams.ice-candidates-batch-window":
+				checkIntegerNonNegative(parameters, parameter, admitStringified);
+				break;
 			case "kms.uris":
 				String kmsUris;
 				try {
@@ -780,6 +1316,29 @@ public class OpenviduConfig {
 		return headerList;
 	}
 
+	/**
+	 * @return the quality tiers sorted from the highest to the lowest bitrate
+	 */
+	private List<QualityTier> qualityTiersStringToList(String qualityTiers) throws Exception {
+		JsonElement elem = new JsonParser().parse(qualityTiers);
+		JsonArray tiersJsonArray = elem.getAsJsonArray();
+		List<QualityTier> tiers = new ArrayList<>();
+		for (JsonElement jsonElement : tiersJsonArray) {
+			tiers.add(QualityTier.parse(jsonElement.getAsString()));
+		}
+		tiers.sort((t1, t2) -> Integer.compare(t2.getMaxKbps(), t1.getMaxKbps()));
+		return tiers;
+	}
+
+	private List<RecordingRetentionPolicy> retentionPoliciesStringToList(String policies) throws Exception {
+		JsonArray policiesJsonArray = new JsonParser().parse(policies).getAsJsonArray();
+		List<RecordingRetentionPolicy> policyList = new ArrayList<>();
+		for (JsonElement jsonElement : policiesJsonArray) {
+			policyList.add(RecordingRetentionPolicy.parse(jsonElement.getAsString()));
+		}
+		return policyList;
+	}
+
 	private List<CDREventName> checkWebhookEvents(String events) throws Exception {
 		JsonParser parser = new JsonParser();
 		JsonElement elem = parser.parse(events);
@@ -831,6 +1390,8 @@ public class OpenviduConfig {
 			if (OPENVIDU_PROPERTIES.contains("kms.uris")) {
 				kmsUrisList = this.kmsUrisStringToList(this.kmsUris);
 			}
+			qualityTiersList = this.qualityTiersStringToList(this.openviduStreamsQualityTiers);
+			retentionPoliciesList = this.retentionPoliciesStringToList(this.openviduRecordingRetentionSessions);
 			this.checkFinalWebHookConfiguration();
 		} catch (Exception e) {
 			log.error("Unexpected exception when setting final value of configuration parameters: {}", e.getMessage());
@@ -55,6 +55,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 				.antMatchers(HttpMethod.GET, "/config/**").authenticated()
 				// /cdr
 				.antMatchers(HttpMethod.GET, "/cdr/**").authenticated()
+				// /metrics
+				.antMatchers(HttpMethod.GET, "/metrics").authenticated()
 				// Dashboard
 				.antMatchers("/").authenticated();
 
@@ -37,6 +37,8 @@ public class Participant {
 	protected EndpointType endpointType; // Type of participant (web participant, IP cam participant...)
 
 	protected boolean streaming = false;
+	protected boolean batchedIceCandidates = false; // Client accepts 'iceCandidates' notifications
+	protected boolean speakerChangedNotifications = false; // Client accepts 'speakerChanged' notifications
 	protected volatile boolean closed;
 
 	private final String METADATA_SEPARATOR = "%/%";
@@ -145,6 +147,22 @@ public class Participant {
 		return closed;
 	}
 
+	public boolean isBatchedIceCandidates() {
+		return batchedIceCandidates;
+	}
+
+	public void setBatchedIceCandidates(boolean batchedIceCandidates) {
+		this.batchedIceCandidates = batchedIceCandidates;
+	}
+
+	public boolean isSpeakerChangedNotifications() {
+		return speakerChangedNotifications;
+	}
+
+	public void setSpeakerChangedNotifications(boolean speakerChangedNotifications) {
+		this.speakerChangedNotifications = speakerChangedNotifications;
+	}
+
 	public boolean isIpcam() {
 		return this.platform.equals("IPCAM") && this.participantPrivatetId.startsWith(IdentifierPrefixes.IPCAM_ID);
 	}
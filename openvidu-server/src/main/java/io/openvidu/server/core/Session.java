@@ -42,6 +42,7 @@ import io.openvidu.java.client.SessionProperties;
 import io.openvidu.server.config.OpenviduConfig;
 import io.openvidu.server.kurento.core.KurentoParticipant;
 import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.TokenBucket;
 
 public class Session implements SessionInterface {
 
@@ -52,6 +53,7 @@ public class Session implements SessionInterface {
 
 	protected ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<>();
 	protected final ConcurrentMap<String, Participant> participants = new ConcurrentHashMap<>();
+	protected final ConcurrentMap<String, Participant> participantsByPublicId = new ConcurrentHashMap<>();
 	protected String sessionId;
 	protected SessionProperties sessionProperties;
 	protected Long startTime;
@@ -72,6 +74,11 @@ public class Session implements SessionInterface {
 
 	public final AtomicBoolean recordingManuallyStopped = new AtomicBoolean(false);
 
+	// Signal rate limiting for the whole session and for each one of its
+	// connections (by participant private id)
+	protected TokenBucket signalBucket;
+	protected ConcurrentMap<String, TokenBucket> connectionSignalBuckets = new ConcurrentHashMap<>();
+
 	public Session(Session previousSession) {
 		this.sessionId = previousSession.getSessionId();
 		this.startTime = previousSession.getStartTime();
@@ -79,6 +86,7 @@ public class Session implements SessionInterface {
 		this.openviduConfig = previousSession.openviduConfig;
 		this.recordingManager = previousSession.recordingManager;
 		this.tokens = previousSession.tokens;
+		this.signalBucket = previousSession.signalBucket;
 	}
 
 	public Session(String sessionId, SessionProperties sessionProperties, OpenviduConfig openviduConfig,
@@ -88,6 +96,7 @@ public class Session implements SessionInterface {
 		this.sessionProperties = sessionProperties;
 		this.openviduConfig = openviduConfig;
 		this.recordingManager = recordingManager;
+		this.signalBucket = new TokenBucket(openviduConfig.getOpenviduSignalRateSession());
 	}
 
 	public String getSessionId() {
@@ -114,12 +123,29 @@ public class Session implements SessionInterface {
 
 	public Participant getParticipantByPublicId(String participantPublicId) {
 		checkClosed();
-		for (Participant p : participants.values()) {
-			if (p.getParticipantPublicId().equals(participantPublicId)) {
-				return p;
-			}
+		return participantsByPublicId.get(participantPublicId);
+	}
+
+	/**
+	 * Consumes one signal from the session budget and, if participant is not
+	 * null, from the participant's own budget. Nothing is consumed from any budget
+	 * if the signal is rejected
+	 * 
+	 * @return null if the signal is allowed. "connection" or "session" if it
+	 *         exceeds the rate limit of the participant or of the session
+	 */
+	public String tryAcquireSignal(Participant participant) {
+		if (participant == null) {
+			return this.signalBucket.tryAcquire() ? null : "session";
 		}
-		return null;
+		TokenBucket connectionBucket = this.connectionSignalBuckets.computeIfAbsent(
+				participant.getParticipantPrivateId(),
+				privateId -> new TokenBucket(openviduConfig.getOpenviduSignalRateConnection()));
+		TokenBucket emptyBucket = connectionBucket.tryAcquireWith(this.signalBucket);
+		if (emptyBucket == null) {
+			return null;
+		}
+		return emptyBucket == connectionBucket ? "connection" : "session";
 	}
 
 	public boolean onlyRecorderParticipant() {
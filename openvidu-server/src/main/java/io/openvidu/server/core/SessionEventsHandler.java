@@ -17,9 +17,9 @@
 
 package io.openvidu.server.core;
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
@@ -303,6 +303,17 @@ public class SessionEventsHandler {
 		}
 	}
 
+	public void onReconnectStream(Participant participant, String sdpAnswer, Integer transactionId,
+			OpenViduException error) {
+		if (error != null) {
+			rpcNotificationService.sendErrorResponse(participant.getParticipantPrivateId(), transactionId, null, error);
+			return;
+		}
+		JsonObject result = new JsonObject();
+		result.addProperty(ProtocolElements.RECONNECTSTREAM_SDPANSWER_PARAM, sdpAnswer);
+		rpcNotificationService.sendResponse(participant.getParticipantPrivateId(), transactionId, result);
+	}
+
 	public void onUnsubscribe(Participant participant, Integer transactionId, OpenViduException error) {
 		if (error != null) {
 			rpcNotificationService.sendErrorResponse(participant.getParticipantPrivateId(), transactionId, null, error);
@@ -311,15 +322,31 @@ public class SessionEventsHandler {
 		rpcNotificationService.sendResponse(participant.getParticipantPrivateId(), transactionId, new JsonObject());
 	}
 
-	public void onSendMessage(Participant participant, JsonObject message, Set<Participant> participants,
-			Integer transactionId, OpenViduException error) {
+	public void onUpdateSubscription(Participant participant, Integer transactionId, OpenViduException error) {
+		if (error != null) {
+			rpcNotificationService.sendErrorResponse(participant.getParticipantPrivateId(), transactionId, null, error);
+			return;
+		}
+		rpcNotificationService.sendResponse(participant.getParticipantPrivateId(), transactionId, new JsonObject());
+	}
+
+	/**
+	 * Delivers a signal to the participants of the session. The notification
+	 * parameters are built once and shared by every recipient, and the
+	 * participants of the "to" array are resolved by their public id in constant
+	 * time
+	 * 
+	 * @return The number of participants the signal has been delivered to
+	 */
+	public int onSendMessage(Participant participant, JsonObject message, Session session, Integer transactionId,
+			OpenViduException error) {
 
 		boolean isRpcCall = transactionId != null;
 		if (isRpcCall) {
 			if (error != null) {
 				rpcNotificationService.sendErrorResponse(participant.getParticipantPrivateId(), transactionId, null,
 						error);
-				return;
+				return 0;
 			}
 		}
 
@@ -335,44 +362,45 @@ public class SessionEventsHandler {
 					participant.getParticipantPublicId());
 		}
 
-		Set<String> toSet = new HashSet<String>();
+		Collection<Participant> recipients;
 
-		if (message.has("to")) {
-			JsonArray toJson = message.get("to").getAsJsonArray();
+		JsonArray toJson = message.has("to") ? message.get("to").getAsJsonArray() : null;
+		if (toJson == null || toJson.size() == 0) {
+			recipients = session.getParticipants();
+		} else {
+			// Resolve every recipient before sending anything, so an invalid
+			// connectionId does not deliver the signal to just part of them
+			Map<String, Participant> toMap = new HashMap<>(toJson.size() * 2);
 			for (int i = 0; i < toJson.size(); i++) {
 				JsonElement el = toJson.get(i);
 				if (el.isJsonNull()) {
 					throw new OpenViduException(Code.SIGNAL_TO_INVALID_ERROR_CODE,
 							"Signal \"to\" field invalid format: null");
 				}
-				toSet.add(el.getAsString());
+				String to = el.getAsString();
+				Participant p = session.getParticipantByPublicId(to);
+				if (p == null) {
+					throw new OpenViduException(Code.SIGNAL_TO_INVALID_ERROR_CODE,
+							"Signal \"to\" field invalid format: some connectionId does not exist in this session");
+				}
+				toMap.put(to, p);
 			}
+			recipients = toMap.values();
 		}
 
-		if (toSet.isEmpty()) {
-			for (Participant p : participants) {
+		int sent = 0;
+		for (Participant p : recipients) {
+			if (!p.isClosed()) {
 				rpcNotificationService.sendNotification(p.getParticipantPrivateId(),
 						ProtocolElements.PARTICIPANTSENDMESSAGE_METHOD, params);
-			}
-		} else {
-			Set<String> participantPublicIds = participants.stream().map(Participant::getParticipantPublicId)
-					.collect(Collectors.toSet());
-			if (participantPublicIds.containsAll(toSet)) {
-				for (String to : toSet) {
-					Optional<Participant> p = participants.stream().filter(x -> to.equals(x.getParticipantPublicId()))
-							.findFirst();
-					rpcNotificationService.sendNotification(p.get().getParticipantPrivateId(),
-							ProtocolElements.PARTICIPANTSENDMESSAGE_METHOD, params);
-				}
-			} else {
-				throw new OpenViduException(Code.SIGNAL_TO_INVALID_ERROR_CODE,
-						"Signal \"to\" field invalid format: some connectionId does not exist in this session");
+				sent++;
 			}
 		}
 
 		if (isRpcCall) {
 			rpcNotificationService.sendResponse(participant.getParticipantPrivateId(), transactionId, new JsonObject());
 		}
+		return sent;
 	}
 
 	public void onStreamPropertyChanged(Participant participant, Integer transactionId, Set<Participant> participants,
@@ -397,6 +425,19 @@ public class SessionEventsHandler {
 		}
 	}
 
+	public void onSpeakerChanged(Session session, Participant speaker, String streamId) {
+		JsonObject params = new JsonObject();
+		params.addProperty(ProtocolElements.SPEAKERCHANGED_CONNECTIONID_PARAM, speaker.getParticipantPublicId());
+		params.addProperty(ProtocolElements.SPEAKERCHANGED_STREAMID_PARAM, streamId);
+		for (Participant p : session.getParticipants()) {
+			// Only clients that accepted the notification when joining know how to handle it
+			if (p.isSpeakerChangedNotifications()) {
+				rpcNotificationService.sendNotification(p.getParticipantPrivateId(),
+						ProtocolElements.SPEAKERCHANGED_METHOD, params);
+			}
+		}
+	}
+
 	public void onRecvIceCandidate(Participant participant, Integer transactionId, OpenViduException error) {
 		if (error != null) {
 			rpcNotificationService.sendErrorResponse(participant.getParticipantPrivateId(), transactionId, null, error);
@@ -19,6 +19,7 @@ package io.openvidu.server.core;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,6 +30,7 @@ import java.util.stream.Collectors;
 import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.kurento.client.IceCandidate;
 import org.kurento.jsonrpc.message.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,7 +51,9 @@ import io.openvidu.server.config.OpenviduConfig;
 import io.openvidu.server.coturn.CoturnCredentialsService;
 import io.openvidu.server.kurento.core.KurentoTokenOptions;
 import io.openvidu.server.kurento.endpoint.EndpointType;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
 import io.openvidu.server.utils.FormatChecker;
 import io.openvidu.server.utils.GeoLocation;
 import io.openvidu.server.utils.GeoLocationByIp;
@@ -80,6 +84,12 @@ public abstract class SessionManager {
 	@Autowired
 	protected GeoLocationByIp geoLocationByIp;
 
+	@Autowired
+	protected MetricsManager metricsManager;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
 	public FormatChecker formatChecker = new FormatChecker();
 
 	protected ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
@@ -88,6 +98,9 @@ public abstract class SessionManager {
 	protected ConcurrentMap<String, ConcurrentHashMap<String, FinalUser>> sessionidFinalUsers = new ConcurrentHashMap<>();
 	protected ConcurrentMap<String, ConcurrentLinkedQueue<CDREventRecording>> sessionidAccumulatedRecordings = new ConcurrentHashMap<>();
 
+	// Server-wide index of the participants joined to any session
+	protected ConcurrentMap<String, Participant> participantprivateidParticipant = new ConcurrentHashMap<>();
+
 	protected ConcurrentMap<String, Boolean> insecureUsers = new ConcurrentHashMap<>();
 
 	public abstract void joinRoom(Participant participant, String sessionId, Integer transactionId);
@@ -100,29 +113,52 @@ public abstract class SessionManager {
 	public abstract void unpublishVideo(Participant participant, Participant moderator, Integer transactionId,
 			EndReason reason);
 
-	public abstract void subscribe(Participant participant, String senderName, String sdpOffer, Integer transactionId);
+	public abstract void subscribe(Participant participant, String senderName, String sdpOffer, Boolean audioOnly,
+			Integer transactionId);
 
 	public abstract void unsubscribe(Participant participant, String senderName, Integer transactionId);
 
+	public abstract void reconnectStream(Participant participant, String streamId, String sdpOffer,
+			Integer transactionId);
+
+	public abstract void updateSubscription(Participant participant, String senderName, boolean audioOnly,
+			Integer transactionId);
+
 	public void sendMessage(String message, String sessionId) {
-		try {
-			JsonObject messageJson = new JsonParser().parse(message).getAsJsonObject();
-			sessionEventsHandler.onSendMessage(null, messageJson, getParticipants(sessionId), null, null);
-		} catch (JsonSyntaxException | IllegalStateException e) {
-			throw new OpenViduException(Code.SIGNAL_FORMAT_INVALID_ERROR_CODE,
-					"Provided signal object '" + message + "' has not a valid JSON format");
-		}
+		this.sendMessage(null, message, sessionId, null);
 	}
 
 	public void sendMessage(Participant participant, String message, Integer transactionId) {
+		this.sendMessage(participant, message, participant.getSessionId(), transactionId);
+	}
+
+	private void sendMessage(Participant participant, String message, String sessionId, Integer transactionId) {
+		Session session = sessions.get(sessionId);
+		if (session == null) {
+			throw new OpenViduException(Code.ROOM_NOT_FOUND_ERROR_CODE, "Session '" + sessionId + "' not found");
+		}
+		String exceededLimit = session.tryAcquireSignal(participant);
+		if (exceededLimit != null) {
+			metricsManager.recordRejectedSignal(exceededLimit);
+			throw new OpenViduException(Code.SIGNAL_RATE_LIMIT_ERROR_CODE,
+					"Signal rate limit of the " + exceededLimit + " exceeded");
+		}
+		JsonObject messageJson;
 		try {
-			JsonObject messageJson = new JsonParser().parse(message).getAsJsonObject();
-			sessionEventsHandler.onSendMessage(participant, messageJson, getParticipants(participant.getSessionId()),
-					transactionId, null);
+			messageJson = new JsonParser().parse(message).getAsJsonObject();
 		} catch (JsonSyntaxException | IllegalStateException e) {
+			metricsManager.recordRejectedSignal("format");
 			throw new OpenViduException(Code.SIGNAL_FORMAT_INVALID_ERROR_CODE,
 					"Provided signal object '" + message + "' has not a valid JSON format");
 		}
+		try {
+			int recipients = sessionEventsHandler.onSendMessage(participant, messageJson, session, transactionId,
+					null);
+			metricsManager.recordSignal(recipients);
+		} catch (OpenViduException e) {
+			metricsManager.recordRejectedSignal("to");
+			throw e;
+		}
 	}
 
 	public abstract void streamPropertyChanged(Participant participant, Integer transactionId, String streamId,
@@ -131,6 +167,9 @@ public abstract class SessionManager {
 	public abstract void onIceCandidate(Participant participant, String endpointName, String candidate,
 			int sdpMLineIndex, String sdpMid, Integer transactionId);
 
+	public abstract void onIceCandidates(Participant participant, String endpointName, List<IceCandidate> candidates,
+			Integer transactionId);
+
 	public abstract boolean unpublishStream(Session session, String streamId, Participant moderator,
 			Integer transactionId, EndReason reason);
 
@@ -158,6 +197,8 @@ public abstract class SessionManager {
 	public abstract String getParticipantPrivateIdFromStreamId(String sessionId, String streamId)
 			throws OpenViduException;
 
+	public abstract void migrateSession(Session session, String mediaNodeId) throws OpenViduException;
+
 	/**
 	 * Returns a Session given its id
 	 *
@@ -240,11 +281,11 @@ public abstract class SessionManager {
 	 * @throws OpenViduException in case the participant doesn't exist
 	 */
 	public Participant getParticipant(String participantPrivateId) throws OpenViduException {
-		for (Session session : sessions.values()) {
-			if (!session.isClosed()) {
-				if (session.getParticipantByPrivateId(participantPrivateId) != null) {
-					return session.getParticipantByPrivateId(participantPrivateId);
-				}
+		Participant participant = this.participantprivateidParticipant.get(participantPrivateId);
+		if (participant != null) {
+			Session session = sessions.get(participant.getSessionId());
+			if (session != null && !session.isClosed()) {
+				return participant;
 			}
 		}
 		throw new OpenViduException(Code.USER_NOT_FOUND_ERROR_CODE,
@@ -452,7 +493,7 @@ public abstract class SessionManager {
 			// to the session. That is: if the session was in the automatic recording stop
 			// timeout with INDIVIDUAL recording (no docker participant connected)
 			try {
-				session.closingLock.writeLock().lock();
+				this.metricsManager.lock(session.closingLock.writeLock(), MetricsManager.LOCK_SESSION_CLOSING);
 				if (session.isClosed()) {
 					return;
 				}
@@ -472,6 +513,10 @@ public abstract class SessionManager {
 
 		final String mediaNodeId = session.getMediaNodeId();
 
+		session.getParticipants().forEach(p -> {
+			this.participantprivateidParticipant.remove(p.getParticipantPrivateId(), p);
+		});
+
 		if (session.close(reason)) {
 			sessionEventsHandler.onSessionClosed(session.getSessionId(), reason);
 		}
@@ -25,18 +25,22 @@ import javax.annotation.PostConstruct;
 import org.apache.commons.lang3.RandomStringUtils;
 
 import io.openvidu.server.utils.CommandExecutor;
+import io.openvidu.server.utils.CustomFileManager;
 
 public class BashCoturnCredentialsService extends CoturnCredentialsService {
 
 	private String logPath;
 	private AtomicLong logCounter = new AtomicLong(0);
 	private final long LOG_LIMIT = 30;
+	private static final int COMMAND_TIMEOUT = 10;
+
+	private CustomFileManager fileManager = new CustomFileManager();
 
 	@PostConstruct
 	private void initialize() {
 		try {
-			String response = CommandExecutor.execCommand("/bin/sh", "-c",
-					"turnadmin -l -N " + this.coturnDatabaseString);
+			String response = CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh",
+					"-c", "turnadmin -l -N " + this.coturnDatabaseString);
 			if (response.contains("turnadmin: not found")) {
 				// No coturn installed in the host machine
 				log.warn("No COTURN server is installed in the host machine. Response: " + response);
@@ -54,10 +58,10 @@ public class BashCoturnCredentialsService extends CoturnCredentialsService {
 					this.logPath = logFile.substring(0, logFile.lastIndexOf('/') + 1);
 					log.info("Path of COTURN log files: " + this.logPath);
 				}
-				response = CommandExecutor.execCommand("/bin/sh", "-c",
+				response = CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh", "-c",
 						"redis-cli -n " + this.openviduConfig.getCoturnDatabaseDbname() + " flushdb");
-				String response2 = CommandExecutor.execCommand("/bin/sh", "-c",
-						"redis-cli -n " + this.openviduConfig.getCoturnDatabaseDbname() + " --scan --pattern '*'");
+				String response2 = CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh",
+						"-c", "redis-cli -n " + this.openviduConfig.getCoturnDatabaseDbname() + " --scan --pattern '*'");
 				if ("OK".equals(response) && response2.isEmpty()) {
 					log.info("COTURN DB is now empty");
 				} else {
@@ -79,7 +83,8 @@ public class BashCoturnCredentialsService extends CoturnCredentialsService {
 		String pass = RandomStringUtils.randomAlphanumeric(6).toLowerCase();
 		String command = "turnadmin -a -u " + user + " -r openvidu -p " + pass + " -N " + this.coturnDatabaseString;
 		try {
-			String response = CommandExecutor.execCommand("/bin/sh", "-c", command);
+			String response = CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh",
+					"-c", command);
 			if (response.contains("connection success: " + this.trimmedCoturnDatabaseString)) {
 				credentials = new TurnCredentials(user, pass);
 				this.cleanTurnLogFiles();
@@ -101,7 +106,8 @@ public class BashCoturnCredentialsService extends CoturnCredentialsService {
 		String command = "turnadmin -d -u " + user + " -r openvidu -N " + this.coturnDatabaseString;
 		String response = "";
 		try {
-			response = CommandExecutor.execCommand("/bin/sh", "-c", command);
+			response = CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh", "-c",
+					command);
 			this.cleanTurnLogFiles();
 		} catch (IOException | InterruptedException e) {
 			e.printStackTrace();
@@ -111,9 +117,9 @@ public class BashCoturnCredentialsService extends CoturnCredentialsService {
 		return userRemoved;
 	}
 
-	private void cleanTurnLogFiles() throws IOException, InterruptedException {
+	private void cleanTurnLogFiles() throws IOException {
 		if (this.logCounter.incrementAndGet() > LOG_LIMIT) {
-			CommandExecutor.execCommand("/bin/sh", "-c", "rm " + this.logPath + "turn_*.log");
+			this.fileManager.deleteFiles(this.logPath, "turn_*.log");
 			log.info("Garbage collector cleaning turn log files at path " + this.logPath);
 			this.logCounter.set(0);
 		}
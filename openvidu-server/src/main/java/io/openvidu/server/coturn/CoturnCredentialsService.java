@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.utils.BlockingTaskExecutor;
 
 public abstract class CoturnCredentialsService {
 
@@ -34,6 +35,9 @@ public abstract class CoturnCredentialsService {
 	@Autowired
 	protected OpenviduConfig openviduConfig;
 
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
 	protected String coturnDatabaseString;
 	protected String trimmedCoturnDatabaseString;
 
@@ -0,0 +1,261 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaType;
+import org.kurento.client.RTCInboundRTPStreamStats;
+import org.kurento.client.Stats;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.Participant;
+import io.openvidu.server.core.SessionEventsHandler;
+import io.openvidu.server.core.SessionManager;
+import io.openvidu.server.kurento.endpoint.PublisherEndpoint;
+import io.openvidu.server.kurento.kms.Kms;
+import io.openvidu.server.kurento.kms.KmsManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Periodically ranks the publishers of every session by their voice activity.
+ * KMS does not report audio levels, so activity is measured as the audio
+ * bitrate received from each publisher: Opus encodes silence with much smaller
+ * frames than speech (or sends none at all if DTX is enabled). The audio stats
+ * of all the publishers hosted in the same KMS are requested in a single
+ * Kurento transaction.
+ *
+ * A publisher is only considered to be speaking above
+ * {@link #MIN_SPEECH_KBPS}. Every time the dominant speaker of a session
+ * changes, a 'speakerChanged' notification is sent to the participants that
+ * accepted it when joining. If property
+ * "openvidu.streams.last-n" is greater than 0, the ranking is applied with
+ * {@link KurentoSessionManager#applyLastN(KurentoSession, List, int)}
+ */
+public class ActiveSpeakerDetector {
+
+	private static final Logger log = LoggerFactory.getLogger(ActiveSpeakerDetector.class);
+
+	// Weight of the last sample in the smoothed audio bitrate
+	private static final double SMOOTHING = 0.5;
+
+	// Audio bitrate below which a publisher is considered silent. Opus silence
+	// frames take a few bytes, speech takes more than 10 kbps
+	private static final double MIN_SPEECH_KBPS = 5;
+
+	// A new dominant speaker must exceed the activity of the current one by this
+	// factor, so short noises do not steal the floor
+	private static final double SWITCH_MARGIN = 1.2;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected KmsManager kmsManager;
+
+	@Autowired
+	protected SessionManager sessionManager;
+
+	@Autowired
+	protected SessionEventsHandler sessionEventsHandler;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private ScheduledFuture<?> detectorTask;
+
+	// Audio activity of each publisher by stream id
+	private final Map<String, AudioActivity> activities = new ConcurrentHashMap<>();
+
+	// Dominant speaker of each session by session id
+	private final Map<String, String> dominantSpeakers = new ConcurrentHashMap<>();
+
+	private static class AudioActivity {
+		long lastBytes = -1;
+		long lastTimestamp;
+		double kbps = 0;
+	}
+
+	@PostConstruct
+	public void init() {
+		int interval = this.openviduConfig.getStreamsActiveSpeakerInterval();
+		if (interval > 0) {
+			this.detectorTask = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					this.detect();
+				} catch (Exception e) {
+					log.error("Error detecting active speakers: {}", e.getMessage());
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+			log.info("Active speaker detection enabled every {} seconds. Last-N: {}", interval,
+					this.openviduConfig.getStreamsLastN() > 0 ? this.openviduConfig.getStreamsLastN() : "disabled");
+		} else if (this.openviduConfig.getStreamsLastN() > 0) {
+			log.warn("Property 'openvidu.streams.last-n' is ignored because active speaker detection is disabled "
+					+ "(property 'openvidu.streams.active-speaker.interval' is 0)");
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.detectorTask != null) {
+			this.detectorTask.cancel(false);
+		}
+	}
+
+	private void detect() {
+		Set<String> liveStreams = new HashSet<>();
+		Set<String> liveSessions = new HashSet<>();
+		for (Kms kms : this.kmsManager.getKmss()) {
+			if (!kms.isKurentoClientConnected()) {
+				continue;
+			}
+			List<KurentoSession> sessions = kms.getKurentoSessions().stream().filter(s -> !s.isClosed())
+					.collect(Collectors.toList());
+			Map<PublisherEndpoint, TFuture<Map<String, Stats>>> futures = new HashMap<>();
+			Transaction tx = kms.getKurentoClient().beginTransaction();
+			for (KurentoSession session : sessions) {
+				liveSessions.add(session.getSessionId());
+				for (PublisherEndpoint publisher : this.getAudioPublishers(session)) {
+					liveStreams.add(publisher.getStreamId());
+					futures.put(publisher, publisher.getEndpoint().getStats(tx, MediaType.AUDIO));
+				}
+			}
+			if (futures.isEmpty()) {
+				tx.rollback();
+				continue;
+			}
+			tx.commit(new Continuation<Void>() {
+				@Override
+				public void onSuccess(Void result) throws Exception {
+					long timestamp = System.currentTimeMillis();
+					futures.forEach((publisher, future) -> updateActivity(publisher, future.get(), timestamp));
+					sessions.forEach(session -> rankSpeakers(session));
+				}
+
+				@Override
+				public void onError(Throwable cause) throws Exception {
+					// Some endpoint may have been released during the round
+					log.debug("Audio stats request to KMS {} failed: {}", kms.getId(), cause.getMessage());
+				}
+			});
+		}
+		this.activities.keySet().retainAll(liveStreams);
+		this.dominantSpeakers.keySet().retainAll(liveSessions);
+	}
+
+	private List<PublisherEndpoint> getAudioPublishers(KurentoSession session) {
+		List<PublisherEndpoint> publishers = new ArrayList<>();
+		for (Participant participant : session.getParticipants()) {
+			if (!participant.isStreaming()) {
+				continue;
+			}
+			PublisherEndpoint publisher = ((KurentoParticipant) participant).getPublisher();
+			if (publisher != null && publisher.getEndpoint() != null && publisher.getMediaOptions() != null
+					&& publisher.getMediaOptions().hasAudio()) {
+				publishers.add(publisher);
+			}
+		}
+		return publishers;
+	}
+
+	private void updateActivity(PublisherEndpoint publisher, Map<String, Stats> stats, long timestamp) {
+		long bytes = 0;
+		for (Stats s : stats.values()) {
+			if (s instanceof RTCInboundRTPStreamStats) {
+				bytes += ((RTCInboundRTPStreamStats) s).getBytesReceived();
+			}
+		}
+		AudioActivity activity = this.activities.computeIfAbsent(publisher.getStreamId(), id -> new AudioActivity());
+		if (activity.lastBytes >= 0 && bytes >= activity.lastBytes && timestamp > activity.lastTimestamp) {
+			double kbps = (bytes - activity.lastBytes) * 8 / (double) (timestamp - activity.lastTimestamp);
+			activity.kbps = SMOOTHING * kbps + (1 - SMOOTHING) * activity.kbps;
+		}
+		activity.lastBytes = bytes;
+		activity.lastTimestamp = timestamp;
+	}
+
+	private double getActivity(PublisherEndpoint publisher) {
+		AudioActivity activity = this.activities.get(publisher.getStreamId());
+		return activity != null ? activity.kbps : 0;
+	}
+
+	private void rankSpeakers(KurentoSession session) {
+		if (session.isClosed()) {
+			return;
+		}
+		List<KurentoParticipant> publishers = session.getParticipants().stream()
+				.filter(p -> p.isStreaming() && ((KurentoParticipant) p).getPublisher() != null)
+				.map(p -> (KurentoParticipant) p).collect(Collectors.toList());
+		if (publishers.isEmpty()) {
+			return;
+		}
+		publishers.sort(Comparator.comparingDouble((KurentoParticipant p) -> getActivity(p.getPublisher())).reversed());
+
+		KurentoParticipant loudest = publishers.get(0);
+		String currentId = this.dominantSpeakers.get(session.getSessionId());
+		KurentoParticipant current = currentId != null ? publishers.stream()
+				.filter(p -> p.getParticipantPublicId().equals(currentId)).findFirst().orElse(null) : null;
+		KurentoParticipant dominant = current;
+		double loudestActivity = getActivity(loudest.getPublisher());
+		if (loudestActivity > MIN_SPEECH_KBPS && (current == null
+				|| (loudest != current && loudestActivity > SWITCH_MARGIN * getActivity(current.getPublisher())))) {
+			dominant = loudest;
+		}
+		if (dominant != null && dominant != current) {
+			this.dominantSpeakers.put(session.getSessionId(), dominant.getParticipantPublicId());
+			log.debug("SESSION {}: dominant speaker is now {}", session.getSessionId(),
+					dominant.getParticipantPublicId());
+			this.sessionEventsHandler.onSpeakerChanged(session, dominant, dominant.getPublisherStreamId());
+		}
+
+		int lastN = this.openviduConfig.getStreamsLastN();
+		if (lastN > 0) {
+			// The dominant speaker always ranks first
+			List<String> ranking = new ArrayList<>(publishers.size());
+			if (dominant != null) {
+				ranking.add(dominant.getParticipantPublicId());
+			}
+			for (KurentoParticipant p : publishers) {
+				if (p != dominant) {
+					ranking.add(p.getParticipantPublicId());
+				}
+			}
+			((KurentoSessionManager) this.sessionManager).applyLastN(session, ranking, lastN);
+		}
+	}
+
+}
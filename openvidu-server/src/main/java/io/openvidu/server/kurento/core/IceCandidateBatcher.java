@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.kurento.client.IceCandidate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Collects the ICE candidates gathered by each endpoint during
+ * "openvidu.streams.ice-candidates-batch-window" milliseconds since the first
+ * one, and sends them to the owner of the endpoint in a single 'iceCandidates'
+ * notification. Only used for participants that accepted batches when joining
+ * the session.
+ *
+ * Sending a notification blocks until the WebSocket of the participant accepts
+ * it, so the batches of each participant are sent one after the other by its
+ * own serial executor: a slow client only delays its own candidates, and never
+ * receives them out of order
+ */
+public class IceCandidateBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(IceCandidateBatcher.class);
+
+	private class PendingCandidates {
+
+		final KurentoParticipant participant;
+		final String senderPublicId;
+		final String endpointName;
+		final List<IceCandidate> candidates = new ArrayList<>();
+
+		PendingCandidates(KurentoParticipant participant, String senderPublicId, String endpointName) {
+			this.participant = participant;
+			this.senderPublicId = senderPublicId;
+			this.endpointName = endpointName;
+		}
+
+	}
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final Map<String, PendingCandidates> pendingCandidates = new ConcurrentHashMap<>();
+	// Serial executor of each participant by private id
+	private final Map<String, Executor> senders = new ConcurrentHashMap<>();
+
+	private int window;
+
+	@PostConstruct
+	public void init() {
+		this.window = this.openviduConfig.getStreamsIceCandidatesBatchWindow();
+	}
+
+	public void add(KurentoParticipant participant, String senderPublicId, String endpointName,
+			IceCandidate candidate) {
+		if (this.window <= 0) {
+			participant.sendIceCandidates(senderPublicId, endpointName, Collections.singletonList(candidate));
+			return;
+		}
+		final String key = participant.getParticipantPrivateId() + "_" + endpointName;
+		final boolean[] firstCandidate = { false };
+		this.pendingCandidates.compute(key, (k, pending) -> {
+			if (pending == null) {
+				pending = new PendingCandidates(participant, senderPublicId, endpointName);
+				firstCandidate[0] = true;
+			}
+			pending.candidates.add(candidate);
+			return pending;
+		});
+		if (firstCandidate[0]) {
+			this.blockingTaskExecutor.schedule(() -> this.flush(key), this.window, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Forgets the serial executor of the participant. Batches already handed
+	 * over to it are discarded once they find the participant closed
+	 */
+	public void removeParticipant(String participantPrivateId) {
+		this.senders.remove(participantPrivateId);
+	}
+
+	private void flush(String key) {
+		final PendingCandidates pending = this.pendingCandidates.remove(key);
+		if (pending == null || pending.participant.isClosed()) {
+			return;
+		}
+		final String privateId = pending.participant.getParticipantPrivateId();
+		final Executor sender = this.senders.computeIfAbsent(privateId,
+				id -> this.blockingTaskExecutor.newBoundedExecutor(1));
+		sender.execute(() -> {
+			if (pending.participant.isClosed()) {
+				// Closed after the executor was obtained
+				this.senders.remove(privateId, sender);
+				return;
+			}
+			try {
+				pending.participant.sendIceCandidates(pending.senderPublicId, pending.endpointName,
+						pending.candidates);
+			} catch (Exception e) {
+				log.warn("Error sending {} ICE candidates of endpoint {} to participant {}: {}",
+						pending.candidates.size(), pending.endpointName,
+						pending.participant.getParticipantPublicId(), e.getMessage());
+			}
+		});
+	}
+
+}
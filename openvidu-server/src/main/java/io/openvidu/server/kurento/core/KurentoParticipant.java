@@ -18,13 +18,16 @@
 package io.openvidu.server.kurento.core;
 
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.kurento.client.Continuation;
@@ -41,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.client.internal.ProtocolElements;
@@ -72,6 +76,12 @@ public class KurentoParticipant extends Participant {
 	private final ConcurrentMap<String, Filter> filters = new ConcurrentHashMap<>();
 	private final ConcurrentMap<String, SubscriberEndpoint> subscribers = new ConcurrentHashMap<String, SubscriberEndpoint>();
 
+	// Stream id of the publisher and subscriptions (sender public id to audio-only
+	// flag) released by a media server migration, waiting for the client to restart
+	// ICE on its existing RTCPeerConnections
+	private volatile String migratedStreamId;
+	private final ConcurrentMap<String, Boolean> migratedSubscriptions = new ConcurrentHashMap<>();
+
 	public KurentoParticipant(Participant participant, KurentoSession kurentoSession,
 			KurentoParticipantEndpointConfig endpointConfig, OpenviduConfig openviduConfig,
 			RecordingManager recordingManager) {
@@ -83,6 +93,7 @@ public class KurentoParticipant extends Participant {
 		this.openviduConfig = openviduConfig;
 		this.recordingManager = recordingManager;
 		this.session = kurentoSession;
+		this.batchedIceCandidates = participant.isBatchedIceCandidates();
 
 		if (!OpenViduRole.SUBSCRIBER.equals(participant.getToken().getRole())) {
 			// Initialize a PublisherEndpoint
@@ -95,23 +106,30 @@ public class KurentoParticipant extends Participant {
 					&& !OpenViduRole.SUBSCRIBER.equals(other.getToken().getRole())) {
 				// Initialize a SubscriberEndpoint for each other user connected with PUBLISHER
 				// or MODERATOR role
-				getNewOrExistingSubscriber(other.getParticipantPublicId());
+				preloadSubscriber(other.getParticipantPublicId());
 			}
 		}
 	}
 
 	public void createPublishingEndpoint(MediaOptions mediaOptions) {
 		String type = mediaOptions.hasVideo() ? mediaOptions.getTypeOfVideo() : "MICRO";
-		final String publisherStreamId = IdentifierPrefixes.STREAM_ID + type.substring(0, Math.min(type.length(), 3))
-				+ "_" + RandomStringUtils.randomAlphabetic(1).toUpperCase() + RandomStringUtils.randomAlphanumeric(3)
-				+ "_" + this.getParticipantPublicId();
+		this.createPublishingEndpoint(mediaOptions,
+				IdentifierPrefixes.STREAM_ID + type.substring(0, Math.min(type.length(), 3)) + "_"
+						+ RandomStringUtils.randomAlphabetic(1).toUpperCase() + RandomStringUtils.randomAlphanumeric(3)
+						+ "_" + this.getParticipantPublicId());
+	}
+
+	private void createPublishingEndpoint(MediaOptions mediaOptions, String publisherStreamId) {
 		publisher.setStreamId(publisherStreamId);
 		publisher.setEndpointName(publisherStreamId);
 		publisher.setMediaOptions(mediaOptions);
+		Timer.Sample sample = endpointConfig.getMetricsManager().startTimer();
 		publisher.createEndpoint(publisherLatch);
 		if (getPublisher().getEndpoint() == null) {
+			endpointConfig.getMetricsManager().recordKmsCall("createEndpoint", sample, true);
 			throw new OpenViduException(Code.MEDIA_ENDPOINT_ERROR_CODE, "Unable to create publisher endpoint");
 		}
+		endpointConfig.getMetricsManager().recordKmsCall("createEndpoint", sample, false);
 
 		this.publisher.getEndpoint().setName(publisherStreamId);
 
@@ -144,7 +162,8 @@ public class KurentoParticipant extends Participant {
 
 	public PublisherEndpoint getPublisher() {
 		try {
-			if (!publisherLatch.await(KurentoSession.ASYNC_LATCH_TIMEOUT, TimeUnit.SECONDS)) {
+			if (!endpointConfig.getBlockingTaskExecutor().await(publisherLatch, KurentoSession.ASYNC_LATCH_TIMEOUT,
+					TimeUnit.SECONDS)) {
 				throw new OpenViduException(Code.MEDIA_ENDPOINT_ERROR_CODE,
 						"Timeout reached while waiting for publisher endpoint to be ready");
 			}
@@ -159,6 +178,10 @@ public class KurentoParticipant extends Participant {
 		return this.subscribers.values();
 	}
 
+	public SubscriberEndpoint getSubscriber(String senderPublicId) {
+		return this.subscribers.get(senderPublicId);
+	}
+
 	public MediaOptions getPublisherMediaOptions() {
 		return this.publisher.getMediaOptions();
 	}
@@ -176,7 +199,15 @@ public class KurentoParticipant extends Participant {
 				this.session.getSessionId(), sdpType);
 		log.trace("PARTICIPANT {}: Publishing Sdp ({}) is {}", this.getParticipantPublicId(), sdpType, sdpString);
 
-		String sdpResponse = this.getPublisher().publish(sdpType, sdpString, doLoopback);
+		Timer.Sample sample = endpointConfig.getMetricsManager().startTimer();
+		String sdpResponse;
+		try {
+			sdpResponse = this.getPublisher().publish(sdpType, sdpString, doLoopback);
+		} catch (OpenViduException | KurentoServerException e) {
+			endpointConfig.getMetricsManager().recordKmsCall("negotiateSdp", sample, true);
+			throw e;
+		}
+		endpointConfig.getMetricsManager().recordKmsCall("negotiateSdp", sample, false);
 		this.streaming = true;
 
 		log.trace("PARTICIPANT {}: Publishing Sdp ({}) is {}", this.getParticipantPublicId(), sdpType, sdpResponse);
@@ -191,9 +222,67 @@ public class KurentoParticipant extends Participant {
 		endpointConfig.getCdr().recordNewPublisher(this, session.getSessionId(), publisher.getStreamId(),
 				publisher.getMediaOptions(), publisher.createdAt());
 
+		endpointConfig.getWebrtcStatsSampler().startSampling(this.session.getKms(), publisher);
+
 		return sdpResponse;
 	}
 
+	/**
+	 * Stores the stream id of the publisher and the subscriptions of the
+	 * participant before a media server migration releases its endpoints, so they
+	 * can be renegotiated with {@link #createMigratedPublishingEndpoint()} and
+	 * {@link #reconnectSubscription(Participant, String)}
+	 */
+	public void prepareIceRestart() {
+		this.migratedStreamId = this.isStreaming() ? this.getPublisher().getStreamId() : null;
+		this.migratedSubscriptions.clear();
+		this.subscribers.forEach((senderPublicId, subscriber) -> {
+			if (subscriber.isConnectedToPublisher()) {
+				this.migratedSubscriptions.put(senderPublicId, subscriber.isAudioOnly());
+			}
+		});
+	}
+
+	public String getMigratedStreamId() {
+		return this.migratedStreamId;
+	}
+
+	public boolean isMigratedSubscription(String senderPublicId) {
+		return this.migratedSubscriptions.containsKey(senderPublicId);
+	}
+
+	/**
+	 * Creates in the new MediaPipeline the PublisherEndpoint of the stream released
+	 * by a media server migration, keeping its stream id. It must then be
+	 * published with the ICE restart offer generated by the client on its existing
+	 * RTCPeerConnection
+	 */
+	public void createMigratedPublishingEndpoint() {
+		final String streamId = this.migratedStreamId;
+		if (streamId == null) {
+			throw new OpenViduException(Code.USER_NOT_STREAMING_ERROR_CODE,
+					"Participant " + this.getParticipantPublicId() + " has no stream to reconnect");
+		}
+		this.migratedStreamId = null;
+		this.createPublishingEndpoint(this.publisher.getMediaOptions(), streamId);
+	}
+
+	/**
+	 * Subscribes again in the new MediaPipeline to the stream of the sender,
+	 * after a media server migration released the subscription. The SDP offer is
+	 * the ICE restart offer generated by the client on its existing
+	 * RTCPeerConnection
+	 */
+	public String reconnectSubscription(Participant sender, String sdpOffer) {
+		Boolean audioOnly = this.migratedSubscriptions.remove(sender.getParticipantPublicId());
+		if (audioOnly == null) {
+			throw new OpenViduException(Code.USER_NOT_STREAMING_ERROR_CODE, "Participant "
+					+ this.getParticipantPublicId() + " has no subscription to reconnect to participant "
+					+ sender.getParticipantPublicId());
+		}
+		return this.receiveMediaFrom(sender, sdpOffer, audioOnly);
+	}
+
 	public void unpublishMedia(EndReason reason, long kmsDisconnectionTime) {
 		log.info("PARTICIPANT {}: unpublishing media stream from room {}", this.getParticipantPublicId(),
 				this.session.getSessionId());
@@ -204,7 +293,7 @@ public class KurentoParticipant extends Participant {
 				this.getParticipantPublicId());
 	}
 
-	public String receiveMediaFrom(Participant sender, String sdpOffer) {
+	public String receiveMediaFrom(Participant sender, String sdpOffer, boolean audioOnly) {
 		final String senderName = sender.getParticipantPublicId();
 
 		log.info("PARTICIPANT {}: Request to receive media from {} in room {}", this.getParticipantPublicId(),
@@ -227,13 +316,15 @@ public class KurentoParticipant extends Participant {
 		log.debug("PARTICIPANT {}: Creating a subscriber endpoint to user {}", this.getParticipantPublicId(),
 				senderName);
 
-		SubscriberEndpoint subscriber = getNewOrExistingSubscriber(senderName);
+		SubscriberEndpoint subscriber = requestSubscriber(senderName, true);
 
 		try {
 			CountDownLatch subscriberLatch = new CountDownLatch(1);
+			Timer.Sample sample = endpointConfig.getMetricsManager().startTimer();
 			Endpoint oldMediaEndpoint = subscriber.createEndpoint(subscriberLatch);
 			try {
-				if (!subscriberLatch.await(KurentoSession.ASYNC_LATCH_TIMEOUT, TimeUnit.SECONDS)) {
+				if (!endpointConfig.getBlockingTaskExecutor().await(subscriberLatch,
+						KurentoSession.ASYNC_LATCH_TIMEOUT, TimeUnit.SECONDS)) {
 					throw new OpenViduException(Code.MEDIA_ENDPOINT_ERROR_CODE,
 							"Timeout reached when creating subscriber endpoint");
 				}
@@ -249,8 +340,10 @@ public class KurentoParticipant extends Participant {
 				return null;
 			}
 			if (subscriber.getEndpoint() == null) {
+				endpointConfig.getMetricsManager().recordKmsCall("createEndpoint", sample, true);
 				throw new OpenViduException(Code.MEDIA_ENDPOINT_ERROR_CODE, "Unable to create subscriber endpoint");
 			}
+			endpointConfig.getMetricsManager().recordKmsCall("createEndpoint", sample, false);
 
 			String subscriberEndpointName = this.getParticipantPublicId() + "_" + kSender.getPublisherStreamId();
 
@@ -266,8 +359,10 @@ public class KurentoParticipant extends Participant {
 		}
 
 		log.debug("PARTICIPANT {}: Created subscriber endpoint for user {}", this.getParticipantPublicId(), senderName);
+		Timer.Sample sample = endpointConfig.getMetricsManager().startTimer();
 		try {
-			String sdpAnswer = subscriber.subscribe(sdpOffer, kSender.getPublisher());
+			String sdpAnswer = subscriber.subscribe(sdpOffer, kSender.getPublisher(), audioOnly);
+			endpointConfig.getMetricsManager().recordKmsCall("negotiateSdp", sample, false);
 			log.trace("PARTICIPANT {}: Subscribing SdpAnswer is {}", this.getParticipantPublicId(), sdpAnswer);
 			log.info("PARTICIPANT {}: Is now receiving video from {} in room {}", this.getParticipantPublicId(),
 					senderName, this.session.getSessionId());
@@ -275,10 +370,12 @@ public class KurentoParticipant extends Participant {
 			if (!ProtocolElements.RECORDER_PARTICIPANT_PUBLICID.equals(this.getParticipantPublicId())) {
 				endpointConfig.getCdr().recordNewSubscriber(this, this.session.getSessionId(),
 						sender.getPublisherStreamId(), sender.getParticipantPublicId(), subscriber.createdAt());
+				endpointConfig.getWebrtcStatsSampler().startSampling(this.session.getKms(), subscriber);
 			}
 
 			return sdpAnswer;
 		} catch (KurentoServerException e) {
+			endpointConfig.getMetricsManager().recordKmsCall("negotiateSdp", sample, true);
 			// TODO Check object status when KurentoClient sets this info in the object
 			if (e.getCode() == 40101) {
 				log.warn("Publisher endpoint was already released when trying "
@@ -307,6 +404,21 @@ public class KurentoParticipant extends Participant {
 		}
 	}
 
+	/**
+	 * Switches the subscription to the stream of the sender between receiving
+	 * only its audio or its audio and video, reusing the same subscriber endpoint
+	 */
+	public void setReceivingAudioOnly(String senderName, boolean audioOnly) {
+		SubscriberEndpoint subscriber = this.subscribers.get(senderName);
+		if (subscriber == null || subscriber.getEndpoint() == null || subscriber.getPublisher() == null) {
+			throw new OpenViduException(Code.USER_NOT_STREAMING_ERROR_CODE, "Participant "
+					+ this.getParticipantPublicId() + " is not receiving media from participant " + senderName);
+		}
+		subscriber.getPublisher().setSubscriberAudioOnly(subscriber, audioOnly);
+		log.info("PARTICIPANT {}: Is now receiving {} from {} in room {}", this.getParticipantPublicId(),
+				audioOnly ? "only audio" : "audio and video", senderName, this.session.getSessionId());
+	}
+
 	public void close(EndReason reason, boolean definitelyClosed, long kmsDisconnectionTime) {
 		log.debug("PARTICIPANT {}: Closing user", this.getParticipantPublicId());
 		if (isClosed()) {
@@ -314,6 +426,9 @@ public class KurentoParticipant extends Participant {
 			return;
 		}
 		this.closed = definitelyClosed;
+		if (definitelyClosed && this.batchedIceCandidates) {
+			endpointConfig.getIceCandidateBatcher().removeParticipant(this.getParticipantPrivateId());
+		}
 		Iterator<Entry<String, SubscriberEndpoint>> it = subscribers.entrySet().iterator();
 		while (it.hasNext()) {
 			final Entry<String, SubscriberEndpoint> entry = it.next();
@@ -346,32 +461,120 @@ public class KurentoParticipant extends Participant {
 	 * @return the endpoint instance
 	 */
 	public SubscriberEndpoint getNewOrExistingSubscriber(String senderPublicId) {
-		SubscriberEndpoint subscriberEndpoint = new SubscriberEndpoint(endpointType, this, senderPublicId,
-				this.getPipeline(), this.openviduConfig);
-
-		SubscriberEndpoint existingSendingEndpoint = this.subscribers.putIfAbsent(senderPublicId, subscriberEndpoint);
-		if (existingSendingEndpoint != null) {
-			subscriberEndpoint = existingSendingEndpoint;
+		SubscriberEndpoint subscriberEndpoint = this.subscribers.get(senderPublicId);
+		if (subscriberEndpoint != null) {
 			log.trace("PARTICIPANT {}: Already exists a subscriber endpoint to user {}", this.getParticipantPublicId(),
 					senderPublicId);
-		} else {
-			log.debug("PARTICIPANT {}: New subscriber endpoint to user {}", this.getParticipantPublicId(),
-					senderPublicId);
+			return subscriberEndpoint;
+		}
+		return this.subscribers.computeIfAbsent(senderPublicId, publicId -> {
+			log.debug("PARTICIPANT {}: New subscriber endpoint to user {}", this.getParticipantPublicId(), publicId);
+			return new SubscriberEndpoint(endpointType, this, publicId, this.getPipeline(), this.openviduConfig);
+		});
+	}
+
+	/**
+	 * Same as {@link #getNewOrExistingSubscriber(String)}, but the returned
+	 * endpoint is marked as requested by this participant
+	 *
+	 * @param subscribing true if the participant is subscribing, so the endpoint
+	 *                    is never reclaimed. Otherwise it is only kept during the
+	 *                    idle timeout
+	 */
+	private SubscriberEndpoint requestSubscriber(String senderPublicId, boolean subscribing) {
+		while (true) {
+			SubscriberEndpoint subscriberEndpoint = getNewOrExistingSubscriber(senderPublicId);
+			if (subscribing ? subscriberEndpoint.markSubscribed() : subscriberEndpoint.markRequested()) {
+				return subscriberEndpoint;
+			}
+			// Reclaimed concurrently. Make sure it is gone and create a new one
+			this.subscribers.remove(senderPublicId, subscriberEndpoint);
+		}
+	}
+
+	/**
+	 * Prepares in advance a subscriber endpoint to receive the stream of the
+	 * sender, according to property "openvidu.streams.subscription-policy"
+	 */
+	public void preloadSubscriber(String senderPublicId) {
+		switch (this.openviduConfig.getStreamsSubscriptionPolicy()) {
+		case lazy:
+			break;
+		case capped:
+			getNewOrExistingSubscriber(senderPublicId);
+			// Only the subscribers to the most recent publishers are kept
+			List<Entry<String, SubscriberEndpoint>> preloaded = this.subscribers.entrySet().stream()
+					.filter(entry -> entry.getValue().isPreloaded())
+					.sorted(Comparator.comparingLong(entry -> entry.getValue().getPreloadedAt()))
+					.collect(Collectors.toList());
+			int excess = preloaded.size() - this.openviduConfig.getStreamsSubscriptionCap();
+			for (int i = 0; i < excess; i++) {
+				reclaimSubscriber(preloaded.get(i).getKey(), preloaded.get(i).getValue());
+			}
+			break;
+		default:
+			getNewOrExistingSubscriber(senderPublicId);
 		}
+	}
 
-		return subscriberEndpoint;
+	/**
+	 * Discards the subscriber endpoints that this participant has not subscribed
+	 * to during the idle timeout: the ones prepared in advance and never requested,
+	 * and the ones that only received ICE candidates. They have no KMS endpoint
+	 * yet, so only server memory is released
+	 *
+	 * @return the number of subscriber endpoints discarded
+	 */
+	public int reclaimIdleSubscribers(long idleTimeoutMillis) {
+		long now = System.currentTimeMillis();
+		int reclaimed = 0;
+		for (Entry<String, SubscriberEndpoint> entry : this.subscribers.entrySet()) {
+			if (entry.getValue().tryReclaimIdle(now, idleTimeoutMillis)) {
+				this.subscribers.remove(entry.getKey(), entry.getValue());
+				log.trace("PARTICIPANT {}: Discarded idle subscriber endpoint to user {}",
+						this.getParticipantPublicId(), entry.getKey());
+				reclaimed++;
+			}
+		}
+		return reclaimed;
+	}
+
+	private boolean reclaimSubscriber(String senderPublicId, SubscriberEndpoint subscriberEndpoint) {
+		if (subscriberEndpoint.tryReclaim()) {
+			this.subscribers.remove(senderPublicId, subscriberEndpoint);
+			log.trace("PARTICIPANT {}: Discarded unused subscriber endpoint to user {}", this.getParticipantPublicId(),
+					senderPublicId);
+			return true;
+		}
+		return false;
 	}
 
 	public void addIceCandidate(String endpointName, IceCandidate iceCandidate) {
 		if (this.getParticipantPublicId().equals(endpointName)) {
 			this.publisher.addIceCandidate(iceCandidate);
 		} else {
-			this.getNewOrExistingSubscriber(endpointName).addIceCandidate(iceCandidate);
+			this.requestSubscriber(endpointName, false).addIceCandidate(iceCandidate);
+		}
+	}
+
+	public void addIceCandidates(String endpointName, List<IceCandidate> iceCandidates) {
+		if (this.getParticipantPublicId().equals(endpointName)) {
+			this.publisher.addIceCandidates(iceCandidates);
+		} else {
+			this.requestSubscriber(endpointName, false).addIceCandidates(iceCandidates);
 		}
 	}
 
 	public void sendIceCandidate(String senderPublicId, String endpointName, IceCandidate candidate) {
-		session.sendIceCandidate(this.getParticipantPrivateId(), senderPublicId, endpointName, candidate);
+		if (this.batchedIceCandidates) {
+			endpointConfig.getIceCandidateBatcher().add(this, senderPublicId, endpointName, candidate);
+		} else {
+			session.sendIceCandidate(this.getParticipantPrivateId(), senderPublicId, endpointName, candidate);
+		}
+	}
+
+	public void sendIceCandidates(String senderPublicId, String endpointName, List<IceCandidate> candidates) {
+		session.sendIceCandidates(this.getParticipantPrivateId(), senderPublicId, endpointName, candidates);
 	}
 
 	public void sendMediaError(ErrorEvent event) {
@@ -417,6 +620,8 @@ public class KurentoParticipant extends Participant {
 		final String senderName = senderKurentoParticipant.getParticipantPublicId();
 		if (subscriber != null) {
 
+			// Pending quality tier switches must skip the endpoint from now on
+			subscriber.setConnectedToPublisher(false);
 			subscriber.unregisterErrorListeners();
 			if (subscriber.kmsWebrtcStatsThread != null) {
 				subscriber.kmsWebrtcStatsThread.cancel(true);
@@ -424,10 +629,11 @@ public class KurentoParticipant extends Participant {
 
 			releaseElement(senderName, subscriber.getEndpoint());
 
-			// Stop PlayerEndpoint of IP CAM if last subscriber disconnected
 			final PublisherEndpoint senderPublisher = senderKurentoParticipant.publisher;
 			if (senderPublisher != null) {
 				// If no PublisherEndpoint, then it means that the publisher already closed it
+				senderPublisher.removeFromQualityTier(subscriber);
+				// Stop PlayerEndpoint of IP CAM if last subscriber disconnected
 				final KurentoMediaOptions options = (KurentoMediaOptions) senderPublisher.getMediaOptions();
 				if (options.onlyPlayWithSubscribers != null && options.onlyPlayWithSubscribers) {
 					synchronized (senderPublisher) {
@@ -504,11 +710,33 @@ public class KurentoParticipant extends Participant {
 		return this.sharedJson(MediaEndpoint::withStatsToJson);
 	}
 
+	public JsonObject webrtcStatsTimeSeriesToJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("connectionId", this.getParticipantPublicId());
+		JsonArray publisherEndpoints = new JsonArray();
+		if (this.streaming && this.publisher.getWebrtcStatsTimeSeries() != null) {
+			JsonObject publisherJson = this.publisher.getWebrtcStatsTimeSeries().toJson();
+			publisherJson.addProperty("streamId", this.publisher.getStreamId());
+			publisherEndpoints.add(publisherJson);
+		}
+		JsonArray subscriberEndpoints = new JsonArray();
+		for (MediaEndpoint sub : this.subscribers.values()) {
+			if (sub.getWebrtcStatsTimeSeries() != null) {
+				JsonObject subscriberJson = sub.getWebrtcStatsTimeSeries().toJson();
+				subscriberJson.addProperty("streamId", sub.getStreamId());
+				subscriberEndpoints.add(subscriberJson);
+			}
+		}
+		json.add("publishers", publisherEndpoints);
+		json.add("subscribers", subscriberEndpoints);
+		return json;
+	}
+
 	private JsonObject sharedJson(Function<MediaEndpoint, JsonObject> toJsonFunction) {
 		JsonObject json = super.toJson();
-		JsonArray publisherEnpoints = new JsonArray();
+		JsonArray publisherEndpoints = new JsonArray();
 		if (this.streaming && this.publisher.getEndpoint() != null) {
-			publisherEnpoints.add(toJsonFunction.apply(this.publisher));
+			publisherEndpoints.add(toJsonFunction.apply(this.publisher));
 		}
 		JsonArray subscriberEndpoints = new JsonArray();
 		for (MediaEndpoint sub : this.subscribers.values()) {
@@ -516,7 +744,7 @@ public class KurentoParticipant extends Participant {
 				subscriberEndpoints.add(toJsonFunction.apply(sub));
 			}
 		}
-		json.add("publishers", publisherEnpoints);
+		json.add("publishers", publisherEndpoints);
 		json.add("subscribers", subscriberEndpoints);
 		return json;
 	}
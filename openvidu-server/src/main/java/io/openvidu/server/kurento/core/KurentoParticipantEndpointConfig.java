@@ -30,6 +30,9 @@ import io.openvidu.server.config.InfoHandler;
 import io.openvidu.server.kurento.endpoint.KmsEvent;
 import io.openvidu.server.kurento.endpoint.KmsMediaEvent;
 import io.openvidu.server.kurento.endpoint.MediaEndpoint;
+import io.openvidu.server.kurento.endpoint.WebrtcStatsSampler;
+import io.openvidu.server.metrics.MetricsManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
 
 public class KurentoParticipantEndpointConfig {
 
@@ -41,6 +44,21 @@ public class KurentoParticipantEndpointConfig {
 	@Autowired
 	protected CallDetailRecord CDR;
 
+	@Autowired
+	protected WebrtcStatsSampler webrtcStatsSampler;
+
+	@Autowired
+	protected IceCandidateBatcher iceCandidateBatcher;
+
+	@Autowired
+	protected MetricsManager metricsManager;
+
+	@Autowired
+	protected PipelineLingerPool pipelineLingerPool;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
 	public void addEndpointListeners(MediaEndpoint endpoint, String typeOfEndpoint) {
 
 		// WebRtcEndpoint events
@@ -229,4 +247,24 @@ public class KurentoParticipantEndpointConfig {
 		return this.CDR;
 	}
 
+	public WebrtcStatsSampler getWebrtcStatsSampler() {
+		return this.webrtcStatsSampler;
+	}
+
+	public IceCandidateBatcher getIceCandidateBatcher() {
+		return this.iceCandidateBatcher;
+	}
+
+	public MetricsManager getMetricsManager() {
+		return this.metricsManager;
+	}
+
+	public PipelineLingerPool getPipelineLingerPool() {
+		return this.pipelineLingerPool;
+	}
+
+	public BlockingTaskExecutor getBlockingTaskExecutor() {
+		return this.blockingTaskExecutor;
+	}
+
 }
@@ -18,7 +18,9 @@
 package io.openvidu.server.kurento.core;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -27,10 +29,12 @@ import org.kurento.client.Continuation;
 import org.kurento.client.ErrorEvent;
 import org.kurento.client.EventListener;
 import org.kurento.client.IceCandidate;
+import org.kurento.client.ListenerSubscription;
 import org.kurento.client.MediaPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.client.internal.ProtocolElements;
@@ -50,6 +54,7 @@ public class KurentoSession extends Session {
 	public static final int ASYNC_LATCH_TIMEOUT = 30;
 
 	private MediaPipeline pipeline;
+	private ListenerSubscription pipelineErrorSubscription;
 	private CountDownLatch pipelineLatch = new CountDownLatch(1);
 	private Throwable pipelineCreationErrorCause;
 
@@ -59,6 +64,8 @@ public class KurentoSession extends Session {
 
 	private Object pipelineCreateLock = new Object();
 	private Object pipelineReleaseLock = new Object();
+	// Completed once the recorders still stopping in the pipeline are released
+	private CompletableFuture<Void> recordersReleased = CompletableFuture.completedFuture(null);
 
 	public final ConcurrentHashMap<String, String> publishedStreamIds = new ConcurrentHashMap<>();
 
@@ -79,6 +86,7 @@ public class KurentoSession extends Session {
 		KurentoParticipant kurentoParticipant = new KurentoParticipant(participant, this, this.kurentoEndpointConfig,
 				this.openviduConfig, this.recordingManager);
 		participants.put(participant.getParticipantPrivateId(), kurentoParticipant);
+		participantsByPublicId.put(participant.getParticipantPublicId(), kurentoParticipant);
 
 		log.info("SESSION {}: Added participant {}", sessionId, participant);
 
@@ -95,7 +103,7 @@ public class KurentoSession extends Session {
 			if (participant.equals(p)) {
 				continue;
 			}
-			((KurentoParticipant) p).getNewOrExistingSubscriber(participant.getParticipantPublicId());
+			((KurentoParticipant) p).preloadSubscriber(participant.getParticipantPublicId());
 		}
 
 		log.debug("SESSION {}: Virtually subscribed other participants {} to new publisher {}", sessionId,
@@ -146,8 +154,20 @@ public class KurentoSession extends Session {
 			}
 
 			participants.clear();
+			participantsByPublicId.clear();
+			connectionSignalBuckets.clear();
 
-			closePipeline(null);
+			CompletableFuture<Void> recorders;
+			synchronized (pipelineReleaseLock) {
+				recorders = this.recordersReleased;
+			}
+			if (!recorders.isDone()) {
+				// Neither released nor lingered until its recorders have finished their files
+				log.debug("SESSION {}: Waiting for recorders to stop before releasing the pipeline", sessionId);
+				recorders.whenComplete((result, cause) -> closePipeline(null));
+			} else if (!lingerPipeline(reason)) {
+				closePipeline(null);
+			}
 
 			log.debug("Session {} closed", this.sessionId);
 
@@ -173,6 +193,12 @@ public class KurentoSession extends Session {
 				candidate);
 	}
 
+	public void sendIceCandidates(String participantPrivateId, String senderPublicId, String endpointName,
+			List<IceCandidate> candidates) {
+		this.kurentoSessionHandler.onIceCandidates(sessionId, participantPrivateId, senderPublicId, endpointName,
+				candidates);
+	}
+
 	public void sendMediaError(String participantId, String description) {
 		this.kurentoSessionHandler.onMediaElementError(sessionId, participantId, description);
 	}
@@ -183,6 +209,10 @@ public class KurentoSession extends Session {
 
 		KurentoParticipant removedParticipant = (KurentoParticipant) participants
 				.remove(participant.getParticipantPrivateId());
+		if (removedParticipant != null) {
+			participantsByPublicId.remove(participant.getParticipantPublicId(), removedParticipant);
+		}
+		connectionSignalBuckets.remove(participant.getParticipantPrivateId());
 
 		log.debug("SESSION {}: Cancel receiving media from participant '{}' for other participant", this.sessionId,
 				participant.getParticipantPublicId());
@@ -197,7 +227,8 @@ public class KurentoSession extends Session {
 
 	public MediaPipeline getPipeline() {
 		try {
-			pipelineLatch.await(KurentoSession.ASYNC_LATCH_TIMEOUT, TimeUnit.SECONDS);
+			this.kurentoEndpointConfig.getBlockingTaskExecutor().await(pipelineLatch, KurentoSession.ASYNC_LATCH_TIMEOUT,
+					TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
@@ -209,26 +240,36 @@ public class KurentoSession extends Session {
 			if (pipeline != null) {
 				return;
 			}
-			log.info("SESSION {}: Creating MediaPipeline", sessionId);
-			try {
-				kms.getKurentoClient().createMediaPipeline(new Continuation<MediaPipeline>() {
-					@Override
-					public void onSuccess(MediaPipeline result) throws Exception {
-						pipeline = result;
-						pipelineLatch.countDown();
-						log.debug("SESSION {}: Created MediaPipeline", sessionId);
-					}
-
-					@Override
-					public void onError(Throwable cause) throws Exception {
-						pipelineCreationErrorCause = cause;
-						pipelineLatch.countDown();
-						log.error("SESSION {}: Failed to create MediaPipeline", sessionId, cause);
-					}
-				});
-			} catch (Exception e) {
-				log.error("Unable to create media pipeline for session '{}'", sessionId, e);
+			MediaPipeline lingeringPipeline = kurentoEndpointConfig.getPipelineLingerPool().claim(sessionId, kms);
+			if (lingeringPipeline != null) {
+				log.info("SESSION {}: Reusing lingering MediaPipeline", sessionId);
+				pipeline = lingeringPipeline;
 				pipelineLatch.countDown();
+			} else {
+				log.info("SESSION {}: Creating MediaPipeline", sessionId);
+				final Timer.Sample sample = kurentoEndpointConfig.getMetricsManager().startTimer();
+				try {
+					kms.getKurentoClient().createMediaPipeline(new Continuation<MediaPipeline>() {
+						@Override
+						public void onSuccess(MediaPipeline result) throws Exception {
+							pipeline = result;
+							kurentoEndpointConfig.getMetricsManager().recordKmsCall("createPipeline", sample, false);
+							pipelineLatch.countDown();
+							log.debug("SESSION {}: Created MediaPipeline", sessionId);
+						}
+
+						@Override
+						public void onError(Throwable cause) throws Exception {
+							pipelineCreationErrorCause = cause;
+							kurentoEndpointConfig.getMetricsManager().recordKmsCall("createPipeline", sample, true);
+							pipelineLatch.countDown();
+							log.error("SESSION {}: Failed to create MediaPipeline", sessionId, cause);
+						}
+					});
+				} catch (Exception e) {
+					log.error("Unable to create media pipeline for session '{}'", sessionId, e);
+					pipelineLatch.countDown();
+				}
 			}
 			if (getPipeline() == null) {
 				final String message = pipelineCreationErrorCause != null
@@ -238,7 +279,7 @@ public class KurentoSession extends Session {
 				throw new OpenViduException(Code.ROOM_CANNOT_BE_CREATED_ERROR_CODE, message);
 			}
 
-			pipeline.addErrorListener(new EventListener<ErrorEvent>() {
+			pipelineErrorSubscription = pipeline.addErrorListener(new EventListener<ErrorEvent>() {
 				@Override
 				public void onEvent(ErrorEvent event) {
 					String desc = event.getType() + ": " + event.getDescription() + "(errCode=" + event.getErrorCode()
@@ -250,6 +291,48 @@ public class KurentoSession extends Session {
 		}
 	}
 
+	/**
+	 * Hands the pipeline over to {@link PipelineLingerPool}, so it can be reused
+	 * if this session is reopened soon. Sessions explicitly closed or affected by
+	 * a Media Node failure release their pipeline as usual
+	 *
+	 * @return true if the pipeline has been handed over
+	 */
+	private boolean lingerPipeline(EndReason reason) {
+		if (EndReason.sessionClosedByServer.equals(reason) || EndReason.mediaServerDisconnect.equals(reason)
+				|| EndReason.openviduServerStopped.equals(reason) || EndReason.mediaServerMigration.equals(reason)) {
+			return false;
+		}
+		synchronized (pipelineReleaseLock) {
+			if (pipeline == null) {
+				return false;
+			}
+			try {
+				pipeline.removeErrorListener(pipelineErrorSubscription);
+			} catch (Exception e) {
+				log.warn("SESSION {}: Could not remove pipeline error listener: {}", sessionId, e.getMessage());
+				return false;
+			}
+			if (!kurentoEndpointConfig.getPipelineLingerPool().park(sessionId, kms, pipeline)) {
+				return false;
+			}
+			pipeline = null;
+			pipelineErrorSubscription = null;
+			pipelineLatch = new CountDownLatch(1);
+			return true;
+		}
+	}
+
+	/**
+	 * Delays the release of the pipeline on session close until the future
+	 * completes, whatever its result
+	 */
+	public void releasePipelineAfter(CompletableFuture<?> recorderReleased) {
+		synchronized (pipelineReleaseLock) {
+			this.recordersReleased = CompletableFuture.allOf(this.recordersReleased, recorderReleased);
+		}
+	}
+
 	private void closePipeline(Runnable callback) {
 		synchronized (pipelineReleaseLock) {
 			if (pipeline == null) {
@@ -289,6 +372,81 @@ public class KurentoSession extends Session {
 		return this.publishedStreamIds.get(streamId);
 	}
 
+	/**
+	 * Moves the session to another KMS. Every media endpoint is released and the
+	 * MediaPipeline is rebuilt in the new KMS. Publishers are then asked through an
+	 * "iceRestart" notification to restart ICE on their existing RTCPeerConnection,
+	 * keeping their stream id. Once a publisher has reconnected, its former
+	 * subscribers are asked to do the same with their subscriptions. No stream is
+	 * destroyed or created for any participant
+	 */
+	public void migrateToKms(Kms newKms) {
+
+		final Kms oldKms = this.kms;
+		log.info("Migration process: moving active session {} from KMS {} to KMS {}", this.sessionId,
+				oldKms.getId(), newKms.getId());
+
+		// Store MediaOptions for resetting PublisherEndpoints later
+		Map<String, MediaOptions> mediaOptionsMap = new HashMap<>();
+
+		// Close all MediaEndpoints of participants. Nobody is notified, as clients keep
+		// their RTCPeerConnections and renegotiate them
+		this.getParticipants().forEach(p -> {
+			KurentoParticipant kParticipant = (KurentoParticipant) p;
+			kParticipant.prepareIceRestart();
+			if (kParticipant.isStreaming()) {
+				mediaOptionsMap.put(kParticipant.getParticipantPublicId(),
+						kParticipant.getPublisher().getMediaOptions());
+			}
+			kParticipant.releaseAllFilters();
+			kParticipant.close(EndReason.mediaServerMigration, false, 0);
+		});
+
+		// Release pipeline in the old KMS and create a new one in the new KMS
+		this.closePipeline(() -> {
+			log.info("Migration process: media pipeline closed in KMS {} for active session {}", oldKms.getId(),
+					this.sessionId);
+			oldKms.removeKurentoSession(this.sessionId);
+			this.kms = newKms;
+			newKms.addKurentoSession(this);
+			createPipeline();
+			try {
+				if (!this.kurentoEndpointConfig.getBlockingTaskExecutor().await(pipelineLatch, 20,
+						TimeUnit.SECONDS)) {
+					throw new Exception("MediaPipeline was not created in 20 seconds");
+				}
+				getParticipants().forEach(p -> {
+					KurentoParticipant kParticipant = (KurentoParticipant) p;
+					if (!OpenViduRole.SUBSCRIBER.equals(p.getToken().getRole())) {
+						kParticipant.resetPublisherEndpoint(mediaOptionsMap.get(p.getParticipantPublicId()));
+					}
+					if (kParticipant.getMigratedStreamId() != null) {
+						kurentoSessionHandler.onIceRestart(p, p.getParticipantPublicId(),
+								kParticipant.getMigratedStreamId(), EndReason.mediaServerMigration);
+					}
+				});
+				log.info("Migration process: active session {} is now hosted by KMS {}", this.sessionId,
+						newKms.getId());
+			} catch (Exception e) {
+				log.error("Error waiting to new MediaPipeline on KurentoSession migration: {}", e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Asks every participant that was subscribed to the stream of the publisher
+	 * before a media server migration to restart ICE on its subscription, now that
+	 * the publisher has reconnected its stream
+	 */
+	public void reconnectSubscribersOf(KurentoParticipant publisher) {
+		for (Participant p : this.getParticipants()) {
+			if (((KurentoParticipant) p).isMigratedSubscription(publisher.getParticipantPublicId())) {
+				kurentoSessionHandler.onIceRestart(p, publisher.getParticipantPublicId(),
+						publisher.getPublisherStreamId(), EndReason.mediaServerMigration);
+			}
+		}
+	}
+
 	public void restartStatusInKurento(long kmsDisconnectionTime) {
 
 		log.info("Resetting process: resetting remote media objects for active session {}", this.sessionId);
@@ -324,7 +482,8 @@ public class KurentoSession extends Session {
 			log.info("Resetting process: media pipeline closed for active session {}", this.sessionId);
 			createPipeline();
 			try {
-				if (!pipelineLatch.await(20, TimeUnit.SECONDS)) {
+				if (!this.kurentoEndpointConfig.getBlockingTaskExecutor().await(pipelineLatch, 20,
+						TimeUnit.SECONDS)) {
 					throw new Exception("MediaPipeline was not created in 20 seconds");
 				}
 				getParticipants().forEach(p -> {
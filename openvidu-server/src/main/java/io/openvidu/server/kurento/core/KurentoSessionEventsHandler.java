@@ -17,13 +17,16 @@
 
 package io.openvidu.server.kurento.core;
 
+import java.util.List;
 import java.util.Set;
 
 import org.kurento.client.IceCandidate;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import io.openvidu.client.internal.ProtocolElements;
+import io.openvidu.server.core.EndReason;
 import io.openvidu.server.core.Participant;
 import io.openvidu.server.core.SessionEventsHandler;
 
@@ -44,6 +47,23 @@ public class KurentoSessionEventsHandler extends SessionEventsHandler {
 		rpcNotificationService.sendNotification(participantPrivateId, ProtocolElements.ICECANDIDATE_METHOD, params);
 	}
 
+	public void onIceCandidates(String roomName, String participantPrivateId, String senderPublicId,
+			String endpointName, List<IceCandidate> candidates) {
+		JsonArray candidatesArray = new JsonArray();
+		for (IceCandidate candidate : candidates) {
+			JsonObject candidateJson = new JsonObject();
+			candidateJson.addProperty(ProtocolElements.ICECANDIDATE_SDPMLINEINDEX_PARAM, candidate.getSdpMLineIndex());
+			candidateJson.addProperty(ProtocolElements.ICECANDIDATE_SDPMID_PARAM, candidate.getSdpMid());
+			candidateJson.addProperty(ProtocolElements.ICECANDIDATE_CANDIDATE_PARAM, candidate.getCandidate());
+			candidatesArray.add(candidateJson);
+		}
+		JsonObject params = new JsonObject();
+		params.addProperty(ProtocolElements.ICECANDIDATES_SENDERCONNECTIONID_PARAM, senderPublicId);
+		params.addProperty(ProtocolElements.ICECANDIDATES_EPNAME_PARAM, endpointName);
+		params.add(ProtocolElements.ICECANDIDATES_CANDIDATES_PARAM, candidatesArray);
+		rpcNotificationService.sendNotification(participantPrivateId, ProtocolElements.ICECANDIDATES_METHOD, params);
+	}
+
 	public void onPipelineError(String roomName, Set<Participant> participants, String description) {
 		JsonObject notifParams = new JsonObject();
 		notifParams.addProperty(ProtocolElements.MEDIAERROR_ERROR_PARAM, description);
@@ -59,6 +79,15 @@ public class KurentoSessionEventsHandler extends SessionEventsHandler {
 		rpcNotificationService.sendNotification(participantId, ProtocolElements.MEDIAERROR_METHOD, notifParams);
 	}
 
+	public void onIceRestart(Participant participant, String connectionId, String streamId, EndReason reason) {
+		JsonObject notifParams = new JsonObject();
+		notifParams.addProperty(ProtocolElements.ICERESTART_CONNECTIONID_PARAM, connectionId);
+		notifParams.addProperty(ProtocolElements.ICERESTART_STREAMID_PARAM, streamId);
+		notifParams.addProperty(ProtocolElements.ICERESTART_REASON_PARAM, reason.name());
+		rpcNotificationService.sendNotification(participant.getParticipantPrivateId(),
+				ProtocolElements.ICERESTART_METHOD, notifParams);
+	}
+
 	public void updateFilter(String roomName, Participant participant, String filterId, String state) {
 	}
 
@@ -24,6 +24,7 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -61,8 +62,11 @@ import io.openvidu.server.core.Token;
 import io.openvidu.server.kurento.endpoint.KurentoFilter;
 import io.openvidu.server.kurento.endpoint.PublisherEndpoint;
 import io.openvidu.server.kurento.endpoint.SdpType;
+import io.openvidu.server.kurento.endpoint.SubscriberEndpoint;
 import io.openvidu.server.kurento.kms.Kms;
 import io.openvidu.server.kurento.kms.KmsManager;
+import io.openvidu.server.kurento.kms.KmsManager.KmsLoad;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.rpc.RpcHandler;
 import io.openvidu.server.utils.GeoLocation;
 import io.openvidu.server.utils.JsonUtils;
@@ -80,6 +84,9 @@ public class KurentoSessionManager extends SessionManager {
 	@Autowired
 	private KurentoParticipantEndpointConfig kurentoEndpointConfig;
 
+	@Autowired
+	private PipelineLingerPool pipelineLingerPool;
+
 	@Override
 	public synchronized void joinRoom(Participant participant, String sessionId, Integer transactionId) {
 		Set<Participant> existingParticipants = null;
@@ -102,20 +109,30 @@ public class KurentoSessionManager extends SessionManager {
 				}
 
 				lockAcquired = true;
-				KmsManager.selectAndRemoveKmsLock.lock();
-
-				Kms lessLoadedKms = null;
-				try {
-					lessLoadedKms = this.kmsManager.getLessLoadedAndRunningKms();
-				} catch (NoSuchElementException e) {
-					// Restore session not active
-					this.cleanCollections(sessionId);
-					this.storeSessionNotActive(sessionNotActive);
-					throw new OpenViduException(Code.ROOM_CANNOT_BE_CREATED_ERROR_CODE,
-							"There is no available Media Node where to initialize session '" + sessionId + "'");
+				this.metricsManager.lock(KmsManager.selectAndRemoveKmsLock, MetricsManager.LOCK_KMS_SELECTION);
+
+				// A recently closed session is reopened in the Media Node where its media
+				// pipeline is still lingering
+				Kms lingeringKms = this.pipelineLingerPool.getKms(sessionId);
+				if (lingeringKms != null && this.kmsManager.getKms(lingeringKms.getId()) == lingeringKms) {
+					log.info("Session {} reopened in KMS {}, where its media pipeline is lingering", sessionId,
+							lingeringKms.getUri());
+					kSession = createSession(sessionNotActive, lingeringKms);
+				} else {
+					Kms lessLoadedKms = null;
+					try {
+						lessLoadedKms = this.kmsManager.getLessLoadedAndRunningKms();
+					} catch (NoSuchElementException e) {
+						// Restore session not active
+						this.cleanCollections(sessionId);
+						this.storeSessionNotActive(sessionNotActive);
+						throw new OpenViduException(Code.ROOM_CANNOT_BE_CREATED_ERROR_CODE,
+								"There is no available Media Node where to initialize session '" + sessionId + "'");
+					}
+					log.info("KMS less loaded is {} with a load of {}", lessLoadedKms.getUri(),
+							lessLoadedKms.getLoad());
+					kSession = createSession(sessionNotActive, lessLoadedKms);
 				}
-				log.info("KMS less loaded is {} with a load of {}", lessLoadedKms.getUri(), lessLoadedKms.getLoad());
-				kSession = createSession(sessionNotActive, lessLoadedKms);
 			}
 
 			if (kSession.isClosed()) {
@@ -127,6 +144,7 @@ public class KurentoSessionManager extends SessionManager {
 
 			existingParticipants = getParticipants(sessionId);
 			kSession.join(participant);
+			this.participantprivateidParticipant.put(participant.getParticipantPrivateId(), participant);
 		} catch (OpenViduException e) {
 			log.warn("PARTICIPANT {}: Error joining/creating session {}", participant.getParticipantPublicId(),
 					sessionId, e);
@@ -159,6 +177,7 @@ public class KurentoSessionManager extends SessionManager {
 					+ "' is trying to leave from session '" + sessionId + "' but it is closing");
 		}
 		session.leave(participant.getParticipantPrivateId(), reason);
+		this.participantprivateidParticipant.remove(participant.getParticipantPrivateId(), participant);
 
 		// Update control data structures
 
@@ -170,13 +189,7 @@ public class KurentoSessionManager extends SessionManager {
 				this.coturnCredentialsService.deleteUser(p.getToken().getTurnCredentials().getUsername());
 			}
 
-			boolean stillParticipant = false;
-			for (Session s : sessions.values()) {
-				if (s.getParticipantByPrivateId(p.getParticipantPrivateId()) != null) {
-					stillParticipant = true;
-					break;
-				}
-			}
+			boolean stillParticipant = this.participantprivateidParticipant.containsKey(p.getParticipantPrivateId());
 			if (!stillParticipant) {
 				insecureUsers.remove(p.getParticipantPrivateId());
 			}
@@ -210,7 +223,7 @@ public class KurentoSessionManager extends SessionManager {
 					recordingManager.initAutomaticRecordingStopThread(session);
 				} else {
 					try {
-						session.closingLock.writeLock().lock();
+						this.metricsManager.lock(session.closingLock.writeLock(), MetricsManager.LOCK_SESSION_CLOSING);
 						if (session.isClosed()) {
 							return false;
 						}
@@ -322,13 +335,13 @@ public class KurentoSessionManager extends SessionManager {
 					&& !recordingManager.sessionIsBeingRecorded(kSession.getSessionId())
 					&& !kSession.recordingManuallyStopped.get()) {
 				// Start automatic recording for sessions configured with RecordingMode.ALWAYS
-				new Thread(() -> {
+				blockingTaskExecutor.execute(() -> {
 					recordingManager.startRecording(kSession,
 							new RecordingProperties.Builder().name("")
 									.outputMode(kSession.getSessionProperties().defaultOutputMode())
 									.recordingLayout(kSession.getSessionProperties().defaultRecordingLayout())
 									.customLayout(kSession.getSessionProperties().defaultCustomLayout()).build());
-				}).start();
+				});
 			} else if (RecordingMode.MANUAL.equals(kSession.getSessionProperties().recordingMode())
 					&& recordingManager.sessionIsBeingRecorded(kSession.getSessionId())) {
 				// Abort automatic recording stop (user published before timeout)
@@ -388,12 +401,18 @@ public class KurentoSessionManager extends SessionManager {
 	}
 
 	@Override
-	public void subscribe(Participant participant, String senderName, String sdpOffer, Integer transactionId) {
+	public void subscribe(Participant participant, String senderName, String sdpOffer, Boolean audioOnly,
+			Integer transactionId) {
 		String sdpAnswer = null;
 		Session session = null;
 		try {
-			log.debug("Request [SUBSCRIBE] remoteParticipant={} sdpOffer={} ({})", senderName, sdpOffer,
-					participant.getParticipantPublicId());
+			log.debug("Request [SUBSCRIBE] remoteParticipant={} audioOnly={} sdpOffer={} ({})", senderName, audioOnly,
+					sdpOffer, participant.getParticipantPublicId());
+
+			if (audioOnly == null) {
+				KurentoTokenOptions tokenOptions = participant.getToken().getKurentoTokenOptions();
+				audioOnly = tokenOptions != null && Boolean.TRUE.equals(tokenOptions.getReceiveAudioOnly());
+			}
 
 			KurentoParticipant kParticipant = (KurentoParticipant) participant;
 			session = ((KurentoParticipant) participant).getSession();
@@ -416,7 +435,7 @@ public class KurentoSessionManager extends SessionManager {
 						"User '" + senderName + " not streaming media in session '" + session.getSessionId() + "'");
 			}
 
-			sdpAnswer = kParticipant.receiveMediaFrom(senderParticipant, sdpOffer);
+			sdpAnswer = kParticipant.receiveMediaFrom(senderParticipant, sdpOffer, audioOnly);
 			if (sdpAnswer == null) {
 				throw new OpenViduException(Code.MEDIA_SDP_ERROR_CODE,
 						"Unable to generate SDP answer when subscribing '" + participant.getParticipantPublicId()
@@ -453,6 +472,110 @@ public class KurentoSessionManager extends SessionManager {
 		sessionEventsHandler.onUnsubscribe(participant, transactionId, null);
 	}
 
+	/**
+	 * Renegotiates a stream released by a media server migration with the ICE
+	 * restart offer generated by the client on its existing RTCPeerConnection. The
+	 * stream may be the one published by the participant or one it was subscribed
+	 * to. Former subscribers of a publisher are asked to reconnect once the
+	 * publisher has reconnected
+	 */
+	@Override
+	public void reconnectStream(Participant participant, String streamId, String sdpOffer, Integer transactionId) {
+		log.debug("Request [RECONNECT_STREAM] streamId={} sdpOffer={} ({})", streamId, sdpOffer,
+				participant.getParticipantPublicId());
+
+		KurentoParticipant kParticipant = (KurentoParticipant) participant;
+		KurentoSession kSession = kParticipant.getSession();
+		boolean isPublisher = streamId.equals(kParticipant.getMigratedStreamId());
+		String sdpAnswer = null;
+		try {
+			if (isPublisher) {
+				kParticipant.createMigratedPublishingEndpoint();
+				KurentoMediaOptions kurentoOptions = (KurentoMediaOptions) kParticipant.getPublisherMediaOptions();
+				if (kurentoOptions.getFilter() != null) {
+					this.applyFilterInPublisher(kParticipant, kurentoOptions.getFilter());
+				}
+				sdpAnswer = kParticipant.publishToRoom(SdpType.OFFER, sdpOffer, kurentoOptions.doLoopback);
+				if (sdpAnswer != null) {
+					kSession.newPublisher(participant);
+				}
+			} else {
+				String senderPrivateId = kSession.getParticipantPrivateIdFromStreamId(streamId);
+				Participant sender = senderPrivateId != null ? kSession.getParticipantByPrivateId(senderPrivateId)
+						: null;
+				if (sender == null) {
+					throw new OpenViduException(Code.USER_NOT_STREAMING_ERROR_CODE,
+							"Stream '" + streamId + "' is not published in session '" + kSession.getSessionId() + "'");
+				}
+				sdpAnswer = kParticipant.reconnectSubscription(sender, sdpOffer);
+			}
+			if (sdpAnswer == null) {
+				throw new OpenViduException(Code.MEDIA_SDP_ERROR_CODE, "Unable to generate SDP answer when reconnecting '"
+						+ participant.getParticipantPublicId() + "' to stream '" + streamId + "'");
+			}
+		} catch (OpenViduException e) {
+			log.error("PARTICIPANT {}: Error reconnecting stream {}", participant.getParticipantPublicId(), streamId, e);
+			sessionEventsHandler.onReconnectStream(participant, null, transactionId, e);
+			return;
+		}
+		sessionEventsHandler.onReconnectStream(participant, sdpAnswer, transactionId, null);
+		if (isPublisher) {
+			kSession.reconnectSubscribersOf(kParticipant);
+		}
+	}
+
+	/**
+	 * Forwards to every participant of the session only the video of the first
+	 * "lastN" streams it is subscribed to, following the ranking of active
+	 * speakers. The audio of every stream is always forwarded. Audio-only
+	 * subscriptions do not take any of the "lastN" places
+	 *
+	 * @param ranking Public ids of the publishers of the session, from the most to
+	 *                the least active speaker
+	 */
+	public void applyLastN(KurentoSession session, List<String> ranking, int lastN) {
+		for (Participant participant : session.getParticipants()) {
+			if (ProtocolElements.RECORDER_PARTICIPANT_PUBLICID.equals(participant.getParticipantPublicId())) {
+				continue;
+			}
+			KurentoParticipant kParticipant = (KurentoParticipant) participant;
+			int forwarded = 0;
+			for (String publisherId : ranking) {
+				SubscriberEndpoint subscriber = kParticipant.getSubscriber(publisherId);
+				if (subscriber == null || subscriber.getPublisher() == null || !subscriber.isConnectedToPublisher()
+						|| subscriber.isAudioOnly()) {
+					continue;
+				}
+				boolean forward = forwarded < lastN;
+				if (forward) {
+					forwarded++;
+				}
+				try {
+					subscriber.getPublisher().setSubscriberVideoSuspended(subscriber, !forward);
+				} catch (Exception e) {
+					log.warn("PARTICIPANT {}: Error updating video forwarding from {}: {}",
+							participant.getParticipantPublicId(), publisherId, e.getMessage());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void updateSubscription(Participant participant, String senderName, boolean audioOnly,
+			Integer transactionId) {
+		log.debug("Request [UPDATE_SUBSCRIPTION] remoteParticipant={} audioOnly={} ({})", senderName, audioOnly,
+				participant.getParticipantPublicId());
+		try {
+			((KurentoParticipant) participant).setReceivingAudioOnly(senderName, audioOnly);
+		} catch (OpenViduException e) {
+			log.warn("PARTICIPANT {}: Error updating subscription to {}: {}", participant.getParticipantPublicId(),
+					senderName, e.getMessage());
+			sessionEventsHandler.onUpdateSubscription(participant, transactionId, e);
+			return;
+		}
+		sessionEventsHandler.onUpdateSubscription(participant, transactionId, null);
+	}
+
 	@Override
 	public void streamPropertyChanged(Participant participant, Integer transactionId, String streamId, String property,
 			JsonElement newValue, String reason) {
@@ -504,6 +627,75 @@ public class KurentoSessionManager extends SessionManager {
 		}
 	}
 
+	@Override
+	public void onIceCandidates(Participant participant, String endpointName, List<IceCandidate> candidates,
+			Integer transactionId) {
+		try {
+			KurentoParticipant kParticipant = (KurentoParticipant) participant;
+			log.debug("Request [ICE_CANDIDATES] endpoint={} candidates={} ({})", endpointName, candidates.size(),
+					participant.getParticipantPublicId());
+			kParticipant.addIceCandidates(endpointName, candidates);
+			sessionEventsHandler.onRecvIceCandidate(participant, transactionId, null);
+		} catch (OpenViduException e) {
+			log.error("PARTICIPANT {}: Error receiving {} ICE candidates (epName={})",
+					participant.getParticipantPublicId(), candidates.size(), endpointName, e);
+			sessionEventsHandler.onRecvIceCandidate(participant, transactionId, e);
+		}
+	}
+
+	/**
+	 * Moves an active session to the indicated KMS. If no KMS is indicated, the
+	 * less loaded connected KMS different than the current one is chosen. Sessions
+	 * being recorded cannot be migrated
+	 *
+	 * @throws OpenViduException if the session cannot be migrated
+	 */
+	@Override
+	public void migrateSession(Session session, String mediaNodeId) throws OpenViduException {
+		KurentoSession kSession = (KurentoSession) session;
+		if (this.recordingManager.sessionIsBeingRecorded(session.getSessionId())) {
+			throw new OpenViduException(Code.ROOM_GENERIC_ERROR_CODE,
+					"Session '" + session.getSessionId() + "' is being recorded and cannot be migrated");
+		}
+
+		Kms targetKms = null;
+		try {
+			this.metricsManager.lock(KmsManager.selectAndRemoveKmsLock, MetricsManager.LOCK_KMS_SELECTION);
+			if (mediaNodeId != null) {
+				targetKms = this.kmsManager.getKms(mediaNodeId);
+			} else {
+				targetKms = this.kmsManager.getKmssSortedByLoad().stream().map(KmsLoad::getKms)
+						.filter(kms -> kms.isKurentoClientConnected() && !kms.getId().equals(kSession.getMediaNodeId()))
+						.findFirst().orElse(null);
+			}
+		} finally {
+			KmsManager.selectAndRemoveKmsLock.unlock();
+		}
+		if (targetKms == null && mediaNodeId != null) {
+			throw new OpenViduException(Code.MEDIA_NODE_NOT_FOUND_ERROR_CODE,
+					"Media Node '" + mediaNodeId + "' does not exist");
+		}
+		if (targetKms == null || !targetKms.isKurentoClientConnected()) {
+			throw new OpenViduException(Code.MEDIA_GENERIC_ERROR_CODE,
+					"There is no available Media Node where to migrate session '" + session.getSessionId() + "'");
+		}
+		if (targetKms.getId().equals(kSession.getMediaNodeId())) {
+			throw new OpenViduException(Code.MEDIA_GENERIC_ERROR_CODE, "Session '" + session.getSessionId()
+					+ "' is already hosted by Media Node '" + targetKms.getId() + "'");
+		}
+
+		try {
+			this.metricsManager.lock(session.closingLock.readLock(), MetricsManager.LOCK_SESSION_CLOSING);
+			if (session.isClosed()) {
+				throw new OpenViduException(Code.ROOM_CLOSED_ERROR_CODE,
+						"Session '" + session.getSessionId() + "' is closed");
+			}
+			kSession.migrateToKms(targetKms);
+		} finally {
+			session.closingLock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * Creates a session with the already existing not-active session in the
 	 * indicated KMS, if it doesn't already exist
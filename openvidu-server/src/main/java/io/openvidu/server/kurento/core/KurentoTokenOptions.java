@@ -31,6 +31,7 @@ public class KurentoTokenOptions {
 	private Integer videoMinRecvBandwidth;
 	private Integer videoMaxSendBandwidth;
 	private Integer videoMinSendBandwidth;
+	private Boolean receiveAudioOnly;
 	private Map<String, Boolean> allowedFilters = new ConcurrentHashMap<>();
 
 	public KurentoTokenOptions(JsonObject options) {
@@ -46,6 +47,9 @@ public class KurentoTokenOptions {
 		if (options.has("videoMinSendBandwidth")) {
 			this.videoMinSendBandwidth = options.get("videoMinSendBandwidth").getAsInt();
 		}
+		if (options.has("receiveAudioOnly")) {
+			this.receiveAudioOnly = options.get("receiveAudioOnly").getAsBoolean();
+		}
 		if (options.has("allowedFilters")) {
 			JsonArray filters = options.get("allowedFilters").getAsJsonArray();
 			Iterator<JsonElement> it = filters.iterator();
@@ -71,6 +75,14 @@ public class KurentoTokenOptions {
 		return videoMinSendBandwidth;
 	}
 
+	/**
+	 * Whether the participant owning the token subscribes only to the audio of
+	 * the streams when not specified in the subscription request
+	 */
+	public Boolean getReceiveAudioOnly() {
+		return receiveAudioOnly;
+	}
+
 	public String[] getAllowedFilters() {
 		return allowedFilters.keySet().stream().toArray(String[]::new);
 	}
@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.kurento.kms.Kms;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Keeps the media pipeline of a closed session alive in its Media Node during
+ * property "openvidu.sessions.pipeline-linger" seconds. If the same session is
+ * reopened before that time, it is initialized in the same Media Node and it
+ * adopts the lingering pipeline instead of asking KMS for a new one. Otherwise
+ * the pipeline is released
+ */
+public class PipelineLingerPool {
+
+	private static final Logger log = LoggerFactory.getLogger(PipelineLingerPool.class);
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final Map<String, LingeringPipeline> pipelines = new ConcurrentHashMap<>();
+
+	private volatile boolean closed = false;
+
+	private class LingeringPipeline {
+
+		final MediaPipeline pipeline;
+		final Kms kms;
+		final long kmsConnectionTime;
+		ScheduledFuture<?> releaseTask;
+
+		LingeringPipeline(MediaPipeline pipeline, Kms kms) {
+			this.pipeline = pipeline;
+			this.kms = kms;
+			this.kmsConnectionTime = kms.getTimeOfKurentoClientConnection();
+		}
+
+		/**
+		 * A pipeline is only valid while the connection to its KMS is the one that
+		 * existed when it was parked. A reconnection may mean a restarted KMS
+		 */
+		boolean isAlive() {
+			return this.kms.isKurentoClientConnected()
+					&& this.kms.getTimeOfKurentoClientConnection() == this.kmsConnectionTime;
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		if (this.isEnabled()) {
+			log.info("Media pipelines of closed sessions will be kept alive for {} seconds",
+					this.openviduConfig.getSessionsPipelineLinger());
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		this.closed = true;
+		List<String> sessionIds = new ArrayList<>(this.pipelines.keySet());
+		sessionIds.forEach(sessionId -> {
+			LingeringPipeline lingering = this.pipelines.remove(sessionId);
+			if (lingering != null) {
+				this.release(sessionId, lingering);
+			}
+		});
+	}
+
+	public boolean isEnabled() {
+		return this.openviduConfig.getSessionsPipelineLinger() > 0;
+	}
+
+	/**
+	 * Keeps the pipeline of a closed session alive
+	 *
+	 * @return false if the pipeline cannot linger, so it must be released by the
+	 *         caller
+	 */
+	public boolean park(String sessionId, Kms kms, MediaPipeline pipeline) {
+		if (!this.isEnabled() || this.closed || !kms.isKurentoClientConnected()) {
+			return false;
+		}
+		LingeringPipeline lingering = new LingeringPipeline(pipeline, kms);
+		lingering.releaseTask = this.blockingTaskExecutor.schedule(() -> {
+			if (this.pipelines.remove(sessionId, lingering)) {
+				log.info("Media pipeline of session {} has not been reused in {} seconds", sessionId,
+						this.openviduConfig.getSessionsPipelineLinger());
+				this.release(sessionId, lingering);
+			}
+		}, this.openviduConfig.getSessionsPipelineLinger(), TimeUnit.SECONDS);
+		LingeringPipeline previous = this.pipelines.put(sessionId, lingering);
+		if (previous != null) {
+			previous.releaseTask.cancel(false);
+			this.release(sessionId, previous);
+		}
+		log.info("Media pipeline of closed session {} lingering in Media Node {}", sessionId, kms.getId());
+		return true;
+	}
+
+	/**
+	 * @return the Media Node where the session has a lingering pipeline, or null
+	 *         if there is none
+	 */
+	public Kms getKms(String sessionId) {
+		LingeringPipeline lingering = this.pipelines.get(sessionId);
+		return (lingering != null && lingering.isAlive()) ? lingering.kms : null;
+	}
+
+	/**
+	 * Takes the lingering pipeline of the session out of the pool
+	 *
+	 * @return the pipeline, or null if the session has no valid pipeline lingering
+	 *         in the given Media Node
+	 */
+	public MediaPipeline claim(String sessionId, Kms kms) {
+		LingeringPipeline lingering = this.pipelines.get(sessionId);
+		if (lingering == null || lingering.kms != kms || !this.pipelines.remove(sessionId, lingering)) {
+			return null;
+		}
+		lingering.releaseTask.cancel(false);
+		if (!lingering.isAlive()) {
+			log.warn("Lingering media pipeline of session {} discarded: Media Node {} has been disconnected",
+					sessionId, kms.getId());
+			return null;
+		}
+		return lingering.pipeline;
+	}
+
+	private void release(String sessionId, LingeringPipeline lingering) {
+		if (!lingering.isAlive()) {
+			return;
+		}
+		try {
+			lingering.pipeline.release(new Continuation<Void>() {
+				@Override
+				public void onSuccess(Void result) throws Exception {
+					log.debug("Released lingering media pipeline of session {}", sessionId);
+				}
+
+				@Override
+				public void onError(Throwable cause) throws Exception {
+					log.warn("Could not release lingering media pipeline of session {}: {}", sessionId,
+							cause.getMessage());
+				}
+			});
+		} catch (Exception e) {
+			log.warn("Could not release lingering media pipeline of session {}: {}", sessionId, e.getMessage());
+		}
+	}
+
+}
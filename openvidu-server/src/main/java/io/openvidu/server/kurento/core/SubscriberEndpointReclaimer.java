@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.core;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.Participant;
+import io.openvidu.server.core.Session;
+import io.openvidu.server.core.SessionManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Periodically discards the subscriber endpoints the participants have not
+ * subscribed to during property "openvidu.streams.subscription-idle-timeout":
+ * the ones prepared in advance (see property
+ * "openvidu.streams.subscription-policy") and the ones that only received ICE
+ * candidates. Server memory depends on the actual subscriptions and not on the
+ * square of the number of participants
+ */
+public class SubscriberEndpointReclaimer {
+
+	private static final Logger log = LoggerFactory.getLogger(SubscriberEndpointReclaimer.class);
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected SessionManager sessionManager;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private ScheduledFuture<?> reclaimerTask;
+
+	@PostConstruct
+	public void init() {
+		int idleTimeout = this.openviduConfig.getStreamsSubscriptionIdleTimeout();
+		if (idleTimeout > 0) {
+			long period = Math.max(1, idleTimeout / 2);
+			this.reclaimerTask = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					this.reclaim(TimeUnit.SECONDS.toMillis(idleTimeout));
+				} catch (Exception e) {
+					log.error("Error discarding unused subscriber endpoints: {}", e.getMessage());
+				}
+			}, period, period, TimeUnit.SECONDS);
+			log.info("Unused subscriber endpoints will be discarded after {} seconds", idleTimeout);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.reclaimerTask != null) {
+			this.reclaimerTask.cancel(false);
+		}
+	}
+
+	private void reclaim(long idleTimeoutMillis) {
+		int reclaimed = 0;
+		for (Session session : this.sessionManager.getSessions()) {
+			for (Participant participant : session.getParticipants()) {
+				reclaimed += ((KurentoParticipant) participant).reclaimIdleSubscribers(idleTimeoutMillis);
+			}
+		}
+		if (reclaimed > 0) {
+			log.debug("Discarded {} idle subscriber endpoints", reclaimed);
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.core;
+
+public enum SubscriptionPolicy {
+
+	/*
+	 * A subscriber endpoint is prepared for every participant as soon as a stream
+	 * is published
+	 */
+	eager,
+
+	/*
+	 * Subscriber endpoints are only created when the participant subscribes to the
+	 * stream
+	 */
+	lazy,
+
+	/*
+	 * Subscriber endpoints are prepared for the streams of the most recent
+	 * publishers, up to property "openvidu.streams.subscription-cap"
+	 */
+	capped
+
+}
@@ -36,6 +36,7 @@ import org.kurento.client.OnIceCandidateEvent;
 import org.kurento.client.PlayerEndpoint;
 import org.kurento.client.RtpEndpoint;
 import org.kurento.client.SdpEndpoint;
+import org.kurento.client.Transaction;
 import org.kurento.client.WebRtcEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,6 +94,7 @@ public abstract class MediaEndpoint {
 	public String selectedRemoteIceCandidate;
 	public Queue<KmsEvent> kmsEvents = new ConcurrentLinkedQueue<>();
 	public Future<?> kmsWebrtcStatsThread;
+	private WebrtcStatsTimeSeries webrtcStatsTimeSeries;
 
 	/**
 	 * Constructor to set the owner, the endpoint's name and the media pipeline.
@@ -237,6 +239,14 @@ public abstract class MediaEndpoint {
 		this.endpointName = endpointName;
 	}
 
+	public WebrtcStatsTimeSeries getWebrtcStatsTimeSeries() {
+		return this.webrtcStatsTimeSeries;
+	}
+
+	public void setWebrtcStatsTimeSeries(WebrtcStatsTimeSeries webrtcStatsTimeSeries) {
+		this.webrtcStatsTimeSeries = webrtcStatsTimeSeries;
+	}
+
 	public String getStreamId() {
 		return streamId;
 	}
@@ -362,6 +372,39 @@ public abstract class MediaEndpoint {
 		}
 	}
 
+	/**
+	 * Adds several {@link IceCandidate}s gathered by the remote peer of this
+	 * {@link WebRtcEndpoint} with a single Kurento transaction
+	 *
+	 * @param candidates the remote candidates
+	 */
+	public synchronized void addIceCandidates(List<IceCandidate> candidates) throws OpenViduException {
+		if (!this.isWeb()) {
+			throw new OpenViduException(Code.MEDIA_NOT_A_WEB_ENDPOINT_ERROR_CODE, "Operation not supported");
+		}
+		if (webEndpoint == null) {
+			this.candidates.addAll(candidates);
+			return;
+		}
+		Transaction tx = this.getPipeline().beginTransaction();
+		for (IceCandidate candidate : candidates) {
+			this.receivedCandidateList.add(candidate);
+			this.webEndpoint.addIceCandidate(tx, candidate);
+		}
+		tx.commit(new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				log.trace("{} ice candidates added to the internal endpoint", candidates.size());
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				log.warn("EP {}: Failed to add {} ice candidates to the internal endpoint", endpointName,
+						candidates.size(), cause);
+			}
+		});
+	}
+
 	/**
 	 * Registers a listener for when the {@link MediaElement} triggers an
 	 * {@link ErrorEvent}. Notifies the owner with the error.
@@ -546,6 +589,10 @@ public abstract class MediaEndpoint {
 		});
 		json.add("events", jsonArray);
 
+		if (this.webrtcStatsTimeSeries != null) {
+			json.add("stats", this.webrtcStatsTimeSeries.toJson());
+		}
+
 		return json;
 	}
 }
@@ -28,6 +28,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 
 import org.kurento.client.Continuation;
+import org.kurento.client.FilterType;
+import org.kurento.client.GStreamerFilter;
 import org.kurento.client.GenericMediaElement;
 import org.kurento.client.ListenerSubscription;
 import org.kurento.client.MediaElement;
@@ -74,6 +76,15 @@ public class PublisherEndpoint extends MediaEndpoint {
 
 	private Map<String, ListenerSubscription> elementsErrorSubscriptions = new HashMap<String, ListenerSubscription>();
 
+	// Transcoding branches connected to the PassThrough, one per quality tier with
+	// subscribers. Level 0 is the original stream (the PassThrough itself) and
+	// level N the N-th configured tier
+	private Map<Integer, GStreamerFilter> qualityTierFilters = new HashMap<>();
+	private Map<Integer, Integer> qualityTierSubscribers = new HashMap<>();
+
+	// SDP answer of the publishing negotiation, listing the codecs in use
+	private volatile String negotiatedSdp;
+
 	public int numberOfSubscribers = 0;
 
 	public PublisherEndpoint(EndpointType endpointType, KurentoParticipant owner, String endpointName,
@@ -105,9 +116,20 @@ public class PublisherEndpoint extends MediaEndpoint {
 		if (passThru != null) {
 			elements.put(passThru.getId(), passThru);
 		}
+		for (GStreamerFilter tierFilter : qualityTierFilters.values()) {
+			elements.put(tierFilter.getId(), tierFilter);
+		}
 		return elements.values();
 	}
 
+	/**
+	 * @return the SDP answer of the publishing negotiation, or null if the
+	 *         endpoint is not publishing yet
+	 */
+	public String getNegotiatedSdp() {
+		return this.negotiatedSdp;
+	}
+
 	public GenericMediaElement getFilter() {
 		return this.filter;
 	}
@@ -187,9 +209,11 @@ public class PublisherEndpoint extends MediaEndpoint {
 		switch (sdpType) {
 		case ANSWER:
 			sdpResponse = processAnswer(sdpString);
+			this.negotiatedSdp = sdpString;
 			break;
 		case OFFER:
 			sdpResponse = processOffer(sdpString);
+			this.negotiatedSdp = sdpResponse;
 			break;
 		default:
 			throw new OpenViduException(Code.MEDIA_SDP_ERROR_CODE, "Sdp type not supported: " + sdpType);
@@ -231,6 +255,124 @@ public class PublisherEndpoint extends MediaEndpoint {
 		internalSinkDisconnect(passThru, sink);
 	}
 
+	/**
+	 * Moves the video of a subscriber to another quality tier. Every tier is a
+	 * single transcoding branch shared by all the subscribers receiving it, created
+	 * when its first subscriber joins and released when its last one leaves. Audio
+	 * is always received from the PassThrough
+	 *
+	 * @param level 0 for the original stream, N for the N-th configured tier
+	 * @param tier  the tier to move to, or null if level is 0
+	 */
+	public synchronized void switchQualityTier(SubscriberEndpoint subscriber, int level, QualityTier tier) {
+		int currentLevel = subscriber.getQualityTier();
+		// The switch is asynchronous: the subscriber may have been released since it
+		// was requested, and its endpoint must not join a tier again
+		if (currentLevel == level || !subscriber.isConnectedToPublisher() || !subscriber.isVideoConnected()
+				|| passThru == null || subscriber.getEndpoint() == null) {
+			return;
+		}
+		MediaElement source = passThru;
+		if (level > 0) {
+			source = qualityTierFilters.get(level);
+			if (source == null) {
+				source = createQualityTierFilter(level, tier);
+			}
+			qualityTierSubscribers.merge(level, 1, Integer::sum);
+		}
+		// A sink only admits one source per media type, so connecting the new source
+		// replaces the previous one without interrupting the audio
+		internalSinkConnect(source, subscriber.getEndpoint(), MediaType.VIDEO);
+		subscriber.setQualityTier(level);
+		leaveQualityTier(currentLevel);
+		log.info("EP {}: subscriber {} moved from quality tier {} to {}", getEndpointName(),
+				subscriber.getEndpointName(), currentLevel, level > 0 ? tier : "original");
+	}
+
+	/**
+	 * Disconnects the video of the subscriber, which keeps receiving the audio, or
+	 * connects it again. The subscriber endpoint is not renegotiated, so video can
+	 * only be connected if it was included in the subscriber's SDP offer
+	 */
+	public synchronized void setSubscriberAudioOnly(SubscriberEndpoint subscriber, boolean audioOnly) {
+		if (!audioOnly && !subscriber.isVideoNegotiated()) {
+			throw new OpenViduException(Code.MEDIA_SDP_ERROR_CODE, "Subscriber " + subscriber.getEndpointName()
+					+ " did not negotiate video. It must subscribe again to receive video");
+		}
+		subscriber.setAudioOnly(audioOnly);
+		updateSubscriberVideo(subscriber);
+	}
+
+	/**
+	 * Stops or resumes forwarding video to the subscriber because of the active
+	 * speakers of the session, regardless of its audio-only mode
+	 */
+	public synchronized void setSubscriberVideoSuspended(SubscriberEndpoint subscriber, boolean suspended) {
+		subscriber.setVideoSuspended(suspended);
+		updateSubscriberVideo(subscriber);
+	}
+
+	private void updateSubscriberVideo(SubscriberEndpoint subscriber) {
+		boolean forward = !subscriber.isAudioOnly() && !subscriber.isVideoSuspended();
+		if (forward == subscriber.isVideoConnected() || passThru == null || subscriber.getEndpoint() == null) {
+			return;
+		}
+		if (forward) {
+			internalSinkConnect(passThru, subscriber.getEndpoint(), MediaType.VIDEO);
+		} else {
+			int level = subscriber.getQualityTier();
+			MediaElement source = level > 0 ? qualityTierFilters.get(level) : passThru;
+			if (source != null) {
+				internalSinkDisconnect(source, subscriber.getEndpoint(), MediaType.VIDEO);
+			}
+			removeFromQualityTier(subscriber);
+		}
+		subscriber.setVideoConnected(forward);
+	}
+
+	/**
+	 * Must be called when a subscriber of this publisher is released, so the
+	 * transcoding branch of its quality tier can be released if unused
+	 */
+	public synchronized void removeFromQualityTier(SubscriberEndpoint subscriber) {
+		leaveQualityTier(subscriber.getQualityTier());
+		subscriber.setQualityTier(0);
+	}
+
+	private GStreamerFilter createQualityTierFilter(int level, QualityTier tier) {
+		GStreamerFilter tierFilter = new GStreamerFilter.Builder(getPipeline(), tier.getGStreamerCommand())
+				.withFilterType(FilterType.VIDEO).build();
+		tierFilter.setMaxOutputBitrate(tier.getMaxKbps() * 1000);
+		internalSinkConnect(passThru, tierFilter, MediaType.VIDEO);
+		qualityTierFilters.put(level, tierFilter);
+		log.debug("EP {}: created transcoding branch for quality tier {}", getEndpointName(), tier);
+		return tierFilter;
+	}
+
+	private void leaveQualityTier(int level) {
+		if (level == 0) {
+			return;
+		}
+		Integer remaining = qualityTierSubscribers.computeIfPresent(level, (l, count) -> count > 1 ? count - 1 : null);
+		if (remaining == null) {
+			GStreamerFilter tierFilter = qualityTierFilters.remove(level);
+			if (tierFilter != null) {
+				tierFilter.release(new Continuation<Void>() {
+					@Override
+					public void onSuccess(Void result) throws Exception {
+						log.debug("EP {}: Released transcoding branch of quality tier {}", getEndpointName(), level);
+					}
+
+					@Override
+					public void onError(Throwable cause) throws Exception {
+						log.warn("EP {}: Failed to release transcoding branch of quality tier {}", getEndpointName(),
+								level, cause);
+					}
+				});
+			}
+		}
+	}
+
 	/**
 	 * Changes the media passing through a chain of media elements by applying the
 	 * specified element/shaper. The element is plugged into the stream only if the
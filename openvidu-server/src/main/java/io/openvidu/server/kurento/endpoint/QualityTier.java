@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.endpoint;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Video quality tier offered to the subscribers of a {@link PublisherEndpoint}.
+ * Defined with format "WIDTHxHEIGHT@KBPS" in property
+ * "openvidu.streams.quality-tiers"
+ */
+public class QualityTier {
+
+	private static final Pattern FORMAT = Pattern.compile("^(\\d+)x(\\d+)@(\\d+)$");
+
+	private final int width;
+	private final int height;
+	private final int maxKbps;
+
+	public QualityTier(int width, int height, int maxKbps) {
+		this.width = width;
+		this.height = height;
+		this.maxKbps = maxKbps;
+	}
+
+	public static QualityTier parse(String tier) throws Exception {
+		Matcher matcher = FORMAT.matcher(tier.trim());
+		if (!matcher.matches()) {
+			throw new Exception("Quality tier '" + tier + "' does not follow format WIDTHxHEIGHT@KBPS");
+		}
+		int width;
+		int height;
+		int maxKbps;
+		try {
+			width = Integer.parseInt(matcher.group(1));
+			height = Integer.parseInt(matcher.group(2));
+			maxKbps = Integer.parseInt(matcher.group(3));
+		} catch (NumberFormatException e) {
+			throw new Exception("Quality tier '" + tier + "' has a value out of range");
+		}
+		if (width == 0 || height == 0 || maxKbps == 0) {
+			throw new Exception("Quality tier '" + tier + "' cannot have a value of 0");
+		}
+		return new QualityTier(width, height, maxKbps);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxKbps() {
+		return maxKbps;
+	}
+
+	/**
+	 * @return the GStreamer pipeline that scales the video to this tier
+	 */
+	public String getGStreamerCommand() {
+		return "videoscale ! capsfilter caps=video/x-raw,width=" + width + ",height=" + height;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height + "@" + maxKbps;
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.endpoint;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.client.internal.ProtocolElements;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.kurento.endpoint.WebrtcStatsTimeSeries.Metric;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Attaches every subscriber to the best quality tier of its publisher that its
+ * available bandwidth can receive. The bandwidth is the estimation (REMB)
+ * reported by the subscriber's client, collected by {@link WebrtcStatsSampler}
+ * on every sampling round.
+ *
+ * A subscriber is moved down as soon as its bandwidth is below the bitrate of
+ * its current tier, but it is only moved up when its bandwidth exceeds the
+ * bitrate of the higher tier by a safety margin, so subscribers do not flap
+ * between tiers. Switches involve KMS round trips and are applied one at a
+ * time in the background by the blocking task executor
+ */
+public class QualityTierSelector {
+
+	private static final Logger log = LoggerFactory.getLogger(QualityTierSelector.class);
+
+	private static final float UPGRADE_MARGIN = 1.25f;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private Executor switchExecutor;
+
+	@PostConstruct
+	public void init() {
+		List<QualityTier> tiers = this.openviduConfig.getStreamsQualityTiers();
+		if (tiers.isEmpty()) {
+			return;
+		}
+		if (this.openviduConfig.getStreamsStatsInterval() <= 0) {
+			log.warn("Quality tiers {} are ignored because WebRTC stats sampling is disabled "
+					+ "(property 'openvidu.streams.stats.interval' is 0)", tiers);
+			return;
+		}
+		this.switchExecutor = this.blockingTaskExecutor.newBoundedExecutor(1);
+		log.info("Video quality tiers enabled: {}", tiers);
+	}
+
+	public boolean isEnabled() {
+		return this.switchExecutor != null;
+	}
+
+	/**
+	 * Called after a new stats sample of the subscriber has been stored
+	 */
+	public void onSubscriberStats(SubscriberEndpoint subscriber, WebrtcStatsTimeSeries timeSeries) {
+		if (!this.isEnabled() || !subscriber.isVideoConnected() || ProtocolElements.RECORDER_PARTICIPANT_PUBLICID
+				.equals(subscriber.getOwner().getParticipantPublicId())) {
+			return;
+		}
+		PublisherEndpoint publisher = subscriber.getPublisher();
+		if (publisher == null || publisher.getMediaOptions() == null || !publisher.getMediaOptions().hasVideo()) {
+			return;
+		}
+		float bandwidth = timeSeries.getAvailableBandwidth();
+		if (bandwidth <= 0) {
+			return;
+		}
+		List<QualityTier> tiers = this.openviduConfig.getStreamsQualityTiers();
+		int currentLevel = subscriber.getQualityTier();
+		int targetLevel = tiers.size();
+		for (int level = 0; level <= tiers.size(); level++) {
+			float required = this.requiredBandwidth(publisher, tiers, level);
+			if (level < currentLevel) {
+				required *= UPGRADE_MARGIN;
+			}
+			if (bandwidth >= required) {
+				targetLevel = level;
+				break;
+			}
+		}
+		if (targetLevel != currentLevel) {
+			final int level = targetLevel;
+			final QualityTier tier = level > 0 ? tiers.get(level - 1) : null;
+			this.switchExecutor.execute(() -> {
+				try {
+					publisher.switchQualityTier(subscriber, level, tier);
+				} catch (Exception e) {
+					log.warn("Error moving subscriber {} to quality tier {}: {}", subscriber.getEndpointName(), level,
+							e.getMessage());
+				}
+			});
+		}
+	}
+
+	/**
+	 * The original stream requires the bitrate currently received from the
+	 * publisher. If still unknown, it is assumed to be above the highest tier
+	 */
+	private float requiredBandwidth(PublisherEndpoint publisher, List<QualityTier> tiers, int level) {
+		if (level > 0) {
+			return tiers.get(level - 1).getMaxKbps();
+		}
+		WebrtcStatsTimeSeries publisherTimeSeries = publisher.getWebrtcStatsTimeSeries();
+		float publisherBitrate = publisherTimeSeries != null ? publisherTimeSeries.getLast(Metric.bitrate) : -1;
+		return publisherBitrate > 0 ? publisherBitrate : tiers.get(0).getMaxKbps() * UPGRADE_MARGIN;
+	}
+
+}
@@ -19,8 +19,10 @@ package io.openvidu.server.kurento.endpoint;
 
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.kurento.client.MediaPipeline;
+import org.kurento.client.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,26 +40,177 @@ import io.openvidu.server.kurento.core.KurentoParticipant;
 public class SubscriberEndpoint extends MediaEndpoint {
 	private final static Logger log = LoggerFactory.getLogger(SubscriberEndpoint.class);
 
+	private enum State {
+		// Prepared in advance, the participant has not subscribed yet
+		PRELOADED,
+		// Requested by the participant with ICE candidates, not subscribed yet
+		REQUESTED,
+		// Subscribed by the participant
+		SUBSCRIBED,
+		// Discarded before being requested
+		RECLAIMED
+	}
+
 	private AtomicBoolean connectedToPublisher = new AtomicBoolean(false);
+	private AtomicReference<State> state = new AtomicReference<>(State.PRELOADED);
+	private final long preloadedAt = System.currentTimeMillis();
+	private volatile long requestedAt;
 
 	private String publisherStreamId;
+	private String publisherPublicId;
+	private PublisherEndpoint publisher;
+
+	// Quality tier of the publisher this subscriber receives its video from
+	private volatile int qualityTier = 0;
+
+	// The participant has asked to receive only the audio of the publisher
+	private volatile boolean audioOnly = false;
+	// Video is not forwarded because the publisher is not an active speaker
+	private volatile boolean videoSuspended = false;
+	private volatile boolean videoConnected = false;
+	private boolean videoNegotiated = false;
 
 	public SubscriberEndpoint(EndpointType endpointType, KurentoParticipant owner, String endpointName,
 			MediaPipeline pipeline, OpenviduConfig openviduConfig) {
 		super(endpointType, owner, endpointName, pipeline, openviduConfig, log);
 	}
 
-	public synchronized String subscribe(String sdpOffer, PublisherEndpoint publisher) {
+	/**
+	 * @param audioOnly if true only the audio of the publisher is connected. If the
+	 *                  offer includes video, it can be connected later on without
+	 *                  renegotiating with
+	 *                  {@link PublisherEndpoint#setSubscriberAudioOnly(SubscriberEndpoint, boolean)}
+	 */
+	public synchronized String subscribe(String sdpOffer, PublisherEndpoint publisher, boolean audioOnly) {
 		registerOnIceCandidateEventListener(publisher.getOwner().getParticipantPublicId());
 		this.createdAt = System.currentTimeMillis();
 		String sdpAnswer = processOffer(sdpOffer);
 		gatherCandidates();
-		publisher.connect(this.getEndpoint());
+		this.audioOnly = audioOnly;
+		this.videoNegotiated = sdpOffer.contains("m=video");
+		this.videoConnected = !audioOnly;
+		if (audioOnly) {
+			publisher.connect(this.getEndpoint(), MediaType.AUDIO);
+		} else {
+			publisher.connect(this.getEndpoint());
+		}
 		setConnectedToPublisher(true);
 		this.publisherStreamId = publisher.getStreamId();
+		this.publisherPublicId = publisher.getOwner().getParticipantPublicId();
+		this.publisher = publisher;
 		return sdpAnswer;
 	}
 
+	/**
+	 * Marks this subscriber as requested by its owner before subscribing, as when
+	 * its ICE candidates arrive first. It can still be reclaimed if the owner does
+	 * not subscribe, but not before the idle timeout since the last request
+	 *
+	 * @return false if the subscriber has already been reclaimed and must not be
+	 *         used
+	 */
+	public boolean markRequested() {
+		this.requestedAt = System.currentTimeMillis();
+		return this.state.compareAndSet(State.PRELOADED, State.REQUESTED) || this.state.get() != State.RECLAIMED;
+	}
+
+	/**
+	 * Marks this subscriber as subscribed by its owner, so it is never reclaimed
+	 *
+	 * @return false if the subscriber has already been reclaimed and must not be
+	 *         used
+	 */
+	public boolean markSubscribed() {
+		State current;
+		do {
+			current = this.state.get();
+			if (current == State.RECLAIMED) {
+				return false;
+			}
+		} while (!this.state.compareAndSet(current, State.SUBSCRIBED));
+		return true;
+	}
+
+	/**
+	 * Discards this subscriber if it has not been requested by its owner
+	 *
+	 * @return true if the subscriber has been reclaimed
+	 */
+	public boolean tryReclaim() {
+		return this.state.compareAndSet(State.PRELOADED, State.RECLAIMED);
+	}
+
+	/**
+	 * Discards this subscriber if its owner has not subscribed to it and has not
+	 * requested it during the idle timeout
+	 *
+	 * @return true if the subscriber has been reclaimed
+	 */
+	public boolean tryReclaimIdle(long now, long idleTimeoutMillis) {
+		switch (this.state.get()) {
+		case PRELOADED:
+			return now - this.preloadedAt > idleTimeoutMillis
+					&& this.state.compareAndSet(State.PRELOADED, State.RECLAIMED);
+		case REQUESTED:
+			return now - this.requestedAt > idleTimeoutMillis
+					&& this.state.compareAndSet(State.REQUESTED, State.RECLAIMED);
+		default:
+			return false;
+		}
+	}
+
+	public boolean isPreloaded() {
+		return this.state.get() == State.PRELOADED;
+	}
+
+	public long getPreloadedAt() {
+		return this.preloadedAt;
+	}
+
+	public String getPublisherPublicId() {
+		return this.publisherPublicId;
+	}
+
+	public PublisherEndpoint getPublisher() {
+		return this.publisher;
+	}
+
+	public int getQualityTier() {
+		return this.qualityTier;
+	}
+
+	public void setQualityTier(int qualityTier) {
+		this.qualityTier = qualityTier;
+	}
+
+	public boolean isAudioOnly() {
+		return this.audioOnly;
+	}
+
+	public void setAudioOnly(boolean audioOnly) {
+		this.audioOnly = audioOnly;
+	}
+
+	public boolean isVideoSuspended() {
+		return this.videoSuspended;
+	}
+
+	public void setVideoSuspended(boolean videoSuspended) {
+		this.videoSuspended = videoSuspended;
+	}
+
+	public boolean isVideoConnected() {
+		return this.videoConnected;
+	}
+
+	public void setVideoConnected(boolean videoConnected) {
+		this.videoConnected = videoConnected;
+	}
+
+	public boolean isVideoNegotiated() {
+		return this.videoNegotiated;
+	}
+
 	public boolean isConnectedToPublisher() {
 		return connectedToPublisher.get();
 	}
@@ -0,0 +1,277 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.endpoint;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Endpoint;
+import org.kurento.client.RTCInboundRTPStreamStats;
+import org.kurento.client.RTCOutboundRTPStreamStats;
+import org.kurento.client.Stats;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.cdr.CallDetailRecord;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.kurento.endpoint.WebrtcStatsTimeSeries.Metric;
+import io.openvidu.server.kurento.kms.Kms;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Periodically samples the WebRTC stats of every published and subscribed
+ * stream. All the endpoints hosted in the same KMS are queried with a single
+ * Kurento transaction per sampling round, and every KMS is handled by a task of
+ * a small shared executor. Samples are stored in the
+ * {@link WebrtcStatsTimeSeries} of each {@link MediaEndpoint}, and a
+ * 'webrtcStatsAlert' CDR event is triggered whenever a metric crosses its
+ * configured threshold.
+ */
+public class WebrtcStatsSampler {
+
+	private static final Logger log = LoggerFactory.getLogger(WebrtcStatsSampler.class);
+
+	// KMSs sampled at the same time
+	private static final int SAMPLER_THREADS = 2;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected CallDetailRecord CDR;
+
+	@Autowired
+	protected QualityTierSelector qualityTierSelector;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final Map<String, Kms> kmss = new ConcurrentHashMap<>();
+	private final Map<String, Set<MediaEndpoint>> endpointsByKms = new ConcurrentHashMap<>();
+
+	private Executor samplerExecutor;
+	private ScheduledFuture<?> samplerTask;
+
+	@PostConstruct
+	public void init() {
+		int interval = this.openviduConfig.getStreamsStatsInterval();
+		if (interval > 0) {
+			this.samplerExecutor = this.blockingTaskExecutor.newBoundedExecutor(SAMPLER_THREADS);
+			this.samplerTask = this.blockingTaskExecutor.scheduleAtFixedRate(this::sampleAllKms, interval, interval,
+					TimeUnit.SECONDS);
+			log.info("WebRTC stats sampling enabled every {} seconds", interval);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.samplerTask != null) {
+			this.samplerTask.cancel(false);
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.samplerExecutor != null;
+	}
+
+	/**
+	 * Starts sampling the stats of the endpoint. The endpoint's
+	 * {@link MediaEndpoint#kmsWebrtcStatsThread} is set to a future that stops the
+	 * sampling when cancelled
+	 */
+	public void startSampling(Kms kms, MediaEndpoint endpoint) {
+		if (!this.isEnabled()) {
+			return;
+		}
+		endpoint.setWebrtcStatsTimeSeries(
+				new WebrtcStatsTimeSeries(Math.max(1, this.openviduConfig.getStreamsStatsSamples())));
+
+		// Both maps are only modified inside compute calls for the KMS id, so a KMS is
+		// forgotten as soon as its last sampled endpoint is released
+		this.endpointsByKms.compute(kms.getId(), (kmsId, endpoints) -> {
+			if (endpoints == null) {
+				endpoints = ConcurrentHashMap.newKeySet();
+				this.kmss.put(kmsId, kms);
+			}
+			endpoints.add(endpoint);
+			return endpoints;
+		});
+
+		CompletableFuture<Void> samplingFuture = new CompletableFuture<>();
+		samplingFuture.whenComplete((result, cause) -> {
+			this.endpointsByKms.computeIfPresent(kms.getId(), (kmsId, endpoints) -> {
+				endpoints.remove(endpoint);
+				if (endpoints.isEmpty()) {
+					this.kmss.remove(kmsId);
+					return null;
+				}
+				return endpoints;
+			});
+			log.debug("Stopped sampling WebRTC stats of endpoint {}", endpoint.getEndpointName());
+		});
+		endpoint.kmsWebrtcStatsThread = samplingFuture;
+		log.debug("Started sampling WebRTC stats of endpoint {}", endpoint.getEndpointName());
+	}
+
+	private void sampleAllKms() {
+		this.endpointsByKms.forEach((kmsId, endpoints) -> {
+			if (endpoints.isEmpty()) {
+				return;
+			}
+			Kms kms = this.kmss.get(kmsId);
+			if (kms == null || !kms.isKurentoClientConnected()) {
+				return;
+			}
+			this.samplerExecutor.execute(() -> {
+				try {
+					this.sampleKms(kms, endpoints);
+				} catch (Exception e) {
+					log.warn("Error sampling WebRTC stats in KMS {}: {}", kmsId, e.getMessage());
+				}
+			});
+		});
+	}
+
+	private void sampleKms(Kms kms, Set<MediaEndpoint> endpoints) {
+		final List<MediaEndpoint> readyEndpoints = endpoints.stream().filter(ep -> ep.getEndpoint() != null)
+				.collect(Collectors.toList());
+		if (readyEndpoints.isEmpty()) {
+			return;
+		}
+		final Map<MediaEndpoint, TFuture<Map<String, Stats>>> futures = new HashMap<>();
+		final Transaction tx = kms.getKurentoClient().beginTransaction();
+		for (MediaEndpoint endpoint : readyEndpoints) {
+			futures.put(endpoint, endpoint.getEndpoint().getStats(tx));
+		}
+		tx.commit(new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				long timestamp = System.currentTimeMillis();
+				futures.forEach((endpoint, future) -> processStats(endpoint, future.get(), timestamp));
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				// Some endpoint may have been released during the round. Fall back to
+				// individual requests so the rest of endpoints are still sampled
+				log.debug("Batched WebRTC stats request to KMS {} failed ({}). Requesting stats individually",
+						kms.getId(), cause.getMessage());
+				futures.keySet().forEach(endpoint -> sampleEndpoint(endpoint));
+			}
+		});
+	}
+
+	private void sampleEndpoint(MediaEndpoint endpoint) {
+		Endpoint kmsEndpoint = endpoint.getEndpoint();
+		if (kmsEndpoint == null || endpoint.kmsWebrtcStatsThread.isDone()) {
+			return;
+		}
+		kmsEndpoint.getStats(new Continuation<Map<String, Stats>>() {
+			@Override
+			public void onSuccess(Map<String, Stats> result) throws Exception {
+				processStats(endpoint, result, System.currentTimeMillis());
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				log.debug("Could not get WebRTC stats of endpoint {}: {}", endpoint.getEndpointName(),
+						cause.getMessage());
+			}
+		});
+	}
+
+	private void processStats(MediaEndpoint endpoint, Map<String, Stats> stats, long timestamp) {
+		WebrtcStatsTimeSeries timeSeries = endpoint.getWebrtcStatsTimeSeries();
+		if (timeSeries == null || stats == null) {
+			return;
+		}
+		// Publishers receive media from the client and subscribers send it. Jitter and
+		// round trip time are reported in seconds
+		boolean inbound = endpoint instanceof PublisherEndpoint;
+		long bytes = 0;
+		long packets = 0;
+		long packetsLost = 0;
+		double jitterMs = 0;
+		double rttMs = 0;
+		long rembBps = 0;
+		boolean found = false;
+		for (Stats s : stats.values()) {
+			if (inbound && s instanceof RTCInboundRTPStreamStats) {
+				RTCInboundRTPStreamStats in = (RTCInboundRTPStreamStats) s;
+				bytes += in.getBytesReceived();
+				packets += in.getPacketsReceived();
+				packetsLost += in.getPacketsLost();
+				jitterMs = Math.max(jitterMs, in.getJitter() * 1000);
+				found = true;
+			} else if (!inbound && s instanceof RTCOutboundRTPStreamStats) {
+				RTCOutboundRTPStreamStats out = (RTCOutboundRTPStreamStats) s;
+				bytes += out.getBytesSent();
+				packets += out.getPacketsSent();
+				packetsLost += out.getPacketsLost();
+				rttMs = Math.max(rttMs, out.getRoundTripTime() * 1000);
+				rembBps = Math.max(rembBps, out.getRemb());
+				found = true;
+			}
+		}
+		if (found && timeSeries.addSample(timestamp, bytes, packets, packetsLost, jitterMs, rttMs)) {
+			this.checkThreshold(endpoint, timeSeries, Metric.packetLoss,
+					this.openviduConfig.getStreamsStatsAlertPacketLoss());
+			this.checkThreshold(endpoint, timeSeries, Metric.jitter, this.openviduConfig.getStreamsStatsAlertJitter());
+			this.checkThreshold(endpoint, timeSeries, Metric.rtt, this.openviduConfig.getStreamsStatsAlertRtt());
+			if (!inbound) {
+				timeSeries.setAvailableBandwidth(rembBps / 1000f);
+				this.qualityTierSelector.onSubscriberStats((SubscriberEndpoint) endpoint, timeSeries);
+			}
+		}
+	}
+
+	private void checkThreshold(MediaEndpoint endpoint, WebrtcStatsTimeSeries timeSeries, Metric metric,
+			int threshold) {
+		if (threshold <= 0) {
+			return;
+		}
+		float value = timeSeries.getLast(metric);
+		if (timeSeries.updateAlert(metric, value > threshold)) {
+			String receivingFrom = (endpoint instanceof SubscriberEndpoint)
+					? ((SubscriberEndpoint) endpoint).getPublisherPublicId()
+					: null;
+			log.warn("WebRTC stats alert for stream {} of participant {}: {} is {} (threshold {})",
+					endpoint.getStreamId(), endpoint.getOwner().getParticipantPublicId(), metric.name(), value,
+					threshold);
+			this.CDR.recordWebrtcStatsAlert(endpoint.getOwner().getSessionId(),
+					endpoint.getOwner().getParticipantPublicId(), endpoint.getStreamId(), receivingFrom, metric.name(),
+					value, threshold);
+		}
+	}
+
+}
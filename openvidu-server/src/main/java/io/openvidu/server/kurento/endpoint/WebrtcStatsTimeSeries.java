@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.endpoint;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Fixed-size time series of WebRTC stats samples for one {@link MediaEndpoint}.
+ * Samples are stored in parallel primitive ring buffers, so no object is
+ * allocated per sample once the series has been created. Oldest samples are
+ * overwritten when the capacity is reached.
+ *
+ * Cumulative counters reported by Kurento (bytes, packets) are converted into
+ * per-interval values (bitrate, packet loss percentage) on insertion.
+ */
+public class WebrtcStatsTimeSeries {
+
+	public enum Metric {
+		bitrate, packetLoss, jitter, rtt
+	}
+
+	private final int capacity;
+
+	private final long[] timestamps;
+	private final float[] bitrateKbps;
+	private final float[] packetLossPercent;
+	private final float[] jitterMs;
+	private final float[] rttMs;
+
+	private int head = 0; // Next position to write
+	private int size = 0;
+
+	// Last cumulative counters, used to compute per-interval values
+	private long lastTimestamp = -1;
+	private long lastBytes;
+	private long lastPackets;
+	private long lastPacketsLost;
+
+	// Last bandwidth estimation (REMB) reported by the client, or -1 if unknown
+	private float availableBandwidthKbps = -1;
+
+	// Alert state of each metric, so alerts are only fired on threshold crossing
+	private final boolean[] alertActive = new boolean[Metric.values().length];
+
+	public WebrtcStatsTimeSeries(int capacity) {
+		this.capacity = capacity;
+		this.timestamps = new long[capacity];
+		this.bitrateKbps = new float[capacity];
+		this.packetLossPercent = new float[capacity];
+		this.jitterMs = new float[capacity];
+		this.rttMs = new float[capacity];
+	}
+
+	/**
+	 * Stores a new sample built from cumulative counters. The first sample only
+	 * initializes the counters and is not stored.
+	 *
+	 * @return true if a new sample has been stored, false otherwise
+	 */
+	public synchronized boolean addSample(long timestamp, long bytes, long packets, long packetsLost, double jitter,
+			double rtt) {
+		if (lastTimestamp < 0 || timestamp <= lastTimestamp || bytes < lastBytes) {
+			// First sample or counters restarted
+			this.updateCounters(timestamp, bytes, packets, packetsLost);
+			return false;
+		}
+		long elapsedMillis = timestamp - lastTimestamp;
+		long packetsDelta = Math.max(0, packets - lastPackets);
+		long lostDelta = Math.max(0, packetsLost - lastPacketsLost);
+
+		timestamps[head] = timestamp;
+		bitrateKbps[head] = (float) ((bytes - lastBytes) * 8 / (double) elapsedMillis);
+		packetLossPercent[head] = (packetsDelta + lostDelta) > 0
+				? (float) (100.0 * lostDelta / (packetsDelta + lostDelta))
+				: 0f;
+		jitterMs[head] = (float) jitter;
+		rttMs[head] = (float) rtt;
+
+		head = (head + 1) % capacity;
+		if (size < capacity) {
+			size++;
+		}
+		this.updateCounters(timestamp, bytes, packets, packetsLost);
+		return true;
+	}
+
+	/**
+	 * @return the value of the metric in the last stored sample, or -1 if there
+	 *         are no samples
+	 */
+	public synchronized float getLast(Metric metric) {
+		if (size == 0) {
+			return -1;
+		}
+		int last = (head - 1 + capacity) % capacity;
+		switch (metric) {
+		case bitrate:
+			return bitrateKbps[last];
+		case packetLoss:
+			return packetLossPercent[last];
+		case jitter:
+			return jitterMs[last];
+		case rtt:
+			return rttMs[last];
+		default:
+			return -1;
+		}
+	}
+
+	public synchronized float getAvailableBandwidth() {
+		return this.availableBandwidthKbps;
+	}
+
+	public synchronized void setAvailableBandwidth(float availableBandwidthKbps) {
+		this.availableBandwidthKbps = availableBandwidthKbps;
+	}
+
+	/**
+	 * Updates the alert state of a metric.
+	 *
+	 * @return true if the metric has just crossed the threshold upwards
+	 */
+	public synchronized boolean updateAlert(Metric metric, boolean exceeded) {
+		boolean wasActive = alertActive[metric.ordinal()];
+		alertActive[metric.ordinal()] = exceeded;
+		return exceeded && !wasActive;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	public synchronized JsonObject toJson() {
+		JsonArray jsonTimestamps = new JsonArray();
+		JsonArray jsonBitrate = new JsonArray();
+		JsonArray jsonPacketLoss = new JsonArray();
+		JsonArray jsonJitter = new JsonArray();
+		JsonArray jsonRtt = new JsonArray();
+		int start = (head - size + capacity) % capacity;
+		for (int i = 0; i < size; i++) {
+			int pos = (start + i) % capacity;
+			jsonTimestamps.add(timestamps[pos]);
+			jsonBitrate.add(bitrateKbps[pos]);
+			jsonPacketLoss.add(packetLossPercent[pos]);
+			jsonJitter.add(jitterMs[pos]);
+			jsonRtt.add(rttMs[pos]);
+		}
+		JsonObject json = new JsonObject();
+		json.add("timestamps", jsonTimestamps);
+		json.add("bitrateKbps", jsonBitrate);
+		json.add("packetLossPercent", jsonPacketLoss);
+		json.add("jitterMs", jsonJitter);
+		json.add("rttMs", jsonRtt);
+		return json;
+	}
+
+	private void updateCounters(long timestamp, long bytes, long packets, long packetsLost) {
+		this.lastTimestamp = timestamp;
+		this.lastBytes = bytes;
+		this.lastPackets = packets;
+		this.lastPacketsLost = packetsLost;
+	}
+
+}
@@ -38,7 +38,7 @@ public class FixedOneKmsManager extends KmsManager {
 		KurentoClient kClient = null;
 		Kms kms = new Kms(firstProps, loadManager);
 		try {
-			kClient = KurentoClient.create(firstProps.getUri(), this.generateKurentoConnectionListener(kms.getId()));
+			kClient = KurentoClient.create(firstProps.getUri(), this.generateKurentoConnectionListener(kms));
 			this.addKms(kms);
 			kms.setKurentoClient(kClient);
 
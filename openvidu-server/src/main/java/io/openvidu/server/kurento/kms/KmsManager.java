@@ -39,6 +39,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import com.google.gson.JsonObject;
 
 import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.utils.MediaNodeStatusManager;
 
 public abstract class KmsManager {
@@ -92,13 +93,18 @@ public abstract class KmsManager {
 	@Autowired
 	protected MediaNodeStatusManager mediaNodeStatusManager;
 
+	@Autowired
+	protected MetricsManager metricsManager;
+
 	final protected Map<String, Kms> kmss = new ConcurrentHashMap<>();
 
 	public synchronized void addKms(Kms kms) {
 		this.kmss.put(kms.getId(), kms);
+		this.metricsManager.registerKms(kms);
 	}
 
 	public synchronized Kms removeKms(String kmsId) {
+		this.metricsManager.unregisterKms(kmsId);
 		return this.kmss.remove(kmsId);
 	}
 
@@ -141,12 +147,16 @@ public abstract class KmsManager {
 		return kmsLoads;
 	}
 
-	protected KurentoConnectionListener generateKurentoConnectionListener(final String kmsId) {
+	/**
+	 * The listener updates the given Kms instance, which may not be registered
+	 * yet (or ever, if its connection fails) when the callbacks are invoked
+	 */
+	protected KurentoConnectionListener generateKurentoConnectionListener(final Kms kms) {
+		final String kmsId = kms.getId();
 		return new KurentoConnectionListener() {
 
 			@Override
 			public void reconnected(boolean sameServer) {
-				final Kms kms = kmss.get(kmsId);
 				kms.setKurentoClientConnected(true);
 				kms.setTimeOfKurentoClientConnection(System.currentTimeMillis());
 				if (!sameServer) {
@@ -167,7 +177,6 @@ public abstract class KmsManager {
 
 			@Override
 			public void disconnected() {
-				final Kms kms = kmss.get(kmsId);
 				kms.setKurentoClientConnected(false);
 				kms.setTimeOfKurentoClientDisconnection(System.currentTimeMillis());
 				log.warn("Kurento Client disconnected from KMS {} with uri {}", kmsId, kms.getUri());
@@ -175,14 +184,12 @@ public abstract class KmsManager {
 
 			@Override
 			public void connectionFailed() {
-				final Kms kms = kmss.get(kmsId);
 				kms.setKurentoClientConnected(false);
 				log.warn("Kurento Client failed connecting to KMS {} with uri {}", kmsId, kms.getUri());
 			}
 
 			@Override
 			public void connected() {
-				final Kms kms = kmss.get(kmsId);
 				// TODO: This should be done here instead of after KurentoClient.create method returns
 				// kms.setKurentoClientConnected(true);
 				// kms.setTimeOfKurentoClientConnection(System.currentTimeMillis());
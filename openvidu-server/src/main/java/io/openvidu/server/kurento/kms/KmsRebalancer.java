@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.kms;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.client.OpenViduException;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.SessionManager;
+import io.openvidu.server.kurento.core.KurentoSession;
+import io.openvidu.server.kurento.kms.KmsManager.KmsLoad;
+import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Periodically compares the load of all connected KMSs. When the difference
+ * between the most and the less loaded one reaches the configured threshold,
+ * one session of the most loaded KMS is migrated to the less loaded one.
+ *
+ * The load that a session adds to its KMS is estimated by its number of
+ * participants: the largest session not exceeding half of the load difference
+ * is chosen, so the migration never inverts the skew. Sessions being recorded
+ * are never migrated
+ */
+public class KmsRebalancer {
+
+	private static final Logger log = LoggerFactory.getLogger(KmsRebalancer.class);
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected KmsManager kmsManager;
+
+	@Autowired
+	protected SessionManager sessionManager;
+
+	@Autowired
+	protected RecordingManager recordingManager;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private ScheduledFuture<?> rebalancerTask;
+
+	@PostConstruct
+	public void init() {
+		int interval = this.openviduConfig.getKmsRebalanceInterval();
+		if (interval > 0) {
+			this.rebalancerTask = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					this.rebalance();
+				} catch (Exception e) {
+					log.error("Error rebalancing sessions between KMSs: {}", e.getMessage());
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+			log.info("KMS rebalancing enabled every {} seconds with a load threshold of {}", interval,
+					this.openviduConfig.getKmsRebalanceThreshold());
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.rebalancerTask != null) {
+			this.rebalancerTask.cancel(false);
+		}
+	}
+
+	private void rebalance() {
+		List<KmsLoad> kmsLoads = this.kmsManager.getKmssSortedByLoad().stream()
+				.filter(kmsLoad -> kmsLoad.getKms().isKurentoClientConnected()).collect(Collectors.toList());
+		if (kmsLoads.size() < 2) {
+			return;
+		}
+		KmsLoad lessLoaded = kmsLoads.get(0);
+		KmsLoad mostLoaded = kmsLoads.get(kmsLoads.size() - 1);
+		double skew = mostLoaded.getLoad() - lessLoaded.getLoad();
+		if (skew < this.openviduConfig.getKmsRebalanceThreshold()) {
+			return;
+		}
+
+		KurentoSession session = mostLoaded.getKms().getKurentoSessions().stream()
+				.filter(s -> !s.isClosed() && !this.recordingManager.sessionIsBeingRecorded(s.getSessionId()))
+				.filter(s -> !s.getParticipants().isEmpty() && s.getParticipants().size() <= skew / 2)
+				.max(Comparator.comparingInt(s -> s.getParticipants().size())).orElse(null);
+		if (session == null) {
+			log.debug("KMS {} has a load of {} and KMS {} a load of {}, but no session can be migrated",
+					mostLoaded.getKms().getId(), mostLoaded.getLoad(), lessLoaded.getKms().getId(),
+					lessLoaded.getLoad());
+			return;
+		}
+
+		log.info("KMS {} has a load of {} and KMS {} a load of {}. Migrating session {} with {} participants",
+				mostLoaded.getKms().getId(), mostLoaded.getLoad(), lessLoaded.getKms().getId(), lessLoaded.getLoad(),
+				session.getSessionId(), session.getParticipants().size());
+		try {
+			this.sessionManager.migrateSession(session, lessLoaded.getKms().getId());
+		} catch (OpenViduException e) {
+			log.warn("Session {} could not be migrated: {}", session.getSessionId(), e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.kms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.kurento.client.KurentoClient;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.server.core.IdentifierPrefixes;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * KmsManager handling any number of Kurento Media Servers. All of them are
+ * connected in parallel, each one with a bounded timeout, and registered as
+ * soon as they are reachable. Unreachable KMSs do not prevent OpenVidu Server
+ * from starting: their connection is retried in the background with
+ * exponential backoff until it succeeds. New sessions are always initialized in
+ * the connected KMS with the lowest load according to {@link LoadManager}
+ */
+public class MultipleKmsManager extends KmsManager {
+
+	private static final long INITIAL_RETRY_INTERVAL = 1000;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Parameter <code>sendMediaNodeAddedEvent</code> is ignored: there is no
+	 * media node added event in this edition of OpenVidu Server, whose KMSs are
+	 * all fixed by property "kms.uris"
+	 */
+	@Override
+	public List<Kms> initializeKurentoClients(List<KmsProperties> kmsProperties, boolean disconnectUponFailure,
+			boolean sendMediaNodeAddedEvent) throws Exception {
+
+		List<CompletableFuture<Kms>> futures = new ArrayList<>();
+		for (KmsProperties props : kmsProperties) {
+			futures.add(this.connectKms(props));
+		}
+
+		List<Kms> connectedKmss = new ArrayList<>();
+		for (int i = 0; i < futures.size(); i++) {
+			KmsProperties props = kmsProperties.get(i);
+			try {
+				connectedKmss.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				log.error("KMS in {} is not reachable by OpenVidu Server: {}", props.getUri(),
+						e.getCause().getMessage());
+				if (!disconnectUponFailure) {
+					this.scheduleRetry(props, INITIAL_RETRY_INTERVAL);
+				}
+			}
+		}
+
+		if (disconnectUponFailure && connectedKmss.size() < kmsProperties.size()) {
+			connectedKmss.forEach(kms -> {
+				this.removeKms(kms.getId());
+				kms.getKurentoClient().destroy();
+			});
+			throw new Exception("Some KMS is not reachable by OpenVidu Server");
+		}
+		return connectedKmss;
+	}
+
+	@Override
+	public synchronized Kms getLessLoadedAndRunningKms() throws NoSuchElementException {
+		return this.getKmssSortedByLoad().stream()
+				.filter(kmsLoad -> kmsLoad.getKms().isKurentoClientConnected()
+						&& mediaNodeStatusManager.isRunning(kmsLoad.getKms().getId()))
+				.findFirst().orElseThrow(NoSuchElementException::new).getKms();
+	}
+
+	@Override
+	@PostConstruct
+	protected void postConstructInitKurentoClients() {
+		List<KmsProperties> kmsProps = new ArrayList<>();
+		for (String kmsUri : this.openviduConfig.getKmsUris()) {
+			String kmsId = IdentifierPrefixes.KMS_ID + RandomStringUtils.randomAlphabetic(1).toUpperCase()
+					+ RandomStringUtils.randomAlphanumeric(7);
+			kmsProps.add(new KmsProperties(kmsId, kmsUri));
+		}
+		try {
+			List<Kms> kmss = this.initializeKurentoClients(kmsProps, false, false);
+			log.info("OpenVidu Server connected to {} out of {} KMS", kmss.size(), kmsProps.size());
+		} catch (Exception e) {
+			// Unreachable KMSs are retried in the background
+			log.error("Error initializing KMSs: {}", e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		super.close();
+	}
+
+	/**
+	 * Connects a new KurentoClient to the KMS. The returned future completes with
+	 * the registered KMS, or exceptionally if the connection fails or the
+	 * connection timeout elapses
+	 */
+	private CompletableFuture<Kms> connectKms(KmsProperties props) {
+		final Kms kms = new Kms(props, loadManager);
+		final CompletableFuture<KurentoClient> connection = new CompletableFuture<>();
+		final int timeout = this.openviduConfig.getKmsConnectionTimeout();
+
+		ScheduledFuture<?> timeoutFuture = this.blockingTaskExecutor.schedule(() -> {
+			connection.completeExceptionally(
+					new TimeoutException("connection timeout of " + timeout + " seconds elapsed"));
+		}, timeout, TimeUnit.SECONDS);
+
+		// KurentoClient.create cannot be interrupted, so a connection that hangs past
+		// its timeout keeps its thread until the WebSocket gives up. The blocking
+		// task executor always has a free thread for the next retry
+		CompletableFuture.supplyAsync(
+				() -> KurentoClient.create(props.getUri(), this.generateKurentoConnectionListener(kms)),
+				this.blockingTaskExecutor::execute).whenComplete((kClient, error) -> {
+					timeoutFuture.cancel(false);
+					if (error != null) {
+						connection.completeExceptionally(error.getCause() != null ? error.getCause() : error);
+					} else if (!connection.complete(kClient)) {
+						// Connection timeout already elapsed. Do not leak the client
+						kClient.destroy();
+					}
+				});
+
+		return connection.thenApply(kClient -> {
+			this.addKms(kms);
+			kms.setKurentoClient(kClient);
+
+			// TODO: This should be done in KurentoClient connected event
+			kms.setKurentoClientConnected(true);
+			kms.setTimeOfKurentoClientConnection(System.currentTimeMillis());
+
+			log.info("KMS {} with uri {} is now available", kms.getId(), kms.getUri());
+			return kms;
+		});
+	}
+
+	private void scheduleRetry(KmsProperties props, long interval) {
+		if (this.closed) {
+			return;
+		}
+		log.info("Retrying connection to KMS with uri {} in {} ms", props.getUri(), interval);
+		this.blockingTaskExecutor.schedule(() -> {
+			if (this.closed) {
+				return;
+			}
+			this.connectKms(props).whenComplete((kms, error) -> {
+				if (error != null) {
+					Throwable cause = error.getCause() != null ? error.getCause() : error;
+					log.warn("KMS in {} is still not reachable: {}", props.getUri(), cause.getMessage());
+					long maxInterval = Math.max(INITIAL_RETRY_INTERVAL,
+							TimeUnit.SECONDS.toMillis(this.openviduConfig.getKmsConnectionRetryMaxInterval()));
+					this.scheduleRetry(props, Math.min(interval * 2, maxInterval));
+				}
+			});
+		}, interval, TimeUnit.MILLISECONDS);
+	}
+
+}
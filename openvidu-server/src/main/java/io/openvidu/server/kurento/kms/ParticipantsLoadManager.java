@@ -0,0 +1,36 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.kurento.kms;
+
+import io.openvidu.server.kurento.core.KurentoSession;
+
+/**
+ * Load of a KMS is the number of participants connected to all of its sessions
+ */
+public class ParticipantsLoadManager implements LoadManager {
+
+	@Override
+	public int calculateLoad(Kms kms) {
+		int load = 0;
+		for (KurentoSession session : kms.getKurentoSessions()) {
+			load += session.getParticipants().size();
+		}
+		return load;
+	}
+
+}
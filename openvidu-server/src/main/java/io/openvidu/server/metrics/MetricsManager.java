@@ -0,0 +1,199 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.binder.system.UptimeMetrics;
+import io.openvidu.server.core.Participant;
+import io.openvidu.server.kurento.core.KurentoParticipant;
+import io.openvidu.server.kurento.core.KurentoSession;
+import io.openvidu.server.kurento.kms.Kms;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Single entry point for OpenVidu Server instrumentation. All meters are
+ * registered in the application {@link MeterRegistry} and published in
+ * Prometheus format through endpoint "/metrics"
+ */
+public class MetricsManager {
+
+	public static final String RPC_REQUESTS = "openvidu.rpc.requests";
+	public static final String KMS_CALLS = "openvidu.kms.calls";
+	public static final String RECORDING_OPERATIONS = "openvidu.recording.operations";
+	public static final String RECORDERS = "openvidu.recording.recorders";
+	public static final String WEBHOOK_REQUESTS = "openvidu.webhook.requests";
+	public static final String WEBHOOK_PENDING = "openvidu.webhook.pending";
+	public static final String LOCK_WAIT = "openvidu.lock.wait";
+	public static final String SIGNALS = "openvidu.signals";
+	public static final String SIGNAL_RECIPIENTS = "openvidu.signal.recipients";
+	public static final String BLOCKING_TASKS_ACTIVE = "openvidu.blocking.tasks.active";
+	public static final String BLOCKING_TASKS_WAITING = "openvidu.blocking.tasks.waiting";
+
+	public static final String LOCK_KMS_SELECTION = "kmsSelection";
+	public static final String LOCK_SESSION_CLOSING = "sessionClosing";
+
+	@Autowired
+	protected MeterRegistry meterRegistry;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final AtomicInteger pendingWebhookRequests = new AtomicInteger(0);
+	private final Map<String, List<Meter>> kmsMeters = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		new JvmMemoryMetrics().bindTo(meterRegistry);
+		new JvmGcMetrics().bindTo(meterRegistry);
+		new JvmThreadMetrics().bindTo(meterRegistry);
+		new ProcessorMetrics().bindTo(meterRegistry);
+		new UptimeMetrics().bindTo(meterRegistry);
+		Gauge.builder(WEBHOOK_PENDING, pendingWebhookRequests, AtomicInteger::get)
+				.description("Webhook events being currently sent").register(meterRegistry);
+		Gauge.builder(BLOCKING_TASKS_ACTIVE, blockingTaskExecutor, BlockingTaskExecutor::getActiveTasks)
+				.description("Tasks running in the blocking task executor").register(meterRegistry);
+		Gauge.builder(BLOCKING_TASKS_WAITING, blockingTaskExecutor, BlockingTaskExecutor::getWaitingTasks)
+				.description("Threads waiting for a Kurento, Docker or command result").register(meterRegistry);
+	}
+
+	public Timer.Sample startTimer() {
+		return Timer.start(meterRegistry);
+	}
+
+	public void recordRpcRequest(String method, Timer.Sample sample, boolean error) {
+		sample.stop(this.timer(RPC_REQUESTS, "method", method, error));
+	}
+
+	public void recordKmsCall(String operation, Timer.Sample sample, boolean error) {
+		sample.stop(this.timer(KMS_CALLS, "operation", operation, error));
+		if (error) {
+			Counter.builder(KMS_CALLS + ".errors").tag("operation", operation).register(meterRegistry).increment();
+		}
+	}
+
+	/**
+	 * @param operation "start", "stop" or "seal"
+	 */
+	public void recordRecordingOperation(String operation, String outputMode, Timer.Sample sample) {
+		sample.stop(Timer.builder(RECORDING_OPERATIONS).tag("operation", operation).tag("outputMode", outputMode)
+				.publishPercentileHistogram().register(meterRegistry));
+	}
+
+	/**
+	 * Counts the recorders started with each media profile, telling apart the ones
+	 * transcoding the stream, so their cost can be compared with the KMS load
+	 */
+	public void recordRecorderProfile(String profile, boolean transcoding) {
+		Counter.builder(RECORDERS).tag("profile", profile).tag("transcoding", Boolean.toString(transcoding))
+				.register(meterRegistry).increment();
+	}
+
+	public void recordSignal(int recipients) {
+		Counter.builder(SIGNALS).tag("outcome", "success").tag("reason", "none").register(meterRegistry).increment();
+		DistributionSummary.builder(SIGNAL_RECIPIENTS).description("Participants receiving each signal")
+				.register(meterRegistry).record(recipients);
+	}
+
+	/**
+	 * @param reason "connection" or "session" if a rate limit was exceeded,
+	 *               "format" or "to" if the signal was not valid
+	 */
+	public void recordRejectedSignal(String reason) {
+		Counter.builder(SIGNALS).tag("outcome", "error").tag("reason", reason).register(meterRegistry).increment();
+	}
+
+	public Timer.Sample startWebhookRequest() {
+		pendingWebhookRequests.incrementAndGet();
+		return this.startTimer();
+	}
+
+	public void recordWebhookRequest(String event, Timer.Sample sample, boolean error) {
+		pendingWebhookRequests.decrementAndGet();
+		sample.stop(this.timer(WEBHOOK_REQUESTS, "event", event, error));
+	}
+
+	/**
+	 * Acquires the lock, recording the time spent waiting for it
+	 */
+	public void lock(Lock lock, String lockName) {
+		long start = System.nanoTime();
+		lock.lock();
+		Timer.builder(LOCK_WAIT).tag("lock", lockName).publishPercentileHistogram().register(meterRegistry)
+				.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	public void registerKms(Kms kms) {
+		List<Meter> meters = new ArrayList<>();
+		meters.add(Gauge.builder("openvidu.sessions", kms, k -> k.getKurentoSessions().size()).tag("kms", kms.getId())
+				.description("Active sessions").register(meterRegistry));
+		meters.add(Gauge.builder("openvidu.participants", kms, k -> {
+			return k.getKurentoSessions().stream().mapToInt(s -> s.getParticipants().size()).sum();
+		}).tag("kms", kms.getId()).description("Connected participants").register(meterRegistry));
+		meters.add(Gauge.builder("openvidu.publishers", kms, k -> {
+			return k.getKurentoSessions().stream().mapToInt(KurentoSession::getActivePublishers).sum();
+		}).tag("kms", kms.getId()).description("Published streams").register(meterRegistry));
+		meters.add(Gauge.builder("openvidu.subscribers", kms, MetricsManager::countSubscribers).tag("kms", kms.getId())
+				.description("Subscribed streams").register(meterRegistry));
+		this.kmsMeters.put(kms.getId(), meters);
+	}
+
+	public void unregisterKms(String kmsId) {
+		List<Meter> meters = this.kmsMeters.remove(kmsId);
+		if (meters != null) {
+			meters.forEach(meter -> meterRegistry.remove(meter));
+		}
+	}
+
+	private Timer timer(String name, String tagKey, String tagValue, boolean error) {
+		return Timer.builder(name).tag(tagKey, tagValue).tag("outcome", error ? "error" : "success")
+				.publishPercentileHistogram().register(meterRegistry);
+	}
+
+	private static int countSubscribers(Kms kms) {
+		int subscribers = 0;
+		for (KurentoSession session : kms.getKurentoSessions()) {
+			for (Participant participant : session.getParticipants()) {
+				subscribers += ((KurentoParticipant) participant).getSubscribers().stream()
+						.filter(sub -> sub.getEndpoint() != null).count();
+			}
+		}
+		return subscribers;
+	}
+
+}
@@ -18,32 +18,46 @@
 package io.openvidu.server.recording;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.kurento.client.Composite;
+import org.kurento.client.Continuation;
 import org.kurento.client.ErrorEvent;
-import org.kurento.client.EventListener;
 import org.kurento.client.HubPort;
+import org.kurento.client.ListenerSubscription;
 import org.kurento.client.MediaProfileSpecType;
 import org.kurento.client.RecorderEndpoint;
-import org.kurento.client.RecordingEvent;
-import org.kurento.client.StoppedEvent;
+import org.kurento.client.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.openvidu.client.OpenViduException;
-import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.server.kurento.core.KurentoSession;
 import io.openvidu.server.kurento.endpoint.PublisherEndpoint;
+import io.openvidu.server.recording.service.RecorderOperationBatcher;
 
+/**
+ * Composite, HubPorts and RecorderEndpoint of an audio-only COMPOSED recording.
+ * Every Kurento operation is submitted to a {@link RecorderOperationBatcher},
+ * and the start and stop of the RecorderEndpoint are confirmed with callbacks,
+ * so no thread waits for the media server
+ */
 public class CompositeWrapper {
 
 	private static final Logger log = LoggerFactory.getLogger(CompositeWrapper.class);
 
+	// Seconds to wait for the RecorderEndpoint to confirm its start or stop
+	private static final long RECORDER_EVENT_TIMEOUT = 5;
+
 	KurentoSession session;
+	String path;
+	RecorderOperationBatcher batcher;
 	Composite composite;
 	RecorderEndpoint recorderEndpoint;
 	HubPort compositeToRecorderHubPort;
@@ -54,116 +68,274 @@ public class CompositeWrapper {
 	long startTime;
 	long endTime;
 	long size;
+	// The RecorderEndpoint did not start. The recording must end as failed
+	private volatile boolean startFailed = false;
 
-	public CompositeWrapper(KurentoSession session, String path) {
+	// Completed once the elements exist and the listeners of the recorder are subscribed
+	private final CompletableFuture<Void> built = new CompletableFuture<>();
+	private final AtomicReference<Continuation<Void>> startCallback = new AtomicReference<>();
+	private final AtomicReference<Continuation<Void>> stopCallback = new AtomicReference<>();
+
+	public CompositeWrapper(KurentoSession session, String path, RecorderOperationBatcher batcher) {
 		this.session = session;
-		this.composite = new Composite.Builder(session.getPipeline()).build();
-		this.recorderEndpoint = new RecorderEndpoint.Builder(composite.getMediaPipeline(), path)
-				.withMediaProfile(MediaProfileSpecType.WEBM_AUDIO_ONLY).build();
-		this.compositeToRecorderHubPort = new HubPort.Builder(composite).build();
-		this.compositeToRecorderHubPort.connect(recorderEndpoint);
+		this.path = path;
+		this.batcher = batcher;
 	}
 
-	public synchronized void startCompositeRecording(CountDownLatch startLatch) {
+	/**
+	 * Creates the Composite and the RecorderEndpoint connected to it
+	 */
+	public void build() {
+		this.submit(tx -> {
+			this.composite = new Composite.Builder(this.session.getPipeline()).build(tx);
+			this.recorderEndpoint = new RecorderEndpoint.Builder(this.session.getPipeline(), this.path)
+					.withMediaProfile(MediaProfileSpecType.WEBM_AUDIO_ONLY).build(tx);
+			this.compositeToRecorderHubPort = new HubPort.Builder(this.composite).build(tx);
+			this.compositeToRecorderHubPort.connect(tx, this.recorderEndpoint);
+		}, this::subscribeRecorderListeners, this.built::completeExceptionally);
+	}
 
-		this.recorderEndpoint.addRecordingListener(new EventListener<RecordingEvent>() {
+	private void subscribeRecorderListeners() {
+		final AtomicInteger pendingSubscriptions = new AtomicInteger(3);
+		Continuation<ListenerSubscription> subscribed = new Continuation<ListenerSubscription>() {
 			@Override
-			public void onEvent(RecordingEvent event) {
-				startTime = Long.parseLong(event.getTimestampMillis());
-				log.info("Recording started event for audio-only RecorderEndpoint of Composite in session {}",
-						session.getSessionId());
-				startLatch.countDown();
+			public void onSuccess(ListenerSubscription result) throws Exception {
+				if (pendingSubscriptions.decrementAndGet() == 0) {
+					built.complete(null);
+				}
 			}
-		});
 
-		this.recorderEndpoint.addErrorListener(new EventListener<ErrorEvent>() {
 			@Override
-			public void onEvent(ErrorEvent event) {
-				log.error(event.getErrorCode() + " " + event.getDescription());
+			public void onError(Throwable cause) throws Exception {
+				built.completeExceptionally(cause);
 			}
-		});
+		};
+		this.recorderEndpoint.addRecordingListener(event -> {
+			startTime = Long.parseLong(event.getTimestampMillis());
+			log.info("Recording started event for audio-only RecorderEndpoint of Composite in session {}",
+					session.getSessionId());
+			notify(startCallback, null);
+		}, subscribed);
+		this.recorderEndpoint.addStoppedListener(event -> {
+			endTime = Long.parseLong(event.getTimestampMillis());
+			log.info("Recording stopped event for audio-only RecorderEndpoint of Composite in session {}",
+					session.getSessionId());
+			submit(tx -> {
+				recorderEndpoint.release(tx);
+				compositeToRecorderHubPort.release(tx);
+			}, () -> {
+			}, cause -> log.warn("Error releasing RecorderEndpoint of Composite in session {}: {}",
+					session.getSessionId(), cause.getMessage()));
+			notify(stopCallback, null);
+		}, subscribed);
+		this.recorderEndpoint.addErrorListener((ErrorEvent event) -> {
+			log.error(event.getErrorCode() + " " + event.getDescription());
+		}, subscribed);
+	}
 
-		this.recorderEndpoint.record();
+	/**
+	 * Starts the RecorderEndpoint. The callback is notified with its first
+	 * RecordingEvent, or with an error if the event does not arrive in time
+	 */
+	public void startCompositeRecording(Continuation<Void> callback) {
+		this.startCallback.set(new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				callback.onSuccess(result);
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				startFailed = true;
+				callback.onError(cause);
+			}
+		});
+		this.afterBuilt(this.startCallback, () -> {
+			this.submit(tx -> this.recorderEndpoint.record(tx), () -> {
+			}, cause -> notify(this.startCallback, cause));
+			this.timeout(this.startCallback, "start");
+		});
 	}
 
-	public synchronized void stopCompositeRecording(CountDownLatch stopLatch, Long timeOfKmsDisconnection) {
+	/**
+	 * Stops the RecorderEndpoint. The callback is notified with its
+	 * StoppedEvent, or with an error if the event does not arrive in time
+	 */
+	public void stopCompositeRecording(Long timeOfKmsDisconnection, Continuation<Void> callback) {
+		this.stopCallback.set(callback);
 		if (timeOfKmsDisconnection == 0) {
-			this.recorderEndpoint.addStoppedListener(new EventListener<StoppedEvent>() {
-				@Override
-				public void onEvent(StoppedEvent event) {
-					endTime = Long.parseLong(event.getTimestampMillis());
-					log.info("Recording stopped event for audio-only RecorderEndpoint of Composite in session {}",
-							session.getSessionId());
-					recorderEndpoint.release();
-					compositeToRecorderHubPort.release();
-					stopLatch.countDown();
-				}
+			this.afterBuilt(this.stopCallback, () -> {
+				this.submit(tx -> this.recorderEndpoint.stop(tx), () -> {
+				}, cause -> notify(this.stopCallback, cause));
+				this.timeout(this.stopCallback, "stop");
 			});
-			this.recorderEndpoint.stop();
 		} else {
 			endTime = timeOfKmsDisconnection;
-			stopLatch.countDown();
 			log.warn("Forcing composed audio-only recording stop after KMS restart in session {}",
 					this.session.getSessionId());
+			notify(this.stopCallback, null);
 		}
-
 	}
 
-	public void connectPublisherEndpoint(PublisherEndpoint endpoint) throws OpenViduException {
-		HubPort hubPort = new HubPort.Builder(composite).build();
-		endpoint.connect(hubPort);
-		String streamId = endpoint.getOwner().getPublisherStreamId();
-		this.hubPorts.put(streamId, hubPort);
+	/**
+	 * Connects the publisher to a new HubPort of the Composite. The first
+	 * publisher starts the RecorderEndpoint: only in that case the callback is
+	 * notified, as in {@link #startCompositeRecording(Continuation)}. The callback
+	 * is also notified if the first publisher cannot be connected
+	 */
+	public void connectPublisherEndpoint(PublisherEndpoint endpoint, Continuation<Void> recordingStarted) {
+		final String streamId = endpoint.getOwner().getPublisherStreamId();
 		this.publisherEndpoints.put(streamId, endpoint);
+		this.built.whenComplete((result, buildError) -> {
+			if (buildError != null) {
+				log.error("Cannot connect stream {} to Composite in session {}: {}", streamId,
+						session.getSessionId(), buildError.getMessage());
+				this.failFirstConnection(recordingStarted, buildError);
+				return;
+			}
+			final HubPort[] hubPort = new HubPort[1];
+			this.submit(tx -> hubPort[0] = new HubPort.Builder(this.composite).build(tx), () -> {
+				if (this.publisherEndpoints.get(streamId) != endpoint) {
+					// Stream disconnected while its HubPort was being created
+					hubPort[0].release();
+					return;
+				}
+				endpoint.connect(hubPort[0]);
+				this.hubPorts.put(streamId, hubPort[0]);
+				if (this.isRecording.compareAndSet(false, true)) {
+					// First user publishing. Starting RecorderEndpoint
+					log.info("First stream ({}) joined to Composite in session {}. "
+							+ "Starting RecorderEndpoint for Composite", streamId, session.getSessionId());
+					this.startCompositeRecording(recordingStarted);
+				}
+				log.info("Composite for session {} has now {} connected publishers", this.session.getSessionId(),
+						this.hubPorts.size());
+			}, cause -> {
+				log.error("Error creating HubPort for stream {} in session {}: {}", streamId,
+						session.getSessionId(), cause.getMessage());
+				this.failFirstConnection(recordingStarted, cause);
+			});
+		});
+	}
 
-		if (isRecording.compareAndSet(false, true)) {
-			// First user publishing. Starting RecorderEndpoint
-
-			log.info("First stream ({}) joined to Composite in session {}. Starting RecorderEndpoint for Composite",
-					streamId, session.getSessionId());
-
-			final CountDownLatch startLatch = new CountDownLatch(1);
-			this.startCompositeRecording(startLatch);
+	private void failFirstConnection(Continuation<Void> recordingStarted, Throwable cause) {
+		if (this.isRecording.compareAndSet(false, true)) {
+			this.startFailed = true;
 			try {
-				if (!startLatch.await(5, TimeUnit.SECONDS)) {
-					log.error("Error waiting for RecorderEndpoint of Composite to start in session {}",
-							session.getSessionId());
-					throw new OpenViduException(Code.RECORDING_START_ERROR_CODE,
-							"Couldn't initialize RecorderEndpoint of Composite");
-				}
-				log.info("RecorderEnpoint of Composite is now recording for session {}", session.getSessionId());
-			} catch (InterruptedException e) {
-				log.error("Exception while waiting for state change", e);
+				recordingStarted.onError(cause);
+			} catch (Exception e) {
+				log.error("Error notifying RecorderEndpoint callback: {}", e.getMessage());
 			}
 		}
-
-		log.info("Composite for session {} has now {} connected publishers", this.session.getSessionId(),
-				this.composite.getChildren().size() - 1);
 	}
 
 	public void disconnectPublisherEndpoint(String streamId) {
-		HubPort hubPort = this.hubPorts.remove(streamId);
 		PublisherEndpoint publisherEndpoint = this.publisherEndpoints.remove(streamId);
+		HubPort hubPort = this.hubPorts.remove(streamId);
+		if (publisherEndpoint == null || hubPort == null) {
+			// HubPort still being created. Released once it exists
+			return;
+		}
 		publisherEndpoint.disconnectFrom(hubPort);
-		hubPort.release();
+		this.submit(tx -> hubPort.release(tx), () -> {
+		}, cause -> log.warn("Error releasing HubPort of stream {} in session {}: {}", streamId,
+				session.getSessionId(), cause.getMessage()));
 		log.info("Composite for session {} has now {} connected publishers", this.session.getSessionId(),
-				this.composite.getChildren().size() - 1);
+				this.hubPorts.size());
 	}
 
-	public void disconnectAllPublisherEndpoints() {
-		this.publisherEndpoints.keySet().forEach(streamId -> {
+	/**
+	 * @return completed once the release of the Composite has been committed or
+	 *         has failed
+	 */
+	public CompletableFuture<Void> disconnectAllPublisherEndpoints() {
+		this.hubPorts.forEach((streamId, hubPort) -> {
 			PublisherEndpoint endpoint = this.publisherEndpoints.get(streamId);
-			HubPort hubPort = this.hubPorts.get(streamId);
-			endpoint.disconnectFrom(hubPort);
-			hubPort.release();
+			if (endpoint != null) {
+				endpoint.disconnectFrom(hubPort);
+			}
 		});
+		final Map<String, HubPort> releasedHubPorts = new ConcurrentHashMap<>(this.hubPorts);
 		this.hubPorts.clear();
 		this.publisherEndpoints.clear();
-		this.composite.release();
+		final CompletableFuture<Void> released = new CompletableFuture<>();
+		this.built.whenComplete((result, buildError) -> {
+			if (buildError != null) {
+				released.complete(null);
+				return;
+			}
+			this.submit(tx -> {
+				releasedHubPorts.values().forEach(hubPort -> hubPort.release(tx));
+				this.composite.release(tx);
+			}, () -> released.complete(null), cause -> {
+				log.warn("Error releasing Composite of session {}: {}", session.getSessionId(), cause.getMessage());
+				released.complete(null);
+			});
+		});
+		return released;
+	}
+
+	public boolean isStartFailed() {
+		return this.startFailed;
 	}
 
 	public long getDuration() {
 		return this.endTime - this.startTime;
 	}
 
-}
\ No newline at end of file
+	private void afterBuilt(AtomicReference<Continuation<Void>> callback, Runnable task) {
+		this.built.whenComplete((result, cause) -> {
+			if (cause != null) {
+				notify(callback, cause);
+			} else {
+				task.run();
+			}
+		});
+	}
+
+	private void timeout(AtomicReference<Continuation<Void>> callback, String action) {
+		this.batcher.schedule(() -> notify(callback, new TimeoutException(
+				"RecorderEndpoint of Composite did not " + action + " in " + RECORDER_EVENT_TIMEOUT + " seconds")),
+				RECORDER_EVENT_TIMEOUT, TimeUnit.SECONDS);
+	}
+
+	private void submit(Consumer<Transaction> calls, Runnable onCommitted, Consumer<Throwable> onError) {
+		this.batcher.submit(this.session.getKms(), new RecorderOperationBatcher.Operation() {
+			@Override
+			public void addTo(Transaction tx) {
+				calls.accept(tx);
+			}
+
+			@Override
+			public void onCommitted() {
+				onCommitted.run();
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				onError.accept(cause);
+			}
+		});
+	}
+
+	/**
+	 * Notifies the callback only once: the first of the Kurento event, the error
+	 * or the timeout wins
+	 */
+	private static void notify(AtomicReference<Continuation<Void>> callback, Throwable cause) {
+		Continuation<Void> continuation = callback.getAndSet(null);
+		if (continuation == null) {
+			return;
+		}
+		try {
+			if (cause == null) {
+				continuation.onSuccess(null);
+			} else {
+				continuation.onError(cause);
+			}
+		} catch (Exception e) {
+			log.error("Error notifying RecorderEndpoint callback: {}", e.getMessage());
+		}
+	}
+
+}
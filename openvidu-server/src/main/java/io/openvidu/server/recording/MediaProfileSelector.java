@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kurento.client.MediaProfileSpecType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.openvidu.client.OpenViduException;
+import io.openvidu.client.OpenViduException.Code;
+import io.openvidu.java.client.RecordingProperties;
+import io.openvidu.server.kurento.core.KurentoParticipant;
+import io.openvidu.server.kurento.endpoint.PublisherEndpoint;
+import io.openvidu.server.metrics.MetricsManager;
+
+/**
+ * Chooses the Kurento media profile of the recorder of each stream of an
+ * INDIVIDUAL recording. By default every stream is recorded in WEBM. With
+ * {@link RecordingProperties#passthrough()} the container is chosen after the
+ * codecs negotiated by the publisher, so KMS only muxes the media instead of
+ * transcoding it: WEBM for VP8 and Opus, MKV for H264 and Opus and MP4 for
+ * H264 video-only streams.
+ *
+ * Replace this bean to apply any other selection criteria
+ */
+public class MediaProfileSelector {
+
+	private static final Logger log = LoggerFactory.getLogger(MediaProfileSelector.class);
+
+	private static final Pattern MEDIA_LINE = Pattern.compile("^m=(audio|video) \\d+ \\S+ (\\d+)", Pattern.MULTILINE);
+
+	@Autowired
+	protected MetricsManager metricsManager;
+
+	public MediaProfileSpecType selectMediaProfile(RecordingProperties properties, KurentoParticipant participant)
+			throws OpenViduException {
+
+		PublisherEndpoint publisher = participant.getPublisher();
+		boolean streamHasAudio = publisher.getMediaOptions().hasAudio();
+		boolean streamHasVideo = publisher.getMediaOptions().hasVideo();
+
+		if (!streamHasAudio && !streamHasVideo) {
+			// ERROR: Stream has no track at all. This branch should never be reachable
+			throw new OpenViduException(Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
+					"Stream has no track at all. Cannot be recorded");
+		}
+		if (!streamHasVideo && !properties.hasAudio()) {
+			// ERROR: RecordingProperties set to video only but there's no video track
+			throw new OpenViduException(Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
+					"RecordingProperties set to \"hasAudio(false)\" but stream is audio-only");
+		}
+		if (!streamHasAudio && !properties.hasVideo()) {
+			// ERROR: RecordingProperties set to audio only but there's no audio track
+			throw new OpenViduException(Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
+					"RecordingProperties set to \"hasVideo(false)\" but stream is video-only");
+		}
+
+		boolean recordAudio = streamHasAudio && properties.hasAudio();
+		boolean recordVideo = streamHasVideo && properties.hasVideo();
+
+		String audioCodec = null;
+		String videoCodec = null;
+		if (publisher.getNegotiatedSdp() != null) {
+			audioCodec = recordAudio ? getCodec(publisher.getNegotiatedSdp(), "audio") : null;
+			videoCodec = recordVideo ? getCodec(publisher.getNegotiatedSdp(), "video") : null;
+		}
+		MediaProfileSpecType profile;
+		boolean h264Container = properties.passthrough() && "H264".equalsIgnoreCase(videoCodec);
+		if (h264Container) {
+			profile = recordAudio ? MediaProfileSpecType.MKV : MediaProfileSpecType.MP4_VIDEO_ONLY;
+		} else if (recordVideo) {
+			profile = recordAudio ? MediaProfileSpecType.WEBM : MediaProfileSpecType.WEBM_VIDEO_ONLY;
+		} else {
+			profile = MediaProfileSpecType.WEBM_AUDIO_ONLY;
+		}
+
+		// Same criteria with and without passthrough: KMS only transcodes the tracks
+		// whose codec is not the one of the container. Unknown codecs count as
+		// transcoded
+		boolean transcoding = (recordAudio && !"opus".equalsIgnoreCase(audioCodec))
+				|| (recordVideo && !(h264Container ? "H264" : "VP8").equalsIgnoreCase(videoCodec));
+		log.info("Stream {} with codecs audio={} video={} recorded with profile {}{}", publisher.getStreamId(),
+				audioCodec, videoCodec, profile, transcoding ? " (transcoding)" : "");
+		this.metricsManager.recordRecorderProfile(profile.name(), transcoding);
+		return profile;
+	}
+
+	/**
+	 * @return the extension of the files written by a recorder with the profile
+	 */
+	public static String getFileExtension(MediaProfileSpecType profile) {
+		if (profile.name().startsWith("MKV")) {
+			return "mkv";
+		} else if (profile.name().startsWith("MP4")) {
+			return "mp4";
+		}
+		return "webm";
+	}
+
+	/**
+	 * @return the encoding name of the first payload type of the media section, as
+	 *         an SDP answer only lists the ones in use
+	 */
+	private static String getCodec(String sdp, String mediaType) {
+		Matcher mediaLine = MEDIA_LINE.matcher(sdp);
+		while (mediaLine.find()) {
+			if (mediaLine.group(1).equals(mediaType)) {
+				Matcher rtpmap = Pattern.compile("^a=rtpmap:" + mediaLine.group(2) + " ([^/\\s]+)", Pattern.MULTILINE)
+						.matcher(sdp.substring(mediaLine.end()));
+				return rtpmap.find() ? rtpmap.group(1) : null;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Job mixing the streams of a finished INDIVIDUAL recording into a single
+ * composed file. Jobs with higher priority are processed first, and jobs with
+ * the same priority in order of submission
+ */
+public class MixingJob implements Comparable<MixingJob> {
+
+	public enum Status {
+		queued, mixing, ready, failed, cancelled
+	}
+
+	private static final AtomicLong submissions = new AtomicLong();
+
+	private final String recordingId;
+	private final String sessionId;
+	private final int priority;
+	private final String resolution;
+	private final long createdAt;
+	private final long order;
+
+	private volatile Status status = Status.queued;
+	private volatile int progress = 0; // percentage of the recording mixed
+	private volatile double duration = 0; // seconds
+	private volatile String url;
+	private volatile String containerId;
+	private volatile String reason; // why the job failed
+	private volatile long finishedAt = 0;
+
+	public MixingJob(String recordingId, String sessionId, int priority, String resolution) {
+		this.recordingId = recordingId;
+		this.sessionId = sessionId;
+		this.priority = priority;
+		this.resolution = resolution;
+		this.createdAt = System.currentTimeMillis();
+		this.order = submissions.incrementAndGet();
+	}
+
+	public String getRecordingId() {
+		return recordingId;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public String getResolution() {
+		return resolution;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+		if (this.isFinished()) {
+			this.finishedAt = System.currentTimeMillis();
+		}
+	}
+
+	public boolean isFinished() {
+		return Status.ready.equals(this.status) || Status.failed.equals(this.status)
+				|| Status.cancelled.equals(this.status);
+	}
+
+	/**
+	 * @return the time the job reached its final status, or 0 if not finished
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
+
+	public int getProgress() {
+		return progress;
+	}
+
+	public void setProgress(int progress) {
+		this.progress = progress;
+	}
+
+	public double getDuration() {
+		return duration;
+	}
+
+	public void setDuration(double duration) {
+		this.duration = duration;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getContainerId() {
+		return containerId;
+	}
+
+	public void setContainerId(String containerId) {
+		this.containerId = containerId;
+	}
+
+	@Override
+	public int compareTo(MixingJob other) {
+		if (this.priority != other.priority) {
+			return Integer.compare(other.priority, this.priority);
+		}
+		return Long.compare(this.order, other.order);
+	}
+
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("id", this.recordingId);
+		json.addProperty("sessionId", this.sessionId);
+		json.addProperty("priority", this.priority);
+		json.addProperty("resolution", this.resolution);
+		json.addProperty("createdAt", this.createdAt);
+		json.addProperty("status", this.status.name());
+		json.addProperty("progress", this.progress);
+		if (Status.ready.equals(this.status)) {
+			json.addProperty("duration", this.duration);
+			json.addProperty("url", this.url);
+		} else if (Status.failed.equals(this.status) && this.reason != null) {
+			json.addProperty("reason", this.reason);
+		}
+		return json;
+	}
+
+}
@@ -17,6 +17,10 @@
 
 package io.openvidu.server.recording;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
 import org.kurento.client.RecorderEndpoint;
 
 import com.google.gson.JsonObject;
@@ -32,11 +36,22 @@ public class RecorderEndpointWrapper {
 	private boolean hasAudio;
 	private boolean hasVideo;
 	private String typeOfVideo;
+	private String fileExtension;
 
 	private long startTime;
 	private long endTime;
 	private long size;
 
+	// Segmented recording state. Not stored in the metadata file
+	private transient int segment = 0;
+	private transient long segmentStartTime;
+	private transient RecorderEndpoint pendingRecorder;
+	private transient ScheduledFuture<?> segmentTask;
+	private transient Map<Integer, Double> segmentDurations = new ConcurrentHashMap<>();
+
+	// KMS hosting the pipeline of the recorder. Not stored in the metadata file
+	private transient String kmsId;
+
 	public RecorderEndpointWrapper(RecorderEndpoint recorder, String connectionId, String recordingId, String streamId,
 			String clientData, String serverData, boolean hasAudio, boolean hasVideo, String typeOfVideo) {
 		this.recorder = recorder;
@@ -54,6 +69,10 @@ public class RecorderEndpointWrapper {
 		return recorder;
 	}
 
+	public void setRecorder(RecorderEndpoint recorder) {
+		this.recorder = recorder;
+	}
+
 	public String getConnectionId() {
 		return connectionId;
 	}
@@ -110,6 +129,62 @@ public class RecorderEndpointWrapper {
 		return typeOfVideo;
 	}
 
+	/**
+	 * @return "webm", "mkv" or "mp4" depending on the media profile of the recorder
+	 */
+	public String getFileExtension() {
+		// Metadata files previous to codec passthrough have no file extension
+		return fileExtension != null ? fileExtension : "webm";
+	}
+
+	public void setFileExtension(String fileExtension) {
+		this.fileExtension = fileExtension;
+	}
+
+	public String getKmsId() {
+		return kmsId;
+	}
+
+	public void setKmsId(String kmsId) {
+		this.kmsId = kmsId;
+	}
+
+	public int getSegment() {
+		return segment;
+	}
+
+	public void setSegment(int segment) {
+		this.segment = segment;
+	}
+
+	public long getSegmentStartTime() {
+		return segmentStartTime;
+	}
+
+	public void setSegmentStartTime(long segmentStartTime) {
+		this.segmentStartTime = segmentStartTime;
+	}
+
+	public RecorderEndpoint getPendingRecorder() {
+		return pendingRecorder;
+	}
+
+	public void setPendingRecorder(RecorderEndpoint pendingRecorder) {
+		this.pendingRecorder = pendingRecorder;
+	}
+
+	public ScheduledFuture<?> getSegmentTask() {
+		return segmentTask;
+	}
+
+	public void setSegmentTask(ScheduledFuture<?> segmentTask) {
+		this.segmentTask = segmentTask;
+	}
+
+	public Map<Integer, Double> getSegmentDurations() {
+		return segmentDurations;
+	}
+
 	public JsonObject toJson() {
 		JsonObject json = new JsonObject();
 		json.addProperty("connectionId", this.connectionId);
@@ -125,6 +200,7 @@ public class RecorderEndpointWrapper {
 		if (this.hasVideo) {
 			json.addProperty("typeOfVideo", this.typeOfVideo);
 		}
+		json.addProperty("fileExtension", this.getFileExtension());
 		return json;
 	}
 
@@ -24,6 +24,14 @@ import io.openvidu.java.client.RecordingProperties;
 
 public class Recording {
 
+	/**
+	 * Status of the upload of the recording files to the object storage (see
+	 * property "openvidu.recording.s3.endpoint")
+	 */
+	public enum UploadStatus {
+		uploading, uploaded, failed
+	}
+
 	private io.openvidu.java.client.Recording.Status status;
 
 	private String id;
@@ -36,6 +44,9 @@ public class Recording {
 	private boolean hasAudio = true;
 	private boolean hasVideo = true;
 	private RecordingProperties recordingProperties;
+	private UploadStatus uploadStatus; // null if not uploaded to object storage
+	private int uploadProgress = 0; // percentage of bytes uploaded
+	private int segmentDuration = 0; // seconds. 0 if not recorded in segments
 
 	public Recording(String sessionId, String id, RecordingProperties recordingProperties) {
 		this.sessionId = sessionId;
@@ -79,8 +90,17 @@ public class Recording {
 			if (RecordingLayout.CUSTOM.equals(recordingLayout)) {
 				builder.customLayout(json.get("customLayout").getAsString());
 			}
+		} else if (json.has("passthrough")) {
+			builder.passthrough(json.get("passthrough").getAsBoolean());
 		}
 		this.recordingProperties = builder.build();
+		if (json.has("uploadStatus")) {
+			this.uploadStatus = UploadStatus.valueOf(json.get("uploadStatus").getAsString());
+			this.uploadProgress = json.get("uploadProgress").getAsInt();
+		}
+		if (json.has("segmentDuration")) {
+			this.segmentDuration = json.get("segmentDuration").getAsInt();
+		}
 	}
 
 	public io.openvidu.java.client.Recording.Status getStatus() {
@@ -183,6 +203,34 @@ public class Recording {
 		this.hasVideo = hasVideo;
 	}
 
+	public UploadStatus getUploadStatus() {
+		return uploadStatus;
+	}
+
+	public void setUploadStatus(UploadStatus uploadStatus) {
+		this.uploadStatus = uploadStatus;
+	}
+
+	public int getUploadProgress() {
+		return uploadProgress;
+	}
+
+	public void setUploadProgress(int uploadProgress) {
+		this.uploadProgress = uploadProgress;
+	}
+
+	public int getSegmentDuration() {
+		return segmentDuration;
+	}
+
+	public void setSegmentDuration(int segmentDuration) {
+		this.segmentDuration = segmentDuration;
+	}
+
+	public boolean isSegmented() {
+		return this.segmentDuration > 0;
+	}
+
 	public JsonObject toJson() {
 		JsonObject json = new JsonObject();
 		json.addProperty("id", this.id);
@@ -195,6 +243,9 @@ public class Recording {
 			if (RecordingLayout.CUSTOM.equals(this.recordingProperties.recordingLayout())) {
 				json.addProperty("customLayout", this.recordingProperties.customLayout());
 			}
+		} else if (io.openvidu.java.client.Recording.OutputMode.INDIVIDUAL
+				.equals(this.recordingProperties.outputMode())) {
+			json.addProperty("passthrough", this.recordingProperties.passthrough());
 		}
 		json.addProperty("sessionId", this.sessionId);
 		json.addProperty("createdAt", this.createdAt);
@@ -204,6 +255,13 @@ public class Recording {
 		json.addProperty("hasAudio", this.hasAudio);
 		json.addProperty("hasVideo", this.hasVideo);
 		json.addProperty("status", this.status.toString());
+		if (this.uploadStatus != null) {
+			json.addProperty("uploadStatus", this.uploadStatus.name());
+			json.addProperty("uploadProgress", this.uploadProgress);
+		}
+		if (this.segmentDuration > 0) {
+			json.addProperty("segmentDuration", this.segmentDuration);
+		}
 		return json;
 	}
 
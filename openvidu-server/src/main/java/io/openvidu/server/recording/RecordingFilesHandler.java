@@ -0,0 +1,361 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.TokenBucket;
+
+/**
+ * Serves the files of the recordings stored in the host under path
+ * "/recordings/{recordingId}/{fileName}". Supports single byte ranges (status
+ * 206), so players can seek, and conditional requests: the validator of the
+ * final file of a recording is built from the size and creation time of its
+ * {@link Recording} entity.
+ *
+ * If no limit is configured and the connector allows it, files are sent by
+ * Tomcat with sendfile. Otherwise they are read in chunks and written with
+ * non-blocking servlet I/O, limiting the number of simultaneous downloads of
+ * the same recording (property "openvidu.recording.download-max-concurrent")
+ * and the aggregate bandwidth (property
+ * "openvidu.recording.download-max-bandwidth"). Throttled downloads wait on a
+ * timer of the {@link BlockingTaskExecutor}, so they hold no request thread
+ */
+@Controller
+@RequestMapping("/recordings")
+public class RecordingFilesHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(RecordingFilesHandler.class);
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected RecordingManager recordingManager;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private TokenBucket egressBucket;
+
+	private final ConcurrentMap<String, Integer> activeDownloads = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		// 1 kbps = 125 bytes per second. The bucket holds bytes
+		this.egressBucket = new TokenBucket(this.openviduConfig.getOpenviduRecordingDownloadMaxBandwidth() * 125);
+	}
+
+	@RequestMapping(value = "/{recordingId}/{fileName:.+}", method = { RequestMethod.GET, RequestMethod.HEAD })
+	public void getRecordingFile(@PathVariable("recordingId") String recordingId,
+			@PathVariable("fileName") String fileName, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+
+		Path recordingsPath = Paths.get(this.openviduConfig.getOpenViduRecordingPath()).toAbsolutePath().normalize();
+		Path file = recordingsPath.resolve(recordingId).resolve(fileName).normalize();
+		// Only files inside a recording folder. Not the recording journal
+		if (!file.startsWith(recordingsPath) || !recordingsPath.equals(file.getParent().getParent())
+				|| !Files.isRegularFile(file) || !Files.isReadable(file)) {
+			response.sendError(HttpStatus.NOT_FOUND.value());
+			return;
+		}
+
+		final long fileLength = Files.size(file);
+		final long lastModified = Files.getLastModifiedTime(file).toMillis();
+		final String eTag = this.getETag(recordingId, fileName, fileLength, lastModified);
+
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.ETAG, eTag);
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+
+		if (this.isNotModified(request, eTag, lastModified)) {
+			response.setStatus(HttpStatus.NOT_MODIFIED.value());
+			return;
+		}
+
+		long start = 0;
+		long end = fileLength - 1;
+		String range = request.getHeader(HttpHeaders.RANGE);
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (range != null && (ifRange == null || ifRange.equals(eTag))) {
+			long[] byteRange = parseRange(range, fileLength);
+			if (byteRange == null) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+				response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+				return;
+			}
+			if (byteRange.length == 2) {
+				start = byteRange[0];
+				end = byteRange[1];
+				response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+			}
+		}
+		final long length = end - start + 1;
+
+		response.setContentType(MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM)
+				.toString());
+		response.setContentLengthLong(length);
+
+		if (RequestMethod.HEAD.name().equals(request.getMethod()) || length == 0) {
+			return;
+		}
+
+		if (this.canUseSendfile(request)) {
+			request.setAttribute(SENDFILE_FILENAME, file.toFile().getCanonicalPath());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+
+		int downloads = this.activeDownloads.merge(recordingId, 1, Integer::sum);
+		int maxConcurrent = this.openviduConfig.getOpenviduRecordingDownloadMaxConcurrent();
+		if (maxConcurrent > 0 && downloads > maxConcurrent) {
+			this.endDownload(recordingId);
+			log.warn("Rejected download of recording file {}/{}: {} downloads of the recording already in progress",
+					recordingId, fileName, maxConcurrent);
+			response.reset();
+			response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+			response.sendError(HttpStatus.TOO_MANY_REQUESTS.value());
+			return;
+		}
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+		} catch (IOException e) {
+			this.endDownload(recordingId);
+			throw e;
+		}
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(0);
+		ServletOutputStream output = response.getOutputStream();
+		output.setWriteListener(new Download(recordingId, fileName, channel, start, length, asyncContext, output));
+	}
+
+	/**
+	 * Writes a file range whenever the output stream is ready. After each chunk
+	 * it stops for as long as the egress bucket is in debt
+	 */
+	private class Download implements WriteListener {
+
+		private final String recordingId;
+		private final String fileName;
+		private final FileChannel channel;
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream output;
+		private final byte[] buffer;
+
+		private long position;
+		private long remaining;
+		private boolean finished = false;
+
+		Download(String recordingId, String fileName, FileChannel channel, long start, long length,
+				AsyncContext asyncContext, ServletOutputStream output) {
+			this.recordingId = recordingId;
+			this.fileName = fileName;
+			this.channel = channel;
+			this.asyncContext = asyncContext;
+			this.output = output;
+			this.buffer = new byte[(int) Math.min(CHUNK_SIZE, length)];
+			this.position = start;
+			this.remaining = length;
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+			while (this.output.isReady()) {
+				if (this.remaining == 0) {
+					this.finish();
+					return;
+				}
+				int chunk = (int) Math.min(this.buffer.length, this.remaining);
+				int read = this.channel.read(ByteBuffer.wrap(this.buffer, 0, chunk), this.position);
+				if (read <= 0) {
+					// File truncated while being sent
+					this.finish();
+					return;
+				}
+				this.output.write(this.buffer, 0, read);
+				this.position += read;
+				this.remaining -= read;
+				long waitNanos = egressBucket.reserve(read);
+				if (waitNanos > 0) {
+					// The container does not call onWritePossible again until isReady returns false
+					blockingTaskExecutor.schedule(this::resume, waitNanos, TimeUnit.NANOSECONDS);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			// Usually the client closing the connection while seeking
+			log.debug("Download of recording file {}/{} interrupted: {}", this.recordingId, this.fileName,
+					t.getMessage());
+			this.finish();
+		}
+
+		private void resume() {
+			try {
+				this.onWritePossible();
+			} catch (IOException e) {
+				this.onError(e);
+			}
+		}
+
+		private synchronized void finish() {
+			if (this.finished) {
+				return;
+			}
+			this.finished = true;
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				log.debug("Error closing recording file {}/{}: {}", this.recordingId, this.fileName, e.getMessage());
+			}
+			endDownload(this.recordingId);
+			this.asyncContext.complete();
+		}
+
+	}
+
+	/**
+	 * The final file of a recording is validated with its entity, so the ETag
+	 * does not change if the file is merely touched. Any other file of the
+	 * recording folder is validated with its own size and modification time
+	 */
+	private String getETag(String recordingId, String fileName, long fileLength, long lastModified) {
+		Recording recording = this.recordingManager.getRecording(recordingId);
+		if (recording != null && io.openvidu.java.client.Recording.Status.ready.equals(recording.getStatus())
+				&& recording.getSize() == fileLength
+				&& fileName.equals(this.recordingManager.getRecordingFileName(recording))) {
+			return "\"" + Long.toHexString(recording.getSize()) + "-" + Long.toHexString(recording.getCreatedAt())
+					+ "\"";
+		}
+		return "\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	private boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.equals("*") || candidate.equals(eTag) || candidate.equals("W/" + eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		// HTTP dates have a precision of seconds
+		return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * @return the first and last byte of the requested range, an empty array if
+	 *         the whole file must be sent or null if the range is not satisfiable
+	 */
+	public static long[] parseRange(String range, long fileLength) {
+		if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+			// Multiple ranges are not supported. The whole file is sent
+			return new long[0];
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return new long[0];
+		}
+		long start;
+		long end;
+		try {
+			if (dash == 0) {
+				// Suffix range: last N bytes
+				long suffix = Long.parseLong(spec.substring(1));
+				if (suffix == 0) {
+					return null;
+				}
+				start = Math.max(0, fileLength - suffix);
+				end = fileLength - 1;
+			} else {
+				start = Long.parseLong(spec.substring(0, dash));
+				end = dash == spec.length() - 1 ? fileLength - 1
+						: Math.min(Long.parseLong(spec.substring(dash + 1)), fileLength - 1);
+			}
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+		if (start >= fileLength || start > end) {
+			return null;
+		}
+		return new long[] { start, end };
+	}
+
+	private boolean canUseSendfile(HttpServletRequest request) {
+		return this.openviduConfig.getOpenviduRecordingDownloadMaxConcurrent() <= 0
+				&& this.openviduConfig.getOpenviduRecordingDownloadMaxBandwidth() <= 0
+				&& Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+	}
+
+	private void endDownload(String recordingId) {
+		this.activeDownloads.computeIfPresent(recordingId, (id, downloads) -> downloads > 1 ? downloads - 1 : null);
+	}
+
+}
@@ -0,0 +1,384 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.JsonUtils;
+
+/**
+ * Stores the state of every recording of the host. Each change is appended
+ * as a line to a journal file in the recordings path, which is synced to disk
+ * in batches. Once the journal grows long enough it is compacted into a
+ * snapshot file, written aside and atomically renamed. On startup the state
+ * is rebuilt from the snapshot and the tail of the journal, without reading
+ * the folder of each recording.
+ *
+ * The ".recording.RECORDING_ID" entity file of each recording folder is an
+ * exported view of this state. Changes are exported in the background along
+ * with the syncs of the journal, outside of its lock, and consecutive changes
+ * of the same recording are written only once. Entity files are only read on
+ * startup, to import the recording folders with no entry in the journal
+ */
+public class RecordingJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(RecordingJournal.class);
+
+	public static final String SNAPSHOT_FILE = ".recordings.snapshot";
+	public static final String JOURNAL_FILE = ".recordings.journal";
+
+	// Journal entries written before compacting them into a new snapshot
+	private static final int COMPACTION_THRESHOLD = 1000;
+	// Milliseconds between syncs of the journal to disk and exports of entity files
+	private static final long SYNC_INTERVAL = 200;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final Map<String, JsonObject> recordings = new ConcurrentHashMap<>();
+	// Last state of the recordings whose entity file has not been exported yet
+	private final Map<String, JsonObject> pendingExports = new ConcurrentHashMap<>();
+
+	private Path recordingsPath;
+	private FileChannel journal;
+	private int journalEntries = 0;
+	private boolean unsynced = false;
+
+	private ScheduledFuture<?> syncTask;
+
+	private JsonUtils jsonUtils = new JsonUtils();
+
+	@PostConstruct
+	public void init() {
+		if (!this.openviduConfig.isRecordingModuleEnabled()) {
+			return;
+		}
+		this.recordingsPath = Paths.get(this.openviduConfig.getOpenViduRecordingPath());
+		try {
+			this.open();
+		} catch (IOException | RuntimeException e) {
+			log.error("Error opening recording journal in {}: {}", this.recordingsPath, e.getMessage());
+		}
+		// Entity files are still exported if the journal could not be opened
+		this.syncTask = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> {
+			this.sync();
+			this.exportEntityFiles();
+		}, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.syncTask != null) {
+			this.syncTask.cancel(false);
+		}
+		this.exportEntityFiles();
+		this.closeJournal();
+	}
+
+	private synchronized void closeJournal() {
+		if (this.journal != null) {
+			try {
+				this.journal.force(false);
+				this.journal.close();
+			} catch (IOException e) {
+				log.error("Error closing recording journal: {}", e.getMessage());
+			}
+			this.journal = null;
+		}
+	}
+
+	public Recording get(String recordingId) {
+		JsonObject json = this.recordings.get(recordingId);
+		return json != null ? new Recording(json) : null;
+	}
+
+	public Collection<Recording> getAll() {
+		return this.recordings.values().stream().map(Recording::new).collect(Collectors.toSet());
+	}
+
+	public Set<String> getIds() {
+		return new HashSet<>(this.recordings.keySet());
+	}
+
+	/**
+	 * Stores the current state of the recording. Its entity file is exported in
+	 * the background
+	 */
+	public synchronized void put(Recording recording) {
+		JsonObject json = recording.toJson();
+		this.recordings.put(recording.getId(), json);
+		JsonObject entry = new JsonObject();
+		entry.add("put", json);
+		this.append(entry);
+		this.pendingExports.put(recording.getId(), json);
+	}
+
+	/**
+	 * Atomically modifies the stored state of a recording
+	 *
+	 * @return the modified recording, or null if the recording does not exist
+	 */
+	public synchronized Recording update(String recordingId, Consumer<Recording> modification) {
+		Recording recording = this.get(recordingId);
+		if (recording != null) {
+			modification.accept(recording);
+			this.put(recording);
+		}
+		return recording;
+	}
+
+	public synchronized void remove(String recordingId) {
+		this.pendingExports.remove(recordingId);
+		if (this.recordings.remove(recordingId) != null) {
+			JsonObject entry = new JsonObject();
+			entry.addProperty("remove", recordingId);
+			this.append(entry);
+		}
+	}
+
+	private void open() throws IOException {
+		Files.createDirectories(this.recordingsPath);
+		Path snapshotFile = this.recordingsPath.resolve(SNAPSHOT_FILE);
+		Path journalFile = this.recordingsPath.resolve(JOURNAL_FILE);
+		long startTime = System.currentTimeMillis();
+
+		if (Files.isRegularFile(snapshotFile)) {
+			for (JsonElement recording : this.jsonUtils.fromFileToJsonArray(snapshotFile.toString())) {
+				JsonObject json = recording.getAsJsonObject();
+				this.recordings.put(json.get("id").getAsString(), json);
+			}
+		}
+
+		this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long validLength = this.replay(journalFile);
+		if (validLength > this.journal.size()) {
+			// Last entry complete, but its line break was not written before a crash
+			this.journal.write(ByteBuffer.wrap(new byte[] { '\n' }), this.journal.size());
+		} else if (validLength < this.journal.size()) {
+			// Last entry only partially written before a crash
+			log.warn("Discarding {} bytes of incomplete entries at the end of the recording journal",
+					this.journal.size() - validLength);
+			this.journal.truncate(validLength);
+		}
+		this.journal.position(validLength);
+
+		// Recording folders not in the journal, as the ones of a crash before their
+		// first entry or the ones copied from other hosts, are imported
+		this.importEntityFiles();
+
+		if (this.journalEntries >= COMPACTION_THRESHOLD) {
+			this.compact();
+		}
+		log.info("Recording journal loaded with {} recordings in {} ms", this.recordings.size(),
+				System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * @return the length of the journal up to its last complete entry
+	 */
+	private long replay(Path journalFile) throws IOException {
+		long validLength = 0;
+		try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				JsonObject entry;
+				try {
+					entry = new JsonParser().parse(line).getAsJsonObject();
+				} catch (RuntimeException e) {
+					break;
+				}
+				if (entry.has("put")) {
+					JsonObject json = entry.get("put").getAsJsonObject();
+					this.recordings.put(json.get("id").getAsString(), json);
+				} else if (entry.has("remove")) {
+					this.recordings.remove(entry.get("remove").getAsString());
+				}
+				this.journalEntries++;
+				validLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+			}
+		}
+		return validLength;
+	}
+
+	/**
+	 * Adds to the journal the recordings of the folders with a valid entity file
+	 * and no entry in the journal. Only the entity files of these folders are read
+	 */
+	private void importEntityFiles() {
+		File[] folders = this.recordingsPath.toFile()
+				.listFiles(folder -> folder.isDirectory() && !this.recordings.containsKey(folder.getName()));
+		if (folders == null) {
+			return;
+		}
+		int imported = 0;
+		for (File folder : folders) {
+			File entityFile = new File(folder, RecordingManager.RECORDING_ENTITY_FILE + folder.getName());
+			if (entityFile.isFile()) {
+				try {
+					JsonObject json = this.jsonUtils.fromFileToJsonObject(entityFile.getAbsolutePath());
+					if (!folder.getName().equals(json.get("id").getAsString())) {
+						log.error("Recording entity file {} does not belong to its folder",
+								entityFile.getAbsolutePath());
+						continue;
+					}
+					this.recordings.put(folder.getName(), json);
+					JsonObject entry = new JsonObject();
+					entry.add("put", json);
+					this.append(entry);
+					imported++;
+				} catch (Exception e) {
+					log.error("Error importing recording entity file {}: {}", entityFile.getAbsolutePath(),
+							e.getMessage());
+				}
+			}
+		}
+		if (imported > 0) {
+			log.info("Imported {} recordings from their entity files into the recording journal", imported);
+		}
+	}
+
+	private void append(JsonObject entry) {
+		if (this.journal == null) {
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap((entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+		try {
+			while (buffer.hasRemaining()) {
+				this.journal.write(buffer);
+			}
+			this.unsynced = true;
+			if (++this.journalEntries >= COMPACTION_THRESHOLD) {
+				this.compact();
+			}
+		} catch (IOException e) {
+			log.error("Error writing to recording journal: {}", e.getMessage());
+		}
+	}
+
+	private synchronized void sync() {
+		if (this.unsynced && this.journal != null) {
+			try {
+				this.journal.force(false);
+				this.unsynced = false;
+			} catch (IOException e) {
+				log.error("Error syncing recording journal: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes every recording to a new snapshot and empties the journal. A crash
+	 * before emptying the journal is harmless: replaying it over the new snapshot
+	 * leads to the same state
+	 */
+	private void compact() throws IOException {
+		this.writeSnapshot();
+		this.journal.truncate(0);
+		this.journal.position(0);
+		this.journal.force(false);
+		this.journalEntries = 0;
+		this.unsynced = false;
+		log.debug("Recording journal compacted into a snapshot of {} recordings", this.recordings.size());
+	}
+
+	private void writeSnapshot() throws IOException {
+		JsonArray snapshot = new JsonArray();
+		this.recordings.values().forEach(snapshot::add);
+		this.writeAtomically(this.recordingsPath.resolve(SNAPSHOT_FILE), snapshot.toString());
+	}
+
+	/**
+	 * Exports are serialized by their own lock, not the one of the journal, so
+	 * the last state of a recording is always the last one written
+	 */
+	private void exportEntityFiles() {
+		synchronized (this.pendingExports) {
+			for (String recordingId : this.pendingExports.keySet()) {
+				JsonObject json = this.pendingExports.remove(recordingId);
+				if (json != null) {
+					this.exportEntityFile(recordingId, json);
+				}
+			}
+		}
+	}
+
+	private void exportEntityFile(String recordingId, JsonObject json) {
+		Path folder = Paths.get(this.openviduConfig.getOpenViduRecordingPath(), recordingId);
+		if (!Files.isDirectory(folder)) {
+			return;
+		}
+		try {
+			this.writeAtomically(folder.resolve(RecordingManager.RECORDING_ENTITY_FILE + recordingId),
+					json.toString());
+		} catch (IOException e) {
+			log.error("Error exporting entity file of recording {}: {}", recordingId, e.getMessage());
+		}
+	}
+
+	private void writeAtomically(Path file, String content) throws IOException {
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
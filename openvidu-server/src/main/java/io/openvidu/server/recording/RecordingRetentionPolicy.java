@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How long the recordings of a session are kept in the host. Defined with
+ * format "SESSION_ID:MAX_AGE:KEEP_LAST" in property
+ * "openvidu.recording.retention.sessions", where SESSION_ID may end with "*"
+ * to match every session starting with it, MAX_AGE is in hours and a value of
+ * 0 means no limit
+ */
+public class RecordingRetentionPolicy {
+
+	private static final Pattern FORMAT = Pattern.compile("^([^:]+):(\\d+):(\\d+)$");
+
+	private final String sessionId; // null for the global policy
+	private final int maxAge;
+	private final int keepLast;
+
+	public RecordingRetentionPolicy(String sessionId, int maxAge, int keepLast) {
+		this.sessionId = sessionId;
+		this.maxAge = maxAge;
+		this.keepLast = keepLast;
+	}
+
+	public static RecordingRetentionPolicy parse(String policy) throws Exception {
+		Matcher matcher = FORMAT.matcher(policy.trim());
+		if (!matcher.matches()) {
+			throw new Exception(
+					"Retention policy '" + policy + "' does not follow format SESSION_ID:MAX_AGE:KEEP_LAST");
+		}
+		try {
+			return new RecordingRetentionPolicy(matcher.group(1), Integer.parseInt(matcher.group(2)),
+					Integer.parseInt(matcher.group(3)));
+		} catch (NumberFormatException e) {
+			throw new Exception("Retention policy '" + policy + "' has a value out of range");
+		}
+	}
+
+	public boolean appliesTo(String sessionId) {
+		if (this.sessionId == null) {
+			return true;
+		}
+		if (this.sessionId.endsWith("*")) {
+			return sessionId.startsWith(this.sessionId.substring(0, this.sessionId.length() - 1));
+		}
+		return this.sessionId.equals(sessionId);
+	}
+
+	/**
+	 * @return true if a recording created at the given time has expired
+	 */
+	public boolean isExpired(long createdAt, long now) {
+		return this.maxAge > 0 && now - createdAt > this.maxAge * 3600000L;
+	}
+
+	/**
+	 * @param position 0 for the most recent recording of the session
+	 */
+	public boolean isSurplus(int position) {
+		return this.keepLast > 0 && position >= this.keepLast;
+	}
+
+	public boolean isUnlimited() {
+		return this.maxAge == 0 && this.keepLast == 0;
+	}
+
+	@Override
+	public String toString() {
+		return (this.sessionId != null ? this.sessionId : "*") + ":" + this.maxAge + ":" + this.keepLast;
+	}
+
+}
@@ -36,9 +36,8 @@ public class RecordingsHttpHandler implements WebMvcConfigurer {
 		String recordingsPath = openviduConfig.getOpenViduRecordingPath();
 		recordingsPath = recordingsPath.endsWith("/") ? recordingsPath : (recordingsPath + "/");
 
+		// Recording files are served by RecordingFilesHandler
 		openviduConfig.setOpenViduRecordingPath(recordingsPath);
-
-		registry.addResourceHandler("/recordings/**").addResourceLocations("file:" + recordingsPath);
 	}
 
 }
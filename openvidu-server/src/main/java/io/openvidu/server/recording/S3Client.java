@@ -0,0 +1,372 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Minimal client of the multipart upload API of S3 compatible object storages
+ * (AWS S3, MinIO...). Requests use path-style addressing and are signed with
+ * AWS Signature Version 4
+ */
+public class S3Client {
+
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int READ_TIMEOUT = 60000;
+
+	private final String endpoint;
+	private final String region;
+	private final String bucket;
+	private final String accessKey;
+	private final String secretKey;
+
+	public static class Part {
+
+		private final int number;
+		private final String eTag;
+		private final long size;
+
+		public Part(int number, String eTag, long size) {
+			this.number = number;
+			this.eTag = eTag;
+			this.size = size;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+	public S3Client(String endpoint, String region, String bucket, String accessKey, String secretKey) {
+		this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+		this.region = region;
+		this.bucket = bucket;
+		this.accessKey = accessKey;
+		this.secretKey = secretKey;
+	}
+
+	/**
+	 * @return the id of the new multipart upload
+	 */
+	public String createMultipartUpload(String key) throws IOException {
+		Map<String, String> query = new TreeMap<>();
+		query.put("uploads", "");
+		Document response = this.parse(this.execute("POST", key, query, null, 0));
+		return this.getText(response.getDocumentElement(), "UploadId");
+	}
+
+	/**
+	 * @return the ETag of the stored part
+	 */
+	public String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length)
+			throws IOException {
+		Map<String, String> query = new TreeMap<>();
+		query.put("partNumber", Integer.toString(partNumber));
+		query.put("uploadId", uploadId);
+		HttpURLConnection connection = this.connect("PUT", key, query, data, length);
+		try {
+			this.checkResponse(connection);
+			return connection.getHeaderField("ETag");
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @return the parts already stored for the multipart upload, by part number.
+	 *         Null if the upload does not exist anymore
+	 */
+	public Map<Integer, Part> listParts(String key, String uploadId) throws IOException {
+		Map<Integer, Part> parts = new TreeMap<>();
+		String marker = null;
+		do {
+			Map<String, String> query = new TreeMap<>();
+			query.put("uploadId", uploadId);
+			if (marker != null) {
+				query.put("part-number-marker", marker);
+			}
+			HttpURLConnection connection = this.connect("GET", key, query, null, 0);
+			Document response;
+			try {
+				if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+					return null;
+				}
+				response = this.parse(this.readResponse(connection));
+			} finally {
+				connection.disconnect();
+			}
+			NodeList partNodes = response.getDocumentElement().getElementsByTagName("Part");
+			for (int i = 0; i < partNodes.getLength(); i++) {
+				Element partNode = (Element) partNodes.item(i);
+				int number = Integer.parseInt(this.getText(partNode, "PartNumber"));
+				parts.put(number, new Part(number, this.getText(partNode, "ETag"),
+						Long.parseLong(this.getText(partNode, "Size"))));
+			}
+			boolean truncated = Boolean.parseBoolean(this.getText(response.getDocumentElement(), "IsTruncated"));
+			marker = truncated ? this.getText(response.getDocumentElement(), "NextPartNumberMarker") : null;
+		} while (marker != null);
+		return parts;
+	}
+
+	public void completeMultipartUpload(String key, String uploadId, List<Part> parts) throws IOException {
+		StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+		for (Part part : parts) {
+			body.append("<Part><PartNumber>").append(part.getNumber()).append("</PartNumber><ETag>")
+					.append(part.getETag().replace("&", "&amp;").replace("\"", "&quot;")).append("</ETag></Part>");
+		}
+		body.append("</CompleteMultipartUpload>");
+		byte[] data = body.toString().getBytes(StandardCharsets.UTF_8);
+		Map<String, String> query = new TreeMap<>();
+		query.put("uploadId", uploadId);
+		byte[] response = this.execute("POST", key, query, data, data.length);
+		// S3 may answer 200 OK with an error document once the upload has started
+		Document document = this.parse(response);
+		if ("Error".equals(document.getDocumentElement().getTagName())) {
+			throw new IOException("Error completing multipart upload of " + key + ": "
+					+ this.getText(document.getDocumentElement(), "Message"));
+		}
+	}
+
+	public void abortMultipartUpload(String key, String uploadId) throws IOException {
+		Map<String, String> query = new TreeMap<>();
+		query.put("uploadId", uploadId);
+		this.execute("DELETE", key, query, null, 0);
+	}
+
+	/**
+	 * @return the size of the stored object, or -1 if it does not exist
+	 */
+	public long getObjectSize(String key) throws IOException {
+		HttpURLConnection connection = this.connect("HEAD", key, new TreeMap<>(), null, 0);
+		try {
+			if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+				return -1;
+			}
+			this.checkResponse(connection);
+			return connection.getContentLengthLong();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private byte[] execute(String method, String key, Map<String, String> query, byte[] data, int length)
+			throws IOException {
+		HttpURLConnection connection = this.connect(method, key, query, data, length);
+		try {
+			return this.readResponse(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @return the path-style url of the object with the given key
+	 */
+	public static String getObjectUrl(String endpoint, String bucket, String key) {
+		return (endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint) + "/"
+				+ encode(bucket, false) + "/" + encode(key, false);
+	}
+
+	/**
+	 * @param query parameters sorted by name
+	 * @return the canonical query string of AWS Signature Version 4
+	 */
+	public static String getCanonicalQuery(Map<String, String> query) {
+		StringBuilder canonicalQuery = new StringBuilder();
+		for (Map.Entry<String, String> param : query.entrySet()) {
+			if (canonicalQuery.length() > 0) {
+				canonicalQuery.append('&');
+			}
+			canonicalQuery.append(encode(param.getKey(), true)).append('=').append(encode(param.getValue(), true));
+		}
+		return canonicalQuery.toString();
+	}
+
+	/**
+	 * @return the value of the Authorization header of a request signed with AWS
+	 *         Signature Version 4, covering headers Host, X-Amz-Content-Sha256 and
+	 *         X-Amz-Date
+	 */
+	public String getAuthorization(String method, String path, String canonicalQuery, String host,
+			String payloadHash, String amzDate) {
+		String date = amzDate.substring(0, 8);
+		String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery + "\n" + "host:" + host + "\n"
+				+ "x-amz-content-sha256:" + payloadHash + "\n" + "x-amz-date:" + amzDate + "\n\n"
+				+ "host;x-amz-content-sha256;x-amz-date\n" + payloadHash;
+		String scope = date + "/" + this.region + "/s3/aws4_request";
+		byte[] canonicalRequestBytes = canonicalRequest.getBytes(StandardCharsets.UTF_8);
+		String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+				+ hex(sha256(canonicalRequestBytes, canonicalRequestBytes.length));
+		byte[] signingKey = hmac(("AWS4" + this.secretKey).getBytes(StandardCharsets.UTF_8), date);
+		signingKey = hmac(signingKey, this.region);
+		signingKey = hmac(signingKey, "s3");
+		signingKey = hmac(signingKey, "aws4_request");
+		String signature = hex(hmac(signingKey, stringToSign));
+		return "AWS4-HMAC-SHA256 Credential=" + this.accessKey + "/" + scope
+				+ ", SignedHeaders=host;x-amz-content-sha256;x-amz-date, Signature=" + signature;
+	}
+
+	private HttpURLConnection connect(String method, String key, Map<String, String> query, byte[] data,
+			int length) throws IOException {
+		String path = "/" + encode(this.bucket, false) + "/" + encode(key, false);
+		String canonicalQuery = getCanonicalQuery(query);
+		URL url = new URL(this.endpoint + path + (!canonicalQuery.isEmpty() ? "?" + canonicalQuery : ""));
+
+		SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+		dateTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String amzDate = dateTimeFormat.format(new Date());
+		if (data == null) {
+			data = new byte[0];
+			length = 0;
+		}
+		String payloadHash = hex(sha256(data, length));
+		// Same Host header as the one sent by HttpURLConnection
+		String host = url.getHost()
+				+ (url.getPort() != -1 && url.getPort() != url.getDefaultPort() ? ":" + url.getPort() : "");
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("x-amz-date", amzDate);
+		connection.setRequestProperty("x-amz-content-sha256", payloadHash);
+		connection.setRequestProperty("Authorization",
+				this.getAuthorization(method, path, canonicalQuery, host, payloadHash, amzDate));
+		if ("POST".equals(method) || "PUT".equals(method)) {
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(length);
+			try (OutputStream output = connection.getOutputStream()) {
+				output.write(data, 0, length);
+			}
+		}
+		return connection;
+	}
+
+	private byte[] readResponse(HttpURLConnection connection) throws IOException {
+		this.checkResponse(connection);
+		try (InputStream input = connection.getInputStream()) {
+			return IOUtils.toByteArray(input);
+		}
+	}
+
+	private void checkResponse(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		if (status / 100 != 2) {
+			String error = "";
+			InputStream errorStream = connection.getErrorStream();
+			if (errorStream != null) {
+				try (InputStream input = errorStream) {
+					error = ": " + new String(IOUtils.toByteArray(input), StandardCharsets.UTF_8);
+				}
+			}
+			throw new IOException(connection.getRequestMethod() + " " + connection.getURL().getPath()
+					+ " returned status " + status + error);
+		}
+	}
+
+	private Document parse(byte[] xml) throws IOException {
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+		} catch (Exception e) {
+			throw new IOException("Invalid response from object storage: " + e.getMessage());
+		}
+	}
+
+	private String getText(Element element, String tagName) {
+		NodeList nodes = element.getElementsByTagName(tagName);
+		return nodes.getLength() > 0 ? nodes.item(0).getTextContent() : null;
+	}
+
+	/**
+	 * URI encoding of AWS Signature Version 4: every byte except the unreserved
+	 * characters is percent-encoded, and slashes too unless they belong to the
+	 * object key
+	 */
+	private static String encode(String value, boolean encodeSlash) {
+		try {
+			String encoded = URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A")
+					.replace("%7E", "~");
+			return encodeSlash ? encoded : encoded.replace("%2F", "/");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] sha256(byte[] data, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data, 0, length);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] hmac(byte[] key, String data) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+}
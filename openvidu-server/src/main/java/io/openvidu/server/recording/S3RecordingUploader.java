@@ -0,0 +1,397 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.gson.JsonObject;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.recording.Recording.UploadStatus;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.CustomFileManager;
+import io.openvidu.server.utils.JsonUtils;
+
+/**
+ * Uploads the files of every finished recording to an S3 compatible object
+ * storage (property "openvidu.recording.s3.endpoint"). The stop process of the
+ * recording is not delayed: the recording is sealed as usual and its files are
+ * uploaded in the background, one recording at a time.
+ *
+ * Each file is sent with a multipart upload whose parts are uploaded in
+ * parallel by at most "openvidu.recording.s3.concurrency" threads, each one
+ * holding a single part in memory. Failed parts are retried with exponential
+ * backoff. The ids of the multipart uploads are stored in the recording
+ * folder, so uploads interrupted by a restart of OpenVidu Server resume from
+ * the last stored part. The progress is reflected in properties "uploadStatus"
+ * and "uploadProgress" of the recording entity
+ */
+public class S3RecordingUploader implements RecordingDownloader {
+
+	private static final Logger log = LoggerFactory.getLogger(S3RecordingUploader.class);
+
+	private static final String UPLOAD_STATE_FILE = ".upload.";
+	private static final int MAX_PARTS = 10000;
+	private static final int MAX_ATTEMPTS = 5;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected RecordingJournal recordingJournal;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private S3Client s3Client;
+	// Uploads one recording at a time
+	private Executor uploadExecutor;
+	// Uploads at most "openvidu.recording.s3.concurrency" parts at a time
+	private Executor partExecutor;
+
+	private CustomFileManager fileManager = new CustomFileManager();
+	private JsonUtils jsonUtils = new JsonUtils();
+
+	private final Map<String, UploadJob> uploadJobs = new ConcurrentHashMap<>();
+
+	private class UploadJob {
+
+		final String recordingId;
+		final List<Future<?>> tasks = new ArrayList<>();
+		volatile boolean cancelled = false;
+		JsonObject state = new JsonObject();
+		long totalBytes;
+		final AtomicLong uploadedBytes = new AtomicLong();
+		int reportedProgress = -1;
+
+		UploadJob(String recordingId) {
+			this.recordingId = recordingId;
+		}
+
+		synchronized void addTask(Future<?> task) {
+			if (this.cancelled) {
+				task.cancel(true);
+			} else {
+				this.tasks.add(task);
+			}
+		}
+
+		synchronized void cancel() {
+			this.cancelled = true;
+			this.tasks.forEach(task -> task.cancel(true));
+		}
+
+		synchronized void reportProgress() {
+			int progress = this.totalBytes > 0 ? (int) (this.uploadedBytes.get() * 100 / this.totalBytes) : 100;
+			if (progress > this.reportedProgress && !this.cancelled) {
+				this.reportedProgress = progress;
+				updateRecordingEntity(this.recordingId, UploadStatus.uploading, progress);
+			}
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		this.s3Client = new S3Client(this.openviduConfig.getOpenviduRecordingS3Endpoint(),
+				this.openviduConfig.getOpenviduRecordingS3Region(), this.openviduConfig.getOpenviduRecordingS3Bucket(),
+				this.openviduConfig.getOpenviduRecordingS3AccessKey(),
+				this.openviduConfig.getOpenviduRecordingS3SecretKey());
+		this.uploadExecutor = this.blockingTaskExecutor.newBoundedExecutor(1);
+		this.partExecutor = this.blockingTaskExecutor
+				.newBoundedExecutor(this.openviduConfig.getOpenviduRecordingS3Concurrency());
+		log.info("Recordings will be uploaded to bucket {} of object storage {}",
+				this.openviduConfig.getOpenviduRecordingS3Bucket(),
+				this.openviduConfig.getOpenviduRecordingS3Endpoint());
+		this.resumeInterruptedUploads();
+	}
+
+	@Override
+	public void downloadRecording(Recording recording, Collection<String> streamIds, Runnable callback)
+			throws IOException {
+		// Recording files are final once the callback has sealed them
+		callback.run();
+		Recording sealedRecording = this.readRecordingEntity(recording.getId());
+		if (sealedRecording == null
+				|| !io.openvidu.java.client.Recording.Status.ready.equals(sealedRecording.getStatus())) {
+			log.warn("Recording {} is not ready. Its files will not be uploaded", recording.getId());
+			return;
+		}
+		this.updateRecordingEntity(recording.getId(), UploadStatus.uploading, 0);
+		this.submitUpload(recording.getId());
+	}
+
+	@Override
+	public void cancelDownload(String recordingId) {
+		UploadJob job = this.uploadJobs.get(recordingId);
+		if (job != null) {
+			log.info("Cancelling upload of recording {}", recordingId);
+			job.cancel();
+		}
+	}
+
+	private void submitUpload(String recordingId) {
+		UploadJob job = new UploadJob(recordingId);
+		if (this.uploadJobs.putIfAbsent(recordingId, job) != null) {
+			log.warn("Recording {} is already being uploaded", recordingId);
+			return;
+		}
+		this.uploadExecutor.execute(() -> {
+			try {
+				this.uploadRecording(job);
+			} finally {
+				this.uploadJobs.remove(recordingId, job);
+			}
+		});
+	}
+
+	private void resumeInterruptedUploads() {
+		File[] folders = new File(this.openviduConfig.getOpenViduRecordingPath()).listFiles(File::isDirectory);
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			Recording recording = this.readRecordingEntity(folder.getName());
+			if (new File(folder, UPLOAD_STATE_FILE + folder.getName()).isFile()
+					|| (recording != null && UploadStatus.uploading.equals(recording.getUploadStatus()))) {
+				log.info("Resuming interrupted upload of recording {}", folder.getName());
+				this.submitUpload(folder.getName());
+			}
+		}
+	}
+
+	private void uploadRecording(UploadJob job) {
+		final String recordingId = job.recordingId;
+		final Path folder = Paths.get(this.openviduConfig.getOpenViduRecordingPath(), recordingId);
+		final Path stateFile = folder.resolve(UPLOAD_STATE_FILE + recordingId);
+		try {
+			List<Path> files;
+			try (Stream<Path> stream = Files.list(folder)) {
+				files = stream.filter(Files::isRegularFile)
+						.filter(file -> !file.getFileName().toString().startsWith(".")).collect(Collectors.toList());
+			}
+			for (Path file : files) {
+				job.totalBytes += Files.size(file);
+			}
+			if (Files.isRegularFile(stateFile)) {
+				job.state = this.jsonUtils.fromFileToJsonObject(stateFile.toString());
+			}
+
+			log.info("Uploading {} files of recording {} ({} bytes)", files.size(), recordingId, job.totalBytes);
+			for (Path file : files) {
+				this.uploadFile(job, file, stateFile);
+			}
+
+			Files.deleteIfExists(stateFile);
+			// From now on the url of the recording points to object storage if local files are deleted
+			this.updateRecordingEntity(recordingId, UploadStatus.uploaded, 100);
+			log.info("Recording {} uploaded to object storage", recordingId);
+			if (this.openviduConfig.isOpenviduRecordingS3DeleteLocal()) {
+				try {
+					for (Path file : files) {
+						Files.deleteIfExists(file);
+					}
+					log.info("Local files of recording {} deleted after verifying their upload", recordingId);
+				} catch (IOException e) {
+					log.warn("Error deleting local files of uploaded recording {}: {}", recordingId, e.getMessage());
+				}
+			}
+
+		} catch (CancellationException | InterruptedException e) {
+			if (job.cancelled) {
+				this.abortUploads(job, stateFile);
+				log.info("Upload of recording {} cancelled", recordingId);
+			}
+		} catch (Exception e) {
+			log.error("Error uploading recording {}: {}", recordingId, e.getMessage());
+			this.updateRecordingEntity(recordingId, UploadStatus.failed, (int) (job.totalBytes > 0
+					? job.uploadedBytes.get() * 100 / job.totalBytes
+					: 0));
+		}
+	}
+
+	private void uploadFile(UploadJob job, Path file, Path stateFile) throws Exception {
+		final JsonObject state = job.state;
+		final String fileName = file.getFileName().toString();
+		final String key = job.recordingId + "/" + fileName;
+		final long size = Files.size(file);
+
+		JsonObject fileState = state.has(fileName) ? state.getAsJsonObject(fileName) : null;
+		if (fileState != null && fileState.get("completed").getAsBoolean()) {
+			job.uploadedBytes.addAndGet(size);
+			job.reportProgress();
+			return;
+		}
+
+		final long partSize = Math.max(this.openviduConfig.getOpenviduRecordingS3PartSize() * 1024L * 1024L,
+				(size + MAX_PARTS - 1) / MAX_PARTS);
+		final int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+
+		Map<Integer, S3Client.Part> storedParts = null;
+		String uploadId = null;
+		if (fileState != null) {
+			uploadId = fileState.get("uploadId").getAsString();
+			storedParts = this.s3Client.listParts(key, uploadId);
+			if (storedParts == null) {
+				log.warn("Multipart upload of {} does not exist anymore. Starting it again", key);
+			}
+		}
+		if (storedParts == null) {
+			uploadId = this.s3Client.createMultipartUpload(key);
+			storedParts = new ConcurrentHashMap<>();
+			fileState = new JsonObject();
+			fileState.addProperty("uploadId", uploadId);
+			fileState.addProperty("completed", false);
+			state.add(fileName, fileState);
+			this.fileManager.overwriteFile(stateFile.toString(), state.toString());
+		}
+
+		final String finalUploadId = uploadId;
+		List<S3Client.Part> parts = new ArrayList<>();
+		List<Future<S3Client.Part>> pendingParts = new ArrayList<>();
+		for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+			final long offset = (partNumber - 1) * partSize;
+			final int length = (int) Math.min(partSize, size - offset);
+			S3Client.Part storedPart = storedParts.get(partNumber);
+			if (storedPart != null && storedPart.getSize() == length) {
+				parts.add(storedPart);
+				job.uploadedBytes.addAndGet(length);
+				continue;
+			}
+			final int number = partNumber;
+			FutureTask<S3Client.Part> task = new FutureTask<>(
+					() -> this.uploadPart(job, file, key, finalUploadId, number, offset, length));
+			this.partExecutor.execute(task);
+			job.addTask(task);
+			pendingParts.add(task);
+		}
+		job.reportProgress();
+		for (Future<S3Client.Part> pendingPart : pendingParts) {
+			try {
+				parts.add(pendingPart.get());
+			} catch (ExecutionException e) {
+				pendingParts.forEach(task -> task.cancel(true));
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+		parts.sort((p1, p2) -> Integer.compare(p1.getNumber(), p2.getNumber()));
+
+		this.s3Client.completeMultipartUpload(key, uploadId, parts);
+		long storedSize = this.s3Client.getObjectSize(key);
+		if (storedSize != size) {
+			throw new IOException("Uploaded object " + key + " has " + storedSize + " bytes instead of " + size);
+		}
+		fileState.addProperty("completed", true);
+		this.fileManager.overwriteFile(stateFile.toString(), state.toString());
+		log.debug("File {} uploaded and verified", key);
+	}
+
+	private S3Client.Part uploadPart(UploadJob job, Path file, String key, String uploadId, int partNumber,
+			long offset, int length) throws Exception {
+		byte[] buffer = new byte[length];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			while (byteBuffer.hasRemaining()) {
+				if (channel.read(byteBuffer, offset + byteBuffer.position()) < 0) {
+					throw new IOException("Unexpected end of file " + file);
+				}
+			}
+		}
+		for (int attempt = 1;; attempt++) {
+			if (job.cancelled) {
+				throw new CancellationException();
+			}
+			try {
+				String eTag = this.s3Client.uploadPart(key, uploadId, partNumber, buffer, length);
+				job.uploadedBytes.addAndGet(length);
+				job.reportProgress();
+				return new S3Client.Part(partNumber, eTag, length);
+			} catch (IOException e) {
+				if (attempt >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				long backoff = TimeUnit.SECONDS.toMillis(1L << (attempt - 1));
+				log.warn("Error uploading part {} of {} (attempt {}/{}). Retrying in {} ms: {}", partNumber, key,
+						attempt, MAX_ATTEMPTS, backoff, e.getMessage());
+				Thread.sleep(backoff);
+			}
+		}
+	}
+
+	/**
+	 * The recording folder may have already been deleted, so the ids of the
+	 * multipart uploads are taken from memory
+	 */
+	private void abortUploads(UploadJob job, Path stateFile) {
+		for (String fileName : job.state.keySet()) {
+			JsonObject fileState = job.state.getAsJsonObject(fileName);
+			if (!fileState.get("completed").getAsBoolean()) {
+				try {
+					this.s3Client.abortMultipartUpload(job.recordingId + "/" + fileName,
+							fileState.get("uploadId").getAsString());
+				} catch (IOException e) {
+					log.warn("Error aborting multipart upload of {}/{}: {}", job.recordingId, fileName,
+							e.getMessage());
+				}
+			}
+		}
+		try {
+			Files.deleteIfExists(stateFile);
+		} catch (IOException e) {
+			log.warn("Error deleting upload state of recording {}: {}", job.recordingId, e.getMessage());
+		}
+	}
+
+	private Recording readRecordingEntity(String recordingId) {
+		return this.recordingJournal.get(recordingId);
+	}
+
+	private void updateRecordingEntity(String recordingId, UploadStatus status, int progress) {
+		this.recordingJournal.update(recordingId, recording -> {
+			recording.setUploadStatus(status);
+			recording.setUploadProgress(progress);
+		});
+	}
+
+}
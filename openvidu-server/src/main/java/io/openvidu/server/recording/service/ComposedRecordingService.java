@@ -28,19 +28,19 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.kurento.client.Continuation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 
-import com.github.dockerjava.api.model.Bind;
-import com.github.dockerjava.api.model.Volume;
-
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.java.client.RecordingLayout;
@@ -64,16 +64,29 @@ public class ComposedRecordingService extends RecordingService {
 
 	private static final Logger log = LoggerFactory.getLogger(ComposedRecordingService.class);
 
+	// Seconds to wait for the RecorderEndpoint of an audio-only recording to start.
+	// CompositeWrapper gives up before, so this only bounds a lost callback
+	private static final long RECORDER_START_TIMEOUT = 10;
+
 	private Map<String, String> containers = new ConcurrentHashMap<>();
 	private Map<String, String> sessionsContainers = new ConcurrentHashMap<>();
 	private Map<String, CompositeWrapper> composites = new ConcurrentHashMap<>();
 
 	private DockerManager dockerManager;
+	private RecordingContainerPool containerPool;
+	private RecorderOperationBatcher recorderBatcher;
 
 	public ComposedRecordingService(RecordingManager recordingManager, RecordingDownloader recordingDownloader,
 			OpenviduConfig openviduConfig, CallDetailRecord cdr, QuarantineKiller quarantineKiller) {
 		super(recordingManager, recordingDownloader, openviduConfig, cdr, quarantineKiller);
-		this.dockerManager = new DockerManager();
+		this.dockerManager = new DockerManager(recordingManager.blockingTaskExecutor);
+		this.recorderBatcher = new RecorderOperationBatcher(recordingManager.blockingTaskExecutor);
+		this.containerPool = new RecordingContainerPool(openviduConfig, dockerManager,
+				recordingManager.blockingTaskExecutor, () -> this.containers.size());
+	}
+
+	public RecordingContainerPool getContainerPool() {
+		return this.containerPool;
 	}
 
 	@Override
@@ -89,7 +102,8 @@ public class ComposedRecordingService extends RecordingService {
 		this.recordingManager.startingRecordings.put(recording.getId(), recording);
 
 		if (properties.hasVideo()) {
-			// Docker container used
+			// Docker container used. Only ffmpeg can write segments of a composed recording
+			recording.setSegmentDuration(this.openviduConfig.getOpenviduRecordingSegmentDuration());
 			recording = this.startRecordingWithVideo(session, recording, properties);
 		} else {
 			// Kurento composite used
@@ -120,22 +134,31 @@ public class ComposedRecordingService extends RecordingService {
 		}
 	}
 
-	public void joinPublisherEndpointToComposite(Session session, String recordingId, Participant participant)
-			throws OpenViduException {
+	public void joinPublisherEndpointToComposite(Session session, String recordingId, Participant participant) {
 		log.info("Joining single stream {} to Composite in session {}", participant.getPublisherStreamId(),
 				session.getSessionId());
 
 		KurentoParticipant kurentoParticipant = (KurentoParticipant) participant;
 		CompositeWrapper compositeWrapper = this.composites.get(session.getSessionId());
 
-		try {
-			compositeWrapper.connectPublisherEndpoint(kurentoParticipant.getPublisher());
-		} catch (OpenViduException e) {
-			if (Code.RECORDING_START_ERROR_CODE.getValue() == e.getCodeValue()) {
-				// First user publishing triggered RecorderEnpoint start, but it failed
-				throw e;
+		compositeWrapper.connectPublisherEndpoint(kurentoParticipant.getPublisher(), new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				log.info("RecorderEnpoint of Composite is now recording for session {}", session.getSessionId());
 			}
-		}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				// First user publishing triggered RecorderEnpoint start, but it failed. The
+				// recording ends as failed, and participants are notified of its stop
+				log.error("Recording start failed for session {}. Couldn't initialize RecorderEndpoint of "
+						+ "Composite: {}", session.getSessionId(), cause.getMessage());
+				Recording recording = recordingManager.sessionsRecordings.get(session.getSessionId());
+				if (recording != null && recording.getId().equals(recordingId)) {
+					recordingManager.stopRecording(session, recordingId, EndReason.recordingStoppedByServer);
+				}
+			}
+		});
 	}
 
 	public void removePublisherEndpointFromComposite(String sessionId, String streamId) {
@@ -160,31 +183,42 @@ public class ComposedRecordingService extends RecordingService {
 		envs.add("VIDEO_ID=" + recording.getId());
 		envs.add("VIDEO_NAME=" + properties.name());
 		envs.add("VIDEO_FORMAT=mp4");
+		envs.add("SEGMENT_DURATION=" + recording.getSegmentDuration());
 		envs.add("RECORDING_JSON=" + recording.toJson().toString());
 
 		log.info(recording.toJson().toString());
 		log.info("Recorder connecting to url {}", layoutUrl);
 
-		String containerId;
-		try {
-			final String container = RecordingManager.IMAGE_NAME + ":" + RecordingManager.IMAGE_TAG;
-			final String containerName = "recording_" + recording.getId();
-			Volume volume1 = new Volume("/recordings");
-			Volume volume2 = new Volume("/dev/shm");
-			List<Volume> volumes = new ArrayList<>();
-			volumes.add(volume1);
-			volumes.add(volume2);
-			Bind bind1 = new Bind(openviduConfig.getOpenViduRecordingPath(), volume1);
-			Bind bind2 = new Bind("/dev/shm", volume2);
-			List<Bind> binds = new ArrayList<>();
-			binds.add(bind1);
-			binds.add(bind2);
-			containerId = dockerManager.runContainer(container, containerName, volumes, binds, "host", envs);
-			containers.put(containerId, containerName);
-		} catch (Exception e) {
-			this.cleanRecordingMaps(recording);
-			throw this.failStartRecording(session, recording,
-					"Couldn't initialize recording container. Error: " + e.getMessage());
+		String containerId = this.containerPool.acquire(properties.resolution());
+		if (containerId != null) {
+			try {
+				this.containerPool.assign(containerId, envs);
+				containers.put(containerId, "recording_" + recording.getId());
+				log.info("Recording {} assigned to warm container {}", recording.getId(), containerId);
+			} catch (Exception e) {
+				log.warn("{}. Starting a new container", e.getMessage());
+				this.containerPool.removeContainer(containerId);
+				containerId = null;
+			}
+		}
+		if (containerId == null) {
+			if (!this.containerPool.tryReserve()) {
+				this.cleanRecordingMaps(recording);
+				throw this.failStartRecording(session, recording,
+						"Couldn't initialize recording container. Error: maximum number of recording containers ("
+								+ openviduConfig.getOpenviduRecordingComposedMaxContainers() + ") reached");
+			}
+			try {
+				final String containerName = "recording_" + recording.getId();
+				containerId = this.containerPool.runContainer(containerName, envs);
+				containers.put(containerId, containerName);
+			} catch (Exception e) {
+				this.cleanRecordingMaps(recording);
+				throw this.failStartRecording(session, recording,
+						"Couldn't initialize recording container. Error: " + e.getMessage());
+			} finally {
+				this.containerPool.endReservation();
+			}
 		}
 
 		this.sessionsContainers.put(session.getSessionId(), containerId);
@@ -197,6 +231,9 @@ public class ComposedRecordingService extends RecordingService {
 					"Couldn't initialize recording container. Error: " + e.getMessage());
 		}
 
+		// The container has already written the entity file of the recording
+		this.recordingManager.getRecordingJournal().put(recording);
+
 		return recording;
 	}
 
@@ -206,28 +243,56 @@ public class ComposedRecordingService extends RecordingService {
 		log.info("Starting composed (audio-only) recording {} of session {}", recording.getId(),
 				recording.getSessionId());
 
+		// Elements are created and the recorder started asynchronously
 		CompositeWrapper compositeWrapper = new CompositeWrapper((KurentoSession) session,
 				"file://" + this.openviduConfig.getOpenViduRecordingPath() + recording.getId() + "/" + properties.name()
-						+ ".webm");
+						+ ".webm",
+				this.recorderBatcher);
+		compositeWrapper.build();
 		this.composites.put(session.getSessionId(), compositeWrapper);
 
+		final CompletableFuture<Void> recorderStarted = new CompletableFuture<>();
+		final Continuation<Void> startCallback = new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				recorderStarted.complete(null);
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				recorderStarted.completeExceptionally(cause);
+			}
+		};
+		boolean anyPublisher = false;
 		for (Participant p : session.getParticipants()) {
 			if (p.isStreaming()) {
-				try {
-					this.joinPublisherEndpointToComposite(session, recording.getId(), p);
-				} catch (OpenViduException e) {
-					log.error("Error waiting for RecorderEndpooint of Composite to start in session {}",
-							session.getSessionId());
-					throw this.failStartRecording(session, recording, e.getMessage());
-				}
+				compositeWrapper.connectPublisherEndpoint(((KurentoParticipant) p).getPublisher(), startCallback);
+				anyPublisher = true;
 			}
 		}
 
 		this.generateRecordingMetadataFile(recording);
 
-		// Increment active recordings
+		// Increment active recordings. Decremented once stopped, even if the start fails
 		((KurentoSession) session).getKms().getActiveRecordings().incrementAndGet();
 
+		if (anyPublisher) {
+			// The recording is only reported as started once the RecorderEndpoint records
+			try {
+				this.recordingManager.blockingTaskExecutor.await(recorderStarted, RECORDER_START_TIMEOUT,
+						TimeUnit.SECONDS);
+				log.info("RecorderEnpoint of Composite is now recording for session {}", session.getSessionId());
+			} catch (ExecutionException | TimeoutException e) {
+				String cause = e instanceof ExecutionException ? e.getCause().getMessage() : "timeout";
+				throw this.failStartRecording(session, recording,
+						"Couldn't initialize RecorderEndpoint of Composite: " + cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw this.failStartRecording(session, recording,
+						"Interrupted while waiting for RecorderEndpoint of Composite to start");
+			}
+		}
+
 		return recording;
 	}
 
@@ -255,7 +320,7 @@ public class ComposedRecordingService extends RecordingService {
 				// Session was closed while recording container was initializing
 				// Wait until containerId is available and force its stop and deletion
 				final Recording recordingAux = recording;
-				new Thread(() -> {
+				this.recordingManager.blockingTaskExecutor.execute(() -> {
 					log.warn("Session closed while starting recording container");
 					boolean containerClosed = false;
 					String containerIdAux;
@@ -275,7 +340,7 @@ public class ComposedRecordingService extends RecordingService {
 							log.warn("Removing container {} for closed session {}...", containerIdAux,
 									session.getSessionId());
 							dockerManager.removeDockerContainer(containerIdAux, true);
-							containers.remove(containerId);
+							containers.remove(containerIdAux);
 							containerClosed = true;
 							log.warn("Container {} for closed session {} succesfully stopped and removed",
 									containerIdAux, session.getSessionId());
@@ -293,7 +358,7 @@ public class ComposedRecordingService extends RecordingService {
 					}
 					// Decrement active recordings
 					// ((KurentoSession) session).getKms().getActiveRecordings().decrementAndGet();
-				}).start();
+				});
 			}
 		} else {
 
@@ -338,26 +403,54 @@ public class ComposedRecordingService extends RecordingService {
 		}
 
 		CompositeWrapper compositeWrapper = this.composites.remove(sessionId);
-		final CountDownLatch stoppedCountDown = new CountDownLatch(1);
-		compositeWrapper.stopCompositeRecording(stoppedCountDown, kmsDisconnectionTime);
+		this.cleanRecordingMaps(recording);
 
-		try {
-			if (!stoppedCountDown.await(5, TimeUnit.SECONDS)) {
-				recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
-				log.error("Error waiting for RecorderEndpoint of Composite to stop in session {}",
-						recording.getSessionId());
+		// The session may be closed right after this method returns. Its pipeline is
+		// not released until the RecorderEndpoint has stopped and the Composite is
+		// released
+		final CompletableFuture<Void> compositeReleased = new CompletableFuture<>();
+		if (session != null) {
+			((KurentoSession) session).releasePipelineAfter(compositeReleased);
+		}
+
+		final Recording[] finalRecordingArray = new Recording[1];
+		finalRecordingArray[0] = recording;
+		compositeWrapper.stopCompositeRecording(kmsDisconnectionTime, new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				finishRecordingAudioOnly(session, finalRecordingArray, compositeWrapper, reason, compositeReleased);
 			}
-		} catch (InterruptedException e) {
-			recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
-			log.error("Exception while waiting for state change", e);
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				finalRecordingArray[0].setStatus(io.openvidu.java.client.Recording.Status.failed);
+				log.error("Error waiting for RecorderEndpoint of Composite to stop in session {}: {}",
+						finalRecordingArray[0].getSessionId(), cause.getMessage());
+				finishRecordingAudioOnly(session, finalRecordingArray, compositeWrapper, reason, compositeReleased);
+			}
+		});
+
+		if (reason != null && session != null) {
+			this.recordingManager.sessionHandler.sendRecordingStoppedNotification(session, finalRecordingArray[0],
+					reason);
 		}
 
-		compositeWrapper.disconnectAllPublisherEndpoints();
+		return finalRecordingArray[0];
+	}
 
-		this.cleanRecordingMaps(recording);
+	/**
+	 * Releases the Composite and seals the recording once its RecorderEndpoint
+	 * has stopped. A recording whose RecorderEndpoint never started is sealed as
+	 * failed
+	 */
+	private void finishRecordingAudioOnly(Session session, Recording[] finalRecordingArray,
+			CompositeWrapper compositeWrapper, EndReason reason, CompletableFuture<Void> compositeReleased) {
+
+		compositeWrapper.disconnectAllPublisherEndpoints().thenRun(() -> compositeReleased.complete(null));
+		if (compositeWrapper.isStartFailed()) {
+			finalRecordingArray[0].setStatus(io.openvidu.java.client.Recording.Status.failed);
+		}
 
-		final Recording[] finalRecordingArray = new Recording[1];
-		finalRecordingArray[0] = recording;
 		try {
 			this.recordingDownloader.downloadRecording(finalRecordingArray[0], null, () -> {
 				String filesPath = this.openviduConfig.getOpenViduRecordingPath() + finalRecordingArray[0].getId()
@@ -384,13 +477,6 @@ public class ComposedRecordingService extends RecordingService {
 		} catch (IOException e) {
 			log.error("Error while downloading recording {}: {}", finalRecordingArray[0].getName(), e.getMessage());
 		}
-
-		if (reason != null && session != null) {
-			this.recordingManager.sessionHandler.sendRecordingStoppedNotification(session, finalRecordingArray[0],
-					reason);
-		}
-
-		return finalRecordingArray[0];
 	}
 
 	private void stopAndRemoveRecordingContainer(Recording recording, String containerId, int secondsOfWait) {
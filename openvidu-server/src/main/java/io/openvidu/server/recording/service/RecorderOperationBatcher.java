@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.openvidu.server.kurento.kms.Kms;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Groups the Kurento operations of recorder elements by KMS, committing each
+ * group with a single transaction. Only one transaction per KMS is in flight
+ * at any time: operations submitted meanwhile are committed together once it
+ * completes, so a burst of recordings starting or stopping at the same time
+ * costs a few round trips instead of one parked thread per recording.
+ *
+ * Callbacks of the operations run in the threads of the Kurento client and
+ * must not block
+ */
+public class RecorderOperationBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(RecorderOperationBatcher.class);
+
+	public interface Operation {
+
+		/**
+		 * Adds the calls of the operation to the transaction. Elements built with the
+		 * transaction can be used by the calls added after them
+		 */
+		void addTo(Transaction tx);
+
+		void onCommitted();
+
+		void onError(Throwable cause);
+
+	}
+
+	private class KmsOperations {
+
+		final Kms kms;
+		final Queue<Operation> pending = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+		KmsOperations(Kms kms) {
+			this.kms = kms;
+		}
+
+	}
+
+	private final Map<String, KmsOperations> operationsByKms = new ConcurrentHashMap<>();
+
+	private final BlockingTaskExecutor blockingTaskExecutor;
+	private final Executor executor;
+
+	public RecorderOperationBatcher(BlockingTaskExecutor blockingTaskExecutor) {
+		this.blockingTaskExecutor = blockingTaskExecutor;
+		this.executor = blockingTaskExecutor.newBoundedExecutor(1);
+	}
+
+	public void submit(Kms kms, Operation operation) {
+		KmsOperations operations = this.operationsByKms.computeIfAbsent(kms.getId(), id -> new KmsOperations(kms));
+		operations.pending.add(operation);
+		this.executor.execute(() -> this.flush(operations));
+	}
+
+	/**
+	 * Schedules a task in the blocking task executor, usually the timeout of an
+	 * operation waiting for a Kurento event
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return this.blockingTaskExecutor.schedule(task, delay, unit);
+	}
+
+	private void flush(KmsOperations operations) {
+		if (operations.pending.isEmpty() || !operations.inFlight.compareAndSet(false, true)) {
+			return;
+		}
+		final List<Operation> batch = new ArrayList<>();
+		Operation operation;
+		while ((operation = operations.pending.poll()) != null) {
+			batch.add(operation);
+		}
+		final Transaction tx;
+		try {
+			tx = operations.kms.getKurentoClient().beginTransaction();
+			batch.forEach(op -> op.addTo(tx));
+		} catch (Exception e) {
+			log.error("Error preparing {} recorder operations for KMS {}: {}", batch.size(), operations.kms.getId(),
+					e.getMessage());
+			batch.forEach(op -> notifyError(op, e));
+			this.complete(operations);
+			return;
+		}
+		log.debug("Committing {} recorder operations to KMS {}", batch.size(), operations.kms.getId());
+		tx.commit(new Continuation<Void>() {
+			@Override
+			public void onSuccess(Void result) throws Exception {
+				batch.forEach(op -> notifyCommitted(op));
+				complete(operations);
+			}
+
+			@Override
+			public void onError(Throwable cause) throws Exception {
+				if (batch.size() == 1) {
+					notifyError(batch.get(0), cause);
+				} else {
+					// One failing operation fails the whole transaction. Fall back to
+					// individual transactions so the rest of operations succeed
+					log.debug("Batched recorder operations to KMS {} failed ({}). Committing them individually",
+							operations.kms.getId(), cause.getMessage());
+					batch.forEach(op -> commitSingle(operations.kms, op));
+				}
+				complete(operations);
+			}
+		});
+	}
+
+	private void commitSingle(Kms kms, Operation operation) {
+		try {
+			Transaction tx = kms.getKurentoClient().beginTransaction();
+			operation.addTo(tx);
+			tx.commit(new Continuation<Void>() {
+				@Override
+				public void onSuccess(Void result) throws Exception {
+					notifyCommitted(operation);
+				}
+
+				@Override
+				public void onError(Throwable cause) throws Exception {
+					notifyError(operation, cause);
+				}
+			});
+		} catch (Exception e) {
+			notifyError(operation, e);
+		}
+	}
+
+	private void complete(KmsOperations operations) {
+		operations.inFlight.set(false);
+		this.executor.execute(() -> this.flush(operations));
+	}
+
+	private static void notifyCommitted(Operation operation) {
+		try {
+			operation.onCommitted();
+		} catch (Exception e) {
+			log.error("Error processing committed recorder operation: {}", e.getMessage());
+		}
+	}
+
+	private static void notifyError(Operation operation, Throwable cause) {
+		try {
+			operation.onError(cause);
+		} catch (Exception e) {
+			log.error("Error processing failed recorder operation: {}", e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Volume;
+
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.DockerManager;
+
+/**
+ * Pool of idle COMPOSED recording containers. Warm containers are started with
+ * their virtual display and browser already launched, waiting for a recording
+ * to be assigned to them. Assigning a recording to a warm container only
+ * requires writing its variables inside the container, so the recording starts
+ * without the boot time of a new container. The pool is refilled in the
+ * background, never exceeding the maximum number of recording containers
+ * allowed in the host
+ */
+public class RecordingContainerPool {
+
+	private static final Logger log = LoggerFactory.getLogger(RecordingContainerPool.class);
+
+	private OpenviduConfig openviduConfig;
+	private DockerManager dockerManager;
+
+	// Number of containers already recording
+	private IntSupplier activeContainers;
+
+	private LinkedList<String> idleContainers = new LinkedList<>();
+	private int startingContainers = 0;
+
+	private volatile boolean closed = false;
+
+	// Starts the warm containers one after the other
+	private Executor refillExecutor;
+
+	public RecordingContainerPool(OpenviduConfig openviduConfig, DockerManager dockerManager,
+			BlockingTaskExecutor blockingTaskExecutor, IntSupplier activeContainers) {
+		this.openviduConfig = openviduConfig;
+		this.dockerManager = dockerManager;
+		this.refillExecutor = blockingTaskExecutor.newBoundedExecutor(1);
+		this.activeContainers = activeContainers;
+	}
+
+	public boolean isEnabled() {
+		return this.openviduConfig.getOpenviduRecordingComposedPoolSize() > 0;
+	}
+
+	public void start() {
+		if (this.isEnabled()) {
+			log.info("Warming up {} COMPOSED recording containers with resolution {}",
+					this.openviduConfig.getOpenviduRecordingComposedPoolSize(),
+					this.openviduConfig.getOpenviduRecordingComposedPoolResolution());
+			this.refill();
+		}
+	}
+
+	/**
+	 * @return The id of an idle container ready to record with the given
+	 *         resolution, or null if there is none. The container is no longer
+	 *         handled by the pool, which starts a replacement in the background
+	 */
+	public String acquire(String resolution) {
+		if (!this.isEnabled()
+				|| !this.openviduConfig.getOpenviduRecordingComposedPoolResolution().equals(resolution)) {
+			return null;
+		}
+		String containerId;
+		synchronized (this) {
+			containerId = this.idleContainers.poll();
+		}
+		this.refill();
+		return containerId;
+	}
+
+	/**
+	 * Starts the recording in an idle container previously obtained with
+	 * {@link RecordingContainerPool#acquire(String)}
+	 *
+	 * @param envs Variables of the recording, with the same format as the ones of
+	 *             a cold started recording container
+	 */
+	public void assign(String containerId, List<String> envs) throws Exception {
+		StringBuilder assignment = new StringBuilder();
+		for (String env : envs) {
+			int separator = env.indexOf('=');
+			assignment.append("export ").append(env.substring(0, separator)).append("='")
+					.append(env.substring(separator + 1).replace("'", "'\\''")).append("'\n");
+		}
+		String encoded = Base64.getEncoder().encodeToString(assignment.toString().getBytes(StandardCharsets.UTF_8));
+		String response = this.dockerManager.runCommandInContainer(containerId, "echo " + encoded
+				+ " | base64 -d > /tmp/assignment.tmp && mv /tmp/assignment.tmp /tmp/assignment.env && echo assigned",
+				5);
+		if (response == null || !response.trim().equals("assigned")) {
+			throw new Exception("Recording could not be assigned to warm container " + containerId);
+		}
+	}
+
+	/**
+	 * Reserves room for one new recording container, removing an idle one if
+	 * that is the only way to stay under the maximum number of containers. Every
+	 * successful reservation must be followed by a call to
+	 * {@link RecordingContainerPool#endReservation()} once the container is
+	 * running or has failed to start
+	 *
+	 * @return false if the maximum number of containers has been reached
+	 */
+	public boolean tryReserve() {
+		String evictedContainer = null;
+		synchronized (this) {
+			if (!this.hasCapacity()) {
+				evictedContainer = this.idleContainers.pollLast();
+				if (evictedContainer == null) {
+					return false;
+				}
+			}
+			this.startingContainers++;
+		}
+		if (evictedContainer != null) {
+			log.info("Removing warm recording container {} to make room for a new one", evictedContainer);
+			this.removeContainer(evictedContainer);
+		}
+		return true;
+	}
+
+	public synchronized void endReservation() {
+		this.startingContainers--;
+	}
+
+	public void close() {
+		List<String> containers;
+		synchronized (this) {
+			this.closed = true;
+			containers = new ArrayList<>(this.idleContainers);
+			this.idleContainers.clear();
+		}
+		containers.forEach(this::removeContainer);
+	}
+
+	private void refill() {
+		if (this.isEnabled()) {
+			this.refillExecutor.execute(this::fillPool);
+		}
+	}
+
+	private void fillPool() {
+		while (true) {
+			synchronized (this) {
+				if (this.closed
+						|| this.idleContainers.size() >= this.openviduConfig.getOpenviduRecordingComposedPoolSize()
+						|| !this.hasCapacity()) {
+					return;
+				}
+				this.startingContainers++;
+			}
+			String containerId = null;
+			try {
+				containerId = this.runWarmContainer();
+			} catch (Exception e) {
+				log.error("Error starting warm recording container: {}", e.getMessage());
+			} finally {
+				synchronized (this) {
+					this.startingContainers--;
+					if (containerId != null && !this.closed) {
+						this.idleContainers.add(containerId);
+					}
+				}
+			}
+			if (containerId == null) {
+				return;
+			}
+			if (this.closed) {
+				this.removeContainer(containerId);
+				return;
+			}
+			log.info("Warm recording container {} ready", containerId);
+		}
+	}
+
+	private boolean hasCapacity() {
+		int maxContainers = this.openviduConfig.getOpenviduRecordingComposedMaxContainers();
+		int containers = this.idleContainers.size() + this.startingContainers + this.activeContainers.getAsInt();
+		return maxContainers <= 0 || containers < maxContainers;
+	}
+
+	private String runWarmContainer() throws Exception {
+		List<String> envs = new ArrayList<>();
+		envs.add("WARM=true");
+		envs.add("RESOLUTION=" + this.openviduConfig.getOpenviduRecordingComposedPoolResolution());
+		return this.runContainer("recording_warm_" + RandomStringUtils.randomAlphanumeric(8), envs);
+	}
+
+	/**
+	 * Runs a new recording container with access to the recordings path
+	 */
+	public String runContainer(String containerName, List<String> envs) throws Exception {
+		final String container = RecordingManager.IMAGE_NAME + ":" + RecordingManager.IMAGE_TAG;
+		Volume volume1 = new Volume("/recordings");
+		Volume volume2 = new Volume("/dev/shm");
+		List<Volume> volumes = new ArrayList<>();
+		volumes.add(volume1);
+		volumes.add(volume2);
+		Bind bind1 = new Bind(openviduConfig.getOpenViduRecordingPath(), volume1);
+		Bind bind2 = new Bind("/dev/shm", volume2);
+		List<Bind> binds = new ArrayList<>();
+		binds.add(bind1);
+		binds.add(bind2);
+		return this.dockerManager.runContainer(container, containerName, volumes, binds, "host", envs);
+	}
+
+	public void removeContainer(String containerId) {
+		try {
+			this.dockerManager.removeDockerContainer(containerId, true);
+		} catch (Exception e) {
+			log.error("Error removing warm recording container {}: {}", containerId, e.getMessage());
+		}
+	}
+
+}
@@ -31,14 +31,13 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.apache.commons.io.FileUtils;
 import org.kurento.client.ErrorEvent;
 import org.kurento.client.EventListener;
 import org.kurento.client.MediaPipeline;
@@ -53,6 +52,7 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.client.internal.ProtocolElements;
@@ -68,8 +68,13 @@ import io.openvidu.server.core.SessionEventsHandler;
 import io.openvidu.server.core.SessionManager;
 import io.openvidu.server.kurento.core.KurentoSession;
 import io.openvidu.server.kurento.kms.KmsManager;
+import io.openvidu.server.metrics.MetricsManager;
+import io.openvidu.server.recording.MediaProfileSelector;
 import io.openvidu.server.recording.Recording;
 import io.openvidu.server.recording.RecordingDownloader;
+import io.openvidu.server.recording.RecordingJournal;
+import io.openvidu.server.recording.S3Client;
+import io.openvidu.server.utils.BlockingTaskExecutor;
 import io.openvidu.server.utils.CustomFileManager;
 import io.openvidu.server.utils.DockerManager;
 import io.openvidu.server.utils.JsonUtils;
@@ -92,6 +97,9 @@ public class RecordingManager {
 	@Autowired
 	private RecordingDownloader recordingDownloader;
 
+	@Autowired
+	protected RecordingJournal recordingJournal;
+
 	@Autowired
 	protected OpenviduConfig openviduConfig;
 
@@ -104,17 +112,24 @@ public class RecordingManager {
 	@Autowired
 	private CallDetailRecord cdr;
 
+	@Autowired
+	private MetricsManager metricsManager;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	@Autowired
+	protected MediaProfileSelector mediaProfileSelector;
+
 	protected Map<String, Recording> startingRecordings = new ConcurrentHashMap<>();
 	protected Map<String, Recording> startedRecordings = new ConcurrentHashMap<>();
 	protected Map<String, Recording> sessionsRecordings = new ConcurrentHashMap<>();
 	private final Map<String, ScheduledFuture<?>> automaticRecordingStopThreads = new ConcurrentHashMap<>();
 
 	private JsonUtils jsonUtils = new JsonUtils();
+	private CustomFileManager fileManager = new CustomFileManager();
 
-	private ScheduledThreadPoolExecutor automaticRecordingStopExecutor = new ScheduledThreadPoolExecutor(
-			Runtime.getRuntime().availableProcessors());
-
-	static final String RECORDING_ENTITY_FILE = ".recording.";
+	public static final String RECORDING_ENTITY_FILE = ".recording.";
 	public static final String IMAGE_NAME = "openvidu/openvidu-recording";
 	static String IMAGE_TAG;
 
@@ -149,11 +164,18 @@ public class RecordingManager {
 		}
 	}
 
+	@PreDestroy
+	public void close() {
+		if (this.composedRecordingService != null) {
+			this.composedRecordingService.getContainerPool().close();
+		}
+	}
+
 	public void initializeRecordingManager() throws OpenViduException {
 
 		RecordingManager.IMAGE_TAG = openviduConfig.getOpenViduRecordingVersion();
 
-		this.dockerManager = new DockerManager();
+		this.dockerManager = new DockerManager(this.blockingTaskExecutor);
 		this.composedRecordingService = new ComposedRecordingService(this, recordingDownloader, openviduConfig, cdr,
 				quarantineKiller);
 		this.singleStreamRecordingService = new SingleStreamRecordingService(this, recordingDownloader, openviduConfig,
@@ -168,42 +190,29 @@ public class RecordingManager {
 		if (dockerManager.dockerImageExistsLocally(IMAGE_NAME + ":" + IMAGE_TAG)) {
 			log.info("Docker image already exists locally");
 		} else {
-			Thread t = new Thread(() -> {
-				boolean keep = true;
-				log.info("Downloading ");
-				while (keep) {
-					System.out.print(".");
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {
-						keep = false;
-						log.info("\nDownload complete");
-					}
-				}
-			});
-			t.start();
+			log.info("Downloading ");
+			ScheduledFuture<?> progress = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> System.out.print("."),
+					1, 1, TimeUnit.SECONDS);
 			try {
 				dockerManager.downloadDockerImage(IMAGE_NAME + ":" + IMAGE_TAG, 600);
 			} catch (Exception e) {
 				log.error("Error downloading docker image {}:{}", IMAGE_NAME, IMAGE_TAG);
 			}
-			t.interrupt();
-			try {
-				t.join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			progress.cancel(false);
+			log.info("\nDownload complete");
 			log.info("Docker image available");
 		}
 
 		// Clean any stranded openvidu/openvidu-recording container on startup
 		dockerManager.cleanStrandedContainers(RecordingManager.IMAGE_NAME);
+
+		this.composedRecordingService.getContainerPool().start();
 	}
 
 	public void checkRecordingRequirements(String openviduRecordingPath, String openviduRecordingCustomLayout)
 			throws OpenViduException {
 		if (dockerManager == null) {
-			this.dockerManager = new DockerManager();
+			this.dockerManager = new DockerManager(this.blockingTaskExecutor);
 		}
 		try {
 			dockerManager.checkDockerEnabled();
@@ -230,6 +239,7 @@ public class RecordingManager {
 
 	public Recording startRecording(Session session, RecordingProperties properties) throws OpenViduException {
 		Recording recording = null;
+		Timer.Sample sample = this.metricsManager.startTimer();
 		try {
 			switch (properties.outputMode()) {
 			case COMPOSED:
@@ -242,6 +252,7 @@ public class RecordingManager {
 		} catch (OpenViduException e) {
 			throw e;
 		}
+		this.metricsManager.recordRecordingOperation("start", properties.outputMode().name(), sample);
 		this.updateRecordingManagerCollections(session, recording);
 
 		this.cdr.recordRecordingStarted(recording);
@@ -275,6 +286,7 @@ public class RecordingManager {
 		this.cdr.recordRecordingStatusChanged(recording, reason, timestamp, Status.stopped);
 		cdr.recordRecordingStopped(recording, reason, timestamp);
 
+		Timer.Sample sample = this.metricsManager.startTimer();
 		switch (recording.getOutputMode()) {
 		case COMPOSED:
 			recording = this.composedRecordingService.stopRecording(session, recording, reason);
@@ -283,6 +295,7 @@ public class RecordingManager {
 			recording = this.singleStreamRecordingService.stopRecording(session, recording, reason);
 			break;
 		}
+		this.metricsManager.recordRecordingOperation("stop", recording.getOutputMode().name(), sample);
 		this.abortAutomaticRecordingStopThread(session, reason);
 		return recording;
 	}
@@ -346,7 +359,7 @@ public class RecordingManager {
 			this.singleStreamRecordingService.stopRecorderEndpointOfPublisherEndpoint(session.getSessionId(), streamId,
 					stoppedCountDown, kmsDisconnectionTime);
 			try {
-				if (!stoppedCountDown.await(5, TimeUnit.SECONDS)) {
+				if (!this.blockingTaskExecutor.await(stoppedCountDown, 5, TimeUnit.SECONDS)) {
 					log.error("Error waiting for recorder endpoint of stream {} to stop in session {}", streamId,
 							session.getSessionId());
 				}
@@ -374,6 +387,14 @@ public class RecordingManager {
 		return this.startingRecordings.get(recordingId);
 	}
 
+	public MetricsManager getMetricsManager() {
+		return this.metricsManager;
+	}
+
+	public RecordingJournal getRecordingJournal() {
+		return this.recordingJournal;
+	}
+
 	public Collection<Recording> getFinishedRecordings() {
 		return this.getAllRecordingsFromHost().stream()
 				.filter(recording -> recording.getStatus().equals(io.openvidu.java.client.Recording.Status.ready))
@@ -391,16 +412,25 @@ public class RecordingManager {
 	public String getFreeRecordingId(String sessionId) {
 		Set<String> recordingIds = this.getRecordingIdsFromHost();
 		String recordingId = sessionId;
-		boolean isPresent = recordingIds.contains(recordingId);
+		boolean isPresent = this.isRecordingIdTaken(recordingIds, recordingId);
 		int i = 1;
 		while (isPresent) {
 			recordingId = sessionId + "-" + i;
 			i++;
-			isPresent = recordingIds.contains(recordingId);
+			isPresent = this.isRecordingIdTaken(recordingIds, recordingId);
 		}
 		return recordingId;
 	}
 
+	/**
+	 * A folder with no recording in the journal still takes its id, so a new
+	 * recording never writes into it
+	 */
+	private boolean isRecordingIdTaken(Set<String> recordingIds, String recordingId) {
+		return recordingIds.contains(recordingId)
+				|| Files.exists(Paths.get(this.openviduConfig.getOpenViduRecordingPath(), recordingId));
+	}
+
 	public HttpStatus deleteRecordingFromHost(String recordingId, boolean force) {
 
 		if (!force && (this.startedRecordings.containsKey(recordingId)
@@ -417,21 +447,18 @@ public class RecordingManager {
 			// Recording is being downloaded from remote host
 			log.warn("Cancelling ongoing download process of recording {}", recording.getId());
 			this.recordingDownloader.cancelDownload(recording.getId());
+		} else if (recording.getUploadStatus() != null) {
+			// Recording may be being uploaded to object storage
+			this.recordingDownloader.cancelDownload(recording.getId());
 		}
 
-		File folder = new File(this.openviduConfig.getOpenViduRecordingPath());
-		File[] files = folder.listFiles();
-		for (int i = 0; i < files.length; i++) {
-			if (files[i].isDirectory() && files[i].getName().equals(recordingId)) {
-				// Correct folder. Delete it
-				try {
-					FileUtils.deleteDirectory(files[i]);
-				} catch (IOException e) {
-					log.error("Couldn't delete folder {}", files[i].getAbsolutePath());
-				}
-				break;
-			}
+		String folder = this.openviduConfig.getOpenViduRecordingPath() + recordingId;
+		try {
+			this.fileManager.deleteFolder(folder);
+		} catch (IOException e) {
+			log.error("Couldn't delete folder {}", folder);
 		}
+		this.recordingJournal.remove(recordingId);
 
 		return HttpStatus.NO_CONTENT;
 	}
@@ -445,24 +472,45 @@ public class RecordingManager {
 				log.error("Error reading recording entity file {}: {}", file.getAbsolutePath(), (e.getMessage()));
 				return null;
 			}
-			Recording recording = new Recording(json);
-			if (io.openvidu.java.client.Recording.Status.ready.equals(recording.getStatus())
-					|| io.openvidu.java.client.Recording.Status.failed.equals(recording.getStatus())) {
-				recording.setUrl(getRecordingUrl(recording));
-			}
-			return recording;
+			return this.withFinalUrl(new Recording(json));
 		}
 		return null;
 	}
 
+	private Recording withFinalUrl(Recording recording) {
+		if (io.openvidu.java.client.Recording.Status.ready.equals(recording.getStatus())
+				|| io.openvidu.java.client.Recording.Status.failed.equals(recording.getStatus())) {
+			recording.setUrl(getRecordingUrl(recording));
+		}
+		return recording;
+	}
+
+	/**
+	 * @return the url of the final file of the recording. If its files have been
+	 *         uploaded to object storage and deleted from this host (property
+	 *         "openvidu.recording.s3.delete-local"), the url of the stored object
+	 */
 	public String getRecordingUrl(Recording recording) {
-		return openviduConfig.getFinalUrl() + "recordings/" + recording.getId() + "/" + recording.getName() + "."
-				+ this.getExtensionFromRecording(recording);
+		String fileName = this.getRecordingFileName(recording);
+		if (openviduConfig.isRecordingS3Enabled() && openviduConfig.isOpenviduRecordingS3DeleteLocal()
+				&& Recording.UploadStatus.uploaded.equals(recording.getUploadStatus())) {
+			return S3Client.getObjectUrl(openviduConfig.getOpenviduRecordingS3Endpoint(),
+					openviduConfig.getOpenviduRecordingS3Bucket(), recording.getId() + "/" + fileName);
+		}
+		return openviduConfig.getFinalUrl() + "recordings/" + recording.getId() + "/" + fileName;
+	}
+
+	/**
+	 * @return the name of the final file of the recording inside its folder
+	 */
+	public String getRecordingFileName(Recording recording) {
+		return recording.getName() + "." + this.getExtensionFromRecording(recording);
 	}
 
 	private String getExtensionFromRecording(Recording recording) {
 		if (io.openvidu.java.client.Recording.OutputMode.INDIVIDUAL.equals(recording.getOutputMode())) {
-			return "zip";
+			// Segmented individual recordings are not zipped. The sync file lists them
+			return recording.isSegmented() ? "json" : "zip";
 		} else if (recording.hasVideo()) {
 			return "mp4";
 		} else {
@@ -475,7 +523,7 @@ public class RecordingManager {
 
 		this.automaticRecordingStopThreads.computeIfAbsent(session.getSessionId(), f -> {
 
-			ScheduledFuture<?> future = this.automaticRecordingStopExecutor.schedule(() -> {
+			ScheduledFuture<?> future = this.blockingTaskExecutor.schedule(() -> {
 				log.info("Stopping recording {} after {} seconds wait (no publisher published before timeout)",
 						recordingId, this.openviduConfig.getOpenviduRecordingAutostopTimeout());
 
@@ -483,7 +531,7 @@ public class RecordingManager {
 
 					boolean alreadyUnlocked = false;
 					try {
-						session.closingLock.writeLock().lock();
+						this.metricsManager.lock(session.closingLock.writeLock(), MetricsManager.LOCK_SESSION_CLOSING);
 						if (session.isClosed()) {
 							return;
 						}
@@ -523,7 +571,7 @@ public class RecordingManager {
 		if (future != null) {
 			boolean cancelled = future.cancel(false);
 			try {
-				session.closingLock.writeLock().lock();
+				this.metricsManager.lock(session.closingLock.writeLock(), MetricsManager.LOCK_SESSION_CLOSING);
 				if (session.isClosed()) {
 					return false;
 				}
@@ -546,53 +594,18 @@ public class RecordingManager {
 	}
 
 	private Recording getRecordingFromHost(String recordingId) {
-		log.info(this.openviduConfig.getOpenViduRecordingPath() + recordingId + "/"
-				+ RecordingManager.RECORDING_ENTITY_FILE + recordingId);
-		File file = new File(this.openviduConfig.getOpenViduRecordingPath() + recordingId + "/"
-				+ RecordingManager.RECORDING_ENTITY_FILE + recordingId);
-		log.info("File exists: " + file.exists());
-		Recording recording = this.getRecordingFromEntityFile(file);
-		return recording;
+		Recording recording = this.recordingJournal.get(recordingId);
+		return recording != null ? this.withFinalUrl(recording) : null;
 	}
 
 	private Set<Recording> getAllRecordingsFromHost() {
-		File folder = new File(this.openviduConfig.getOpenViduRecordingPath());
-		File[] files = folder.listFiles();
-
 		Set<Recording> recordingEntities = new HashSet<>();
-		for (int i = 0; i < files.length; i++) {
-			if (files[i].isDirectory()) {
-				File[] innerFiles = files[i].listFiles();
-				for (int j = 0; j < innerFiles.length; j++) {
-					Recording recording = this.getRecordingFromEntityFile(innerFiles[j]);
-					if (recording != null) {
-						recordingEntities.add(recording);
-					}
-				}
-			}
-		}
+		this.recordingJournal.getAll().forEach(recording -> recordingEntities.add(this.withFinalUrl(recording)));
 		return recordingEntities;
 	}
 
 	private Set<String> getRecordingIdsFromHost() {
-		File folder = new File(this.openviduConfig.getOpenViduRecordingPath());
-		File[] files = folder.listFiles();
-
-		Set<String> fileNamesNoExtension = new HashSet<>();
-		for (int i = 0; i < files.length; i++) {
-			if (files[i].isDirectory()) {
-				File[] innerFiles = files[i].listFiles();
-				for (int j = 0; j < innerFiles.length; j++) {
-					if (innerFiles[j].isFile()
-							&& innerFiles[j].getName().startsWith(RecordingManager.RECORDING_ENTITY_FILE)) {
-						fileNamesNoExtension
-								.add(innerFiles[j].getName().replaceFirst(RecordingManager.RECORDING_ENTITY_FILE, ""));
-						break;
-					}
-				}
-			}
-		}
-		return fileNamesNoExtension;
+		return this.recordingJournal.getIds();
 	}
 
 	private void checkRecordingPaths(String openviduRecordingPath, String openviduRecordingCustomLayout)
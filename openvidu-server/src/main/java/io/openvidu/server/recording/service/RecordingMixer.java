@@ -0,0 +1,485 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Volume;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.openvidu.server.cdr.CallDetailRecord;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.recording.MixingJob;
+import io.openvidu.server.recording.Recording;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.CustomFileManager;
+import io.openvidu.server.utils.DockerManager;
+import io.openvidu.server.utils.JsonUtils;
+
+/**
+ * Mixes finished INDIVIDUAL recordings into a single composed MP4 file, out of
+ * the live path of the sessions. Jobs are queued by priority and processed by
+ * a bounded number of workers (property
+ * "openvidu.recording.mixing.max-concurrent"), each one running ffmpeg in a
+ * container of the recording image. Streams are placed in a grid and delayed
+ * according to the offsets of the "RECORDING_NAME.json" sync file. Finished
+ * jobs can be retrieved for one hour, and then they are forgotten
+ */
+public class RecordingMixer {
+
+	private static final Logger log = LoggerFactory.getLogger(RecordingMixer.class);
+
+	public static final String DEFAULT_RESOLUTION = "1920x1080";
+	public static final String MIXED_FILE_SUFFIX = "-mixed.mp4";
+
+	private static final String MIXING_FOLDER = ".mix";
+	private static final String MIXED_FILE = "mixed.mp4";
+	private static final String PROGRESS_FILE = "progress";
+	// Milliseconds between checks of the progress of a running job
+	private static final long PROGRESS_INTERVAL = 1000;
+	// Milliseconds finished jobs are kept after reaching their final status
+	private static final long FINISHED_JOB_RETENTION = 3600000;
+	// Milliseconds between removals of expired finished jobs
+	private static final long PRUNE_INTERVAL = 60000;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected RecordingManager recordingManager;
+
+	@Autowired
+	protected CallDetailRecord cdr;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private final PriorityBlockingQueue<MixingJob> queue = new PriorityBlockingQueue<>();
+	private final Map<String, MixingJob> jobs = new ConcurrentHashMap<>();
+
+	// Runs at most "openvidu.recording.mixing.max-concurrent" jobs at a time
+	private Executor mixingExecutor;
+	private ScheduledFuture<?> pruneTask;
+
+	private DockerManager dockerManager;
+	private CustomFileManager fileManager = new CustomFileManager();
+	private JsonUtils jsonUtils = new JsonUtils();
+
+	private class MixingInput {
+		String file; // Path inside the container
+		boolean concat; // File is a concat list of segments
+		boolean hasAudio;
+		boolean hasVideo;
+		long offset; // Milliseconds since the first stream started
+	}
+
+	@PostConstruct
+	public void init() {
+		int maxConcurrent = this.openviduConfig.getOpenviduRecordingMixingMaxConcurrent();
+		if (!this.openviduConfig.isRecordingModuleEnabled() || maxConcurrent <= 0) {
+			return;
+		}
+		this.dockerManager = new DockerManager(this.blockingTaskExecutor);
+		this.mixingExecutor = this.blockingTaskExecutor.newBoundedExecutor(maxConcurrent);
+		this.pruneTask = this.blockingTaskExecutor.scheduleWithFixedDelay(
+				() -> this.pruneFinishedJobs(System.currentTimeMillis()), PRUNE_INTERVAL, PRUNE_INTERVAL,
+				TimeUnit.MILLISECONDS);
+		log.info("Recording mixer started with {} workers", maxConcurrent);
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.pruneTask != null) {
+			this.pruneTask.cancel(false);
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.mixingExecutor != null;
+	}
+
+	public MixingJob getJob(String recordingId) {
+		return this.jobs.get(recordingId);
+	}
+
+	/**
+	 * @return the queued job, or null if the queue is full
+	 */
+	public synchronized MixingJob submit(Recording recording, int priority, String resolution) {
+		if (this.queue.size() >= this.openviduConfig.getOpenviduRecordingMixingMaxQueued()) {
+			log.warn("Mixing of recording {} rejected: {} jobs already queued", recording.getId(), this.queue.size());
+			return null;
+		}
+		MixingJob job = new MixingJob(recording.getId(), recording.getSessionId(), priority, resolution);
+		this.jobs.put(recording.getId(), job);
+		this.queue.add(job);
+		log.info("Mixing of recording {} queued with priority {}", recording.getId(), priority);
+		this.cdr.recordRecordingMixingStatusChanged(job);
+		this.mixingExecutor.execute(this::mixNext);
+		return job;
+	}
+
+	/**
+	 * @return true if the job was queued or running and has been cancelled
+	 */
+	public boolean cancel(String recordingId) {
+		MixingJob job = this.jobs.get(recordingId);
+		if (job == null) {
+			return false;
+		}
+		synchronized (job) {
+			if (job.isFinished()) {
+				return false;
+			}
+			job.setStatus(MixingJob.Status.cancelled);
+		}
+		// A running job is stopped by its worker
+		this.queue.remove(job);
+		log.info("Mixing of recording {} cancelled", recordingId);
+		this.cdr.recordRecordingMixingStatusChanged(job);
+		return true;
+	}
+
+	/**
+	 * Forgets the jobs finished more than FINISHED_JOB_RETENTION milliseconds
+	 * before now. A job of the same recording submitted again replaces the
+	 * previous one, so it is never removed here while not finished
+	 */
+	private void pruneFinishedJobs(long now) {
+		this.jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAt() > FINISHED_JOB_RETENTION);
+	}
+
+	/**
+	 * Every submitted job queues one call, which mixes the job with the highest
+	 * priority at that moment. Calls of cancelled jobs find the queue empty
+	 */
+	private void mixNext() {
+		MixingJob job = this.queue.poll();
+		if (job == null) {
+			return;
+		}
+		synchronized (job) {
+			if (!MixingJob.Status.queued.equals(job.getStatus())) {
+				return;
+			}
+			job.setStatus(MixingJob.Status.mixing);
+		}
+		this.cdr.recordRecordingMixingStatusChanged(job);
+		this.mix(job);
+	}
+
+	private void mix(MixingJob job) {
+		final String recordingId = job.getRecordingId();
+		final Path folder = Paths.get(this.openviduConfig.getOpenViduRecordingPath(), recordingId);
+		final Path workFolder = folder.resolve(MIXING_FOLDER);
+		final String containerWorkFolder = "/recordings/" + recordingId + "/" + MIXING_FOLDER + "/";
+		final long startTime = System.currentTimeMillis();
+		String containerId = null;
+		MixingJob.Status finalStatus = MixingJob.Status.failed;
+		String reason = null;
+
+		try {
+			Recording recording = this.recordingManager.getRecording(recordingId);
+			if (recording == null) {
+				throw new IOException("recording does not exist");
+			}
+			Files.createDirectories(workFolder);
+			List<MixingInput> inputs = new ArrayList<>();
+			long duration = this.prepareInputs(recording, folder, workFolder, containerWorkFolder, inputs);
+			if (inputs.isEmpty() || duration <= 0) {
+				throw new IOException("recording has no streams to mix");
+			}
+
+			List<String> command = this.buildCommand(inputs, duration, job.getResolution(), containerWorkFolder);
+			log.info("Mixing {} streams of recording {} ({} s)", inputs.size(), recordingId, duration / 1000.0);
+			log.debug("Mixing command: {}", command);
+
+			Volume volume = new Volume("/recordings");
+			List<Bind> binds = Arrays.asList(new Bind(this.openviduConfig.getOpenViduRecordingPath(), volume));
+			containerId = this.dockerManager.runContainer(
+					RecordingManager.IMAGE_NAME + ":" + RecordingManager.IMAGE_TAG, "mixing_" + recordingId,
+					Arrays.asList(volume), binds, "none", new ArrayList<>(), command);
+			job.setContainerId(containerId);
+
+			Integer exitCode;
+			while ((exitCode = this.dockerManager.getContainerExitCode(containerId)) == null) {
+				if (MixingJob.Status.cancelled.equals(job.getStatus())) {
+					return;
+				}
+				Thread.sleep(PROGRESS_INTERVAL);
+				job.setProgress(this.readProgress(workFolder.resolve(PROGRESS_FILE), duration));
+			}
+			if (exitCode != 0) {
+				throw new IOException("ffmpeg exited with code " + exitCode);
+			}
+
+			String fileName = recording.getName() + MIXED_FILE_SUFFIX;
+			Files.move(workFolder.resolve(MIXED_FILE), folder.resolve(fileName), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			job.setDuration(duration / 1000.0);
+			job.setUrl(this.openviduConfig.getFinalUrl() + "recordings/" + recordingId + "/" + fileName);
+			job.setProgress(100);
+			finalStatus = MixingJob.Status.ready;
+			log.info("Recording {} mixed into file {} in {} ms", recordingId, fileName,
+					System.currentTimeMillis() - startTime);
+
+		} catch (InterruptedException e) {
+			log.warn("Mixing of recording {} interrupted", recordingId);
+			reason = "interrupted";
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			log.error("Error mixing recording {}: {}", recordingId, e.getMessage());
+			reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+		} finally {
+			if (containerId != null) {
+				try {
+					this.dockerManager.removeDockerContainer(containerId, true);
+				} catch (Exception e) {
+					log.error("Error removing mixing container {}: {}", containerId, e.getMessage());
+				}
+			}
+			try {
+				this.fileManager.deleteFolder(workFolder.toString());
+			} catch (IOException e) {
+				log.error("Error deleting mixing folder {}: {}", workFolder, e.getMessage());
+			}
+			boolean changed = false;
+			synchronized (job) {
+				if (!MixingJob.Status.cancelled.equals(job.getStatus())) {
+					job.setReason(reason);
+					job.setStatus(finalStatus);
+					changed = true;
+				}
+			}
+			if (changed) {
+				this.cdr.recordRecordingMixingStatusChanged(job);
+			}
+		}
+	}
+
+	/**
+	 * Makes the files of every stream available in the working folder: extracted
+	 * from the zip file of the recording or, for segmented recordings, as a concat
+	 * list of the segments of the stream
+	 *
+	 * @return the duration of the mixed file in milliseconds
+	 */
+	private long prepareInputs(Recording recording, Path folder, Path workFolder, String containerWorkFolder,
+			List<MixingInput> inputs) throws IOException {
+		ZipFile zip = null;
+		try {
+			JsonObject sync;
+			if (recording.isSegmented()) {
+				sync = this.jsonUtils.fromFileToJsonObject(folder.resolve(recording.getName() + ".json").toString());
+			} else {
+				Path zipFile = folder.resolve(recording.getName() + ".zip");
+				if (!Files.isRegularFile(zipFile)) {
+					throw new IOException("file " + zipFile + " is not available in this host");
+				}
+				zip = new ZipFile(zipFile.toFile());
+				ZipEntry syncEntry = zip.getEntry(recording.getName() + ".json");
+				if (syncEntry == null) {
+					throw new IOException("sync file not found in " + zipFile);
+				}
+				try (InputStream in = zip.getInputStream(syncEntry)) {
+					sync = new JsonParser().parse(new InputStreamReader(in, StandardCharsets.UTF_8))
+							.getAsJsonObject();
+				}
+			}
+
+			long minStart = Long.MAX_VALUE;
+			long maxEnd = 0;
+			for (JsonElement element : sync.get("files").getAsJsonArray()) {
+				JsonObject file = element.getAsJsonObject();
+				MixingInput input = new MixingInput();
+				input.hasAudio = file.get("hasAudio").getAsBoolean();
+				input.hasVideo = file.get("hasVideo").getAsBoolean();
+				if (!input.hasAudio && !input.hasVideo) {
+					continue;
+				}
+				String streamId = file.get("streamId").getAsString();
+				if (file.has("segmentList")) {
+					StringBuilder concat = new StringBuilder("ffconcat version 1.0\n");
+					JsonObject segmentList = this.jsonUtils
+							.fromFileToJsonObject(folder.resolve(file.get("segmentList").getAsString()).toString());
+					for (JsonElement segment : segmentList.get("segments").getAsJsonArray()) {
+						concat.append("file '../").append(segment.getAsJsonObject().get("file").getAsString())
+								.append("'\n");
+					}
+					Files.write(workFolder.resolve(streamId + ".ffconcat"),
+							concat.toString().getBytes(StandardCharsets.UTF_8));
+					input.file = containerWorkFolder + streamId + ".ffconcat";
+					input.concat = true;
+				} else {
+					String fileName = streamId + "."
+							+ (file.has("fileExtension") ? file.get("fileExtension").getAsString() : "webm");
+					ZipEntry entry = zip.getEntry(fileName);
+					if (entry == null) {
+						log.warn("File of stream {} not found in recording {}", streamId, recording.getId());
+						continue;
+					}
+					try (InputStream in = zip.getInputStream(entry)) {
+						Files.copy(in, workFolder.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+					}
+					input.file = containerWorkFolder + fileName;
+				}
+				long start = file.get("startTimeOffset").getAsLong();
+				minStart = Math.min(minStart, start);
+				maxEnd = Math.max(maxEnd, file.get("endTimeOffset").getAsLong());
+				input.offset = start;
+				inputs.add(input);
+			}
+			for (MixingInput input : inputs) {
+				input.offset -= minStart;
+			}
+			return inputs.isEmpty() ? 0 : maxEnd - minStart;
+		} finally {
+			if (zip != null) {
+				zip.close();
+			}
+		}
+	}
+
+	private List<String> buildCommand(List<MixingInput> inputs, long duration, String resolution,
+			String containerWorkFolder) {
+		String seconds = String.format(Locale.ROOT, "%.3f", duration / 1000.0);
+		List<String> command = new ArrayList<>(Arrays.asList("ffmpeg", "-y", "-hide_banner", "-loglevel", "error",
+				"-progress", containerWorkFolder + PROGRESS_FILE));
+		for (MixingInput input : inputs) {
+			if (input.concat) {
+				command.addAll(Arrays.asList("-f", "concat", "-safe", "0"));
+			}
+			command.addAll(Arrays.asList("-i", input.file));
+		}
+
+		StringBuilder filter = new StringBuilder();
+		List<Integer> videos = new ArrayList<>();
+		List<Integer> audios = new ArrayList<>();
+		for (int i = 0; i < inputs.size(); i++) {
+			if (inputs.get(i).hasVideo) {
+				videos.add(i);
+			}
+			if (inputs.get(i).hasAudio) {
+				audios.add(i);
+			}
+		}
+
+		if (!videos.isEmpty()) {
+			String[] size = resolution.split("x");
+			int width = Integer.parseInt(size[0]);
+			int height = Integer.parseInt(size[1]);
+			int columns = (int) Math.ceil(Math.sqrt(videos.size()));
+			int rows = (int) Math.ceil((double) videos.size() / columns);
+			// Even dimensions, required by yuv420p
+			int cellWidth = (width / columns) & ~1;
+			int cellHeight = (height / rows) & ~1;
+
+			command.addAll(Arrays.asList("-f", "lavfi", "-i",
+					"color=c=black:s=" + width + "x" + height + ":r=25:d=" + seconds));
+			String base = "[" + inputs.size() + ":v]";
+			for (int k = 0; k < videos.size(); k++) {
+				int index = videos.get(k);
+				String offset = String.format(Locale.ROOT, "%.3f", inputs.get(index).offset / 1000.0);
+				filter.append("[").append(index).append(":v]setpts=PTS-STARTPTS+").append(offset).append("/TB,scale=")
+						.append(cellWidth).append(":").append(cellHeight)
+						.append(":force_original_aspect_ratio=decrease,pad=").append(cellWidth).append(":")
+						.append(cellHeight).append(":(ow-iw)/2:(oh-ih)/2[v").append(k).append("];");
+				String next = k == videos.size() - 1 ? "[vout]" : "[base" + k + "]";
+				filter.append(base).append("[v").append(k).append("]overlay=x=").append((k % columns) * cellWidth)
+						.append(":y=").append((k / columns) * cellHeight).append(":eof_action=pass").append(next)
+						.append(";");
+				base = next;
+			}
+		}
+
+		if (!audios.isEmpty()) {
+			for (int k = 0; k < audios.size(); k++) {
+				int index = audios.get(k);
+				long delay = inputs.get(index).offset;
+				filter.append("[").append(index).append(":a]asetpts=PTS-STARTPTS,adelay=").append(delay).append("|")
+						.append(delay).append("[a").append(k).append("];");
+			}
+			for (int k = 0; k < audios.size(); k++) {
+				filter.append("[a").append(k).append("]");
+			}
+			filter.append(audios.size() == 1 ? "anull" : "amix=inputs=" + audios.size() + ":duration=longest")
+					.append("[aout];");
+		}
+
+		filter.setLength(filter.length() - 1);
+		command.addAll(Arrays.asList("-filter_complex", filter.toString()));
+		if (!videos.isEmpty()) {
+			command.addAll(Arrays.asList("-map", "[vout]", "-c:v", "libx264", "-preset", "veryfast", "-pix_fmt",
+					"yuv420p"));
+		}
+		if (!audios.isEmpty()) {
+			command.addAll(Arrays.asList("-map", "[aout]", "-c:a", "aac"));
+		}
+		command.addAll(Arrays.asList("-t", seconds, "-movflags", "+faststart", containerWorkFolder + MIXED_FILE));
+		return command;
+	}
+
+	/**
+	 * @return the percentage of the recording already mixed, from the last
+	 *         "out_time_ms" (microseconds) reported by ffmpeg
+	 */
+	private int readProgress(Path progressFile, long duration) {
+		long outTime = 0;
+		try {
+			for (String line : Files.readAllLines(progressFile)) {
+				if (line.startsWith("out_time_ms=")) {
+					outTime = Long.parseLong(line.substring("out_time_ms=".length()).trim());
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			return 0;
+		}
+		// 100 only once the file is in place
+		return (int) Math.min(99, outTime / 10 / duration);
+	}
+
+}
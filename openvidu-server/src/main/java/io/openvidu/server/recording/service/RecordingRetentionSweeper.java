@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.recording.service;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+
+import io.openvidu.server.cdr.CallDetailRecord;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.EndReason;
+import io.openvidu.server.recording.MixingJob;
+import io.openvidu.server.recording.Recording;
+import io.openvidu.server.recording.RecordingRetentionPolicy;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+/**
+ * Removes from the host the recordings that exceed the retention policies:
+ * older than "openvidu.recording.retention.max-age" hours, beyond the
+ * "openvidu.recording.retention.keep-last" most recent ones of their session
+ * or, oldest first, beyond "openvidu.recording.retention.max-size" MB in
+ * total. Policies of property "openvidu.recording.retention.sessions" replace
+ * the global age and count limits for the sessions they match.
+ *
+ * Sweeps walk the {@link io.openvidu.server.recording.RecordingJournal}, never
+ * the recordings path. Expired recordings are deleted, or moved to
+ * "openvidu.recording.retention.cold-path" if configured, in batches separated
+ * by a pause to bound the disk load, and a 'recordingStatusChanged' CDR event
+ * with status 'deleted' and reason 'recordingExpired' is triggered for each one
+ */
+public class RecordingRetentionSweeper {
+
+	private static final Logger log = LoggerFactory.getLogger(RecordingRetentionSweeper.class);
+
+	// Recordings removed in a row before pausing
+	private static final int BATCH_SIZE = 20;
+	// Milliseconds of pause between batches
+	private static final long BATCH_PAUSE = 1000;
+
+	@Autowired
+	protected OpenviduConfig openviduConfig;
+
+	@Autowired
+	protected RecordingManager recordingManager;
+
+	@Autowired
+	protected RecordingMixer recordingMixer;
+
+	@Autowired
+	protected CallDetailRecord cdr;
+
+	@Autowired
+	protected BlockingTaskExecutor blockingTaskExecutor;
+
+	private RecordingRetentionPolicy globalPolicy;
+	private List<RecordingRetentionPolicy> sessionPolicies;
+	private long maxBytes;
+
+	private ScheduledFuture<?> sweepTask;
+
+	@PostConstruct
+	public void init() {
+		this.globalPolicy = new RecordingRetentionPolicy(null,
+				this.openviduConfig.getOpenviduRecordingRetentionMaxAge(),
+				this.openviduConfig.getOpenviduRecordingRetentionKeepLast());
+		this.sessionPolicies = this.openviduConfig.getOpenviduRecordingRetentionSessions();
+		this.maxBytes = this.openviduConfig.getOpenviduRecordingRetentionMaxSize() * 1024L * 1024L;
+		if (!this.openviduConfig.isRecordingModuleEnabled()
+				|| (this.globalPolicy.isUnlimited() && this.sessionPolicies.isEmpty() && this.maxBytes == 0)) {
+			return;
+		}
+		int interval = Math.max(1, this.openviduConfig.getOpenviduRecordingRetentionSweepInterval());
+		this.sweepTask = this.blockingTaskExecutor.scheduleWithFixedDelay(() -> {
+			try {
+				this.sweep();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				log.error("Error sweeping expired recordings: {}", e.getMessage());
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+		log.info("Recording retention enabled. Global policy {}, session policies {}, max size {} MB",
+				this.globalPolicy, this.sessionPolicies, this.openviduConfig.getOpenviduRecordingRetentionMaxSize());
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.sweepTask != null) {
+			this.sweepTask.cancel(false);
+		}
+	}
+
+	private void sweep() throws InterruptedException {
+		final long now = System.currentTimeMillis();
+		List<Recording> candidates = this.recordingManager.getRecordingJournal().getAll().stream()
+				.filter(this::isRemovable).sorted(Comparator.comparingLong(Recording::getCreatedAt).reversed())
+				.collect(Collectors.toList());
+
+		// Age and count limits, per session. Candidates are sorted newest first
+		Map<String, Recording> expired = new LinkedHashMap<>();
+		Map<String, Integer> positions = new LinkedHashMap<>();
+		for (Recording recording : candidates) {
+			RecordingRetentionPolicy policy = this.getPolicy(recording.getSessionId());
+			int position = positions.merge(recording.getSessionId(), 1, Integer::sum) - 1;
+			if (policy.isExpired(recording.getCreatedAt(), now) || policy.isSurplus(position)) {
+				expired.put(recording.getId(), recording);
+			}
+		}
+
+		// Size limit, over every recording of the host. Oldest first
+		if (this.maxBytes > 0) {
+			long totalBytes = this.recordingManager.getRecordingJournal().getAll().stream()
+					.filter(recording -> !expired.containsKey(recording.getId())).mapToLong(Recording::getSize).sum();
+			for (int i = candidates.size() - 1; i >= 0 && totalBytes > this.maxBytes; i--) {
+				Recording recording = candidates.get(i);
+				if (expired.putIfAbsent(recording.getId(), recording) == null) {
+					totalBytes -= recording.getSize();
+				}
+			}
+		}
+
+		if (expired.isEmpty()) {
+			return;
+		}
+		log.info("Removing {} recordings exceeding the retention policies", expired.size());
+		int removed = 0;
+		for (Recording recording : expired.values()) {
+			if (removed > 0 && removed % BATCH_SIZE == 0) {
+				Thread.sleep(BATCH_PAUSE);
+			}
+			if (this.remove(recording)) {
+				removed++;
+			}
+		}
+		log.info("{} recordings removed in {} ms", removed, System.currentTimeMillis() - now);
+	}
+
+	/**
+	 * Only finished recordings not in use by an upload or a mixing job
+	 */
+	private boolean isRemovable(Recording recording) {
+		if (!io.openvidu.java.client.Recording.Status.ready.equals(recording.getStatus())
+				&& !io.openvidu.java.client.Recording.Status.failed.equals(recording.getStatus())) {
+			return false;
+		}
+		if (Recording.UploadStatus.uploading.equals(recording.getUploadStatus())) {
+			return false;
+		}
+		MixingJob job = this.recordingMixer.getJob(recording.getId());
+		return job == null || job.isFinished();
+	}
+
+	private RecordingRetentionPolicy getPolicy(String sessionId) {
+		for (RecordingRetentionPolicy policy : this.sessionPolicies) {
+			if (policy.appliesTo(sessionId)) {
+				return policy;
+			}
+		}
+		return this.globalPolicy;
+	}
+
+	private boolean remove(Recording recording) {
+		String coldPath = this.openviduConfig.getOpenviduRecordingRetentionColdPath();
+		if (coldPath == null || coldPath.isEmpty()) {
+			HttpStatus status = this.recordingManager.deleteRecordingFromHost(recording.getId(), false);
+			if (!HttpStatus.NO_CONTENT.equals(status)) {
+				return false;
+			}
+			log.info("Recording {} of session {} deleted by retention policy", recording.getId(),
+					recording.getSessionId());
+		} else {
+			Path folder = Paths.get(this.openviduConfig.getOpenViduRecordingPath(), recording.getId());
+			Path coldFolder = Paths.get(coldPath, recording.getId());
+			try {
+				if (Files.isDirectory(folder)) {
+					Files.createDirectories(coldFolder.getParent());
+					try {
+						Files.move(folder, coldFolder, StandardCopyOption.ATOMIC_MOVE);
+					} catch (AtomicMoveNotSupportedException e) {
+						// Cold path in another file system
+						FileUtils.moveDirectory(folder.toFile(), coldFolder.toFile());
+					}
+				}
+			} catch (IOException e) {
+				log.error("Error moving recording {} to cold path {}: {}", recording.getId(), coldPath,
+						e.getMessage());
+				return false;
+			}
+			this.recordingManager.getRecordingJournal().remove(recording.getId());
+			log.info("Recording {} of session {} moved to cold path {} by retention policy", recording.getId(),
+					recording.getSessionId(), coldPath);
+		}
+		this.cdr.recordRecordingDeleted(recording, EndReason.recordingExpired, System.currentTimeMillis());
+		return true;
+	}
+
+}
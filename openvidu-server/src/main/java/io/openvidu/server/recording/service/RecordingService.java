@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.java.client.RecordingLayout;
@@ -32,7 +33,6 @@ import io.openvidu.server.core.EndReason;
 import io.openvidu.server.core.Session;
 import io.openvidu.server.recording.Recording;
 import io.openvidu.server.recording.RecordingDownloader;
-import io.openvidu.server.utils.CommandExecutor;
 import io.openvidu.server.utils.CustomFileManager;
 import io.openvidu.server.utils.QuarantineKiller;
 
@@ -61,8 +61,9 @@ public abstract class RecordingService {
 	public abstract Recording stopRecording(Session session, Recording recording, EndReason reason);
 
 	/**
-	 * Generates metadata recording file (".recording.RECORDING_ID" JSON file to
-	 * store Recording entity)
+	 * Stores the recording in the recording journal, which generates its metadata
+	 * recording file (".recording.RECORDING_ID" JSON file to store Recording
+	 * entity)
 	 */
 	protected void generateRecordingMetadataFile(Recording recording) {
 		String folder = this.openviduConfig.getOpenViduRecordingPath() + recording.getId();
@@ -78,8 +79,7 @@ public abstract class RecordingService {
 
 		String filePath = this.openviduConfig.getOpenViduRecordingPath() + recording.getId() + "/"
 				+ RecordingManager.RECORDING_ENTITY_FILE + recording.getId();
-		String text = recording.toJson().toString();
-		this.fileWriter.createAndWriteFile(filePath, text);
+		this.recordingManager.getRecordingJournal().put(recording);
 		log.info("Generated recording metadata file at {}", filePath);
 	}
 
@@ -122,9 +122,11 @@ public abstract class RecordingService {
 		recording.setSize(size); // Size in bytes
 		recording.setDuration(duration > 0 ? duration : 0); // Duration in seconds
 
-		if (this.fileWriter.overwriteFile(metadataFilePath, recording.toJson().toString())) {
-			log.info("Sealed recording metadata file at {} with status [{}]", metadataFilePath, status.name());
-		}
+		Timer.Sample sample = this.recordingManager.getMetricsManager().startTimer();
+		this.recordingManager.getRecordingJournal().put(recording);
+		log.info("Sealed recording metadata file at {} with status [{}]", metadataFilePath, status.name());
+		this.recordingManager.getMetricsManager().recordRecordingOperation("seal",
+				recording.getOutputMode().name(), sample);
 
 		return recording;
 	}
@@ -158,15 +160,10 @@ public abstract class RecordingService {
 	}
 
 	protected void updateFilePermissions(String folder) {
-		String command = "chmod -R 777 " + folder;
 		try {
-			String response = CommandExecutor.execCommand("/bin/sh", "-c", command);
-			if ("".equals(response)) {
-				log.info("KMS recording file permissions successfully updated");
-			} else {
-				log.error("KMS recording file permissions failed to update: {}", response);
-			}
-		} catch (IOException | InterruptedException e) {
+			this.fileWriter.setPermissionsRecursively(folder);
+			log.info("KMS recording file permissions successfully updated");
+		} catch (IOException e) {
 			log.error("KMS recording file permissions failed to update. Error: {}", e.getMessage());
 		}
 	}
@@ -19,17 +19,21 @@ package io.openvidu.server.recording.service;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -51,7 +55,6 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import io.openvidu.client.OpenViduException;
-import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.java.client.RecordingProperties;
 import io.openvidu.server.cdr.CallDetailRecord;
 import io.openvidu.server.config.OpenviduConfig;
@@ -61,6 +64,7 @@ import io.openvidu.server.core.Session;
 import io.openvidu.server.kurento.core.KurentoParticipant;
 import io.openvidu.server.kurento.core.KurentoSession;
 import io.openvidu.server.kurento.endpoint.PublisherEndpoint;
+import io.openvidu.server.recording.MediaProfileSelector;
 import io.openvidu.server.recording.RecorderEndpointWrapper;
 import io.openvidu.server.recording.Recording;
 import io.openvidu.server.recording.RecordingDownloader;
@@ -75,6 +79,18 @@ public class SingleStreamRecordingService extends RecordingService {
 
 	private final String INDIVIDUAL_STREAM_METADATA_FILE = ".stream.";
 
+	// Milliseconds to wait for the recorders of a recording to start or stop,
+	// plus some more for each one of them
+	private static final long RECORDERS_TIMEOUT = 5000;
+	private static final long RECORDERS_TIMEOUT_PER_STREAM = 250;
+	// Attempts to start again the recorder of a stream that failed to start,
+	// each one after an increasing delay in milliseconds
+	private static final int RECORDER_START_RETRIES = 3;
+	private static final long RECORDER_RETRY_DELAY = 2000;
+
+	// Limits the recorder operations in flight in each KMS
+	private final Map<String, Executor> recorderExecutors = new ConcurrentHashMap<>();
+
 	public SingleStreamRecordingService(RecordingManager recordingManager, RecordingDownloader recordingDownloader,
 			OpenviduConfig openviduConfig, CallDetailRecord cdr, QuarantineKiller quarantineKiller) {
 		super(recordingManager, recordingDownloader, openviduConfig, cdr, quarantineKiller);
@@ -93,47 +109,81 @@ public class SingleStreamRecordingService extends RecordingService {
 				recordingId, session.getSessionId());
 
 		Recording recording = new Recording(session.getSessionId(), recordingId, properties);
+		recording.setSegmentDuration(this.openviduConfig.getOpenviduRecordingSegmentDuration());
 		this.recordingManager.startingRecordings.put(recording.getId(), recording);
 
 		activeRecorders.put(session.getSessionId(), new ConcurrentHashMap<String, RecorderEndpointWrapper>());
 		storedRecorders.put(session.getSessionId(), new ConcurrentHashMap<String, RecorderEndpointWrapper>());
 
-		final int activePublishers = session.getActivePublishers();
-		final CountDownLatch recordingStartedCountdown = new CountDownLatch(activePublishers);
+		// Recorders are started concurrently. A recorder failing to start does not
+		// prevent the recording from starting, and is retried in the background
+		final List<Participant> publishers = session.getParticipants().stream().filter(Participant::isStreaming)
+				.collect(Collectors.toList());
+		final CountDownLatch recordingStartedCountdown = new CountDownLatch(publishers.size());
+		final Map<String, Participant> failedStreams = new ConcurrentHashMap<>();
+		final String kmsId = ((KurentoSession) session).getKms().getId();
 
-		for (Participant p : session.getParticipants()) {
-			if (p.isStreaming()) {
-
-				MediaProfileSpecType profile = null;
+		for (Participant p : publishers) {
+			MediaProfileSpecType profile = null;
+			try {
+				profile = this.recordingManager.mediaProfileSelector.selectMediaProfile(properties,
+						(KurentoParticipant) p);
+			} catch (OpenViduException e) {
+				log.error(
+						"Cannot start single stream recorder for stream {} in session {}: {}. Skipping to next stream being published",
+						p.getPublisherStreamId(), session.getSessionId(), e.getMessage());
+				recordingStartedCountdown.countDown();
+				continue;
+			}
+			final MediaProfileSpecType finalProfile = profile;
+			this.runWithRecorderPermit(kmsId, () -> {
 				try {
-					profile = generateMediaProfile(properties, p);
-				} catch (OpenViduException e) {
-					log.error(
-							"Cannot start single stream recorder for stream {} in session {}: {}. Skipping to next stream being published",
+					this.startRecorderEndpointForPublisherEndpoint(session, recordingId, finalProfile, p,
+							recordingStartedCountdown);
+				} catch (Exception e) {
+					log.error("Error starting single stream recorder for stream {} in session {}: {}",
 							p.getPublisherStreamId(), session.getSessionId(), e.getMessage());
+					failedStreams.put(p.getPublisherStreamId(), p);
 					recordingStartedCountdown.countDown();
-					continue;
 				}
-				this.startRecorderEndpointForPublisherEndpoint(session, recordingId, profile, p,
-						recordingStartedCountdown);
-			}
+			});
 		}
 
+		final long timeout = RECORDERS_TIMEOUT + RECORDERS_TIMEOUT_PER_STREAM * publishers.size();
+		boolean allStarted = false;
 		try {
-			if (!recordingStartedCountdown.await(5, TimeUnit.SECONDS)) {
-				log.error("Error waiting for some recorder endpoint to start in session {}", session.getSessionId());
-				throw this.failStartRecording(session, recording, "Couldn't initialize some RecorderEndpoint");
-			}
+			allStarted = this.recordingManager.blockingTaskExecutor.await(recordingStartedCountdown, timeout,
+					TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
-			recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
 			log.error("Exception while waiting for state change", e);
 		}
-
+		// Recorders with no RecordingEvent in time are discarded and retried as the
+		// ones that failed to start
+		for (Participant p : publishers) {
+			final String streamId = p.getPublisherStreamId();
+			final RecorderEndpointWrapper wrapper = activeRecorders.get(session.getSessionId()).get(streamId);
+			if (wrapper != null && wrapper.getStartTime() == 0) {
+				this.discardUnstartedRecorder(session.getSessionId(), wrapper);
+				failedStreams.put(streamId, p);
+			}
+		}
+		long startedRecorders = activeRecorders.get(session.getSessionId()).values().stream()
+				.filter(wrapper -> wrapper.getStartTime() > 0).count();
+		if (!publishers.isEmpty() && startedRecorders == 0) {
+			log.error("Error waiting for any recorder endpoint to start in session {}", session.getSessionId());
+			throw this.failStartRecording(session, recording, "Couldn't initialize any RecorderEndpoint");
+		}
+		if (!allStarted || !failedStreams.isEmpty()) {
+			log.warn("{} of {} recorder endpoints started in session {} after {} ms. Recording the rest of streams",
+					startedRecorders, publishers.size(), session.getSessionId(), timeout);
+		}
 		this.generateRecordingMetadataFile(recording);
 
 		// Increment active recordings
 		((KurentoSession) session).getKms().getActiveRecordings().incrementAndGet();
 
+		failedStreams.values().forEach(p -> this.retryRecorderEndpointStart(session, p, kmsId));
+
 		return recording;
 	}
 
@@ -151,15 +201,41 @@ public class SingleStreamRecordingService extends RecordingService {
 		final HashMap<String, RecorderEndpointWrapper> wrappers = new HashMap<>(
 				storedRecorders.get(recording.getSessionId()));
 		final CountDownLatch stoppedCountDown = new CountDownLatch(wrappers.size());
+		final String kmsId = session != null ? ((KurentoSession) session).getKms().getId()
+				: wrappers.values().stream().map(RecorderEndpointWrapper::getKmsId).filter(id -> id != null)
+						.findFirst().orElse("");
 
 		for (RecorderEndpointWrapper wrapper : wrappers.values()) {
-			this.stopRecorderEndpointOfPublisherEndpoint(recording.getSessionId(), wrapper.getStreamId(),
-					stoppedCountDown, kmsDisconnectionTime);
+			this.runWithRecorderPermit(kmsId, () -> {
+				try {
+					this.stopRecorderEndpointOfPublisherEndpoint(recording.getSessionId(), wrapper.getStreamId(),
+							stoppedCountDown, kmsDisconnectionTime);
+				} catch (Exception e) {
+					log.error("Error stopping single stream recorder for stream {} in session {}: {}",
+							wrapper.getStreamId(), recording.getSessionId(), e.getMessage());
+					stoppedCountDown.countDown();
+				}
+			});
 		}
+		final long timeout = RECORDERS_TIMEOUT + RECORDERS_TIMEOUT_PER_STREAM * wrappers.size();
 		try {
-			if (!stoppedCountDown.await(5, TimeUnit.SECONDS)) {
-				recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
-				log.error("Error waiting for some recorder endpoint to stop in session {}", recording.getSessionId());
+			if (!this.recordingManager.blockingTaskExecutor.await(stoppedCountDown, timeout, TimeUnit.MILLISECONDS)) {
+				// Streams whose recorder did not stop in time end now, so the rest of
+				// streams are still available in the recording
+				long endTime = System.currentTimeMillis();
+				int unstopped = 0;
+				for (RecorderEndpointWrapper wrapper : wrappers.values()) {
+					if (wrapper.getEndTime() == 0) {
+						unstopped++;
+						wrapper.setEndTime(endTime);
+						generateIndividualMetadataFile(wrapper);
+					}
+				}
+				log.error("Error waiting for {} of {} recorder endpoints to stop in session {}", unstopped,
+						wrappers.size(), recording.getSessionId());
+				if (unstopped == wrappers.size()) {
+					recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
+				}
 			}
 		} catch (InterruptedException e) {
 			recording.setStatus(io.openvidu.java.client.Recording.Status.failed);
@@ -208,38 +284,72 @@ public class SingleStreamRecordingService extends RecordingService {
 
 	public void startRecorderEndpointForPublisherEndpoint(final Session session, String recordingId,
 			MediaProfileSpecType profile, final Participant participant, CountDownLatch globalStartLatch) {
+		this.startRecorderEndpointForPublisherEndpoint(session, recordingId, profile, participant, globalStartLatch,
+				null);
+	}
+
+	/**
+	 * @param recordingStarted if not null, set to true once the RecordingEvent of
+	 *                         the recorder is received
+	 */
+	private void startRecorderEndpointForPublisherEndpoint(final Session session, String recordingId,
+			MediaProfileSpecType profile, final Participant participant, CountDownLatch globalStartLatch,
+			AtomicBoolean recordingStarted) {
 		log.info("Starting single stream recorder for stream {} in session {}", participant.getPublisherStreamId(),
 				session.getSessionId());
 
+		Recording recording;
 		if (recordingId == null) {
 			// Stream is being recorded because is a new publisher in an ongoing recorded
 			// session. If recordingId is defined is because Stream is being recorded from
 			// "startRecording" method
-			Recording recording = this.recordingManager.sessionsRecordings.get(session.getSessionId());
+			recording = this.recordingManager.sessionsRecordings.get(session.getSessionId());
 			recordingId = recording.getId();
 
 			try {
-				profile = generateMediaProfile(recording.getRecordingProperties(), participant);
+				profile = this.recordingManager.mediaProfileSelector
+						.selectMediaProfile(recording.getRecordingProperties(), (KurentoParticipant) participant);
 			} catch (OpenViduException e) {
 				log.error("Cannot start single stream recorder for stream {} in session {}: {}",
 						participant.getPublisherStreamId(), session.getSessionId(), e.getMessage());
+				// No RecordingEvent will come. Waiting for it is pointless
+				globalStartLatch.countDown();
 				return;
 			}
+		} else {
+			recording = this.recordingManager.startingRecordings.get(recordingId);
+			if (recording == null) {
+				recording = this.recordingManager.sessionsRecordings.get(session.getSessionId());
+			}
 		}
+		final boolean segmented = recording != null && recording.isSegmented();
+		final String fileExtension = MediaProfileSelector.getFileExtension(profile);
 
 		KurentoParticipant kurentoParticipant = (KurentoParticipant) participant;
 		MediaPipeline pipeline = kurentoParticipant.getPublisher().getPipeline();
 
 		RecorderEndpoint recorder = new RecorderEndpoint.Builder(pipeline,
 				"file://" + this.openviduConfig.getOpenViduRecordingPath() + recordingId + "/"
-						+ participant.getPublisherStreamId() + ".webm").withMediaProfile(profile).build();
+						+ (segmented ? getSegmentFileName(participant.getPublisherStreamId(), 0, fileExtension)
+								: participant.getPublisherStreamId() + "." + fileExtension)).withMediaProfile(profile)
+										.build();
 
 		recorder.addRecordingListener(new EventListener<RecordingEvent>() {
 			@Override
 			public void onEvent(RecordingEvent event) {
-				activeRecorders.get(session.getSessionId()).get(participant.getPublisherStreamId())
-						.setStartTime(Long.parseLong(event.getTimestampMillis()));
+				Map<String, RecorderEndpointWrapper> recorders = activeRecorders.get(session.getSessionId());
+				RecorderEndpointWrapper wrapper = recorders != null ? recorders.get(participant.getPublisherStreamId())
+						: null;
+				if (wrapper == null || wrapper.getRecorder() != recorder) {
+					// Recorder already discarded for not starting in time
+					return;
+				}
+				wrapper.setStartTime(Long.parseLong(event.getTimestampMillis()));
+				wrapper.setSegmentStartTime(wrapper.getStartTime());
 				log.info("Recording started event for stream {}", participant.getPublisherStreamId());
+				if (recordingStarted != null) {
+					recordingStarted.set(true);
+				}
 				globalStartLatch.countDown();
 			}
 		});
@@ -258,32 +368,137 @@ public class SingleStreamRecordingService extends RecordingService {
 				participant.getServerMetadata(), kurentoParticipant.getPublisher().getMediaOptions().hasAudio(),
 				kurentoParticipant.getPublisher().getMediaOptions().hasVideo(),
 				kurentoParticipant.getPublisher().getMediaOptions().getTypeOfVideo());
+		wrapper.setFileExtension(fileExtension);
+		wrapper.setKmsId(((KurentoSession) session).getKms().getId());
 
 		activeRecorders.get(session.getSessionId()).put(participant.getPublisherStreamId(), wrapper);
 		storedRecorders.get(session.getSessionId()).put(participant.getPublisherStreamId(), wrapper);
-		wrapper.getRecorder().record();
+		try {
+			wrapper.getRecorder().record();
+		} catch (RuntimeException e) {
+			activeRecorders.get(session.getSessionId()).remove(participant.getPublisherStreamId());
+			storedRecorders.get(session.getSessionId()).remove(participant.getPublisherStreamId());
+			recorder.release();
+			throw e;
+		}
+
+		if (segmented) {
+			final MediaProfileSpecType finalProfile = profile;
+			final long segmentDuration = recording.getSegmentDuration();
+			wrapper.setSegmentTask(this.recordingManager.blockingTaskExecutor.scheduleAtFixedRate(
+					() -> this.startNextSegment(session.getSessionId(), wrapper, kurentoParticipant.getPublisher(),
+							finalProfile),
+					segmentDuration, segmentDuration, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Releases a recorder that did not start in time, so it can be started again
+	 * by {@link #retryRecorderEndpointStart(Session, Participant, String)}
+	 */
+	private void discardUnstartedRecorder(String sessionId, RecorderEndpointWrapper wrapper) {
+		log.warn("Recorder of stream {} in session {} did not start in time. Discarding it", wrapper.getStreamId(),
+				sessionId);
+		activeRecorders.get(sessionId).remove(wrapper.getStreamId(), wrapper);
+		storedRecorders.get(sessionId).remove(wrapper.getStreamId(), wrapper);
+		try {
+			this.stopSegments(wrapper).release();
+		} catch (Exception e) {
+			log.warn("Error releasing the recorder of stream {} in session {}: {}", wrapper.getStreamId(), sessionId,
+					e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the recorder operation in the blocking task executor once there is
+	 * room for it among the operations in flight in the KMS (property
+	 * "openvidu.recording.recorder-max-in-flight")
+	 */
+	private void runWithRecorderPermit(String kmsId, Runnable operation) {
+		this.recorderExecutors.computeIfAbsent(kmsId, id -> this.recordingManager.blockingTaskExecutor
+				.newBoundedExecutor(Math.max(1, this.openviduConfig.getOpenviduRecordingRecorderMaxInFlight())))
+				.execute(operation);
+	}
+
+	/**
+	 * Starts again the recorder of a stream that failed to start, as if it were a
+	 * new publisher of the ongoing recording
+	 */
+	private void retryRecorderEndpointStart(Session session, Participant participant, String kmsId) {
+		final String streamId = participant.getPublisherStreamId();
+		this.recordingManager.blockingTaskExecutor.execute(() -> {
+			for (int attempt = 1; attempt <= RECORDER_START_RETRIES; attempt++) {
+				try {
+					Thread.sleep(RECORDER_RETRY_DELAY * attempt);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				Map<String, RecorderEndpointWrapper> recorders = activeRecorders.get(session.getSessionId());
+				if (!this.recordingManager.sessionIsBeingRecorded(session.getSessionId()) || recorders == null
+						|| recorders.containsKey(streamId) || !participant.isStreaming()) {
+					return;
+				}
+				final int currentAttempt = attempt;
+				final CountDownLatch startLatch = new CountDownLatch(1);
+				// Only set by the RecordingEvent of the recorder
+				final AtomicBoolean started = new AtomicBoolean(false);
+				this.runWithRecorderPermit(kmsId, () -> {
+					try {
+						this.startRecorderEndpointForPublisherEndpoint(session, null, null, participant, startLatch,
+								started);
+					} catch (Exception e) {
+						log.warn("Attempt {} to start again the recorder of stream {} in session {} failed: {}",
+								currentAttempt, streamId, session.getSessionId(), e.getMessage());
+						startLatch.countDown();
+					}
+				});
+				try {
+					this.recordingManager.blockingTaskExecutor.await(startLatch, RECORDERS_TIMEOUT,
+							TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (started.get()) {
+					log.info("Recorder of stream {} in session {} started after {} attempts", streamId,
+							session.getSessionId(), attempt);
+					return;
+				}
+			}
+			log.error("Giving up starting the recorder of stream {} in session {}", streamId, session.getSessionId());
+		});
 	}
 
 	public void stopRecorderEndpointOfPublisherEndpoint(String sessionId, String streamId,
 			CountDownLatch globalStopLatch, Long kmsDisconnectionTime) {
 		log.info("Stopping single stream recorder for stream {} in session {}", streamId, sessionId);
 		final RecorderEndpointWrapper finalWrapper = activeRecorders.get(sessionId).remove(streamId);
+		final RecorderEndpoint finalRecorder = finalWrapper != null ? this.stopSegments(finalWrapper) : null;
 		if (finalWrapper != null && kmsDisconnectionTime == 0) {
-			finalWrapper.getRecorder().addStoppedListener(new EventListener<StoppedEvent>() {
+			finalRecorder.addStoppedListener(new EventListener<StoppedEvent>() {
 				@Override
 				public void onEvent(StoppedEvent event) {
 					finalWrapper.setEndTime(Long.parseLong(event.getTimestampMillis()));
+					if (finalWrapper.getSegmentTask() != null) {
+						closeSegment(finalWrapper, finalWrapper.getSegment(), finalWrapper.getSegmentStartTime(),
+								finalWrapper.getEndTime());
+					}
 					generateIndividualMetadataFile(finalWrapper);
 					log.info("Recording stopped event for stream {}", streamId);
-					finalWrapper.getRecorder().release();
+					finalRecorder.release();
 					globalStopLatch.countDown();
 				}
 			});
-			finalWrapper.getRecorder().stop();
+			finalRecorder.stop();
 		} else {
 			if (kmsDisconnectionTime != 0) {
 				// Stopping recorder endpoint because of a KMS disconnection
 				finalWrapper.setEndTime(kmsDisconnectionTime);
+				if (finalWrapper.getSegmentTask() != null) {
+					closeSegment(finalWrapper, finalWrapper.getSegment(), finalWrapper.getSegmentStartTime(),
+							kmsDisconnectionTime);
+				}
 				generateIndividualMetadataFile(finalWrapper);
 				log.warn("Forcing individual recording stop after KMS restart for stream {} in session {}", streamId,
 						sessionId);
@@ -298,64 +513,141 @@ public class SingleStreamRecordingService extends RecordingService {
 		}
 	}
 
-	private MediaProfileSpecType generateMediaProfile(RecordingProperties properties, Participant participant)
-			throws OpenViduException {
-
-		KurentoParticipant kParticipant = (KurentoParticipant) participant;
-		MediaProfileSpecType profile = null;
-
-		boolean streamHasAudio = kParticipant.getPublisher().getMediaOptions().hasAudio();
-		boolean streamHasVideo = kParticipant.getPublisher().getMediaOptions().hasVideo();
-		boolean propertiesHasAudio = properties.hasAudio();
-		boolean propertiesHasVideo = properties.hasVideo();
-
-		if (streamHasAudio) {
-			if (streamHasVideo) {
-				// Stream has both audio and video tracks
-
-				if (propertiesHasAudio) {
-					if (propertiesHasVideo) {
-						profile = MediaProfileSpecType.WEBM;
-					} else {
-						profile = MediaProfileSpecType.WEBM_AUDIO_ONLY;
-					}
-				} else {
-					profile = MediaProfileSpecType.WEBM_VIDEO_ONLY;
+	/**
+	 * Starts recording the next segment of a stream in a new RecorderEndpoint.
+	 * The current segment is only stopped once the new one is recording, so no
+	 * media is lost between them
+	 */
+	private void startNextSegment(String sessionId, RecorderEndpointWrapper wrapper, PublisherEndpoint publisher,
+			MediaProfileSpecType profile) {
+		try {
+			synchronized (wrapper) {
+				Map<String, RecorderEndpointWrapper> sessionRecorders = activeRecorders.get(sessionId);
+				if (sessionRecorders == null || sessionRecorders.get(wrapper.getStreamId()) != wrapper
+						|| wrapper.getPendingRecorder() != null) {
+					// Stream already stopped or previous segment still starting
+					return;
 				}
-			} else {
-				// Stream has audio track only
+				final int nextSegment = wrapper.getSegment() + 1;
+				final RecorderEndpoint nextRecorder = new RecorderEndpoint.Builder(publisher.getPipeline(),
+						"file://" + this.openviduConfig.getOpenViduRecordingPath() + wrapper.getRecordingId() + "/"
+								+ getSegmentFileName(wrapper.getStreamId(), nextSegment, wrapper.getFileExtension()))
+										.withMediaProfile(profile)
+										.build();
+				nextRecorder.addRecordingListener(new EventListener<RecordingEvent>() {
+					@Override
+					public void onEvent(RecordingEvent event) {
+						onSegmentStarted(wrapper, nextRecorder, nextSegment,
+								Long.parseLong(event.getTimestampMillis()));
+					}
+				});
+				nextRecorder.addErrorListener(new EventListener<ErrorEvent>() {
+					@Override
+					public void onEvent(ErrorEvent event) {
+						log.error(event.getErrorCode() + " " + event.getDescription());
+					}
+				});
+				connectAccordingToProfile(publisher, nextRecorder, profile);
+				wrapper.setPendingRecorder(nextRecorder);
+				nextRecorder.record();
+			}
+		} catch (Exception e) {
+			log.error("Error starting a new recording segment for stream {} in session {}: {}",
+					wrapper.getStreamId(), sessionId, e.getMessage());
+		}
+	}
 
-				if (propertiesHasAudio) {
-					profile = MediaProfileSpecType.WEBM_AUDIO_ONLY;
-				} else {
-					// ERROR: RecordingProperties set to video only but there's no video track
-					throw new OpenViduException(
-							Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
-							"RecordingProperties set to \"hasAudio(false)\" but stream is audio-only");
-				}
+	private void onSegmentStarted(RecorderEndpointWrapper wrapper, RecorderEndpoint recorder, int segment,
+			long startTime) {
+		final RecorderEndpoint previousRecorder;
+		final int previousSegment;
+		final long previousStartTime;
+		synchronized (wrapper) {
+			if (wrapper.getPendingRecorder() != recorder) {
+				// Discarded because the stream stopped being recorded
+				return;
+			}
+			previousRecorder = wrapper.getRecorder();
+			previousSegment = wrapper.getSegment();
+			previousStartTime = wrapper.getSegmentStartTime();
+			wrapper.setRecorder(recorder);
+			wrapper.setPendingRecorder(null);
+			wrapper.setSegment(segment);
+			wrapper.setSegmentStartTime(startTime);
+		}
+		previousRecorder.addStoppedListener(new EventListener<StoppedEvent>() {
+			@Override
+			public void onEvent(StoppedEvent event) {
+				closeSegment(wrapper, previousSegment, previousStartTime, Long.parseLong(event.getTimestampMillis()));
+				previousRecorder.release();
 			}
-		} else if (streamHasVideo) {
-			// Stream has video track only
+		});
+		previousRecorder.stop();
+	}
 
-			if (propertiesHasVideo) {
-				profile = MediaProfileSpecType.WEBM_VIDEO_ONLY;
-			} else {
-				// ERROR: RecordingProperties set to audio only but there's no audio track
-				throw new OpenViduException(Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
-						"RecordingProperties set to \"hasVideo(false)\" but stream is video-only");
+	/**
+	 * Cancels the creation of new segments of a stream
+	 *
+	 * @return the RecorderEndpoint of the last segment, which must be stopped
+	 */
+	private RecorderEndpoint stopSegments(RecorderEndpointWrapper wrapper) {
+		RecorderEndpoint pendingRecorder;
+		synchronized (wrapper) {
+			if (wrapper.getSegmentTask() != null) {
+				wrapper.getSegmentTask().cancel(false);
+			}
+			pendingRecorder = wrapper.getPendingRecorder();
+			wrapper.setPendingRecorder(null);
+		}
+		if (pendingRecorder != null) {
+			try {
+				pendingRecorder.release();
+			} catch (Exception e) {
+				log.warn("Error releasing the recorder of an unfinished segment of stream {}: {}",
+						wrapper.getStreamId(), e.getMessage());
 			}
-		} else {
-			// ERROR: Stream has no track at all. This branch should never be reachable
-			throw new OpenViduException(Code.MEDIA_TYPE_STREAM_INCOMPATIBLE_WITH_RECORDING_PROPERTIES_ERROR_CODE,
-					"Stream has no track at all. Cannot be recorded");
 		}
-		return profile;
+		return wrapper.getRecorder();
+	}
+
+	/**
+	 * Adds a finished segment to the segment list of its stream. The list is
+	 * rewritten with every consecutive segment already finished, so the segments
+	 * can be consumed while the stream is still being recorded. It is a plain JSON
+	 * list and not an HLS playlist, as HLS does not admit WebM segments
+	 */
+	private void closeSegment(RecorderEndpointWrapper wrapper, int segment, long startTime, long endTime) {
+		JsonArray segments = new JsonArray();
+		synchronized (wrapper) {
+			wrapper.getSegmentDurations().put(segment, Math.max(0, endTime - startTime) / 1000.0);
+			for (int i = 0; wrapper.getSegmentDurations().containsKey(i); i++) {
+				JsonObject segmentJson = new JsonObject();
+				segmentJson.addProperty("file",
+						getSegmentFileName(wrapper.getStreamId(), i, wrapper.getFileExtension()));
+				segmentJson.addProperty("duration", wrapper.getSegmentDurations().get(i));
+				segments.add(segmentJson);
+			}
+			JsonObject segmentList = new JsonObject();
+			segmentList.addProperty("streamId", wrapper.getStreamId());
+			segmentList.add("segments", segments);
+			this.fileWriter.overwriteFile(this.openviduConfig.getOpenViduRecordingPath() + wrapper.getRecordingId()
+					+ "/" + getSegmentListFileName(wrapper.getStreamId()), segmentList.toString());
+		}
+	}
+
+	private static String getSegmentListFileName(String streamId) {
+		return streamId + "-segments.json";
+	}
+
+	private static String getSegmentFileName(String streamId, int segment, String fileExtension) {
+		return String.format(Locale.ROOT, "%s-%05d.%s", streamId, segment, fileExtension);
 	}
 
 	private void connectAccordingToProfile(PublisherEndpoint publisherEndpoint, RecorderEndpoint recorder,
 			MediaProfileSpecType profile) {
 		switch (profile) {
 		case WEBM:
+		case MKV:
 			publisherEndpoint.connect(recorder, MediaType.AUDIO);
 			publisherEndpoint.connect(recorder, MediaType.VIDEO);
 			break;
@@ -363,6 +655,7 @@ public class SingleStreamRecordingService extends RecordingService {
 			publisherEndpoint.connect(recorder, MediaType.AUDIO);
 			break;
 		case WEBM_VIDEO_ONLY:
+		case MP4_VIDEO_ONLY:
 			publisherEndpoint.connect(recorder, MediaType.VIDEO);
 			break;
 		default:
@@ -381,8 +674,17 @@ public class SingleStreamRecordingService extends RecordingService {
 	private void commonWriteIndividualMetadataFile(RecorderEndpointWrapper wrapper,
 			BiFunction<String, String, Boolean> writeFunction) {
 		String filesPath = this.openviduConfig.getOpenViduRecordingPath() + wrapper.getRecordingId() + "/";
-		File videoFile = new File(filesPath + wrapper.getStreamId() + ".webm");
-		wrapper.setSize(videoFile.length());
+		if (wrapper.getSegmentTask() != null) {
+			long size = 0;
+			for (int i = 0; i <= wrapper.getSegment(); i++) {
+				size += new File(filesPath + getSegmentFileName(wrapper.getStreamId(), i, wrapper.getFileExtension()))
+						.length();
+			}
+			wrapper.setSize(size);
+		} else {
+			File videoFile = new File(filesPath + wrapper.getStreamId() + "." + wrapper.getFileExtension());
+			wrapper.setSize(videoFile.length());
+		}
 		String metadataFilePath = filesPath + INDIVIDUAL_STREAM_METADATA_FILE + wrapper.getStreamId();
 		String metadataFileContent = wrapper.toJson().toString();
 		writeFunction.apply(metadataFilePath, metadataFileContent);
@@ -396,7 +698,7 @@ public class SingleStreamRecordingService extends RecordingService {
 		String metadataFilePath = folderPath + RecordingManager.RECORDING_ENTITY_FILE + recording.getId();
 		String syncFilePath = folderPath + recording.getName() + ".json";
 
-		recording = this.recordingManager.getRecordingFromEntityFile(new File(metadataFilePath));
+		recording = this.recordingManager.getRecordingJournal().get(recording.getId());
 
 		long minStartTime = Long.MAX_VALUE;
 		long maxEndTime = 0;
@@ -405,7 +707,6 @@ public class SingleStreamRecordingService extends RecordingService {
 		File folder = new File(folderPath);
 		File[] files = folder.listFiles();
 
-		Reader reader = null;
 		Gson gson = new Gson();
 
 		// Sync metadata json object to store in "RECORDING_NAME.json"
@@ -418,12 +719,13 @@ public class SingleStreamRecordingService extends RecordingService {
 
 		for (int i = 0; i < files.length; i++) {
 			if (files[i].isFile() && files[i].getName().startsWith(INDIVIDUAL_STREAM_METADATA_FILE)) {
-				try {
-					reader = new FileReader(files[i].getAbsolutePath());
-				} catch (FileNotFoundException e) {
+				RecorderEndpointWrapper wr;
+				try (Reader reader = new FileReader(files[i].getAbsolutePath())) {
+					wr = gson.fromJson(reader, RecorderEndpointWrapper.class);
+				} catch (IOException e) {
 					log.error("Error reading file {}. Error: {}", files[i].getAbsolutePath(), e.getMessage());
+					continue;
 				}
-				RecorderEndpointWrapper wr = gson.fromJson(reader, RecorderEndpointWrapper.class);
 				minStartTime = Math.min(minStartTime, wr.getStartTime());
 				maxEndTime = Math.max(maxEndTime, wr.getEndTime());
 				accumulatedSize += wr.getSize();
@@ -432,6 +734,10 @@ public class SingleStreamRecordingService extends RecordingService {
 				jsonFile.addProperty("connectionId", wr.getConnectionId());
 				jsonFile.addProperty("streamId", wr.getStreamId());
 				jsonFile.addProperty("size", wr.getSize());
+				jsonFile.addProperty("fileExtension", wr.getFileExtension());
+				if (recording.isSegmented()) {
+					jsonFile.addProperty("segmentList", getSegmentListFileName(wr.getStreamId()));
+				}
 				jsonFile.addProperty("clientData", wr.getClientData());
 				jsonFile.addProperty("serverData", wr.getServerData());
 				jsonFile.addProperty("hasAudio", wr.hasAudio() && recording.hasAudio());
@@ -443,12 +749,20 @@ public class SingleStreamRecordingService extends RecordingService {
 				jsonFile.addProperty("endTimeOffset", wr.getEndTime() - recording.getCreatedAt());
 
 				jsonArrayFiles.add(jsonFile);
+				if (recording.isSegmented()) {
+					files[i].delete();
+				}
 			}
 		}
 
 		json.add("files", jsonArrayFiles);
 		this.fileWriter.createAndWriteFile(syncFilePath, new GsonBuilder().setPrettyPrinting().create().toJson(json));
-		this.generateZipFileAndCleanFolder(folderPath, recording.getName() + ".zip");
+		if (recording.isSegmented()) {
+			// Segments and segment lists are already in place. The sync file is the final file
+			this.updateFilePermissions(folderPath);
+		} else {
+			this.generateZipFileAndCleanFolder(folderPath, recording.getName() + ".zip");
+		}
 
 		double duration = (double) (maxEndTime - minStartTime) / 1000;
 		duration = duration > 0 ? duration : 0;
@@ -471,7 +785,8 @@ public class SingleStreamRecordingService extends RecordingService {
 			for (int i = 0; i < files.length; i++) {
 				String fileExtension = FilenameUtils.getExtension(files[i].getName());
 
-				if (files[i].isFile() && (fileExtension.equals("json") || fileExtension.equals("webm"))) {
+				if (files[i].isFile() && (fileExtension.equals("json") || fileExtension.equals("webm")
+						|| fileExtension.equals("mkv") || fileExtension.equals("mp4"))) {
 
 					// Zip video files and json sync metadata file
 					FileInputStream fis = new FileInputStream(files[i]);
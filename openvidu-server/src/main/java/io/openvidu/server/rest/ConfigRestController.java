@@ -106,6 +106,7 @@ public class ConfigRestController {
 		json.addProperty("minRecvBandwidth", openviduConfig.getVideoMinRecvBandwidth());
 		json.addProperty("maxSendBandwidth", openviduConfig.getVideoMaxSendBandwidth());
 		json.addProperty("minSendBandwidth", openviduConfig.getVideoMinSendBandwidth());
+		json.addProperty("streamsStatsInterval", openviduConfig.getStreamsStatsInterval());
 		json.addProperty("openviduRecording", openviduConfig.isRecordingModuleEnabled());
 		if (openviduConfig.isRecordingModuleEnabled()) {
 			json.addProperty("openviduRecordingVersion", openviduConfig.getOpenViduRecordingVersion());
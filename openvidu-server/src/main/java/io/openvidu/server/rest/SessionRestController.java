@@ -46,6 +46,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import io.openvidu.client.OpenViduException;
+import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.client.internal.ProtocolElements;
 import io.openvidu.java.client.MediaMode;
 import io.openvidu.java.client.OpenViduRole;
@@ -61,9 +62,13 @@ import io.openvidu.server.core.Participant;
 import io.openvidu.server.core.Session;
 import io.openvidu.server.core.SessionManager;
 import io.openvidu.server.kurento.core.KurentoMediaOptions;
+import io.openvidu.server.kurento.core.KurentoParticipant;
 import io.openvidu.server.kurento.core.KurentoTokenOptions;
+import io.openvidu.server.metrics.MetricsManager;
+import io.openvidu.server.recording.MixingJob;
 import io.openvidu.server.recording.Recording;
 import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.recording.service.RecordingMixer;
 
 /**
  *
@@ -85,6 +90,12 @@ public class SessionRestController {
 	@Autowired
 	private OpenviduConfig openviduConfig;
 
+	@Autowired
+	private RecordingMixer recordingMixer;
+
+	@Autowired
+	private MetricsManager metricsManager;
+
 	@RequestMapping(value = "/sessions", method = RequestMethod.POST)
 	public ResponseEntity<?> getSessionId(@RequestBody(required = false) Map<?, ?> params) {
 
@@ -197,6 +208,71 @@ public class SessionRestController {
 		}
 	}
 
+	@RequestMapping(value = "/sessions/{sessionId}/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> getSessionWebrtcStats(@PathVariable("sessionId") String sessionId) {
+
+		log.info("REST API: GET /api/sessions/{}/stats", sessionId);
+
+		Session session = this.sessionManager.getSession(sessionId);
+		if (session == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		JsonObject json = new JsonObject();
+		JsonArray jsonArray = new JsonArray();
+		session.getParticipants().forEach(p -> {
+			jsonArray.add(((KurentoParticipant) p).webrtcStatsTimeSeriesToJson());
+		});
+		json.addProperty("sessionId", sessionId);
+		json.addProperty("numberOfElements", jsonArray.size());
+		json.add("content", jsonArray);
+		return new ResponseEntity<>(json.toString(), getResponseHeaders(), HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/sessions/{sessionId}/migrate", method = RequestMethod.POST)
+	public ResponseEntity<?> migrateSession(@PathVariable("sessionId") String sessionId,
+			@RequestBody(required = false) Map<?, ?> params) {
+
+		log.info("REST API: POST /api/sessions/{}/migrate {}", sessionId, params != null ? params.toString() : "{}");
+
+		Session session = this.sessionManager.getSession(sessionId);
+		if (session == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		String mediaNodeId = null;
+		if (params != null) {
+			try {
+				mediaNodeId = (String) params.get("mediaNode");
+			} catch (ClassCastException e) {
+				return this.generateErrorResponse("Type error in some parameter",
+						"/api/sessions/" + sessionId + "/migrate", HttpStatus.BAD_REQUEST);
+			}
+		}
+
+		if (mediaNodeId != null && mediaNodeId.equals(session.getMediaNodeId())) {
+			return this.generateErrorResponse("Session is already hosted by Media Node " + mediaNodeId,
+					"/api/sessions/" + sessionId + "/migrate", HttpStatus.BAD_REQUEST);
+		}
+
+		try {
+			this.sessionManager.migrateSession(session, mediaNodeId);
+		} catch (OpenViduException e) {
+			HttpStatus status;
+			if (e.getCodeValue() == Code.ROOM_CLOSED_ERROR_CODE.getValue()
+					|| e.getCodeValue() == Code.MEDIA_NODE_NOT_FOUND_ERROR_CODE.getValue()) {
+				status = HttpStatus.NOT_FOUND;
+			} else if (e.getCodeValue() == Code.ROOM_GENERIC_ERROR_CODE.getValue()) {
+				// Session is being recorded
+				status = HttpStatus.CONFLICT;
+			} else {
+				// No connected Media Node where to migrate the session
+				status = HttpStatus.SERVICE_UNAVAILABLE;
+			}
+			return this.generateErrorResponse(e.getMessage(), "/api/sessions/" + sessionId + "/migrate", status);
+		}
+		return new ResponseEntity<>(session.toJson().toString(), getResponseHeaders(), HttpStatus.OK);
+	}
+
 	@RequestMapping(value = "/sessions", method = RequestMethod.GET)
 	public ResponseEntity<?> listSessions(
 			@RequestParam(value = "webRtcStats", defaultValue = "false", required = false) boolean webRtcStats) {
@@ -229,7 +305,7 @@ public class SessionRestController {
 		Session sessionNotActive = this.sessionManager.getSessionNotActive(sessionId);
 		if (sessionNotActive != null) {
 			try {
-				sessionNotActive.closingLock.writeLock().lock();
+				this.metricsManager.lock(sessionNotActive.closingLock.writeLock(), MetricsManager.LOCK_SESSION_CLOSING);
 				if (sessionNotActive.isClosed()) {
 					return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 				}
@@ -394,6 +470,9 @@ public class SessionRestController {
 						kurentoOptsResponse.addProperty("videoMinSendBandwidth",
 								kurentoTokenOptions.getVideoMinSendBandwidth());
 					}
+					if (kurentoTokenOptions.getReceiveAudioOnly() != null) {
+						kurentoOptsResponse.addProperty("receiveAudioOnly", kurentoTokenOptions.getReceiveAudioOnly());
+					}
 					if (kurentoTokenOptions.getAllowedFilters().length > 0) {
 						JsonArray filters = new JsonArray();
 						for (String filter : kurentoTokenOptions.getAllowedFilters()) {
@@ -437,6 +516,7 @@ public class SessionRestController {
 		Boolean hasVideo;
 		String recordingLayoutString;
 		String customLayout;
+		Boolean passthrough;
 		try {
 			sessionId = (String) params.get("session");
 			name = (String) params.get("name");
@@ -446,6 +526,7 @@ public class SessionRestController {
 			hasVideo = (Boolean) params.get("hasVideo");
 			recordingLayoutString = (String) params.get("recordingLayout");
 			customLayout = (String) params.get("customLayout");
+			passthrough = (Boolean) params.get("passthrough");
 		} catch (ClassCastException e) {
 			return this.generateErrorResponse("Type error in some parameter", "/api/recordings/start",
 					HttpStatus.BAD_REQUEST);
@@ -528,6 +609,8 @@ public class SessionRestController {
 				builder.customLayout(
 						customLayout == null ? session.getSessionProperties().defaultCustomLayout() : customLayout);
 			}
+		} else if (passthrough != null) {
+			builder.passthrough(passthrough);
 		}
 		builder.name(name).hasAudio(hasAudio != null ? hasAudio : true).hasVideo(hasVideo != null ? hasVideo : true);
 
@@ -621,6 +704,84 @@ public class SessionRestController {
 		return new ResponseEntity<>(this.recordingManager.deleteRecordingFromHost(recordingId, false));
 	}
 
+	@RequestMapping(value = "/recordings/mix/{recordingId}", method = RequestMethod.POST)
+	public ResponseEntity<?> mixRecording(@PathVariable("recordingId") String recordingId,
+			@RequestBody(required = false) Map<?, ?> params) {
+
+		log.info("REST API: POST /api/recordings/mix/{} {}", recordingId, params != null ? params.toString() : "{}");
+
+		if (!this.openviduConfig.isRecordingModuleEnabled() || !this.recordingMixer.isEnabled()) {
+			// Recording module or mixing of recordings disabled
+			return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+		}
+
+		Integer priority = null;
+		String resolution = null;
+		if (params != null) {
+			try {
+				priority = (Integer) params.get("priority");
+				resolution = (String) params.get("resolution");
+			} catch (ClassCastException e) {
+				return this.generateErrorResponse("Type error in some parameter", "/api/recordings/mix",
+						HttpStatus.BAD_REQUEST);
+			}
+		}
+		if (resolution != null && !sessionManager.formatChecker.isAcceptableRecordingResolution(resolution)) {
+			return this.generateErrorResponse(
+					"Wrong \"resolution\" parameter. Acceptable values from 100 to 1999 for both width and height",
+					"/api/recordings/mix", HttpStatus.UNPROCESSABLE_ENTITY);
+		}
+
+		Recording recording = this.recordingManager.getRecording(recordingId);
+		if (recording == null) {
+			// Recording does not exist
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		MixingJob currentJob = this.recordingMixer.getJob(recordingId);
+		if (!OutputMode.INDIVIDUAL.equals(recording.getOutputMode())
+				|| !io.openvidu.java.client.Recording.Status.ready.equals(recording.getStatus())
+				|| (currentJob != null && !currentJob.isFinished())) {
+			// Only finished INDIVIDUAL recordings not already being mixed
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+
+		MixingJob job = this.recordingMixer.submit(recording, priority != null ? priority : 0,
+				resolution != null ? resolution : RecordingMixer.DEFAULT_RESOLUTION);
+		if (job == null) {
+			// Queue of mixing jobs full
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return new ResponseEntity<>(job.toJson().toString(), getResponseHeaders(), HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/recordings/mix/{recordingId}", method = RequestMethod.GET)
+	public ResponseEntity<?> getRecordingMixing(@PathVariable("recordingId") String recordingId) {
+
+		log.info("REST API: GET /api/recordings/mix/{}", recordingId);
+
+		MixingJob job = this.recordingMixer.getJob(recordingId);
+		if (job == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(job.toJson().toString(), getResponseHeaders(), HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/recordings/mix/{recordingId}", method = RequestMethod.DELETE)
+	public ResponseEntity<?> cancelRecordingMixing(@PathVariable("recordingId") String recordingId) {
+
+		log.info("REST API: DELETE /api/recordings/mix/{}", recordingId);
+
+		MixingJob job = this.recordingMixer.getJob(recordingId);
+		if (job == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (!this.recordingMixer.cancel(recordingId)) {
+			// Job already finished
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+	}
+
 	@RequestMapping(value = "/signal", method = RequestMethod.POST)
 	public ResponseEntity<?> signal(@RequestBody Map<?, ?> params) {
 
@@ -684,6 +845,9 @@ public class SessionRestController {
 		try {
 			sessionManager.sendMessage(completeMessage.toString(), sessionId);
 		} catch (OpenViduException e) {
+			if (e.getCodeValue() == Code.SIGNAL_RATE_LIMIT_ERROR_CODE.getValue()) {
+				return this.generateErrorResponse(e.getMessage(), "/api/signal", HttpStatus.TOO_MANY_REQUESTS);
+			}
 			return this.generateErrorResponse("\"to\" array has no valid connection identifiers", "/api/signal",
 					HttpStatus.NOT_ACCEPTABLE);
 		}
@@ -19,14 +19,17 @@ package io.openvidu.server.rpc;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.kurento.client.IceCandidate;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.Transaction;
@@ -42,6 +45,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.client.OpenViduException;
 import io.openvidu.client.OpenViduException.Code;
 import io.openvidu.client.internal.ProtocolElements;
@@ -52,6 +56,7 @@ import io.openvidu.server.core.MediaOptions;
 import io.openvidu.server.core.Participant;
 import io.openvidu.server.core.SessionManager;
 import io.openvidu.server.core.Token;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.utils.GeoLocation;
 import io.openvidu.server.utils.GeoLocationByIp;
 
@@ -71,8 +76,14 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 	@Autowired
 	RpcNotificationService notificationService;
 
+	@Autowired
+	MetricsManager metricsManager;
+
 	private ConcurrentMap<String, Boolean> webSocketEOFTransportError = new ConcurrentHashMap<>();
 
+	// Calls to each RPC method, to sample the ones logged at INFO level
+	private ConcurrentMap<String, AtomicLong> rpcMethodCalls = new ConcurrentHashMap<>();
+
 	@Override
 	public void handleRequest(Transaction transaction, Request<JsonObject> request) throws Exception {
 
@@ -113,58 +124,78 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
 		transaction.startAsync();
 
-		switch (request.getMethod()) {
-		case ProtocolElements.JOINROOM_METHOD:
-			joinRoom(rpcConnection, request);
-			break;
-		case ProtocolElements.LEAVEROOM_METHOD:
-			leaveRoom(rpcConnection, request);
-			break;
-		case ProtocolElements.PUBLISHVIDEO_METHOD:
-			publishVideo(rpcConnection, request);
-			break;
-		case ProtocolElements.ONICECANDIDATE_METHOD:
-			onIceCandidate(rpcConnection, request);
-			break;
-		case ProtocolElements.RECEIVEVIDEO_METHOD:
-			receiveVideoFrom(rpcConnection, request);
-			break;
-		case ProtocolElements.UNSUBSCRIBEFROMVIDEO_METHOD:
-			unsubscribeFromVideo(rpcConnection, request);
-			break;
-		case ProtocolElements.SENDMESSAGE_ROOM_METHOD:
-			sendMessage(rpcConnection, request);
-			break;
-		case ProtocolElements.UNPUBLISHVIDEO_METHOD:
-			unpublishVideo(rpcConnection, request);
-			break;
-		case ProtocolElements.STREAMPROPERTYCHANGED_METHOD:
-			streamPropertyChanged(rpcConnection, request);
-			break;
-		case ProtocolElements.FORCEDISCONNECT_METHOD:
-			forceDisconnect(rpcConnection, request);
-			break;
-		case ProtocolElements.FORCEUNPUBLISH_METHOD:
-			forceUnpublish(rpcConnection, request);
-			break;
-		case ProtocolElements.APPLYFILTER_METHOD:
-			applyFilter(rpcConnection, request);
-			break;
-		case ProtocolElements.EXECFILTERMETHOD_METHOD:
-			execFilterMethod(rpcConnection, request);
-			break;
-		case ProtocolElements.REMOVEFILTER_METHOD:
-			removeFilter(rpcConnection, request);
-			break;
-		case ProtocolElements.ADDFILTEREVENTLISTENER_METHOD:
-			addFilterEventListener(rpcConnection, request);
-			break;
-		case ProtocolElements.REMOVEFILTEREVENTLISTENER_METHOD:
-			removeFilterEventListener(rpcConnection, request);
-			break;
-		default:
-			log.error("Unrecognized request {}", request);
-			break;
+		Timer.Sample sample = this.metricsManager.startTimer();
+		boolean error = true;
+		try {
+			switch (request.getMethod()) {
+			case ProtocolElements.JOINROOM_METHOD:
+				joinRoom(rpcConnection, request);
+				break;
+			case ProtocolElements.LEAVEROOM_METHOD:
+				leaveRoom(rpcConnection, request);
+				break;
+			case ProtocolElements.PUBLISHVIDEO_METHOD:
+				publishVideo(rpcConnection, request);
+				break;
+			case ProtocolElements.ONICECANDIDATE_METHOD:
+				onIceCandidate(rpcConnection, request);
+				break;
+			case ProtocolElements.ONICECANDIDATES_METHOD:
+				onIceCandidates(rpcConnection, request);
+				break;
+			case ProtocolElements.RECEIVEVIDEO_METHOD:
+				receiveVideoFrom(rpcConnection, request);
+				break;
+			case ProtocolElements.UNSUBSCRIBEFROMVIDEO_METHOD:
+				unsubscribeFromVideo(rpcConnection, request);
+				break;
+			case ProtocolElements.UPDATESUBSCRIPTION_METHOD:
+				updateSubscription(rpcConnection, request);
+				break;
+			case ProtocolElements.RECONNECTSTREAM_METHOD:
+				reconnectStream(rpcConnection, request);
+				break;
+			case ProtocolElements.SENDMESSAGE_ROOM_METHOD:
+				sendMessage(rpcConnection, request);
+				break;
+			case ProtocolElements.UNPUBLISHVIDEO_METHOD:
+				unpublishVideo(rpcConnection, request);
+				break;
+			case ProtocolElements.STREAMPROPERTYCHANGED_METHOD:
+				streamPropertyChanged(rpcConnection, request);
+				break;
+			case ProtocolElements.FORCEDISCONNECT_METHOD:
+				forceDisconnect(rpcConnection, request);
+				break;
+			case ProtocolElements.FORCEUNPUBLISH_METHOD:
+				forceUnpublish(rpcConnection, request);
+				break;
+			case ProtocolElements.APPLYFILTER_METHOD:
+				applyFilter(rpcConnection, request);
+				break;
+			case ProtocolElements.EXECFILTERMETHOD_METHOD:
+				execFilterMethod(rpcConnection, request);
+				break;
+			case ProtocolElements.REMOVEFILTER_METHOD:
+				removeFilter(rpcConnection, request);
+				break;
+			case ProtocolElements.ADDFILTEREVENTLISTENER_METHOD:
+				addFilterEventListener(rpcConnection, request);
+				break;
+			case ProtocolElements.REMOVEFILTEREVENTLISTENER_METHOD:
+				removeFilterEventListener(rpcConnection, request);
+				break;
+			default:
+				log.error("Unrecognized request {}", request);
+				// Unknown methods are not recorded to keep the number of time series bounded
+				sample = null;
+				break;
+			}
+			error = false;
+		} finally {
+			if (sample != null) {
+				this.metricsManager.recordRpcRequest(request.getMethod(), sample, error);
+			}
 		}
 	}
 
@@ -235,6 +266,22 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 			// Nothing happens. 'recorder' param to false
 		}
 
+		boolean batchedIceCandidates = false;
+
+		try {
+			batchedIceCandidates = getBooleanParam(request, ProtocolElements.JOINROOM_BATCHEDICECANDIDATES_PARAM);
+		} catch (RuntimeException e) {
+			// Nothing happens. Client only accepts 'iceCandidate' notifications
+		}
+
+		boolean speakerChangedNotifications = false;
+
+		try {
+			speakerChangedNotifications = getBooleanParam(request, ProtocolElements.JOINROOM_SPEAKERCHANGED_PARAM);
+		} catch (RuntimeException e) {
+			// Nothing happens. Client does not accept 'speakerChanged' notifications
+		}
+
 		boolean generateRecorderParticipant = false;
 
 		if (openviduConfig.isOpenViduSecret(secret)) {
@@ -267,6 +314,8 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 							participant = sessionManager.newParticipant(sessionId, participantPrivatetId, tokenObj,
 									clientMetadata, location, platform,
 									httpSession.getId().substring(0, Math.min(16, httpSession.getId().length())));
+							participant.setBatchedIceCandidates(batchedIceCandidates);
+							participant.setSpeakerChangedNotifications(speakerChangedNotifications);
 						}
 
 						rpcConnection.setSessionId(sessionId);
@@ -349,7 +398,26 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
 		String sdpOffer = getStringParam(request, ProtocolElements.RECEIVEVIDEO_SDPOFFER_PARAM);
 
-		sessionManager.subscribe(participant, senderPublicId, sdpOffer, request.getId());
+		// Optional. If not defined, the default of the participant's token applies
+		Boolean audioOnly = null;
+		if (request.getParams().has(ProtocolElements.RECEIVEVIDEO_AUDIOONLY_PARAM)) {
+			audioOnly = getBooleanParam(request, ProtocolElements.RECEIVEVIDEO_AUDIOONLY_PARAM);
+		}
+
+		sessionManager.subscribe(participant, senderPublicId, sdpOffer, audioOnly, request.getId());
+	}
+
+	private void reconnectStream(RpcConnection rpcConnection, Request<JsonObject> request) {
+		Participant participant;
+		try {
+			participant = sanityCheckOfSession(rpcConnection, "reconnectStream");
+		} catch (OpenViduException e) {
+			return;
+		}
+
+		String streamId = getStringParam(request, ProtocolElements.RECONNECTSTREAM_STREAM_PARAM);
+		String sdpOffer = getStringParam(request, ProtocolElements.RECONNECTSTREAM_SDPOFFER_PARAM);
+		sessionManager.reconnectStream(participant, streamId, sdpOffer, request.getId());
 	}
 
 	private void unsubscribeFromVideo(RpcConnection rpcConnection, Request<JsonObject> request) {
@@ -364,6 +432,19 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 		sessionManager.unsubscribe(participant, senderName, request.getId());
 	}
 
+	private void updateSubscription(RpcConnection rpcConnection, Request<JsonObject> request) {
+		Participant participant;
+		try {
+			participant = sanityCheckOfSession(rpcConnection, "updateSubscription");
+		} catch (OpenViduException e) {
+			return;
+		}
+
+		String senderName = getStringParam(request, ProtocolElements.UPDATESUBSCRIPTION_SENDER_PARAM);
+		boolean audioOnly = getBooleanParam(request, ProtocolElements.UPDATESUBSCRIPTION_AUDIOONLY_PARAM);
+		sessionManager.updateSubscription(participant, senderName, audioOnly, request.getId());
+	}
+
 	private void onIceCandidate(RpcConnection rpcConnection, Request<JsonObject> request) {
 		Participant participant;
 		try {
@@ -380,6 +461,28 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 		sessionManager.onIceCandidate(participant, endpointName, candidate, sdpMLineIndex, sdpMid, request.getId());
 	}
 
+	private void onIceCandidates(RpcConnection rpcConnection, Request<JsonObject> request) {
+		Participant participant;
+		try {
+			participant = sanityCheckOfSession(rpcConnection, "onIceCandidates");
+		} catch (OpenViduException e) {
+			return;
+		}
+
+		String endpointName = getStringParam(request, ProtocolElements.ONICECANDIDATES_EPNAME_PARAM);
+		List<IceCandidate> candidates = new ArrayList<>();
+		for (JsonElement element : getParam(request, ProtocolElements.ONICECANDIDATES_CANDIDATES_PARAM)
+				.getAsJsonArray()) {
+			JsonObject candidate = element.getAsJsonObject();
+			candidates.add(
+					new IceCandidate(candidate.get(ProtocolElements.ONICECANDIDATE_CANDIDATE_PARAM).getAsString(),
+							candidate.get(ProtocolElements.ONICECANDIDATE_SDPMIDPARAM).getAsString(),
+							candidate.get(ProtocolElements.ONICECANDIDATE_SDPMLINEINDEX_PARAM).getAsInt()));
+		}
+
+		sessionManager.onIceCandidates(participant, endpointName, candidates, request.getId());
+	}
+
 	private void sendMessage(RpcConnection rpcConnection, Request<JsonObject> request) {
 		Participant participant;
 		try {
@@ -745,9 +848,7 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 			// Sanity check: don't call RPC method unless the id checks out
 			Participant participant = sessionManager.getParticipant(sessionId, participantPrivateId);
 			if (participant != null) {
-				errorMsg = "Participant " + participant.getParticipantPublicId() + " is calling method '" + methodName
-						+ "' in session " + sessionId;
-				log.info(errorMsg);
+				this.logRpcCall(participant, methodName, sessionId);
 				return participant;
 			} else {
 				errorMsg = "Participant with private id " + participantPrivateId + " not found in session " + sessionId
@@ -759,6 +860,33 @@ public class RpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 		}
 	}
 
+	/**
+	 * Logs at INFO level one out of every "openvidu.log.rpc-sample-rate" calls to
+	 * each method, and the rest at DEBUG level
+	 */
+	private void logRpcCall(Participant participant, String methodName, String sessionId) {
+		int sampleRate = this.openviduConfig.getOpenviduLogRpcSampleRate();
+		boolean sampled = sampleRate == 1 || this.rpcMethodCalls
+				.computeIfAbsent(methodName, method -> new AtomicLong()).getAndIncrement() % sampleRate == 0;
+		if (this.openviduConfig.isOpenviduLogStructured()) {
+			if (sampled) {
+				log.info("rpc method={} participant={} session={}", methodName, participant.getParticipantPublicId(),
+						sessionId);
+			} else {
+				log.debug("rpc method={} participant={} session={}", methodName, participant.getParticipantPublicId(),
+						sessionId);
+			}
+		} else {
+			if (sampled) {
+				log.info("Participant {} is calling method '{}' in session {}", participant.getParticipantPublicId(),
+						methodName, sessionId);
+			} else {
+				log.debug("Participant {} is calling method '{}' in session {}", participant.getParticipantPublicId(),
+						methodName, sessionId);
+			}
+		}
+	}
+
 	private boolean userIsStreamOwner(String sessionId, Participant participant, String streamId) {
 		return participant.getParticipantPrivateId()
 				.equals(this.sessionManager.getParticipantPrivateIdFromStreamId(sessionId, streamId));
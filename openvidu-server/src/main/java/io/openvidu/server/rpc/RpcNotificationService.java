@@ -121,7 +121,7 @@ public class RpcNotificationService {
 		try {
 			s.close();
 			log.info("Closed session for participant with private id {}", participantPrivateId);
-			this.showRpcConnections();
+			log.debug("{} RPC connections remain open", this.rpcConnections.size());
 			return rpcSession;
 		} catch (IOException e) {
 			log.error("Error closing session for participant with private id {}", participantPrivateId, e);
@@ -143,10 +143,6 @@ public class RpcNotificationService {
 		return t;
 	}
 
-	public void showRpcConnections() {
-		log.info("<PRIVATE_ID, RPC_CONNECTION>: {}", this.rpcConnections.toString());
-	}
-
 	public RpcConnection getRpcConnection(String participantPrivateId) {
 		return this.rpcConnections.get(participantPrivateId);
 	}
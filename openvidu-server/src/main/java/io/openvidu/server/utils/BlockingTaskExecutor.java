@@ -0,0 +1,316 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.utils;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single executor for every task of OpenVidu Server that spends most of its
+ * time blocked: handling of HTTP and WebSocket requests (which wait for
+ * Kurento and Docker responses), recording completion processes and any
+ * other background task that would otherwise spawn its own thread.
+ *
+ * If property "openvidu.virtual-threads" is true and the JDK supports them,
+ * each task runs in a new virtual thread, so blocked tasks do not hold any
+ * platform thread. Otherwise a cached pool of platform threads is used.
+ *
+ * Components that need their tasks to run one at a time or with limited
+ * concurrency get a {@link #newBoundedExecutor(int)} instead of a private
+ * pool. Delayed and periodic tasks are triggered by a single scheduler thread
+ * that only hands them over to this executor. Waits for asynchronous Kurento
+ * and Docker results go through {@link #await(CountDownLatch, long, TimeUnit)},
+ * so the number of blocked tasks is always known
+ */
+public class BlockingTaskExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(BlockingTaskExecutor.class);
+
+	private final ExecutorService executorService;
+	private final ScheduledThreadPoolExecutor scheduler;
+	private final boolean virtualThreads;
+
+	private final AtomicInteger activeTasks = new AtomicInteger(0);
+	private final AtomicInteger waitingTasks = new AtomicInteger(0);
+
+	public BlockingTaskExecutor(boolean useVirtualThreads) {
+		ExecutorService virtualExecutor = useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+		if (virtualExecutor != null) {
+			log.info("Blocking tasks will run in virtual threads");
+			this.executorService = virtualExecutor;
+			this.virtualThreads = true;
+		} else {
+			if (useVirtualThreads) {
+				log.warn("Virtual threads are not supported by this JDK ({}). Blocking tasks will run in platform threads",
+						System.getProperty("java.version"));
+			}
+			this.executorService = Executors.newCachedThreadPool(new PlatformThreadFactory("blocking-task-"));
+			this.virtualThreads = false;
+		}
+		this.scheduler = new ScheduledThreadPoolExecutor(1, new PlatformThreadFactory("blocking-task-scheduler-"));
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	public ExecutorService getExecutorService() {
+		return this.executorService;
+	}
+
+	/**
+	 * @return the number of tasks currently running in the executor
+	 */
+	public int getActiveTasks() {
+		return this.activeTasks.get();
+	}
+
+	/**
+	 * @return the number of threads currently blocked in
+	 *         {@link #await(CountDownLatch, long, TimeUnit)} or
+	 *         {@link #await(Future, long, TimeUnit)}
+	 */
+	public int getWaitingTasks() {
+		return this.waitingTasks.get();
+	}
+
+	public void execute(Runnable task) {
+		this.executorService.execute(() -> {
+			this.activeTasks.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				this.activeTasks.decrementAndGet();
+			}
+		});
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		return this.executorService.submit(() -> {
+			this.activeTasks.incrementAndGet();
+			try {
+				return task.call();
+			} finally {
+				this.activeTasks.decrementAndGet();
+			}
+		});
+	}
+
+	/**
+	 * @return an executor that runs its tasks in this executor, never more than
+	 *         <code>maxConcurrency</code> at the same time and starting them in
+	 *         submission order. With 1 the tasks run one after the other
+	 */
+	public Executor newBoundedExecutor(int maxConcurrency) {
+		return new BoundedExecutor(this::execute, maxConcurrency);
+	}
+
+	/**
+	 * Runs the task in this executor after the delay. Cancelling the returned
+	 * future only has effect if the task has not been handed over to the executor
+	 * yet
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return this.scheduler.schedule(() -> this.execute(task), delay, unit);
+	}
+
+	/**
+	 * Runs the task in this executor periodically, every delay since the
+	 * previous run was triggered. A run is skipped if the previous one has not
+	 * finished yet. An exception thrown by the task is logged and does not cancel
+	 * the next runs
+	 */
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+		return this.scheduler.scheduleWithFixedDelay(this.periodic(task), initialDelay, delay, unit);
+	}
+
+	/**
+	 * Runs the task in this executor periodically, every period since the
+	 * initial delay. A run is skipped if the previous one has not finished yet.
+	 * An exception thrown by the task is logged and does not cancel the next runs
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+		return this.scheduler.scheduleAtFixedRate(this.periodic(task), initialDelay, period, unit);
+	}
+
+	/**
+	 * Waits for the latch, counting the calling thread as a waiting task
+	 *
+	 * @return false if the timeout elapsed before the latch reached zero
+	 */
+	public boolean await(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+		this.waitingTasks.incrementAndGet();
+		try {
+			return latch.await(timeout, unit);
+		} finally {
+			this.waitingTasks.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits for the result of the future, counting the calling thread as a
+	 * waiting task
+	 */
+	public <T> T await(Future<T> future, long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		this.waitingTasks.incrementAndGet();
+		try {
+			return future.get(timeout, unit);
+		} finally {
+			this.waitingTasks.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The scheduler thread only hands the task over to the executor, so the
+	 * delay of scheduleWithFixedDelay is counted from the hand-over. Runs that
+	 * would overlap with the previous one are skipped instead
+	 */
+	private Runnable periodic(Runnable task) {
+		AtomicBoolean running = new AtomicBoolean(false);
+		return () -> {
+			if (running.compareAndSet(false, true)) {
+				this.execute(() -> {
+					try {
+						task.run();
+					} catch (Exception e) {
+						log.error("Error in periodic task: {}", e.getMessage(), e);
+					} finally {
+						running.set(false);
+					}
+				});
+			}
+		};
+	}
+
+	@PreDestroy
+	public void close() {
+		this.scheduler.shutdownNow();
+		this.executorService.shutdownNow();
+	}
+
+	/**
+	 * Executors#newVirtualThreadPerTaskExecutor is only available since JDK 21,
+	 * but OpenVidu Server is compiled for Java 8
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static class PlatformThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		PlatformThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * Queues the tasks and hands them over to the delegate as soon as fewer than
+	 * maxConcurrency of them are running
+	 */
+	private static class BoundedExecutor implements Executor {
+
+		private final Executor delegate;
+		private final int maxConcurrency;
+		private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger running = new AtomicInteger(0);
+
+		BoundedExecutor(Executor delegate, int maxConcurrency) {
+			if (maxConcurrency < 1) {
+				throw new IllegalArgumentException("maxConcurrency must be at least 1");
+			}
+			this.delegate = delegate;
+			this.maxConcurrency = maxConcurrency;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			this.queue.add(task);
+			this.drain();
+		}
+
+		private void drain() {
+			while (!this.queue.isEmpty()) {
+				int current = this.running.get();
+				if (current >= this.maxConcurrency) {
+					// A running task will drain the queue when it finishes
+					return;
+				}
+				if (!this.running.compareAndSet(current, current + 1)) {
+					continue;
+				}
+				Runnable task = this.queue.poll();
+				if (task == null) {
+					this.running.decrementAndGet();
+					continue;
+				}
+				try {
+					this.delegate.execute(() -> {
+						try {
+							task.run();
+						} finally {
+							this.running.decrementAndGet();
+							this.drain();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					this.running.decrementAndGet();
+					throw e;
+				}
+			}
+		}
+	}
+
+}
@@ -21,6 +21,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Pablo Fuente (pablofuenteperez@gmail.com)
@@ -33,6 +37,29 @@ public class CommandExecutor {
 		return commonExecCommand(processBuilder);
 	}
 
+	/**
+	 * Runs the command reading its output in a task of the executor. The process
+	 * is destroyed if it has not finished after <code>timeoutSeconds</code>
+	 */
+	public static String execCommand(BlockingTaskExecutor executor, long timeoutSeconds, String... command)
+			throws IOException, InterruptedException {
+		ProcessBuilder processBuilder = new ProcessBuilder(command);
+		processBuilder.redirectErrorStream(true);
+		Process process = processBuilder.start();
+		Future<String> output = executor.submit(() -> readOutput(process));
+		try {
+			return executor.await(output, timeoutSeconds, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			throw new IOException("Command did not finish in " + timeoutSeconds + " seconds");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			if (process.isAlive()) {
+				process.destroyForcibly();
+			}
+		}
+	}
+
 	public static String execCommandRedirectError(File errorOutputFile, String... command)
 			throws IOException, InterruptedException {
 		ProcessBuilder processBuilder = new ProcessBuilder(command).redirectError(errorOutputFile);
@@ -48,7 +75,10 @@ public class CommandExecutor {
 	}
 
 	private static String commonExecCommand(ProcessBuilder processBuilder) throws IOException, InterruptedException {
-		Process process = processBuilder.start();
+		return readOutput(processBuilder.start());
+	}
+
+	private static String readOutput(Process process) throws IOException, InterruptedException {
 		StringBuilder processOutput = new StringBuilder();
 		String output;
 		InputStreamReader inputStreamReader = null;
@@ -22,7 +22,19 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
@@ -32,6 +44,8 @@ public class CustomFileManager {
 
 	private static final Logger log = LoggerFactory.getLogger(CustomFileManager.class);
 
+	private static final Set<PosixFilePermission> ALL_PERMISSIONS = PosixFilePermissions.fromString("rwxrwxrwx");
+
 	public boolean createAndWriteFile(String filePath, String text) {
 		try {
 			this.writeAndCloseOnOutputStreamWriter(new FileOutputStream(filePath), text);
@@ -63,7 +77,16 @@ public class CustomFileManager {
 
 	public void moveFile(String filePath, String newFilePath, boolean deleteFoldersWhileEmpty) {
 		try {
-			FileUtils.moveFile(FileUtils.getFile(filePath), FileUtils.getFile(newFilePath));
+			Path target = Paths.get(newFilePath);
+			if (target.getParent() != null) {
+				Files.createDirectories(target.getParent());
+			}
+			try {
+				Files.move(Paths.get(filePath), target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				// Different file systems: copy and delete
+				FileUtils.moveFile(FileUtils.getFile(filePath), FileUtils.getFile(newFilePath));
+			}
 		} catch (IOException e) {
 			log.error("Error moving file '{}' to new path '{}': {}", filePath, newFilePath, e.getMessage());
 		}
@@ -91,7 +114,75 @@ public class CustomFileManager {
 	}
 
 	public void deleteFolder(String path) throws IOException {
-		FileUtils.deleteDirectory(new File(path));
+		Path folder = Paths.get(path);
+		if (!Files.exists(folder)) {
+			return;
+		}
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes the files of a folder whose name matches a glob pattern
+	 *
+	 * @return the number of deleted files
+	 */
+	public int deleteFiles(String path, String glob) throws IOException {
+		int deleted = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(path), glob)) {
+			for (Path file : files) {
+				if (Files.deleteIfExists(file)) {
+					deleted++;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Grants read, write and execute permissions to everyone over a folder and
+	 * everything inside it (same as "chmod -R 777") without spawning a process
+	 */
+	public void setPermissionsRecursively(String path) throws IOException {
+		Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				setAllPermissions(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				setAllPermissions(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void setAllPermissions(Path path) throws IOException {
+		try {
+			Files.setPosixFilePermissions(path, ALL_PERMISSIONS);
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system
+			File file = path.toFile();
+			file.setReadable(true, false);
+			file.setWritable(true, false);
+			file.setExecutable(true, false);
+		}
 	}
 
 	public void deleteFile(String path) throws IOException {
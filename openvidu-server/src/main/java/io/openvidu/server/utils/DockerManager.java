@@ -32,6 +32,7 @@ import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
 import com.github.dockerjava.api.exception.ConflictException;
 import com.github.dockerjava.api.exception.DockerClientException;
 import com.github.dockerjava.api.exception.InternalServerErrorException;
@@ -55,11 +56,15 @@ public class DockerManager {
 
 	private static final Logger log = LoggerFactory.getLogger(DockerManager.class);
 
+	private static final int COMMAND_TIMEOUT = 10;
+
 	DockerClient dockerClient;
+	private BlockingTaskExecutor blockingTaskExecutor;
 
-	public DockerManager() {
+	public DockerManager(BlockingTaskExecutor blockingTaskExecutor) {
 		DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
 		this.dockerClient = DockerClientBuilder.getInstance(config).build();
+		this.blockingTaskExecutor = blockingTaskExecutor;
 	}
 
 	public void downloadDockerImage(String image, int secondsOfWait) throws Exception {
@@ -105,11 +110,23 @@ public class DockerManager {
 
 	public String runContainer(String container, String containerName, List<Volume> volumes, List<Bind> binds,
 			String networkMode, List<String> envs) throws Exception {
+		return this.runContainer(container, containerName, volumes, binds, networkMode, envs, null);
+	}
+
+	/**
+	 * @param command if not null, replaces the entrypoint of the image: the first
+	 *                element is the executable and the rest its arguments
+	 */
+	public String runContainer(String container, String containerName, List<Volume> volumes, List<Bind> binds,
+			String networkMode, List<String> envs, List<String> command) throws Exception {
 
 		CreateContainerCmd cmd = dockerClient.createContainerCmd(container).withEnv(envs);
 		if (containerName != null) {
 			cmd.withName(containerName);
 		}
+		if (command != null) {
+			cmd.withEntrypoint(command.get(0)).withCmd(command.subList(1, command.size()));
+		}
 
 		HostConfig hostConfig = new HostConfig().withNetworkMode(networkMode);
 		if (volumes != null) {
@@ -165,7 +182,7 @@ public class DockerManager {
 				latch.countDown();
 			}
 		});
-		latch.await(secondsOfWait, TimeUnit.SECONDS);
+		this.blockingTaskExecutor.await(latch, secondsOfWait, TimeUnit.SECONDS);
 		return stringResponse[0];
 	}
 
@@ -175,7 +192,7 @@ public class DockerManager {
 		dockerClient.waitContainerCmd(containerId).exec(callback);
 		boolean stopped = false;
 		try {
-			stopped = latch.await(secondsOfWait, TimeUnit.SECONDS);
+			stopped = this.blockingTaskExecutor.await(latch, secondsOfWait, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			throw e;
 		}
@@ -184,9 +201,18 @@ public class DockerManager {
 		}
 	}
 
+	/**
+	 * @return the exit code of the container, or null if it is still running
+	 */
+	public Integer getContainerExitCode(String containerId) {
+		InspectContainerResponse.ContainerState state = dockerClient.inspectContainerCmd(containerId).exec()
+				.getState();
+		return Boolean.TRUE.equals(state.getRunning()) ? null : state.getExitCode();
+	}
+
 	public String getContainerIp(String containerId) {
 		try {
-			return CommandExecutor.execCommand("/bin/sh", "-c",
+			return CommandExecutor.execCommand(this.blockingTaskExecutor, COMMAND_TIMEOUT, "/bin/sh", "-c",
 					"docker inspect -f \"{{ .NetworkSettings.IPAddress }}\" " + containerId);
 		} catch (IOException | InterruptedException e) {
 			log.error(e.getMessage());
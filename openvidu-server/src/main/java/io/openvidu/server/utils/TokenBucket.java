@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. The bucket holds up to "ratePerSecond" tokens and
+ * is refilled continuously at "ratePerSecond" tokens per second, so bursts of
+ * up to one second worth of operations are admitted. A rate of 0 or less
+ * disables the limit
+ */
+public class TokenBucket {
+
+	private final double capacity;
+	private final double tokensPerNano;
+
+	private double tokens;
+	private long lastRefill;
+
+	public TokenBucket(int ratePerSecond) {
+		this.capacity = ratePerSecond;
+		this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+		this.tokens = ratePerSecond;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * @return true if one token has been consumed, false if the bucket is empty
+	 */
+	public synchronized boolean tryAcquire() {
+		if (!this.hasToken()) {
+			return false;
+		}
+		this.consume();
+		return true;
+	}
+
+	/**
+	 * Consumes one token from this bucket and one from the other bucket, but only
+	 * if both of them have one available. The lock of this bucket is taken first,
+	 * so every caller must pass a given pair of buckets in the same order
+	 *
+	 * @return null if both tokens have been consumed, or the bucket that is empty
+	 */
+	public TokenBucket tryAcquireWith(TokenBucket other) {
+		synchronized (this) {
+			synchronized (other) {
+				if (!this.hasToken()) {
+					return this;
+				}
+				if (!other.hasToken()) {
+					return other;
+				}
+				this.consume();
+				other.consume();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Consumes the given number of tokens, waiting until the bucket has been
+	 * refilled with them if necessary. The bucket may run into debt, so requests
+	 * bigger than its capacity are admitted at the configured rate
+	 */
+	public void acquire(int permits) throws InterruptedException {
+		long waitNanos = this.reserve(permits);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Consumes the given number of tokens without waiting. The bucket may run into
+	 * debt, which the caller must pay by waiting before consuming more tokens
+	 *
+	 * @return the nanoseconds until the bucket is out of debt
+	 */
+	public long reserve(int permits) {
+		if (this.capacity <= 0) {
+			return 0;
+		}
+		synchronized (this) {
+			this.refill();
+			this.tokens -= permits;
+			return this.tokens < 0 ? (long) (-this.tokens / this.tokensPerNano) : 0;
+		}
+	}
+
+	private boolean hasToken() {
+		if (this.capacity <= 0) {
+			return true;
+		}
+		this.refill();
+		return this.tokens >= 1;
+	}
+
+	private void consume() {
+		if (this.capacity > 0) {
+			this.tokens--;
+		}
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+		this.lastRefill = now;
+	}
+
+}
@@ -26,6 +26,7 @@ import io.openvidu.server.cdr.CDREvent;
 import io.openvidu.server.cdr.CDRLogger;
 import io.openvidu.server.config.OpenviduConfig;
 import io.openvidu.server.kurento.endpoint.KmsEvent;
+import io.openvidu.server.metrics.MetricsManager;
 import io.openvidu.server.summary.SessionSummary;
 
 public class CDRLoggerWebhook implements CDRLogger {
@@ -34,9 +35,9 @@ public class CDRLoggerWebhook implements CDRLogger {
 
 	private HttpWebhookSender webhookSender;
 
-	public CDRLoggerWebhook(OpenviduConfig openviduConfig) {
+	public CDRLoggerWebhook(OpenviduConfig openviduConfig, MetricsManager metricsManager) {
 		this.webhookSender = new HttpWebhookSender(openviduConfig.getOpenViduWebhookEndpoint(),
-				openviduConfig.getOpenViduWebhookHeaders(), openviduConfig.getOpenViduWebhookEvents());
+				openviduConfig.getOpenViduWebhookHeaders(), openviduConfig.getOpenViduWebhookEvents(), metricsManager);
 	}
 
 	@Override
@@ -49,8 +49,10 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonObject;
 
+import io.micrometer.core.instrument.Timer;
 import io.openvidu.server.cdr.CDREvent;
 import io.openvidu.server.cdr.CDREventName;
+import io.openvidu.server.metrics.MetricsManager;
 
 public class HttpWebhookSender {
 
@@ -60,10 +62,13 @@ public class HttpWebhookSender {
 	private String httpEndpoint;
 	private List<Header> customHeaders;
 	private List<CDREventName> events;
+	private MetricsManager metricsManager;
 
-	public HttpWebhookSender(String httpEndpoint, List<Header> headers, List<CDREventName> events) {
+	public HttpWebhookSender(String httpEndpoint, List<Header> headers, List<CDREventName> events,
+			MetricsManager metricsManager) {
 		this.httpEndpoint = httpEndpoint;
 		this.events = events;
+		this.metricsManager = metricsManager;
 
 		this.customHeaders = new ArrayList<>();
 		boolean contentTypeHeaderAdded = false;
@@ -130,10 +135,13 @@ public class HttpWebhookSender {
 		request.setEntity(params);
 
 		HttpResponse response = null;
+		Timer.Sample sample = this.metricsManager.startWebhookRequest();
+		boolean error = true;
 		try {
 			response = this.httpClient.execute(request);
 			int statusCode = response.getStatusLine().getStatusCode();
 			if ((statusCode == org.apache.http.HttpStatus.SC_OK)) {
+				error = false;
 				log.info("Event {} successfully posted to uri {}", event.getEventName().name(), this.httpEndpoint);
 			} else {
 				log.error("Unexpected HTTP status from callback endpoint {}: expected 200, received {}", httpEndpoint,
@@ -151,6 +159,7 @@ public class HttpWebhookSender {
 			log.error(message);
 			throw new IOException(message);
 		} finally {
+			this.metricsManager.recordWebhookRequest(event.getEventName().name(), sample, error);
 			if (response != null) {
 				EntityUtils.consumeQuietly(response.getEntity());
 			}
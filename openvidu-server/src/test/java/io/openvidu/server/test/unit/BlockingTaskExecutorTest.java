@@ -0,0 +1,195 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.CommandExecutor;
+
+public class BlockingTaskExecutorTest {
+
+	private BlockingTaskExecutor executor;
+
+	@Before
+	public void setUp() {
+		this.executor = new BlockingTaskExecutor(false);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.close();
+	}
+
+	@Test
+	public void boundedExecutorNeverExceedsItsConcurrency() throws InterruptedException {
+		final int tasks = 500;
+		final int maxConcurrency = 8;
+		Executor bounded = this.executor.newBoundedExecutor(maxConcurrency);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(tasks);
+		for (int i = 0; i < tasks; i++) {
+			bounded.execute(() -> {
+				int current = running.incrementAndGet();
+				maxRunning.accumulateAndGet(current, Math::max);
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertEquals(maxConcurrency, maxRunning.get());
+	}
+
+	@Test
+	public void boundedExecutorOfOneKeepsSubmissionOrder() throws InterruptedException {
+		Executor serial = this.executor.newBoundedExecutor(1);
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			final int n = i;
+			serial.execute(() -> {
+				order.add(n);
+				done.countDown();
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void scheduledTasksRunInExecutorThreads() throws InterruptedException {
+		String[] threadName = new String[1];
+		CountDownLatch done = new CountDownLatch(1);
+		this.executor.schedule(() -> {
+			threadName[0] = Thread.currentThread().getName();
+			done.countDown();
+		}, 10, TimeUnit.MILLISECONDS);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(threadName[0], threadName[0].startsWith("blocking-task-"));
+		assertFalse(threadName[0], threadName[0].startsWith("blocking-task-scheduler-"));
+	}
+
+	@Test
+	public void periodicRunsDoNotOverlap() throws InterruptedException {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		AtomicInteger runs = new AtomicInteger();
+		ScheduledFuture<?> task = this.executor.scheduleAtFixedRate(() -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				// Longer than the period
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			runs.incrementAndGet();
+		}, 0, 5, TimeUnit.MILLISECONDS);
+		Thread.sleep(400);
+		task.cancel(false);
+		assertEquals(1, maxRunning.get());
+		assertTrue(runs.get() > 1);
+	}
+
+	@Test
+	public void periodicTaskSurvivesExceptions() throws InterruptedException {
+		CountDownLatch runs = new CountDownLatch(3);
+		ScheduledFuture<?> task = this.executor.scheduleWithFixedDelay(() -> {
+			runs.countDown();
+			throw new IllegalStateException("expected");
+		}, 0, 5, TimeUnit.MILLISECONDS);
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+		task.cancel(false);
+	}
+
+	/**
+	 * Load test: a thousand tasks blocked at the same time on asynchronous results
+	 * are all accounted as waiting, and all of them finish once the results arrive
+	 */
+	@Test
+	public void manyConcurrentWaitsAreAccounted() throws InterruptedException {
+		final int tasks = 1000;
+		CountDownLatch result = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(tasks);
+		AtomicInteger timedOut = new AtomicInteger();
+		for (int i = 0; i < tasks; i++) {
+			this.executor.execute(() -> {
+				try {
+					if (!this.executor.await(result, 30, TimeUnit.SECONDS)) {
+						timedOut.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.executor.getWaitingTasks() < tasks && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(tasks, this.executor.getWaitingTasks());
+		assertEquals(tasks, this.executor.getActiveTasks());
+		result.countDown();
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertEquals(0, timedOut.get());
+		assertEquals(0, this.executor.getWaitingTasks());
+	}
+
+	@Test
+	public void commandOutputIsReturned() throws IOException, InterruptedException {
+		assertEquals("hello", CommandExecutor.execCommand(this.executor, 5, "/bin/sh", "-c", "echo hello"));
+	}
+
+	@Test
+	public void hungCommandIsDestroyed() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		try {
+			CommandExecutor.execCommand(this.executor, 1, "/bin/sh", "-c", "sleep 30");
+			fail("Command should have timed out");
+		} catch (IOException e) {
+			assertTrue(System.currentTimeMillis() - start < 10000);
+		}
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+import io.openvidu.client.OpenViduException;
+import io.openvidu.client.OpenViduException.Code;
+import io.openvidu.client.internal.ProtocolElements;
+import io.openvidu.java.client.Recording.OutputMode;
+import io.openvidu.java.client.RecordingProperties;
+import io.openvidu.java.client.SessionProperties;
+import io.openvidu.server.cdr.CDREventRecording;
+import io.openvidu.server.cdr.CallDetailRecord;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.EndReason;
+import io.openvidu.server.core.Participant;
+import io.openvidu.server.core.Session;
+import io.openvidu.server.core.SessionEventsHandler;
+import io.openvidu.server.core.Token;
+import io.openvidu.server.kurento.core.KurentoSessionManager;
+import io.openvidu.server.kurento.endpoint.EndpointType;
+import io.openvidu.server.recording.Recording;
+import io.openvidu.server.recording.service.ComposedRecordingService;
+import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.rpc.RpcHandler;
+import io.openvidu.server.rpc.RpcNotificationService;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+import io.openvidu.server.utils.GeoLocation;
+
+/**
+ * Load test of the virtual thread mode of {@link BlockingTaskExecutor}. Many
+ * participants join sessions through {@link RpcHandler#handleRequest} while
+ * the same sessions start and stop COMPOSED recordings through
+ * {@link RecordingManager}, all at the same time and each one in a task of the
+ * executor, as Tomcat runs requests when the executor is its connector
+ * executor. KMS and Docker are mocked: joining waits for a media pipeline and
+ * recording waits for a container to start and stop, as KurentoSession and
+ * DockerManager do, with a latch released later by the executor scheduler.
+ * While every operation is blocked the number of platform threads must not
+ * grow beyond the carrier threads of the virtual threads. Only run on JDKs
+ * with virtual threads
+ */
+public class BlockingTaskLoadTest {
+
+	private static final int SESSIONS = 200;
+	private static final int PARTICIPANTS_PER_SESSION = 5;
+	// Milliseconds the mocked KMS and Docker take to answer
+	private static final long KMS_DELAY = 500;
+	private static final long DOCKER_DELAY = 1000;
+	// Threads other than carrier threads that the JVM may start during the test
+	private static final int THREAD_SLACK = 8;
+
+	private final BlockingTaskExecutor executor = new BlockingTaskExecutor(true);
+	private final OpenviduConfig openviduConfig = new OpenviduConfig();
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private final AtomicInteger joined = new AtomicInteger();
+	private final AtomicInteger recorded = new AtomicInteger();
+
+	@After
+	public void tearDown() {
+		this.executor.close();
+	}
+
+	@Test
+	public void platformThreadsStayFlatUnderConcurrentJoinsAndRecordings() throws Exception {
+		assumeTrue("Virtual threads not supported by this JDK", this.executor.isVirtualThreads());
+
+		TestSessionManager sessionManager = new TestSessionManager();
+		RpcHandler rpcHandler = this.rpcHandler(sessionManager);
+		RecordingManager recordingManager = this.recordingManager(sessionManager);
+		for (int i = 0; i < SESSIONS; i++) {
+			Session session = new Session("session-" + i, new SessionProperties.Builder().build(),
+					this.openviduConfig, recordingManager);
+			// A publisher prevents the automatic stop of the recording
+			session.registerPublisher();
+			for (int j = 0; j < PARTICIPANTS_PER_SESSION; j++) {
+				session.storeToken(new Token(token(i, j)));
+			}
+			this.sessions.put(session.getSessionId(), session);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int platformThreadsBefore = threads.getThreadCount();
+		int operations = SESSIONS * (PARTICIPANTS_PER_SESSION + 1);
+		CountDownLatch finished = new CountDownLatch(operations);
+		AtomicInteger errors = new AtomicInteger();
+
+		for (int i = 0; i < SESSIONS; i++) {
+			final String sessionId = "session-" + i;
+			for (int j = 0; j < PARTICIPANTS_PER_SESSION; j++) {
+				final String token = token(i, j);
+				this.executor.execute(() -> {
+					Map<String, Object> attributes = new HashMap<>();
+					attributes.put("httpSession", RpcTestUtils.httpSession("http-" + token));
+					try {
+						rpcHandler.handleRequest(RpcTestUtils.transaction("private-" + token, attributes),
+								joinRequest(sessionId, token));
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					} finally {
+						finished.countDown();
+					}
+				});
+			}
+			this.executor.execute(() -> {
+				try {
+					Session session = this.sessions.get(sessionId);
+					recordingManager.startRecording(session, new RecordingProperties.Builder().name(sessionId)
+							.outputMode(OutputMode.COMPOSED).hasVideo(true).build());
+					recordingManager.stopRecording(session, null, EndReason.recordingStoppedByServer);
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+
+		int maxPlatformThreads = platformThreadsBefore;
+		int maxWaitingTasks = 0;
+		while (!finished.await(10, TimeUnit.MILLISECONDS)) {
+			maxPlatformThreads = Math.max(maxPlatformThreads, threads.getThreadCount());
+			maxWaitingTasks = Math.max(maxWaitingTasks, this.executor.getWaitingTasks());
+		}
+
+		System.out.println(String.format(
+				"%d joins and %d recordings: up to %d operations blocked at the same time,"
+						+ " platform threads from %d to a maximum of %d",
+				SESSIONS * PARTICIPANTS_PER_SESSION, SESSIONS, maxWaitingTasks, platformThreadsBefore,
+				maxPlatformThreads));
+		assertEquals(0, errors.get());
+		assertEquals(SESSIONS * PARTICIPANTS_PER_SESSION, this.joined.get());
+		assertEquals(SESSIONS, this.recorded.get());
+		// The operations really were blocked at the same time
+		assertTrue("Only " + maxWaitingTasks + " operations blocked at the same time",
+				maxWaitingTasks >= operations / 2);
+		int carrierThreads = Runtime.getRuntime().availableProcessors();
+		assertTrue("Platform threads grew from " + platformThreadsBefore + " to " + maxPlatformThreads,
+				maxPlatformThreads <= platformThreadsBefore + carrierThreads + THREAD_SLACK);
+	}
+
+	/**
+	 * Waits for the answer of the mocked KMS or Docker, released by the
+	 * scheduler of the executor after the delay
+	 */
+	private void waitForMock(long delay) throws InterruptedException {
+		CountDownLatch answer = new CountDownLatch(1);
+		this.executor.schedule(answer::countDown, delay, TimeUnit.MILLISECONDS);
+		if (!this.executor.await(answer, delay * 10, TimeUnit.MILLISECONDS)) {
+			throw new OpenViduException(Code.GENERIC_ERROR_CODE, "Mock did not answer in time");
+		}
+	}
+
+	private RpcHandler rpcHandler(KurentoSessionManager sessionManager) {
+		RpcHandler rpcHandler = new RpcHandler();
+		RpcTestUtils.inject(rpcHandler, "openviduConfig", this.openviduConfig);
+		RpcTestUtils.inject(rpcHandler, "sessionManager", sessionManager);
+		RpcTestUtils.inject(rpcHandler, "notificationService", new RpcNotificationService());
+		RpcTestUtils.inject(rpcHandler, "metricsManager", RpcTestUtils.metricsManager());
+		return rpcHandler;
+	}
+
+	private RecordingManager recordingManager(KurentoSessionManager sessionManager) {
+		CallDetailRecord cdr = new CallDetailRecord(Collections.emptyList());
+		RpcTestUtils.inject(cdr, "sessionManager", sessionManager);
+		RecordingManager recordingManager = new RecordingManager();
+		RpcTestUtils.inject(recordingManager, "blockingTaskExecutor", this.executor);
+		RpcTestUtils.inject(recordingManager, "openviduConfig", this.openviduConfig);
+		RpcTestUtils.inject(recordingManager, "sessionManager", sessionManager);
+		RpcTestUtils.inject(recordingManager, "sessionHandler", new SessionEventsHandler());
+		RpcTestUtils.inject(recordingManager, "metricsManager", RpcTestUtils.metricsManager());
+		RpcTestUtils.inject(recordingManager, "cdr", cdr);
+		RpcTestUtils.inject(recordingManager, "composedRecordingService",
+				new TestComposedRecordingService(recordingManager, this.openviduConfig, cdr));
+		return recordingManager;
+	}
+
+	private static String token(int session, int participant) {
+		return "tok_" + session + "_" + participant;
+	}
+
+	private static Request<JsonObject> joinRequest(String sessionId, String token) {
+		JsonObject params = new JsonObject();
+		params.addProperty(ProtocolElements.JOINROOM_ROOM_PARAM, sessionId);
+		params.addProperty(ProtocolElements.JOINROOM_TOKEN_PARAM, token);
+		params.addProperty(ProtocolElements.JOINROOM_SECRET_PARAM, "");
+		params.addProperty(ProtocolElements.JOINROOM_PLATFORM_PARAM, "test");
+		params.addProperty(ProtocolElements.JOINROOM_METADATA_PARAM, "");
+		return new Request<>(1, ProtocolElements.JOINROOM_METHOD, params);
+	}
+
+	/**
+	 * Joining a session waits for its media pipeline in the mocked KMS
+	 */
+	private class TestSessionManager extends KurentoSessionManager {
+
+		@Override
+		public Session getSessionWithNotActive(String sessionId) {
+			return BlockingTaskLoadTest.this.sessions.get(sessionId);
+		}
+
+		@Override
+		public Participant newParticipant(String sessionId, String participantPrivatetId, Token token,
+				String clientMetadata, GeoLocation location, String platform, String finalUserId) {
+			return new Participant(finalUserId, participantPrivatetId, participantPrivatetId, sessionId, token,
+					clientMetadata, location, platform, EndpointType.WEBRTC_ENDPOINT, null);
+		}
+
+		@Override
+		public void joinRoom(Participant participant, String sessionId, Integer transactionId) {
+			try {
+				waitForMock(KMS_DELAY);
+			} catch (InterruptedException e) {
+				throw new OpenViduException(Code.GENERIC_ERROR_CODE, e.getMessage());
+			}
+			joined.incrementAndGet();
+		}
+
+		@Override
+		public Collection<CDREventRecording> getAccumulatedRecordings(String sessionId) {
+			return new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	/**
+	 * Starting and stopping a recording wait for its container in the mocked
+	 * Docker
+	 */
+	private class TestComposedRecordingService extends ComposedRecordingService {
+
+		TestComposedRecordingService(RecordingManager recordingManager, OpenviduConfig openviduConfig,
+				CallDetailRecord cdr) {
+			super(recordingManager, null, openviduConfig, cdr, null);
+		}
+
+		@Override
+		public Recording startRecording(Session session, RecordingProperties properties) {
+			try {
+				waitForMock(DOCKER_DELAY);
+			} catch (InterruptedException e) {
+				throw new OpenViduException(Code.RECORDING_START_ERROR_CODE, e.getMessage());
+			}
+			return new Recording(session.getSessionId(), session.getSessionId(), properties);
+		}
+
+		@Override
+		public Recording stopRecording(Session session, Recording recording, EndReason reason) {
+			try {
+				waitForMock(DOCKER_DELAY);
+			} catch (InterruptedException e) {
+				throw new OpenViduException(Code.RECORDING_STOP_ERROR_CODE, e.getMessage());
+			}
+			recording.setStatus(io.openvidu.java.client.Recording.Status.stopped);
+			recorded.incrementAndGet();
+			return recording;
+		}
+	}
+
+}
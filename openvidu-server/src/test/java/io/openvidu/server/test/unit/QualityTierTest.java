@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import io.openvidu.server.kurento.endpoint.QualityTier;
+
+public class QualityTierTest {
+
+	@Test
+	public void validTierIsParsed() throws Exception {
+		QualityTier tier = QualityTier.parse("640x360@500");
+		assertEquals(640, tier.getWidth());
+		assertEquals(360, tier.getHeight());
+		assertEquals(500, tier.getMaxKbps());
+		assertEquals("640x360@500", tier.toString());
+	}
+
+	@Test
+	public void surroundingWhitespaceIsIgnored() throws Exception {
+		assertEquals("320x180@150", QualityTier.parse("  320x180@150 ").toString());
+	}
+
+	@Test
+	public void gstreamerCommandScalesToTier() throws Exception {
+		assertEquals("videoscale ! capsfilter caps=video/x-raw,width=320,height=180",
+				QualityTier.parse("320x180@150").getGStreamerCommand());
+	}
+
+	@Test
+	public void malformedTiersAreRejected() {
+		assertRejected("");
+		assertRejected("640x360");
+		assertRejected("640x360@");
+		assertRejected("640*360@500");
+		assertRejected("640x360@500kbps");
+		assertRejected("-640x360@500");
+		assertRejected("640 x 360@500");
+	}
+
+	@Test
+	public void zeroValuesAreRejected() {
+		assertRejected("0x360@500");
+		assertRejected("640x0@500");
+		assertRejected("640x360@0");
+	}
+
+	@Test
+	public void outOfRangeValuesAreRejected() {
+		assertRejected("99999999999x360@500");
+		assertRejected("640x360@99999999999");
+	}
+
+	private void assertRejected(String tier) {
+		try {
+			QualityTier.parse(tier);
+			fail("Quality tier '" + tier + "' should have been rejected");
+		} catch (Exception e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Quality tier '" + tier + "'"));
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import io.openvidu.server.recording.RecordingFilesHandler;
+
+public class RecordingFilesHandlerTest {
+
+	private static final long[] WHOLE_FILE = new long[0];
+
+	@Test
+	public void closedRangeIsParsed() {
+		assertArrayEquals(new long[] { 0, 499 }, RecordingFilesHandler.parseRange("bytes=0-499", 1000));
+		assertArrayEquals(new long[] { 10, 10 }, RecordingFilesHandler.parseRange("bytes=10-10", 1000));
+	}
+
+	@Test
+	public void openRangeEndsAtLastByte() {
+		assertArrayEquals(new long[] { 500, 999 }, RecordingFilesHandler.parseRange("bytes=500-", 1000));
+	}
+
+	@Test
+	public void endBeyondFileIsTruncated() {
+		assertArrayEquals(new long[] { 900, 999 }, RecordingFilesHandler.parseRange("bytes=900-5000", 1000));
+	}
+
+	@Test
+	public void suffixRangeSelectsLastBytes() {
+		assertArrayEquals(new long[] { 800, 999 }, RecordingFilesHandler.parseRange("bytes=-200", 1000));
+		assertArrayEquals(new long[] { 0, 999 }, RecordingFilesHandler.parseRange("bytes=-2000", 1000));
+	}
+
+	@Test
+	public void unsatisfiableRangesReturnNull() {
+		assertNull(RecordingFilesHandler.parseRange("bytes=1000-", 1000));
+		assertNull(RecordingFilesHandler.parseRange("bytes=500-400", 1000));
+		assertNull(RecordingFilesHandler.parseRange("bytes=-0", 1000));
+		assertNull(RecordingFilesHandler.parseRange("bytes=0-", 0));
+	}
+
+	@Test
+	public void unsupportedRangesSendWholeFile() {
+		assertArrayEquals(WHOLE_FILE, RecordingFilesHandler.parseRange("bytes=0-1,5-6", 1000));
+		assertArrayEquals(WHOLE_FILE, RecordingFilesHandler.parseRange("items=0-10", 1000));
+		assertArrayEquals(WHOLE_FILE, RecordingFilesHandler.parseRange("bytes=abc-", 1000));
+		assertArrayEquals(WHOLE_FILE, RecordingFilesHandler.parseRange("bytes=5", 1000));
+	}
+
+}
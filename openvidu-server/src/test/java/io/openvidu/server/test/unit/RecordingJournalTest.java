@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import io.openvidu.java.client.Recording.Status;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.recording.Recording;
+import io.openvidu.server.recording.RecordingJournal;
+import io.openvidu.server.recording.service.RecordingManager;
+import io.openvidu.server.utils.BlockingTaskExecutor;
+
+public class RecordingJournalTest {
+
+	private Path recordingsPath;
+	private BlockingTaskExecutor executor;
+
+	private class TestJournal extends RecordingJournal {
+
+		TestJournal() {
+			this.openviduConfig = new OpenviduConfig() {
+				@Override
+				public boolean isRecordingModuleEnabled() {
+					return true;
+				}
+
+				@Override
+				public String getOpenViduRecordingPath() {
+					return recordingsPath.toString() + "/";
+				}
+			};
+			this.blockingTaskExecutor = executor;
+			this.init();
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		this.recordingsPath = Files.createTempDirectory("recording-journal");
+		this.executor = new BlockingTaskExecutor(false);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.executor.close();
+		FileUtils.deleteDirectory(this.recordingsPath.toFile());
+	}
+
+	@Test
+	public void stateIsReplayedFromJournal() {
+		RecordingJournal journal = new TestJournal();
+		journal.put(recording("rec-1", Status.started));
+		journal.put(recording("rec-2", Status.started));
+		journal.update("rec-1", recording -> recording.setStatus(Status.ready));
+		journal.remove("rec-2");
+		journal.close();
+
+		RecordingJournal replayed = new TestJournal();
+		assertEquals(Status.ready, replayed.get("rec-1").getStatus());
+		assertNull(replayed.get("rec-2"));
+		assertEquals(1, replayed.getIds().size());
+		replayed.close();
+	}
+
+	@Test
+	public void incompleteLastEntryIsDiscarded() throws IOException {
+		RecordingJournal journal = new TestJournal();
+		journal.put(recording("rec-1", Status.started));
+		journal.close();
+		Path journalFile = this.recordingsPath.resolve(RecordingJournal.JOURNAL_FILE);
+		long validLength = Files.size(journalFile);
+		Files.write(journalFile, "{\"put\":{\"id\":\"rec-2\",\"sess".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		RecordingJournal replayed = new TestJournal();
+		assertEquals(1, replayed.getIds().size());
+		assertEquals(validLength, Files.size(journalFile));
+		// New entries are appended after the last complete one
+		replayed.put(recording("rec-3", Status.started));
+		replayed.close();
+		RecordingJournal replayedAgain = new TestJournal();
+		assertEquals(2, replayedAgain.getIds().size());
+		replayedAgain.close();
+	}
+
+	@Test
+	public void journalIsCompactedIntoSnapshot() throws IOException {
+		RecordingJournal journal = new TestJournal();
+		journal.put(recording("rec-1", Status.started));
+		for (int i = 0; i < 1500; i++) {
+			journal.put(recording("rec-" + (i % 10), Status.started));
+		}
+		journal.remove("rec-9");
+		journal.close();
+		assertTrue(Files.isRegularFile(this.recordingsPath.resolve(RecordingJournal.SNAPSHOT_FILE)));
+		// Only the entries after the last compaction remain in the journal
+		long journalLines = Files.readAllLines(this.recordingsPath.resolve(RecordingJournal.JOURNAL_FILE)).size();
+		assertTrue("Journal has " + journalLines + " entries", journalLines < 1000);
+
+		RecordingJournal replayed = new TestJournal();
+		assertEquals(9, replayed.getIds().size());
+		assertFalse(replayed.getIds().contains("rec-9"));
+		replayed.close();
+	}
+
+	@Test
+	public void entityFileIsExportedWithLastState() throws Exception {
+		Files.createDirectory(this.recordingsPath.resolve("rec-1"));
+		Path entityFile = this.recordingsPath.resolve("rec-1")
+				.resolve(RecordingManager.RECORDING_ENTITY_FILE + "rec-1");
+		RecordingJournal journal = new TestJournal();
+		journal.put(recording("rec-1", Status.started));
+		journal.update("rec-1", recording -> recording.setStatus(Status.stopped));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!Files.isRegularFile(entityFile) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(new String(Files.readAllBytes(entityFile), StandardCharsets.UTF_8).contains("\"stopped\""));
+		journal.update("rec-1", recording -> recording.setStatus(Status.ready));
+		// Pending exports are flushed on close
+		journal.close();
+		assertTrue(new String(Files.readAllBytes(entityFile), StandardCharsets.UTF_8).contains("\"ready\""));
+	}
+
+	@Test
+	public void entityFilesAreImportedOnFirstStart() throws IOException {
+		Files.createDirectory(this.recordingsPath.resolve("rec-1"));
+		Files.write(this.recordingsPath.resolve("rec-1").resolve(RecordingManager.RECORDING_ENTITY_FILE + "rec-1"),
+				recording("rec-1", Status.ready).toJson().toString().getBytes(StandardCharsets.UTF_8));
+		RecordingJournal journal = new TestJournal();
+		assertEquals(Status.ready, journal.get("rec-1").getStatus());
+		journal.close();
+	}
+
+	@Test
+	public void unjournaledFoldersAreImportedOnLaterStarts() throws IOException {
+		RecordingJournal journal = new TestJournal();
+		journal.put(recording("rec-1", Status.ready));
+		journal.close();
+		Files.createDirectory(this.recordingsPath.resolve("rec-2"));
+		Files.write(this.recordingsPath.resolve("rec-2").resolve(RecordingManager.RECORDING_ENTITY_FILE + "rec-2"),
+				recording("rec-2", Status.ready).toJson().toString().getBytes(StandardCharsets.UTF_8));
+		// Entity file not matching its folder
+		Files.createDirectory(this.recordingsPath.resolve("rec-3"));
+		Files.write(this.recordingsPath.resolve("rec-3").resolve(RecordingManager.RECORDING_ENTITY_FILE + "rec-3"),
+				recording("rec-4", Status.ready).toJson().toString().getBytes(StandardCharsets.UTF_8));
+
+		RecordingJournal restarted = new TestJournal();
+		assertEquals(Status.ready, restarted.get("rec-2").getStatus());
+		assertNull(restarted.get("rec-3"));
+		assertNull(restarted.get("rec-4"));
+		restarted.close();
+		// Imported recordings are journaled
+		FileUtils.deleteDirectory(this.recordingsPath.resolve("rec-2").toFile());
+		RecordingJournal replayed = new TestJournal();
+		assertEquals(2, replayed.getIds().size());
+		replayed.close();
+	}
+
+	private static Recording recording(String id, Status status) {
+		JsonObject json = new JsonObject();
+		json.addProperty("id", id);
+		json.addProperty("sessionId", "session");
+		json.addProperty("name", id);
+		json.addProperty("outputMode", "INDIVIDUAL");
+		json.addProperty("createdAt", 0);
+		json.addProperty("size", 0);
+		json.addProperty("duration", 0);
+		json.add("url", null);
+		json.addProperty("hasAudio", true);
+		json.addProperty("hasVideo", true);
+		json.addProperty("status", status.name());
+		return new Recording(json);
+	}
+
+}
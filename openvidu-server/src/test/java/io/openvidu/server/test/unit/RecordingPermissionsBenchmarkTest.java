@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.openvidu.server.utils.CommandExecutor;
+import io.openvidu.server.utils.CustomFileManager;
+
+/**
+ * Times the permission update run when a recording is sealed, with several
+ * recordings sealed at the same time. Each recording folder is updated in its
+ * own thread with {@link CustomFileManager#setPermissionsRecursively(String)},
+ * as RecordingService.updateFilePermissions does, and with the "chmod -R 777"
+ * process it replaced. Timings are printed, not asserted
+ */
+public class RecordingPermissionsBenchmarkTest {
+
+	private static final int[] CONCURRENT_SEALS = { 1, 16, 64 };
+	private static final int FILES_PER_RECORDING = 20;
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+	private static final Set<PosixFilePermission> ALL = PosixFilePermissions.fromString("rwxrwxrwx");
+
+	private interface PermissionUpdate {
+		void run(String folder) throws Exception;
+	}
+
+	private Path recordingsPath;
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		assumeTrue(new File("/bin/sh").canExecute());
+		this.recordingsPath = Files.createTempDirectory("recording-permissions");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (this.recordingsPath != null) {
+			FileUtils.deleteDirectory(this.recordingsPath.toFile());
+		}
+	}
+
+	@Test
+	public void compareSealPermissionUpdates() throws Exception {
+		CustomFileManager fileManager = new CustomFileManager();
+		PermissionUpdate nio = fileManager::setPermissionsRecursively;
+		PermissionUpdate chmod = folder -> CommandExecutor.execCommand("/bin/sh", "-c", "chmod -R 777 " + folder);
+
+		// First run of each method warms up the JIT, and is not reported
+		this.run("NIO", nio, CONCURRENT_SEALS[0], false);
+		this.run("chmod -R", chmod, CONCURRENT_SEALS[0], false);
+		for (int seals : CONCURRENT_SEALS) {
+			this.run("chmod -R", chmod, seals, true);
+			this.run("NIO", nio, seals, true);
+		}
+	}
+
+	private void run(String method, PermissionUpdate update, int seals, boolean report) throws Exception {
+		List<String> folders = this.createRecordings(seals);
+		ExecutorService threads = Executors.newFixedThreadPool(seals);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Long>> latencies = new ArrayList<>();
+		for (String folder : folders) {
+			latencies.add(threads.submit(() -> {
+				start.await();
+				long startTime = System.nanoTime();
+				update.run(folder);
+				return System.nanoTime() - startTime;
+			}));
+		}
+		start.countDown();
+		long[] sorted = new long[seals];
+		for (int i = 0; i < seals; i++) {
+			sorted[i] = latencies.get(i).get();
+		}
+		threads.shutdown();
+		Arrays.sort(sorted);
+
+		for (String folder : folders) {
+			try (Stream<Path> files = Files.walk(new File(folder).toPath())) {
+				files.forEach(file -> {
+					try {
+						assertEquals(file.toString(), ALL, Files.getPosixFilePermissions(file));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+			}
+		}
+		if (report) {
+			System.out.println(String.format("%s permission update of %d recordings of %d files at the same time:"
+					+ " p50 %.2f ms, max %.2f ms", method, seals, FILES_PER_RECORDING, sorted[seals / 2] / 1e6,
+					sorted[seals - 1] / 1e6));
+		}
+		FileUtils.cleanDirectory(this.recordingsPath.toFile());
+	}
+
+	private List<String> createRecordings(int recordings) throws IOException {
+		List<String> folders = new ArrayList<>();
+		for (int i = 0; i < recordings; i++) {
+			Path folder = Files.createDirectory(this.recordingsPath.resolve("recording-" + i));
+			for (int j = 0; j < FILES_PER_RECORDING; j++) {
+				Path file = Files.write(folder.resolve("str_CAM_" + j + ".webm"), new byte[1024]);
+				Files.setPosixFilePermissions(file, OWNER_ONLY);
+			}
+			folders.add(folder.toString());
+		}
+		return folders;
+	}
+
+}
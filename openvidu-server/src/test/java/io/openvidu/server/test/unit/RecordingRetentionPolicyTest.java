@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import io.openvidu.server.recording.RecordingRetentionPolicy;
+
+public class RecordingRetentionPolicyTest {
+
+	private static final long HOUR = 3600000L;
+
+	@Test
+	public void policyIsParsed() throws Exception {
+		RecordingRetentionPolicy policy = RecordingRetentionPolicy.parse(" session-a:24:3 ");
+		assertEquals("session-a:24:3", policy.toString());
+		assertTrue(policy.isExpired(0, 25 * HOUR));
+		assertFalse(policy.isExpired(0, 23 * HOUR));
+		assertFalse(policy.isSurplus(2));
+		assertTrue(policy.isSurplus(3));
+		assertFalse(policy.isUnlimited());
+	}
+
+	@Test
+	public void zeroMeansNoLimit() throws Exception {
+		RecordingRetentionPolicy policy = RecordingRetentionPolicy.parse("session-a:0:0");
+		assertTrue(policy.isUnlimited());
+		assertFalse(policy.isExpired(0, 10000 * HOUR));
+		assertFalse(policy.isSurplus(10000));
+	}
+
+	@Test
+	public void wrongFormatsAreRejected() {
+		for (String wrong : new String[] { "", "session-a", "session-a:24", "session-a:24:3:1", ":24:3",
+				"session-a:-1:3", "session-a:x:3", "session-a:24:99999999999" }) {
+			try {
+				RecordingRetentionPolicy.parse(wrong);
+				fail("Policy '" + wrong + "' should have been rejected");
+			} catch (Exception e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("'" + wrong + "'"));
+			}
+		}
+	}
+
+	@Test
+	public void exactSessionIdApplies() throws Exception {
+		RecordingRetentionPolicy policy = RecordingRetentionPolicy.parse("session-a:24:3");
+		assertTrue(policy.appliesTo("session-a"));
+		assertFalse(policy.appliesTo("session-ab"));
+		assertFalse(policy.appliesTo("session"));
+	}
+
+	@Test
+	public void wildcardAppliesToPrefix() throws Exception {
+		RecordingRetentionPolicy policy = RecordingRetentionPolicy.parse("session-*:24:3");
+		assertTrue(policy.appliesTo("session-"));
+		assertTrue(policy.appliesTo("session-abc"));
+		assertFalse(policy.appliesTo("session"));
+		assertFalse(policy.appliesTo("other-session-abc"));
+		assertTrue(RecordingRetentionPolicy.parse("*:24:3").appliesTo("any"));
+	}
+
+	@Test
+	public void globalPolicyAppliesToEverySession() {
+		RecordingRetentionPolicy policy = new RecordingRetentionPolicy(null, 24, 3);
+		assertTrue(policy.appliesTo("session-a"));
+		assertTrue(policy.appliesTo(""));
+		assertEquals("*:24:3", policy.toString());
+	}
+
+}
@@ -0,0 +1,238 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+
+import io.openvidu.client.internal.ProtocolElements;
+import io.openvidu.server.config.OpenviduConfig;
+import io.openvidu.server.core.Participant;
+import io.openvidu.server.core.Token;
+import io.openvidu.server.kurento.core.KurentoSessionManager;
+import io.openvidu.server.rpc.RpcConnection;
+import io.openvidu.server.rpc.RpcHandler;
+import io.openvidu.server.rpc.RpcNotificationService;
+
+/**
+ * Times {@link RpcHandler#handleRequest(Transaction, Request)} for
+ * "onIceCandidate" requests, the most frequent RPC method, with the logging
+ * mode used before "openvidu.log.structured" and "openvidu.log.rpc-sample-rate"
+ * existed and with both properties enabled. Session manager and notification
+ * service are stubs, so only the RPC handling and its logging are measured.
+ * Each mode writes its log to a file, as the appenders of logback-spring.xml
+ * do. Timings are printed, not asserted
+ */
+public class RpcHandlerLoggingBenchmarkTest {
+
+	private static final int THREADS = 8;
+	private static final int CALLS_PER_THREAD = 5000;
+	private static final int RPC_SAMPLE_RATE = 100;
+
+	private static final String SESSION_ID = "session";
+	private static final String PRIVATE_ID = "privateId";
+
+	private File logFolder;
+	private final AtomicLong iceCandidates = new AtomicLong();
+
+	@Before
+	public void setUp() throws IOException {
+		this.logFolder = Files.createTempDirectory("rpc-logging").toFile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.reset();
+		new ContextInitializer(context).autoConfig();
+		FileUtils.deleteDirectory(this.logFolder);
+	}
+
+	@Test
+	public void compareLoggingModes() throws Exception {
+		// First run of each mode warms up the JIT, and is not reported
+		this.run("unstructured, every call at INFO", false, 1, false);
+		this.run("structured, 1 of " + RPC_SAMPLE_RATE + " calls at INFO", true, RPC_SAMPLE_RATE, false);
+		this.run("unstructured, every call at INFO", false, 1, true);
+		this.run("structured, 1 of " + RPC_SAMPLE_RATE + " calls at INFO", true, RPC_SAMPLE_RATE, true);
+	}
+
+	private void run(String mode, boolean structured, int sampleRate, boolean report) throws Exception {
+		this.configureLogging(structured);
+		RpcHandler rpcHandler = this.rpcHandler(structured, sampleRate);
+		this.iceCandidates.set(0);
+
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(threads.submit(() -> {
+				Transaction transaction = RpcTestUtils.transaction(PRIVATE_ID);
+				for (int j = 0; j < CALLS_PER_THREAD; j++) {
+					rpcHandler.handleRequest(transaction, iceCandidateRequest(j));
+				}
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - startTime;
+		threads.shutdown();
+		// Events still queued in the asynchronous appender are written on stop
+		((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+
+		assertEquals(THREADS * CALLS_PER_THREAD, this.iceCandidates.get());
+		if (report) {
+			long calls = THREADS * CALLS_PER_THREAD;
+			System.out.println(String.format("handleRequest with %s logging: %d calls from %d threads in %d ms"
+					+ " (%.0f calls/s, %.2f us per call)", mode, calls, THREADS,
+					TimeUnit.NANOSECONDS.toMillis(elapsed), calls * 1e9 / elapsed,
+					elapsed / 1000.0 * THREADS / calls));
+		}
+	}
+
+	/**
+	 * Same appenders and patterns as logback-spring.xml, writing to a file
+	 * instead of the console
+	 */
+	private void configureLogging(boolean structured) {
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		context.reset();
+
+		PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+		encoder.setContext(context);
+		encoder.setPattern(structured
+				? "ts=%d{ISO8601} level=%p thread=%t logger=%c msg=\"%replace(%msg){'\"', '\\\\\"'}\"%n%ex"
+				: "[%p] %d [%.15t] %c \\(%M\\) - %msg%n");
+		encoder.start();
+		FileAppender<ILoggingEvent> file = new FileAppender<>();
+		file.setContext(context);
+		file.setName("FILE");
+		file.setFile(new File(this.logFolder, structured ? "structured.log" : "unstructured.log").getPath());
+		file.setAppend(false);
+		file.setEncoder(encoder);
+		file.start();
+
+		Appender<ILoggingEvent> appender = file;
+		if (structured) {
+			AsyncAppender async = new AsyncAppender();
+			async.setContext(context);
+			async.setName("ASYNC");
+			async.setQueueSize(8192);
+			async.setDiscardingThreshold(0);
+			async.setIncludeCallerData(false);
+			async.addAppender(file);
+			async.start();
+			appender = async;
+		}
+		Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+		root.setLevel(Level.INFO);
+		root.addAppender(appender);
+	}
+
+	private RpcHandler rpcHandler(boolean structured, int sampleRate) {
+		OpenviduConfig openviduConfig = new OpenviduConfig() {
+			@Override
+			public boolean isOpenviduLogStructured() {
+				return structured;
+			}
+
+			@Override
+			public int getOpenviduLogRpcSampleRate() {
+				return sampleRate;
+			}
+		};
+		Participant participant = new Participant("finalUserId", PRIVATE_ID, "publicId", SESSION_ID,
+				new Token("token"), "", null, "platform", null, null);
+		KurentoSessionManager sessionManager = new KurentoSessionManager() {
+			@Override
+			public Participant getParticipant(String sessionId, String participantPrivateId) {
+				return participant;
+			}
+
+			@Override
+			public void onIceCandidate(Participant participant, String endpointName, String candidate,
+					int sdpMLineIndex, String sdpMid, Integer transactionId) {
+				iceCandidates.incrementAndGet();
+			}
+		};
+		RpcConnection rpcConnection = new RpcConnection(RpcTestUtils.transaction(PRIVATE_ID).getSession());
+		rpcConnection.setParticipantPrivateId(PRIVATE_ID);
+		rpcConnection.setSessionId(SESSION_ID);
+		RpcNotificationService notificationService = new RpcNotificationService() {
+			@Override
+			public RpcConnection getRpcConnection(String participantPrivateId) {
+				return rpcConnection;
+			}
+
+			@Override
+			public RpcConnection addTransaction(Transaction t, Request<JsonObject> request) {
+				return rpcConnection;
+			}
+		};
+
+		RpcHandler rpcHandler = new RpcHandler();
+		RpcTestUtils.inject(rpcHandler, "openviduConfig", openviduConfig);
+		RpcTestUtils.inject(rpcHandler, "sessionManager", sessionManager);
+		RpcTestUtils.inject(rpcHandler, "notificationService", notificationService);
+		RpcTestUtils.inject(rpcHandler, "metricsManager", RpcTestUtils.metricsManager());
+		return rpcHandler;
+	}
+
+	private static Request<JsonObject> iceCandidateRequest(int id) {
+		JsonObject params = new JsonObject();
+		params.addProperty(ProtocolElements.ONICECANDIDATE_EPNAME_PARAM, "publicId_CAMERA_ABCDE");
+		params.addProperty(ProtocolElements.ONICECANDIDATE_CANDIDATE_PARAM,
+				"candidate:1 1 UDP 2122252543 192.168.1.10 50000 typ host");
+		params.addProperty(ProtocolElements.ONICECANDIDATE_SDPMIDPARAM, "0");
+		params.addProperty(ProtocolElements.ONICECANDIDATE_SDPMLINEINDEX_PARAM, 0);
+		return new Request<>(id, ProtocolElements.ONICECANDIDATE_METHOD, params);
+	}
+
+}
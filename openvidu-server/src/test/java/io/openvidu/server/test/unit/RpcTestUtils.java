@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.servlet.http.HttpSession;
+
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.springframework.util.ReflectionUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.openvidu.server.metrics.MetricsManager;
+
+/**
+ * Stubs to call {@link io.openvidu.server.rpc.RpcHandler} without a websocket
+ * or a Spring context
+ */
+public final class RpcTestUtils {
+
+	private RpcTestUtils() {
+	}
+
+	/**
+	 * @return a transaction of the websocket session of the participant. Every
+	 *         response sent through it is discarded
+	 */
+	public static Transaction transaction(String participantPrivateId) {
+		return transaction(participantPrivateId, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @param attributes attributes of the websocket session, such as the
+	 *                   "httpSession" stored on handshake
+	 */
+	public static Transaction transaction(String participantPrivateId, Map<String, Object> attributes) {
+		Map<String, Function<Object[], Object>> session = new HashMap<>();
+		session.put("getSessionId", args -> participantPrivateId);
+		session.put("getAttributes", args -> attributes);
+		Session sessionStub = stub(Session.class, session);
+		Map<String, Function<Object[], Object>> transaction = new HashMap<>();
+		transaction.put("getSession", args -> sessionStub);
+		return stub(Transaction.class, transaction);
+	}
+
+	/**
+	 * @return an HTTP session keeping its attributes in memory
+	 */
+	public static HttpSession httpSession(String id) {
+		Map<String, Object> attributes = new ConcurrentHashMap<>();
+		Map<String, Function<Object[], Object>> httpSession = new HashMap<>();
+		httpSession.put("getId", args -> id);
+		httpSession.put("getAttribute", args -> attributes.get(args[0]));
+		httpSession.put("setAttribute", args -> attributes.put((String) args[0], args[1]));
+		return stub(HttpSession.class, httpSession);
+	}
+
+	public static MetricsManager metricsManager() {
+		MetricsManager metricsManager = new MetricsManager();
+		inject(metricsManager, "meterRegistry", new SimpleMeterRegistry());
+		return metricsManager;
+	}
+
+	/**
+	 * Sets a field of the target, as Spring does with autowired fields
+	 */
+	public static void inject(Object target, String fieldName, Object value) {
+		Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+		ReflectionUtils.makeAccessible(field);
+		ReflectionUtils.setField(field, target, value);
+	}
+
+	/**
+	 * @return an implementation of the interface answering the given methods.
+	 *         Any other method does nothing
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+		return (T) Proxy.newProxyInstance(RpcTestUtils.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					Function<Object[], Object> answer = answers.get(method.getName());
+					if (answer != null) {
+						Object result = answer.apply(args);
+						return method.getReturnType() == void.class ? null : result;
+					}
+					switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return type.getSimpleName() + " stub";
+					}
+					if (method.getReturnType() == boolean.class) {
+						return false;
+					}
+					if (method.getReturnType() == long.class) {
+						return 0L;
+					}
+					return null;
+				});
+	}
+
+}
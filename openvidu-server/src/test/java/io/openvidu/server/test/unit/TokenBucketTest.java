@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.openvidu.server.utils.TokenBucket;
+
+public class TokenBucketTest {
+
+	@Test
+	public void zeroRateIsUnlimited() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(0);
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(bucket.tryAcquire());
+		}
+		long start = System.nanoTime();
+		bucket.acquire(1000000);
+		assertTrue(System.nanoTime() - start < 1_000_000_000L);
+	}
+
+	@Test
+	public void burstIsLimitedToRate() {
+		TokenBucket bucket = new TokenBucket(5);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(bucket.tryAcquire());
+		}
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	public void bucketIsRefilledOverTime() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(10);
+		while (bucket.tryAcquire()) {
+		}
+		// One token every 100 ms
+		Thread.sleep(250);
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	public void acquireWaitsForMissingTokens() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100);
+		bucket.acquire(100);
+		long start = System.nanoTime();
+		// 20 tokens at 100 per second are 200 ms
+		bucket.acquire(20);
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		assertTrue("Waited " + elapsedMillis + " ms", elapsedMillis >= 150);
+	}
+
+	@Test
+	public void reserveReportsDebtWithoutWaiting() {
+		TokenBucket bucket = new TokenBucket(100);
+		assertEquals(0, bucket.reserve(100));
+		long start = System.nanoTime();
+		// 50 tokens at 100 per second are 500 ms of debt
+		long waitNanos = bucket.reserve(50);
+		assertTrue(System.nanoTime() - start < 100_000_000L);
+		assertTrue("Debt of " + waitNanos + " ns", waitNanos > 400_000_000L && waitNanos <= 500_000_000L);
+		assertEquals(0, new TokenBucket(0).reserve(1000000));
+	}
+
+	@Test
+	public void tryAcquireWithConsumesBothOrNone() {
+		TokenBucket connection = new TokenBucket(3);
+		TokenBucket session = new TokenBucket(1);
+		assertNull(connection.tryAcquireWith(session));
+		// Session bucket is empty: the connection token must not be consumed
+		assertSame(session, connection.tryAcquireWith(session));
+		assertSame(session, connection.tryAcquireWith(session));
+		assertTrue(connection.tryAcquire());
+		assertTrue(connection.tryAcquire());
+		assertFalse(connection.tryAcquire());
+	}
+
+	@Test
+	public void tryAcquireWithReportsEmptyConnectionFirst() {
+		TokenBucket connection = new TokenBucket(1);
+		TokenBucket session = new TokenBucket(1);
+		assertTrue(connection.tryAcquire());
+		assertSame(connection, connection.tryAcquireWith(session));
+		// The session token is still available for other connections
+		assertTrue(session.tryAcquire());
+	}
+
+	@Test
+	public void tryAcquireWithUnlimitedBucket() {
+		TokenBucket connection = new TokenBucket(0);
+		TokenBucket session = new TokenBucket(2);
+		assertNull(connection.tryAcquireWith(session));
+		assertNull(connection.tryAcquireWith(session));
+		assertSame(session, connection.tryAcquireWith(session));
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2017-2019 OpenVidu (https://openvidu.io/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.openvidu.server.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import io.openvidu.server.kurento.endpoint.WebrtcStatsTimeSeries;
+import io.openvidu.server.kurento.endpoint.WebrtcStatsTimeSeries.Metric;
+
+public class WebrtcStatsTimeSeriesTest {
+
+	@Test
+	public void firstSampleOnlyInitializesCounters() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		assertFalse(series.addSample(1000, 500, 10, 0, 0, 0));
+		assertEquals(0, series.size());
+		assertEquals(-1, series.getLast(Metric.bitrate), 0);
+	}
+
+	@Test
+	public void countersAreConvertedToIntervalValues() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		series.addSample(1000, 0, 0, 0, 0, 0);
+		// 125000 bytes in 1 second is 1000 kbps. 10 lost out of 100 sent is 10%
+		assertTrue(series.addSample(2000, 125000, 90, 10, 0.02, 0.15));
+		assertEquals(1, series.size());
+		assertEquals(1000, series.getLast(Metric.bitrate), 0.01);
+		assertEquals(10, series.getLast(Metric.packetLoss), 0.01);
+		assertEquals(0.02, series.getLast(Metric.jitter), 0.0001);
+		assertEquals(0.15, series.getLast(Metric.rtt), 0.0001);
+	}
+
+	@Test
+	public void noPacketsMeansNoLoss() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		series.addSample(1000, 100, 10, 2, 0, 0);
+		assertTrue(series.addSample(2000, 100, 10, 2, 0, 0));
+		assertEquals(0, series.getLast(Metric.packetLoss), 0);
+		assertEquals(0, series.getLast(Metric.bitrate), 0);
+	}
+
+	@Test
+	public void restartedCountersAreNotStored() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		series.addSample(1000, 1000, 10, 0, 0, 0);
+		series.addSample(2000, 2000, 20, 0, 0, 0);
+		// Bytes going backwards and repeated timestamps only reset the counters
+		assertFalse(series.addSample(3000, 500, 5, 0, 0, 0));
+		assertFalse(series.addSample(3000, 600, 6, 0, 0, 0));
+		assertEquals(1, series.size());
+		assertTrue(series.addSample(4000, 1500, 15, 0, 0, 0));
+		assertEquals(2, series.size());
+		assertEquals(7.2, series.getLast(Metric.bitrate), 0.01);
+	}
+
+	@Test
+	public void oldestSamplesAreOverwritten() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		series.addSample(0, 0, 0, 0, 0, 0);
+		for (int i = 1; i <= 5; i++) {
+			series.addSample(i * 1000, i * 1000, i, 0, i, 0);
+		}
+		assertEquals(3, series.size());
+		JsonObject json = series.toJson();
+		assertEquals(3, json.get("timestamps").getAsJsonArray().size());
+		assertEquals(3000, json.get("timestamps").getAsJsonArray().get(0).getAsLong());
+		assertEquals(5000, json.get("timestamps").getAsJsonArray().get(2).getAsLong());
+		assertEquals(5, json.get("jitterMs").getAsJsonArray().get(2).getAsFloat(), 0);
+		assertEquals(5, series.getLast(Metric.jitter), 0);
+	}
+
+	@Test
+	public void alertsOnlyFireOnUpwardsCrossing() {
+		WebrtcStatsTimeSeries series = new WebrtcStatsTimeSeries(3);
+		assertFalse(series.updateAlert(Metric.rtt, false));
+		assertTrue(series.updateAlert(Metric.rtt, true));
+		assertFalse(series.updateAlert(Metric.rtt, true));
+		assertFalse(series.updateAlert(Metric.jitter, false));
+		assertFalse(series.updateAlert(Metric.rtt, false));
+		assertTrue(series.updateAlert(Metric.rtt, true));
+	}
+
+}